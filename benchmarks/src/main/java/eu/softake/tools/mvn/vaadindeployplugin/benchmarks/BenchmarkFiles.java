@@ -0,0 +1,61 @@
+package eu.softake.tools.mvn.vaadindeployplugin.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * File helpers shared by the benchmarks. Content is generated from a fixed seed, so every run works on the same data.
+ */
+final class BenchmarkFiles {
+
+    // Constants
+    private static final long SEED = 42;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Creates a directory with {@code count} files of {@code size} random bytes, spread over subdirectories
+     * of at most 100 files like a typical deployment folder.
+     *
+     * @param dir   the directory to fill
+     * @param count the number of files
+     * @param size  the size of every file in bytes
+     * @throws IOException if a file can't be written
+     */
+    static void createFiles(Path dir, int count, int size) throws IOException {
+        final Random random = new Random(SEED);
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        for (int i = 0; i < count; i++) {
+            final Path file = dir.resolve("dir-" + i / 100).resolve("file-" + i + ".bin");
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = Files.newOutputStream(file)) {
+                for (int written = 0; written < size; written += buffer.length) {
+                    random.nextBytes(buffer);
+                    out.write(buffer, 0, Math.min(buffer.length, size - written));
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes a directory with all its content. Missing directories are ignored.
+     *
+     * @param dir the directory to delete
+     * @throws IOException if a file can't be deleted
+     */
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package eu.softake.tools.mvn.vaadindeployplugin.benchmarks;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.JarFileService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JarFileService#copyFolder(String, String)}, which extracts the resource folders used by the
+ * {@code init} goal from the plugin JAR. It has to run from a JAR, e.g. the shaded {@code benchmarks.jar}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JarFileServiceBenchmark {
+
+    /** Resource folder of the plugin to extract. */
+    @Param({"configs", "apps_data"})
+    public String resourceDir;
+
+    private final JarFileService jarFileService = new JarFileService();
+    private Path targetDir;
+
+    @Setup(Level.Trial)
+    public void createTargetDir() throws IOException {
+        targetDir = Files.createTempDirectory("jar-file-benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTargetDir() throws IOException {
+        BenchmarkFiles.deleteRecursively(targetDir);
+    }
+
+    @Benchmark
+    public void copyFolder() throws Exception {
+        jarFileService.copyFolder(resourceDir, targetDir.toString());
+    }
+}
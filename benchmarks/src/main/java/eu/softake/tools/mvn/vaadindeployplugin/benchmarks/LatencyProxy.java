@@ -0,0 +1,145 @@
+package eu.softake.tools.mvn.vaadindeployplugin.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TCP proxy on the loopback interface which delays every chunk of data by half of the round-trip time
+ * in each direction.
+ * <p>
+ * Data is read as soon as it arrives and written once its delay has elapsed, so the proxy adds latency
+ * without limiting the bandwidth, like a long but fast network link.
+ * </p>
+ */
+final class LatencyProxy implements AutoCloseable {
+
+    // Constants
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    // Data
+    private final int targetPort;
+    private final long oneWayDelayNanos;
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "latency-proxy");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts the proxy on a free port.
+     *
+     * @param targetPort      the local port to forward the connections to
+     * @param roundTripMillis the latency added to every round trip
+     * @throws IOException if the server socket can't be opened
+     */
+    LatencyProxy(int targetPort, long roundTripMillis) throws IOException {
+        this.targetPort = targetPort;
+        this.oneWayDelayNanos = TimeUnit.MILLISECONDS.toNanos(roundTripMillis) / 2;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::acceptConnections);
+    }
+
+    /**
+     * Returns the port clients have to connect to.
+     *
+     * @return the port of the proxy
+     */
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket client = serverSocket.accept();
+                final Socket server = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(server);
+                forward(client, server);
+                forward(server, client);
+            } catch (IOException e) {
+                // The proxy has been closed
+            }
+        }
+    }
+
+    /**
+     * Forwards one direction of a connection: a reader thread stamps the chunks with their due time
+     * and a writer thread sends them when it's reached.
+     */
+    private void forward(Socket from, Socket to) {
+        final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        executor.execute(() -> {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = from.getInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    queue.add(new Chunk(System.nanoTime() + oneWayDelayNanos, Arrays.copyOf(buffer, read)));
+                }
+            } catch (IOException e) {
+                // Connection closed
+            }
+            queue.add(new Chunk(System.nanoTime() + oneWayDelayNanos, END_OF_STREAM));
+        });
+        executor.execute(() -> {
+            try {
+                final OutputStream out = to.getOutputStream();
+                while (true) {
+                    final Chunk chunk = queue.take();
+                    long remaining;
+                    while ((remaining = chunk.dueNanos - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(remaining);
+                    }
+                    if (chunk.data == END_OF_STREAM) {
+                        to.shutdownOutput();
+                        return;
+                    }
+                    out.write(chunk.data);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Connection or proxy closed
+            }
+        });
+    }
+
+    /**
+     * Data read from a connection together with the time it may be written.
+     */
+    private static final class Chunk {
+        private final long dueNanos;
+        private final byte[] data;
+
+        private Chunk(long dueNanos, byte[] data) {
+            this.dueNanos = dueNanos;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package eu.softake.tools.mvn.vaadindeployplugin.benchmarks;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.LocalFileService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link LocalFileService#getChildren(File, String)} looking up the built JAR in a {@code target}
+ * directory with a growing number of files, one in ten of them matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalFileServiceBenchmark {
+
+    // Constants
+    private static final String JAR_FILE_REGEX = ".*\\.jar";
+
+    /** Number of files in the directory. */
+    @Param({"10", "1000", "10000"})
+    public int fileCount;
+
+    private final LocalFileService localFileService = new LocalFileService();
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        dir = Files.createTempDirectory("local-file-benchmark");
+        for (int i = 0; i < fileCount; i++) {
+            Files.createFile(dir.resolve(i % 10 == 0 ? "app-" + i + ".jar" : "classes-" + i + ".txt"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<File> getChildren() {
+        return localFileService.getChildren(dir.toFile(), JAR_FILE_REGEX);
+    }
+}
@@ -0,0 +1,82 @@
+package eu.softake.tools.mvn.vaadindeployplugin.benchmarks;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.PlaceholderReplacer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PlaceholderReplacer#substitute(File, Map)} on templates of different sizes.
+ * The template is restored before every invocation, because the substitution rewrites it in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceholderReplacerBenchmark {
+
+    /** Number of lines of the template. */
+    @Param({"100", "10000"})
+    public int lineCount;
+
+    /** Number of distinct placeholders in the template and entries in the map. */
+    @Param({"5", "50"})
+    public int placeholderCount;
+
+    private final PlaceholderReplacer placeholderReplacer = new PlaceholderReplacer();
+    private final Map<String, String> values = new HashMap<>();
+    private Path dir;
+    private File file;
+    private byte[] template;
+
+    @Setup(Level.Trial)
+    public void createTemplate() throws IOException {
+        dir = Files.createTempDirectory("placeholder-benchmark");
+        file = dir.resolve("docker-compose.yml").toFile();
+
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            sb.append("      - SETTING_").append(i).append("=${key").append(i % placeholderCount).append("}\n");
+        }
+        template = sb.toString().getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < placeholderCount; i++) {
+            values.put("key" + i, "value-" + i);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreTemplate() throws IOException {
+        Files.write(file.toPath(), template);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTemplate() throws IOException {
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void substitute() throws IOException {
+        placeholderReplacer.substitute(file, values);
+    }
+}
@@ -0,0 +1,122 @@
+package eu.softake.tools.mvn.vaadindeployplugin.benchmarks;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.SshConnectionParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshSessionRegistry;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.TransferMode;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures directory uploads of {@link SshService} against an in-process Apache MINA {@link SshServer}
+ * which serves SFTP from the local file system and runs commands with the local {@code sh}.
+ * <p>
+ * The {@code files} parameter describes the uploaded directory as {@code count:size}: a single large file,
+ * a medium-sized folder and many small files. A non-zero {@code latencyMillis} routes the connection through
+ * a {@link LatencyProxy} adding that round-trip time, which is where per-file round trips start to dominate.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SshUploadBenchmark {
+
+    // Constants
+    private static final String PASSWORD = "benchmark";
+
+    /** Uploaded directory as {@code count:size in bytes}. */
+    @Param({"1:52428800", "100:65536", "2000:2048"})
+    public String files;
+
+    /** Round-trip time added to the connection. */
+    @Param({"0", "40"})
+    public int latencyMillis;
+
+    /** How the files are transferred. */
+    @Param({"SFTP", "TAR"})
+    public TransferMode transferMode;
+
+    /** Number of files uploaded concurrently in the SFTP mode; the TAR mode ignores it. */
+    @Param({"4"})
+    public int transferConcurrency;
+
+    private Path workDir;
+    private Path localDir;
+    private Path remoteDir;
+    private SshServer server;
+    private LatencyProxy proxy;
+    private SshService sshService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("ssh-upload-benchmark");
+        localDir = Files.createDirectories(workDir.resolve("local"));
+        remoteDir = workDir.resolve("remote");
+        final String[] layout = files.split(":");
+        BenchmarkFiles.createFiles(localDir, Integer.parseInt(layout[0]), Integer.parseInt(layout[1]));
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(workDir.resolve("host.key")));
+        server.setPasswordAuthenticator((user, password, session) -> PASSWORD.equals(password));
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setCommandFactory((channel, command) ->
+                new ProcessShellFactory(command, Arrays.asList("sh", "-c", command)).createShell(channel));
+        server.start();
+
+        int port = server.getPort();
+        if (latencyMillis > 0) {
+            proxy = new LatencyProxy(port, latencyMillis);
+            port = proxy.getPort();
+        }
+
+        final SshConnectionParam connection = new SshConnectionParam();
+        connection.setHostName("127.0.0.1");
+        connection.setPort(port);
+        connection.setUser("deploy");
+        connection.setPassword(PASSWORD);
+
+        sshService = new SshService(connection);
+        sshService.setTransferMode(transferMode);
+        sshService.setTransferConcurrency(transferConcurrency);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (sshService != null) sshService.close();
+        SshSessionRegistry.getInstance().shutdown();
+        if (proxy != null) proxy.close();
+        if (server != null) server.stop(true);
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void copyDirToServer() throws Exception {
+        sshService.copyDirToServer(localDir.toString(), remoteDir.toString());
+    }
+}
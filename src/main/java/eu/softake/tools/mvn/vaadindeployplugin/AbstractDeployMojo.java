@@ -1,22 +1,53 @@
 package eu.softake.tools.mvn.vaadindeployplugin;
 
+import eu.softake.tools.mvn.vaadindeployplugin.instrumentation.DeployListener;
+import eu.softake.tools.mvn.vaadindeployplugin.instrumentation.FlightRecorderEvents;
+import eu.softake.tools.mvn.vaadindeployplugin.instrumentation.TimelineRecorder;
+import eu.softake.tools.mvn.vaadindeployplugin.instrumentation.TimelineReportWriter;
+import eu.softake.tools.mvn.vaadindeployplugin.params.DeploymentStrategyParam;
 import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
 import eu.softake.tools.mvn.vaadindeployplugin.params.ServerTypeParam;
 import eu.softake.tools.mvn.vaadindeployplugin.params.validators.PluginParamsValidator;
 import eu.softake.tools.mvn.vaadindeployplugin.params.providers.LocalPathProvider;
 import eu.softake.tools.mvn.vaadindeployplugin.params.providers.ServerPathProvider;
 import eu.softake.tools.mvn.vaadindeployplugin.service.LocalFileService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.ImageHistory;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.LayeredImageBuilder;
+import eu.softake.tools.mvn.vaadindeployplugin.service.LogPrefix;
 import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshSessionRegistry;
+import eu.softake.tools.mvn.vaadindeployplugin.service.compose.AppliedState;
+import eu.softake.tools.mvn.vaadindeployplugin.service.compose.RestartPlan;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.DeploymentFingerprint;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.TransferMode;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainExecutor;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.DagChainExecutor;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.BuildTaggedImageHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.CheckBuiltJarFileExistsHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.CopyAppsDataToServerHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.CopyDeploymentPackageToServerHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.CopyTargetJarToServerHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DetectServiceChangesHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DatabaseDumpHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeBackupHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeBlueGreenHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeBuildHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeStartHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeStopHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeVersionCheckHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.InvalidateDeploymentFingerprintHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.LoadLayeredImageHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.PruneReleasesHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.RecordImageHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.SelectiveRestartHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.StageReleaseHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.StoreDeploymentFingerprintHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.SwitchReleaseHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.WaitForHealthyServicesHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.WriteImageOverrideHandler;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.init.CheckDockerfileExistsHandler;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -24,7 +55,23 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -39,6 +86,21 @@ import java.util.stream.Collectors;
  *     <li>Handling Docker Compose stop, backup, and start operations</li>
  * </ul>
  * <p>
+ * Servers are deployed one after another by default. With {@code serversParallelism} greater than 1 they are
+ * deployed concurrently, optionally in waves of {@code waveSize} servers; once more than {@code failureBudget}
+ * servers have failed, the remaining servers are skipped. A summary of all servers is logged at the end.
+ * <p>
+ * With {@code skipUnchanged} a fingerprint of the deployment tree, the built artifact and the deploy options is stored
+ * on the server after a successful deploy, and a server whose fingerprint matches is left untouched.
+ * <p>
+ * With the {@code STAGED} deployment strategy the new release is uploaded and built next to the running one,
+ * and the running stack is only stopped to switch the deployment directory symlink to the new release.
+ * With the {@code BLUE_GREEN} strategy the application is started in the idle slot and nginx is switched to it,
+ * so the stack isn't stopped at all. With {@code selectiveRestart} the in-place strategy keeps the stack running
+ * during the upload and then restarts only the services whose inputs have changed.
+ * With {@code imageTagging} the application image is tagged with the content hash of its inputs and the last
+ * images are kept on the server, so that the {@code rollback} goal can switch back without a build.
+ * <p>
  * Subclasses must implement {@link #getServerTypeFilter()} to specify the type of servers to deploy to.
  */
 @Slf4j
@@ -67,6 +129,124 @@ public abstract class AbstractDeployMojo extends AbstractMojo {
     @Parameter(property = "certbotEmail", required = true)
     private String certbotEmail;
 
+    /** Upload only new or changed files of the deployment package, based on a manifest stored on the server. */
+    @Parameter(property = "deltaSync", defaultValue = "false")
+    protected boolean deltaSync;
+
+    /** Delete files from the server which were deployed before but no longer exist locally (delta sync only). */
+    @Parameter(property = "deleteStaleFiles", defaultValue = "false")
+    protected boolean deleteStaleFiles;
+
+    /** Send only the blocks of the built package which differ from the package uploaded by the previous deploy. */
+    @Parameter(property = "jarDeltaTransfer", defaultValue = "false")
+    protected boolean jarDeltaTransfer;
+
+    /** Maximum number of SFTP channels used in parallel to upload the files of a directory. */
+    @Parameter(property = "sftpConcurrency", defaultValue = "4")
+    protected int sftpConcurrency;
+
+    /** How the files of a directory are transferred: AUTO, SFTP or TAR. */
+    @Parameter(property = "transferMode", defaultValue = "AUTO")
+    protected TransferMode transferMode;
+
+    /** How many times an interrupted upload of a single file is resumed after reconnecting. */
+    @Parameter(property = "uploadRetries", defaultValue = "3")
+    protected int uploadRetries;
+
+    /** Maximum time in seconds a remote command, such as {@code docker compose up --build}, may run. 0 waits forever. */
+    @Parameter(property = "remoteCommandTimeout", defaultValue = "1800")
+    protected long remoteCommandTimeout;
+
+    /** Maximum number of deploy steps executed at the same time for a server. 1 runs them one after another. */
+    @Parameter(property = "stepsParallelism", defaultValue = "1")
+    protected int stepsParallelism;
+
+    /** Maximum number of servers deployed at the same time. 1 deploys them one after another. */
+    @Parameter(property = "serversParallelism", defaultValue = "1")
+    protected int serversParallelism;
+
+    /** Number of servers deployed in a wave; the next wave starts when the previous one has finished. 0 means a single wave. */
+    @Parameter(property = "waveSize", defaultValue = "0")
+    protected int waveSize;
+
+    /** Number of failed servers tolerated before the remaining servers are skipped. */
+    @Parameter(property = "failureBudget", defaultValue = "0")
+    protected int failureBudget;
+
+    /** Record the duration of every step, remote command and file transfer and write a timeline report. */
+    @Parameter(property = "timelineReport", defaultValue = "false")
+    protected boolean timelineReport;
+
+    /** Directory the JSON and HTML timeline reports are written to. */
+    @Parameter(property = "timelineReportDir", defaultValue = "${project.build.directory}/vaadin-deploy")
+    protected File timelineReportDir;
+
+    /** Recorder of the current deployment, if the timeline report is enabled. */
+    private TimelineRecorder timelineRecorder;
+
+    /** Builders of the locally built images of the current deployment by local target directory. */
+    private final Map<String, LayeredImageBuilder> imageBuilders = new ConcurrentHashMap<>();
+
+    /** Skip the deploy of a server if neither the built artifact nor the deployment tree changed since its last deploy. */
+    @Parameter(property = "skipUnchanged", defaultValue = "false")
+    protected boolean skipUnchanged;
+
+    /** How the new release replaces the running one: {@code IN_PLACE}, {@code STAGED} or {@code BLUE_GREEN}. */
+    @Parameter(property = "deploymentStrategy", defaultValue = "IN_PLACE")
+    protected DeploymentStrategyParam deploymentStrategy;
+
+    /** Number of releases kept on the server by the staged deployment, including the current one. */
+    @Parameter(property = "keepReleases", defaultValue = "3")
+    protected int keepReleases;
+
+    /** Restart only the services affected by the changed files instead of the whole stack (IN_PLACE strategy only). */
+    @Parameter(property = "selectiveRestart", defaultValue = "false")
+    protected boolean selectiveRestart;
+
+    /** Wait after the start until all services are healthy and fail the deploy with their logs otherwise (IN_PLACE and STAGED strategies). */
+    @Parameter(property = "waitUntilHealthy", defaultValue = "false")
+    protected boolean waitUntilHealthy;
+
+    /** Seconds the services may take to become healthy after the start before the deploy fails. */
+    @Parameter(property = "healthCheckTimeout", defaultValue = "300")
+    protected long healthCheckTimeout;
+
+    /** Seconds the new slot of the blue/green deployment may take to become healthy before the deploy fails. */
+    @Parameter(property = "blueGreenHealthTimeout", defaultValue = "300")
+    protected long blueGreenHealthTimeout;
+
+    /** Seconds the sessions started on the old slot of the blue/green deployment stay on it after the switch, before the slot is removed. */
+    @Parameter(property = "blueGreenGracePeriod", defaultValue = "30")
+    protected long blueGreenGracePeriod;
+
+    /** Build the application image locally in layers and load only the layers the server doesn't have, instead of building it on the server (IN_PLACE strategy without selectiveRestart). */
+    @Parameter(property = "localImageBuild", defaultValue = "false")
+    protected boolean localImageBuild;
+
+    /** Tag the application image with the content hash of the package and the Dockerfile, build it only if the server doesn't have it and keep the last images for rollbacks (IN_PLACE strategy without selectiveRestart). */
+    @Parameter(property = "imageTagging", defaultValue = "false")
+    protected boolean imageTagging;
+
+    /** Number of application images kept on the server for rollbacks with imageTagging, including the current one. */
+    @Parameter(property = "keepImages", defaultValue = "3")
+    protected int keepImages;
+
+    /** Hard-link the files which haven't changed since the previous backup instead of copying the whole deployment directory. */
+    @Parameter(property = "incrementalBackup", defaultValue = "false")
+    protected boolean incrementalBackup;
+
+    /** Number of newest backups of the deployment directory kept on the server. 0 keeps all of them. */
+    @Parameter(property = "keepBackups", defaultValue = "0")
+    protected int keepBackups;
+
+    /** Dump the database into the backup directory, compressed, while the old stack is still running. */
+    @Parameter(property = "databaseDump", defaultValue = "false")
+    protected boolean databaseDump;
+
+    /** Seconds an unused SSH session is kept open for reuse by other servers on the same host and later goals. */
+    @Parameter(property = "sshSessionIdleTimeout", defaultValue = "300")
+    protected long sshSessionIdleTimeout;
+
     /**
      * Executes the deployment process.
      *
@@ -76,6 +256,12 @@ public abstract class AbstractDeployMojo extends AbstractMojo {
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         PluginParamsValidator.validate(certbotEmail, servers);
+        if (localImageBuild && (deploymentStrategy != DeploymentStrategyParam.IN_PLACE || selectiveRestart || !"jar".equals(packaging))) {
+            throw new MojoExecutionException("localImageBuild is supported only for the jar packaging with the IN_PLACE strategy without selectiveRestart");
+        }
+        if (imageTagging && (deploymentStrategy != DeploymentStrategyParam.IN_PLACE || selectiveRestart)) {
+            throw new MojoExecutionException("imageTagging is supported only with the IN_PLACE strategy without selectiveRestart");
+        }
 
         // Find servers by type
         final ServerTypeParam serverTypeFilter = getServerTypeFilter();
@@ -88,45 +274,457 @@ public abstract class AbstractDeployMojo extends AbstractMojo {
             return;
         }
 
-        for (ServerParam server : servers) {
-            log.info("***********************************************");
-            log.info("Processing server: `{}`", server.getDomain());
-            log.info("***********************************************");
-            try (SshService sshService = new SshService(server.getSshConnection())) {
-                ChainExecutor<ServerParam> deployWorkflow = initWorkflow(sshService, server);
-                deployWorkflow.start(server);
-            } catch (Exception e) {
-                log.error(e.getMessage());
-                throw new MojoExecutionException(e);
+        SshSessionRegistry.getInstance().setIdleTimeout(sshSessionIdleTimeout);
+        imageBuilders.clear();
+
+        final Map<ServerParam, ServerResult> results = new LinkedHashMap<>();
+        servers.forEach(server -> results.put(server, new ServerResult()));
+        final AtomicInteger failures = new AtomicInteger();
+        final int waveLength = waveSize > 0 ? waveSize : servers.size();
+        timelineRecorder = timelineReport ? new TimelineRecorder() : null;
+
+        for (int waveStart = 0; waveStart < servers.size(); waveStart += waveLength) {
+            final List<ServerParam> wave = servers.subList(waveStart, Math.min(servers.size(), waveStart + waveLength));
+            if (waveLength < servers.size()) {
+                log.info("Deploying wave {} of {}", waveStart / waveLength + 1, (servers.size() + waveLength - 1) / waveLength);
+            }
+            if (serversParallelism <= 1) {
+                for (ServerParam server : wave) {
+                    deployServer(server, results.get(server), failures);
+                }
+            } else {
+                deployConcurrently(wave, results, failures);
             }
         }
+
+        logSummary(results);
+        writeTimelineReport();
+        if (failures.get() > 0) {
+            final Exception firstError = results.values().stream()
+                    .map(ServerResult::getError).filter(Objects::nonNull).findFirst().orElse(null);
+            throw new MojoExecutionException(String.format("Deployment failed on %d of %d servers", failures.get(), servers.size()), firstError);
+        }
+    }
+
+    /**
+     * Deploys the servers of a wave on up to {@link #serversParallelism} threads and waits for all of them.
+     *
+     * @param wave     the servers to deploy
+     * @param results  the results of all servers
+     * @param failures the number of failed servers so far
+     * @throws MojoExecutionException if the thread is interrupted while waiting
+     */
+    private void deployConcurrently(List<ServerParam> wave, Map<ServerParam, ServerResult> results, AtomicInteger failures)
+            throws MojoExecutionException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(serversParallelism, wave.size()));
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (ServerParam server : wave) {
+                futures.add(executor.submit(() -> {
+                    final Thread thread = Thread.currentThread();
+                    final String threadName = thread.getName();
+                    thread.setName("deploy-" + server.getDomain());
+                    LogPrefix.set(server.getDomain());
+                    try {
+                        deployServer(server, results.get(server), failures);
+                    } finally {
+                        LogPrefix.clear();
+                        thread.setName(threadName);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Deployment has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new MojoExecutionException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Deploys a single server and records the result. The server is skipped if the failure budget has been exceeded.
+     *
+     * @param server   the server to deploy
+     * @param result   the result to fill in
+     * @param failures the number of failed servers so far
+     */
+    private void deployServer(ServerParam server, ServerResult result, AtomicInteger failures) {
+        if (failures.get() > failureBudget) {
+            log.warn("{}Skipping server `{}`: {} servers failed, the failure budget is {}",
+                    LogPrefix.get(), server.getDomain(), failures.get(), failureBudget);
+            return;
+        }
+
+        log.info("{}***********************************************", LogPrefix.get());
+        log.info("{}Processing server: `{}`", LogPrefix.get(), server.getDomain());
+        log.info("{}***********************************************", LogPrefix.get());
+        final long startTime = System.nanoTime();
+        try (SshService sshService = new SshService(server.getSshConnection())) {
+            sshService.setTransferConcurrency(sftpConcurrency);
+            sshService.setTransferMode(transferMode);
+            sshService.setUploadRetries(uploadRetries);
+            sshService.setCommandTimeout(remoteCommandTimeout);
+            final DeployListener listener = DeployListener.of(
+                    timelineRecorder != null ? timelineRecorder.forServer(server.getDomain()) : null,
+                    FlightRecorderEvents.forServer(server.getDomain()));
+            sshService.setListener(listener);
+
+            final String fingerprint = skipUnchanged ? computeFingerprint(server) : null;
+            if (fingerprint != null && fingerprint.equals(readRemoteFingerprint(sshService, server))) {
+                log.info("{}Nothing has changed since the last deploy to `{}`. Skipping", LogPrefix.get(), server.getDomain());
+                result.finish(ServerStatus.UNCHANGED, startTime, null);
+                return;
+            }
+
+            ChainExecutor<ServerParam> deployWorkflow = initWorkflow(sshService, server, fingerprint);
+            deployWorkflow.setListener(listener);
+            deployWorkflow.start(server);
+            result.finish(ServerStatus.OK, startTime, null);
+        } catch (Exception e) {
+            log.error("{}{}", LogPrefix.get(), e.getMessage());
+            failures.incrementAndGet();
+            result.finish(ServerStatus.FAILED, startTime, e);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the deployment tree of the server, the built artifacts and the deploy options.
+     * Missing directories are left to the check steps of the workflow, which report them properly.
+     *
+     * @param server the server to deploy
+     * @return the fingerprint
+     * @throws IOException if a file can't be read
+     */
+    private String computeFingerprint(ServerParam server) throws IOException {
+        final LocalPathProvider localPathProvider = new LocalPathProvider(server,
+                projectBaseDir.getAbsolutePath(), vaadinProjectDir.getAbsolutePath());
+        final File targetDir = new File(localPathProvider.getTargetDir());
+        final List<File> artifacts = targetDir.isDirectory()
+                ? localFileService.getChildren(targetDir, ".*\\." + packaging + "$")
+                : Collections.emptyList();
+        return DeploymentFingerprint.compute(Paths.get(localPathProvider.getLocalDeploymentRootDir()), artifacts, fingerprintOptions(server));
+    }
+
+    /**
+     * Returns the options which change what a deploy leaves on the server or what it checks, and the server paths.
+     * Options which only change how fast the deploy runs, such as the transfer settings, timeouts and parallelism, don't count.
+     *
+     * @param server the server to deploy
+     * @return the option values by name
+     */
+    private Map<String, String> fingerprintOptions(ServerParam server) {
+        final Map<String, String> options = new TreeMap<>();
+        options.put("packaging", packaging);
+        options.put("deploymentStrategy", String.valueOf(deploymentStrategy));
+        options.put("keepReleases", String.valueOf(keepReleases));
+        options.put("selectiveRestart", String.valueOf(selectiveRestart));
+        options.put("waitUntilHealthy", String.valueOf(waitUntilHealthy));
+        options.put("localImageBuild", String.valueOf(localImageBuild));
+        options.put("imageTagging", String.valueOf(imageTagging));
+        options.put("keepImages", String.valueOf(keepImages));
+        options.put("incrementalBackup", String.valueOf(incrementalBackup));
+        options.put("keepBackups", String.valueOf(keepBackups));
+        options.put("databaseDump", String.valueOf(databaseDump));
+        options.put("deltaSync", String.valueOf(deltaSync));
+        options.put("deleteStaleFiles", String.valueOf(deleteStaleFiles));
+        options.put("server.dbProvider", server.getDbProvider());
+        options.put("server.deployDir", server.getDeployDir());
+        options.put("server.appsDataDir", server.getAppsDataDir());
+        options.put("server.backupDir", server.getBackupDir());
+        return options;
+    }
+
+    /**
+     * Reads the fingerprint stored on the server by the last successful deploy.
+     *
+     * @param sshService the SSH service of the server
+     * @param server     the server to deploy
+     * @return the fingerprint, or {@code null} if there is none
+     * @throws IOException if the fingerprint exists but can't be read
+     */
+    private static String readRemoteFingerprint(SshService sshService, ServerParam server) throws IOException {
+        final String fingerprint = sshService.readTextFile(fingerprintFilePath(new ServerPathProvider(server)));
+        return fingerprint != null ? fingerprint.trim() : null;
+    }
+
+    private static String fingerprintFilePath(ServerPathProvider serverPathProvider) {
+        return serverPathProvider.getDeployDir() + "/" + DeploymentFingerprint.FILE_NAME;
+    }
+
+    private static String imageOverrideFilePath(ServerPathProvider serverPathProvider) {
+        return serverPathProvider.getDeployDir() + "/" + LoadLayeredImageHandler.IMAGE_OVERRIDE_FILE_NAME;
+    }
+
+    private static String imageHistoryFilePath(ServerPathProvider serverPathProvider) {
+        return serverPathProvider.getDeployDir() + "/" + ImageHistory.FILE_NAME;
+    }
+
+    /**
+     * Returns the image builder of a local target directory. Servers sharing the directory share the builder,
+     * so the image is built only once per execution.
+     *
+     * @param localPathProvider the local paths of the server
+     * @return the builder
+     */
+    private LayeredImageBuilder imageBuilderFor(LocalPathProvider localPathProvider) {
+        return imageBuilders.computeIfAbsent(localPathProvider.getTargetDir(), targetDir ->
+                new LayeredImageBuilder(localFileService, targetDir, localPathProvider.getDeployDir() + "/Dockerfile"));
+    }
+
+    /**
+     * Writes the JSON and HTML timeline of the deployment if it has been recorded.
+     * A failure to write the report doesn't fail the deployment.
+     */
+    private void writeTimelineReport() {
+        if (timelineRecorder == null) return;
+        try {
+            TimelineReportWriter.write(timelineRecorder, timelineReportDir.toPath());
+            log.info("Deploy timeline has been written to `{}`", timelineReportDir.toPath().resolve(TimelineReportWriter.HTML_FILE_NAME));
+        } catch (IOException e) {
+            log.warn("Couldn't write the deploy timeline to `{}`: {}", timelineReportDir, e.getMessage());
+        }
+    }
+
+    /**
+     * Logs the result of every server in configuration order.
+     *
+     * @param results the results of the servers
+     */
+    private void logSummary(Map<ServerParam, ServerResult> results) {
+        if (results.size() < 2) return;
+
+        log.info("***********************************************");
+        log.info("Deployment summary:");
+        for (Map.Entry<ServerParam, ServerResult> entry : results.entrySet()) {
+            final ServerResult result = entry.getValue();
+            final String duration = result.getStatus() == ServerStatus.SKIPPED ? "" : String.format("%.1f s", result.getDurationNanos() / 1e9);
+            final String error = result.getError() != null ? " " + result.getError().getMessage() : "";
+            log.info(String.format("  %-40s %-8s %8s%s", entry.getKey().getDomain(), result.getStatus(), duration, error));
+        }
+        log.info("***********************************************");
     }
 
     /**
      * Initializes the deployment workflow for a given server.
      * The workflow includes various deployment steps such as checking files, stopping Docker Compose, backing up data,
-     * transferring files, and restarting Docker Compose.
+     * transferring files, and restarting Docker Compose. Steps without a mutual dependency run concurrently
+     * when {@link #stepsParallelism} is greater than 1.
      *
      * @param sshService  the SSH service for remote command execution.
      * @param serverParam the server parameters.
+     * @param fingerprint the fingerprint to store on the server after a successful deploy, or {@code null}.
      * @return a {@link ChainExecutor} instance representing the deployment workflow.
      */
-    protected ChainExecutor<ServerParam> initWorkflow(SshService sshService, ServerParam serverParam) {
+    protected ChainExecutor<ServerParam> initWorkflow(SshService sshService, ServerParam serverParam, String fingerprint) {
         final LocalPathProvider localPathProvider = new LocalPathProvider(serverParam,
                 projectBaseDir.getAbsolutePath(), vaadinProjectDir.getAbsolutePath());
         final ServerPathProvider serverPathProvider = new ServerPathProvider(serverParam);
 
-        return new ChainExecutor<>(
-                new CheckDockerfileExistsHandler(localPathProvider.getDeployDir()),
-                new CheckBuiltJarFileExistsHandler(localPathProvider.getTargetDir(), packaging, localFileService),
-                new DockerComposeVersionCheckHandler(sshService),
-                new DockerComposeStopHandler(sshService, serverPathProvider.getDockerComposeFile()),
-                new DockerComposeBackupHandler(sshService, serverPathProvider.getDeployDir(), serverPathProvider.getBackupDir()),
-                new CopyDeploymentPackageToServerHandler(sshService, localPathProvider.getDeployDir(), serverPathProvider.getDeployDir()),
-                new CopyAppsDataToServerHandler(sshService, localPathProvider.getAppsDataDir(), serverPathProvider.getAppsDataDir()),
-                new CopyTargetJarToServerHandler(sshService, localFileService, packaging, serverPathProvider.getTargetDir(), localPathProvider.getTargetDir()),
-                new DockerComposeStartHandler(sshService, serverPathProvider.getDockerComposeFile())
-        );
+        final ChainStepHandler<ServerParam> checkDockerfile = new CheckDockerfileExistsHandler(localPathProvider.getDeployDir());
+        final ChainStepHandler<ServerParam> checkBuiltJar = new CheckBuiltJarFileExistsHandler(localPathProvider.getTargetDir(), packaging, localFileService);
+        final ChainStepHandler<ServerParam> checkDockerCompose = new DockerComposeVersionCheckHandler(sshService);
+        final ChainStepHandler<ServerParam> invalidateFingerprint = new InvalidateDeploymentFingerprintHandler(sshService, fingerprintFilePath(serverPathProvider));
+
+        // The local and remote checks are independent
+        final DagChainExecutor<ServerParam> workflow = new DagChainExecutor<>(stepsParallelism);
+        workflow.setCancellationHandler(sshService::abort);
+        workflow.addStep(checkDockerfile);
+        workflow.addStep(checkBuiltJar, Collections.emptyList());
+        workflow.addStep(checkDockerCompose, Collections.emptyList());
+        workflow.addStep(invalidateFingerprint, checkDockerfile, checkBuiltJar, checkDockerCompose);
+
+        ChainStepHandler<ServerParam> start;
+        if (deploymentStrategy == DeploymentStrategyParam.STAGED) {
+            start = addStagedReleaseSteps(workflow, invalidateFingerprint, sshService, localPathProvider, serverPathProvider);
+        } else if (deploymentStrategy == DeploymentStrategyParam.BLUE_GREEN) {
+            start = addBlueGreenSteps(workflow, invalidateFingerprint, sshService, localPathProvider, serverPathProvider);
+        } else {
+            start = addInPlaceSteps(workflow, invalidateFingerprint, sshService, localPathProvider, serverPathProvider);
+        }
+        // The blue/green switch waits for the new slot itself
+        if (waitUntilHealthy && deploymentStrategy != DeploymentStrategyParam.BLUE_GREEN) {
+            final String projectName = deploymentStrategy == DeploymentStrategyParam.STAGED ? serverPathProvider.getDockerComposeProjectName() : null;
+            final ChainStepHandler<ServerParam> waitForServices = new WaitForHealthyServicesHandler(sshService,
+                    serverPathProvider.getDockerComposeFile(), projectName, healthCheckTimeout);
+            workflow.addStep(waitForServices, start);
+            start = waitForServices;
+        }
+
+        if (imageTagging) {
+            final ChainStepHandler<ServerParam> recordImage = new RecordImageHandler(sshService,
+                    imageHistoryFilePath(serverPathProvider), imageOverrideFilePath(serverPathProvider), keepImages);
+            workflow.addStep(recordImage, start);
+            start = recordImage;
+        }
+        if (fingerprint != null) {
+            workflow.addStep(new StoreDeploymentFingerprintHandler(sshService, fingerprintFilePath(serverPathProvider), fingerprint), start);
+        }
+        if (deploymentStrategy == DeploymentStrategyParam.STAGED) {
+            workflow.addStep(new PruneReleasesHandler(sshService, serverPathProvider.getReleasesDir(), serverPathProvider.getReleaseName(), keepReleases));
+        }
+        return workflow;
+    }
+
+    /**
+     * Adds the steps which update the deployment directory and restart the stack, either entirely or only the affected services.
+     *
+     * @return the step starting the stack
+     */
+    private ChainStepHandler<ServerParam> addInPlaceSteps(DagChainExecutor<ServerParam> workflow, ChainStepHandler<ServerParam> checks,
+                                                          SshService sshService, LocalPathProvider localPathProvider, ServerPathProvider serverPathProvider) {
+        final ChainStepHandler<ServerParam> backup = new DockerComposeBackupHandler(sshService, serverPathProvider.getDeployDir(), serverPathProvider.getBackupDir(),
+                incrementalBackup, keepBackups);
+        final ChainStepHandler<ServerParam> copyDeploymentPackage = new CopyDeploymentPackageToServerHandler(sshService, localPathProvider.getDeployDir(), serverPathProvider.getDeployDir(), deltaSync, deleteStaleFiles);
+        final ChainStepHandler<ServerParam> copyAppsData = new CopyAppsDataToServerHandler(sshService, localPathProvider.getAppsDataDir(), serverPathProvider.getAppsDataDir());
+        final ChainStepHandler<ServerParam> copyTargetJar = new CopyTargetJarToServerHandler(sshService, localFileService, packaging, serverPathProvider.getTargetDir(), localPathProvider.getTargetDir(), jarDeltaTransfer);
+
+        final ChainStepHandler<ServerParam> dumpDatabase = addDatabaseDumpStep(workflow, checks, sshService, serverPathProvider);
+        final ChainStepHandler<ServerParam> start;
+        final ChainStepHandler<ServerParam> beforeUploads;
+        if (selectiveRestart) {
+            // The stack keeps running during the upload, the changes are detected before anything is overwritten
+            final AtomicReference<RestartPlan> restartPlan = new AtomicReference<>();
+            final AtomicReference<AppliedState> localState = new AtomicReference<>();
+            final ChainStepHandler<ServerParam> detectChanges = new DetectServiceChangesHandler(sshService, localFileService, packaging,
+                    localPathProvider.getDeployDir(), localPathProvider.getTargetDir(), serverPathProvider.getDeployDir(), restartPlan, localState);
+            start = new SelectiveRestartHandler(sshService, serverPathProvider.getDockerComposeFile(), restartPlan, localState,
+                    serverPathProvider.getDeployDir() + "/" + AppliedState.FILE_NAME);
+            workflow.addStep(detectChanges, checks);
+            workflow.addStep(backup, detectChanges);
+            beforeUploads = backup;
+        } else {
+            final ChainStepHandler<ServerParam> stop = new DockerComposeStopHandler(sshService, serverPathProvider.getDockerComposeFile(), null);
+            start = new DockerComposeStartHandler(sshService, serverPathProvider.getDockerComposeFile(), null,
+                    localImageBuild || imageTagging ? imageOverrideFilePath(serverPathProvider) : null);
+            // The deployment directory is backed up and the database dumped while the stack is still serving,
+            // so neither is part of the downtime
+            workflow.addStep(backup, checks);
+            workflow.addStep(stop, dependencies(dumpDatabase, backup));
+            beforeUploads = stop;
+        }
+
+        // The uploads only have to wait for the backup and, unless restarting selectively, the stop
+        workflow.addStep(copyDeploymentPackage, beforeUploads);
+        workflow.addStep(copyAppsData, beforeUploads);
+        if (localImageBuild) {
+            // The image is loaded while the old stack is still running, the package itself isn't needed on the server.
+            // The override file only points at it once the old stack has been stopped and backed up
+            final AtomicReference<String> loadedImage = new AtomicReference<>();
+            final ChainStepHandler<ServerParam> loadImage = new LoadLayeredImageHandler(sshService,
+                    imageBuilderFor(localPathProvider), loadedImage);
+            final ChainStepHandler<ServerParam> writeImageOverride = new WriteImageOverrideHandler(sshService,
+                    imageOverrideFilePath(serverPathProvider), loadedImage);
+            workflow.addStep(loadImage, checks);
+            workflow.addStep(writeImageOverride, beforeUploads, loadImage);
+            workflow.addStep(start, copyDeploymentPackage, copyAppsData, writeImageOverride);
+        } else if (imageTagging) {
+            // The build needs the uploaded Dockerfile and package, and is skipped if the image exists
+            final ChainStepHandler<ServerParam> buildImage = new BuildTaggedImageHandler(sshService, localFileService, packaging,
+                    localPathProvider.getTargetDir(), localPathProvider.getDeployDir() + "/Dockerfile",
+                    serverPathProvider.getDockerComposeFile(), imageOverrideFilePath(serverPathProvider));
+            workflow.addStep(copyTargetJar, beforeUploads);
+            workflow.addStep(buildImage, copyDeploymentPackage, copyTargetJar);
+            workflow.addStep(start, copyAppsData, buildImage);
+        } else {
+            // A selective restart doesn't stop the database, so the restart waits for the dump instead of the stop
+            workflow.addStep(copyTargetJar, beforeUploads);
+            workflow.addStep(start, dependencies(dumpDatabase, copyDeploymentPackage, copyAppsData, copyTargetJar));
+        }
+        return start;
+    }
+
+    /**
+     * Adds the steps which upload and build a new release while the running stack keeps serving,
+     * then stop the running stack, switch the deployment directory to the new release and start it.
+     *
+     * @return the step starting the stack
+     */
+    private ChainStepHandler<ServerParam> addStagedReleaseSteps(DagChainExecutor<ServerParam> workflow, ChainStepHandler<ServerParam> checks,
+                                                                SshService sshService, LocalPathProvider localPathProvider, ServerPathProvider serverPathProvider) {
+        final String releaseDir = serverPathProvider.getReleaseDir();
+        final String projectName = serverPathProvider.getDockerComposeProjectName();
+        final ChainStepHandler<ServerParam> stage = new StageReleaseHandler(sshService, serverPathProvider.getDeployDir(), releaseDir);
+        final ChainStepHandler<ServerParam> backup = new DockerComposeBackupHandler(sshService, serverPathProvider.getDeployDir(), serverPathProvider.getBackupDir(),
+                incrementalBackup, keepBackups);
+        final ChainStepHandler<ServerParam> copyDeploymentPackage = new CopyDeploymentPackageToServerHandler(sshService, localPathProvider.getDeployDir(), releaseDir, deltaSync, deleteStaleFiles);
+        final ChainStepHandler<ServerParam> copyAppsData = new CopyAppsDataToServerHandler(sshService, localPathProvider.getAppsDataDir(), serverPathProvider.getAppsDataDir());
+        final ChainStepHandler<ServerParam> copyTargetJar = new CopyTargetJarToServerHandler(sshService, localFileService, packaging, releaseDir + "/target", localPathProvider.getTargetDir(), jarDeltaTransfer);
+        final ChainStepHandler<ServerParam> build = new DockerComposeBuildHandler(sshService, releaseDir, releaseDir + "/docker-compose.yaml", projectName);
+        final ChainStepHandler<ServerParam> stop = new DockerComposeStopHandler(sshService, serverPathProvider.getDockerComposeFile(), projectName);
+        final ChainStepHandler<ServerParam> switchRelease = new SwitchReleaseHandler(sshService, serverPathProvider.getDeployDir(), serverPathProvider.getReleasesDir(), serverPathProvider.getReleaseName());
+        final ChainStepHandler<ServerParam> start = new DockerComposeStartHandler(sshService, serverPathProvider.getDockerComposeFile(), projectName, null);
+
+        // Everything up to the build runs while the old stack is serving; the downtime is stop, switch and start
+        workflow.addStep(stage, checks);
+        workflow.addStep(backup, checks);
+        workflow.addStep(copyDeploymentPackage, stage);
+        workflow.addStep(copyAppsData, checks);
+        workflow.addStep(copyTargetJar, stage);
+        workflow.addStep(build, copyDeploymentPackage, copyAppsData, copyTargetJar);
+        final ChainStepHandler<ServerParam> dumpDatabase = addDatabaseDumpStep(workflow, checks, sshService, serverPathProvider);
+        workflow.addStep(stop, dependencies(dumpDatabase, build, backup));
+        workflow.addStep(switchRelease, stop);
+        workflow.addStep(start, switchRelease);
+        return start;
+    }
+
+    /**
+     * Adds the steps which update the deployment directory while the application keeps serving,
+     * then start the new release in the idle slot and switch nginx to it.
+     *
+     * @return the step switching the slots
+     */
+    private ChainStepHandler<ServerParam> addBlueGreenSteps(DagChainExecutor<ServerParam> workflow, ChainStepHandler<ServerParam> checks,
+                                                            SshService sshService, LocalPathProvider localPathProvider, ServerPathProvider serverPathProvider) {
+        final ChainStepHandler<ServerParam> backup = new DockerComposeBackupHandler(sshService, serverPathProvider.getDeployDir(), serverPathProvider.getBackupDir(),
+                incrementalBackup, keepBackups);
+        final ChainStepHandler<ServerParam> copyDeploymentPackage = new CopyDeploymentPackageToServerHandler(sshService, localPathProvider.getDeployDir(), serverPathProvider.getDeployDir(), deltaSync, deleteStaleFiles);
+        final ChainStepHandler<ServerParam> copyAppsData = new CopyAppsDataToServerHandler(sshService, localPathProvider.getAppsDataDir(), serverPathProvider.getAppsDataDir());
+        final ChainStepHandler<ServerParam> copyTargetJar = new CopyTargetJarToServerHandler(sshService, localFileService, packaging, serverPathProvider.getTargetDir(), localPathProvider.getTargetDir(), jarDeltaTransfer);
+        final ChainStepHandler<ServerParam> switchSlots = new DockerComposeBlueGreenHandler(sshService, serverPathProvider.getDockerComposeFile(),
+                serverPathProvider.getNginxUpstreamFile(), blueGreenHealthTimeout, blueGreenGracePeriod);
+
+        // Nothing is stopped, the running slot only uses the image it has been started with
+        workflow.addStep(backup, checks);
+        workflow.addStep(copyDeploymentPackage, backup);
+        workflow.addStep(copyAppsData, backup);
+        workflow.addStep(copyTargetJar, backup);
+        final ChainStepHandler<ServerParam> dumpDatabase = addDatabaseDumpStep(workflow, checks, sshService, serverPathProvider);
+        workflow.addStep(switchSlots, dependencies(dumpDatabase, copyDeploymentPackage, copyAppsData, copyTargetJar));
+        return switchSlots;
+    }
+
+    /**
+     * Adds the database dump, which runs alongside the backup and the uploads, if {@link #databaseDump} is enabled.
+     * The step which stops or replaces the running application has to depend on it.
+     *
+     * @return the dump step, or {@code null} if the database isn't dumped
+     */
+    private ChainStepHandler<ServerParam> addDatabaseDumpStep(DagChainExecutor<ServerParam> workflow, ChainStepHandler<ServerParam> checks,
+                                                              SshService sshService, ServerPathProvider serverPathProvider) {
+        if (!databaseDump) {
+            return null;
+        }
+        final ChainStepHandler<ServerParam> dumpDatabase = new DatabaseDumpHandler(sshService, serverPathProvider.getBackupDir());
+        workflow.addStep(dumpDatabase, checks);
+        return dumpDatabase;
+    }
+
+    /**
+     * Returns the given dependencies and the optional step, if it's present.
+     */
+    @SafeVarargs
+    private static List<ChainStepHandler<ServerParam>> dependencies(ChainStepHandler<ServerParam> optionalStep, ChainStepHandler<ServerParam>... steps) {
+        final List<ChainStepHandler<ServerParam>> dependencies = new ArrayList<>(Arrays.asList(steps));
+        if (optionalStep != null) {
+            dependencies.add(optionalStep);
+        }
+        return dependencies;
     }
 
     /**
@@ -135,4 +733,27 @@ public abstract class AbstractDeployMojo extends AbstractMojo {
      * @return the server type filter.
      */
     public abstract ServerTypeParam getServerTypeFilter();
+
+    /**
+     * Deployment status of a server.
+     */
+    private enum ServerStatus {
+        OK, UNCHANGED, FAILED, SKIPPED
+    }
+
+    /**
+     * Deployment result of a server.
+     */
+    @Getter
+    private static class ServerResult {
+        private ServerStatus status = ServerStatus.SKIPPED;
+        private long durationNanos;
+        private Exception error;
+
+        private void finish(ServerStatus status, long startTime, Exception error) {
+            this.status = status;
+            this.durationNanos = System.nanoTime() - startTime;
+            this.error = error;
+        }
+    }
 }
\ No newline at end of file
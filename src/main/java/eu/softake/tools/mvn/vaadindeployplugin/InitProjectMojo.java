@@ -61,6 +61,17 @@ public class InitProjectMojo extends AbstractMojo {
     @Parameter(property = "servers", required = true)
     private List<ServerParam> servers;
 
+    /** Generates Docker Compose and nginx configurations with two application slots for blue/green deployments. */
+    @Parameter(property = "blueGreen", defaultValue = "false")
+    private boolean blueGreen;
+
+    /**
+     * Generates a multi-stage Dockerfile which splits the Spring Boot JAR into dependency, loader and application layers
+     * instead of copying the project's Dockerfile, so that rebuilds on the server only replace the application layer.
+     */
+    @Parameter(property = "layeredDockerfile", defaultValue = "false")
+    private boolean layeredDockerfile;
+
     /**
      * Executes the Mojo to initialize the project deployment for each server configuration.
      *
@@ -92,10 +103,11 @@ public class InitProjectMojo extends AbstractMojo {
                 ChainExecutor<ServerParam> initProjectFlow = new ChainExecutor<>(
                         new CheckDockerfileExistsHandler(localPathProvider.getVaadinProjectDir()),
                         new CreateEnvFileHandler(jarFileService, localPathProvider.getDeployDir()),
-                        new CreateDockerComposeFileHandler(jarFileService, localPathProvider.getDeployDir()),
-                        new CreateConfigsHandler(jarFileService, localPathProvider.getDeployDir()),
+                        new CreateDockerComposeFileHandler(jarFileService, localPathProvider.getDeployDir(), blueGreen),
+                        new CreateConfigsHandler(jarFileService, localPathProvider.getDeployDir(), blueGreen),
                         new CreateAppsDataHandler(jarFileService, localPathProvider.getAppsDataDir()),
-                        new CreateDockerFileHandler(localFileService, localPathProvider.getDeployDir(), localPathProvider.getVaadinProjectDir()),
+                        new CreateDockerFileHandler(localFileService, localPathProvider.getDeployDir(), localPathProvider.getVaadinProjectDir(),
+                                layeredDockerfile),
                         new SubstitutePlaceholdersHandler(placeholderReplacer,
                                 jarFileService,
                                 localPathProvider.getVaadinProjectDir(),
@@ -0,0 +1,96 @@
+package eu.softake.tools.mvn.vaadindeployplugin;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerTypeParam;
+import eu.softake.tools.mvn.vaadindeployplugin.params.providers.ServerPathProvider;
+import eu.softake.tools.mvn.vaadindeployplugin.params.validators.PluginParamsValidator;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.ImageHistory;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.DeploymentFingerprint;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainExecutor;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeStartHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeVersionCheckHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.InvalidateDeploymentFingerprintHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.LoadLayeredImageHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.rollback.SelectRollbackImageHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Maven plugin Mojo for rolling the application back to an image deployed before.
+ * <p>
+ * Deploys with {@code imageTagging} or {@code localImageBuild} keep the last images of the application on the server.
+ * The rollback points the application service at the previous one, or the one given by {@code rollbackTo},
+ * and restarts the stack without building anything. The deployment fingerprint is removed,
+ * so that deploying the rolled back package again isn't skipped.
+ * </p>
+ */
+@Slf4j
+@Mojo(name = "rollback")
+public class RollbackMojo extends AbstractMojo {
+
+    /** List of server configurations. */
+    @Parameter(property = "servers", required = true)
+    protected List<ServerParam> servers;
+
+    /** Email address for Certbot SSL certificate registration. */
+    @Parameter(property = "certbotEmail", required = true)
+    protected String certbotEmail;
+
+    /** The type of the servers to roll back. */
+    @Parameter(property = "serverType", required = true)
+    protected ServerTypeParam serverType;
+
+    /** Tag of the image to roll back to, e.g. {@code vaadin-app:0123456789ab}. The previous image if not set. */
+    @Parameter(property = "rollbackTo")
+    protected String rollbackTo;
+
+    /**
+     * Executes the rollback for each server of the given type.
+     *
+     * @throws MojoExecutionException if the rollback of a server fails
+     * @throws MojoFailureException   if the plugin fails to complete successfully
+     */
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        PluginParamsValidator.validate(certbotEmail, servers);
+
+        final List<ServerParam> servers = this.servers.stream()
+                .filter(serverModel -> serverType.equals(serverModel.getType()))
+                .collect(Collectors.toList());
+        if (servers.isEmpty()) {
+            log.warn("No configurations are found for `{}` server type. Skipping rollback", serverType);
+            return;
+        }
+
+        for (ServerParam serverModel : servers) {
+            log.info("***********************************************");
+            log.info("Rolling back server: `{}`", serverModel.getDomain());
+            log.info("***********************************************");
+
+            final ServerPathProvider serverPathProvider = new ServerPathProvider(serverModel);
+            final String imageOverrideFilePath = serverPathProvider.getDeployDir() + "/" + LoadLayeredImageHandler.IMAGE_OVERRIDE_FILE_NAME;
+            try (SshService sshService = new SshService(serverModel.getSshConnection())) {
+                ChainExecutor<ServerParam> rollbackFlow = new ChainExecutor<>(
+                        new DockerComposeVersionCheckHandler(sshService),
+                        new InvalidateDeploymentFingerprintHandler(sshService,
+                                serverPathProvider.getDeployDir() + "/" + DeploymentFingerprint.FILE_NAME),
+                        new SelectRollbackImageHandler(sshService,
+                                serverPathProvider.getDeployDir() + "/" + ImageHistory.FILE_NAME, imageOverrideFilePath, rollbackTo),
+                        new DockerComposeStartHandler(sshService, serverPathProvider.getDockerComposeFile(), null, imageOverrideFilePath)
+                );
+                rollbackFlow.start(serverModel);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+                throw new MojoExecutionException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package eu.softake.tools.mvn.vaadindeployplugin.instrumentation;
+
+import java.util.List;
+
+/**
+ * Listener forwarding every notification to several listeners. Created by {@link DeployListener#of}.
+ */
+final class CompositeDeployListener implements DeployListener {
+
+    // Data
+    private final List<DeployListener> listeners;
+
+    CompositeDeployListener(List<DeployListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void stepStarted(int step, String description, List<Integer> dependencies) {
+        listeners.forEach(listener -> listener.stepStarted(step, description, dependencies));
+    }
+
+    @Override
+    public void stepFinished(int step, String description, long startNanos, long endNanos, Throwable error) {
+        listeners.forEach(listener -> listener.stepFinished(step, description, startNanos, endNanos, error));
+    }
+
+    @Override
+    public void commandStarted(String command) {
+        listeners.forEach(listener -> listener.commandStarted(command));
+    }
+
+    @Override
+    public void commandFinished(String command, Integer exitCode, long startNanos, long endNanos) {
+        listeners.forEach(listener -> listener.commandFinished(command, exitCode, startNanos, endNanos));
+    }
+
+    @Override
+    public void transferStarted(String remotePath) {
+        listeners.forEach(listener -> listener.transferStarted(remotePath));
+    }
+
+    @Override
+    public void transferFinished(String remotePath, long bytes, long startNanos, long endNanos) {
+        listeners.forEach(listener -> listener.transferFinished(remotePath, bytes, startNanos, endNanos));
+    }
+
+    @Override
+    public void serviceReady(String service, String status, long startNanos, long endNanos) {
+        listeners.forEach(listener -> listener.serviceReady(service, status, startNanos, endNanos));
+    }
+}
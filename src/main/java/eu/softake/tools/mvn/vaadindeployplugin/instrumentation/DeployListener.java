@@ -0,0 +1,109 @@
+package eu.softake.tools.mvn.vaadindeployplugin.instrumentation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives notifications about the progress of the deployment of a single server: workflow steps,
+ * remote commands, file transfers and the startup of the services.
+ * <p>
+ * Times are values of {@link System#nanoTime()}. Start and finish of an operation are reported on the thread
+ * which executes it, and steps may be executed concurrently, so implementations must be thread-safe.
+ * All methods do nothing by default.
+ * </p>
+ */
+public interface DeployListener {
+
+    /** Listener which ignores all notifications. */
+    DeployListener NONE = new DeployListener() {
+    };
+
+    /**
+     * Combines listeners into one which notifies all of them in the given order.
+     *
+     * @param listeners the listeners; {@code null} values and {@link #NONE} are ignored
+     * @return the combined listener, or {@link #NONE} if no listener is left
+     */
+    static DeployListener of(DeployListener... listeners) {
+        final List<DeployListener> effective = new ArrayList<>();
+        for (DeployListener listener : listeners) {
+            if (listener != null && listener != NONE) {
+                effective.add(listener);
+            }
+        }
+        if (effective.isEmpty()) return NONE;
+        if (effective.size() == 1) return effective.get(0);
+        return new CompositeDeployListener(effective);
+    }
+
+    /**
+     * Called before a workflow step is executed.
+     *
+     * @param step         the position of the step in the workflow, starting with 1
+     * @param description  the description of the step
+     * @param dependencies the positions of the steps this step waited for
+     */
+    default void stepStarted(int step, String description, List<Integer> dependencies) {
+    }
+
+    /**
+     * Called after a workflow step has been executed.
+     *
+     * @param step        the position of the step in the workflow, starting with 1
+     * @param description the description of the step
+     * @param startNanos  the time the step started
+     * @param endNanos    the time the step finished
+     * @param error       the error the step failed with, or {@code null} if it succeeded
+     */
+    default void stepFinished(int step, String description, long startNanos, long endNanos, Throwable error) {
+    }
+
+    /**
+     * Called before a command is executed on the server.
+     *
+     * @param command the command
+     */
+    default void commandStarted(String command) {
+    }
+
+    /**
+     * Called after a command has been executed on the server.
+     *
+     * @param command    the command
+     * @param exitCode   the exit code, or {@code null} if the command didn't finish
+     * @param startNanos the time the command started
+     * @param endNanos   the time the command finished
+     */
+    default void commandFinished(String command, Integer exitCode, long startNanos, long endNanos) {
+    }
+
+    /**
+     * Called before data is transferred to the server.
+     *
+     * @param remotePath the target file or directory on the server
+     */
+    default void transferStarted(String remotePath) {
+    }
+
+    /**
+     * Called after data has been transferred to the server.
+     *
+     * @param remotePath the target file or directory on the server
+     * @param bytes      the number of bytes sent
+     * @param startNanos the time the transfer started
+     * @param endNanos   the time the transfer finished
+     */
+    default void transferFinished(String remotePath, long bytes, long startNanos, long endNanos) {
+    }
+
+    /**
+     * Called when a service of the Docker Compose project has become ready after a deploy.
+     *
+     * @param service    the name of the service
+     * @param status     the status it became ready with, e.g. {@code healthy}, or {@code running} without a healthcheck
+     * @param startNanos the time the wait for the service started
+     * @param endNanos   the time the service was seen ready
+     */
+    default void serviceReady(String service, String status, long startNanos, long endNanos) {
+    }
+}
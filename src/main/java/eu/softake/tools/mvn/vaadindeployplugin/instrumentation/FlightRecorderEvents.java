@@ -0,0 +1,62 @@
+package eu.softake.tools.mvn.vaadindeployplugin.instrumentation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Entry point to the Java Flight Recorder events of the deployment.
+ * <p>
+ * The events are emitted by {@code JfrDeployListener}, which is loaded reflectively only when the running JVM
+ * provides the {@code jdk.jfr} API (JDK 11+, 8u262+). On older runtimes, or when the class can't be loaded,
+ * {@link DeployListener#NONE} is returned instead, so the plugin keeps working on plain Java 8.
+ * Without an active recording the events cost next to nothing, so they are always emitted.
+ * </p>
+ */
+@Slf4j
+public final class FlightRecorderEvents {
+
+    // Constants
+    private static final String JFR_API_CLASS_NAME = "jdk.jfr.FlightRecorder";
+    private static final String LISTENER_CLASS_NAME = "eu.softake.tools.mvn.vaadindeployplugin.instrumentation.JfrDeployListener";
+    private static final Constructor<?> LISTENER_CONSTRUCTOR = findListenerConstructor();
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Tells whether the events can be emitted on the running JVM.
+     *
+     * @return {@code true} if the JFR API is available
+     */
+    public static boolean isAvailable() {
+        return LISTENER_CONSTRUCTOR != null;
+    }
+
+    /**
+     * Returns a listener emitting the notifications of a server as JFR events.
+     *
+     * @param server the name of the server, usually its domain
+     * @return the listener, or {@link DeployListener#NONE} if JFR isn't available
+     */
+    public static DeployListener forServer(String server) {
+        if (LISTENER_CONSTRUCTOR == null) return DeployListener.NONE;
+        try {
+            return (DeployListener) LISTENER_CONSTRUCTOR.newInstance(server);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.debug("Can't create JFR listener", e);
+            return DeployListener.NONE;
+        }
+    }
+
+    private static Constructor<?> findListenerConstructor() {
+        final ClassLoader classLoader = FlightRecorderEvents.class.getClassLoader();
+        try {
+            Class.forName(JFR_API_CLASS_NAME, false, classLoader);
+            return Class.forName(LISTENER_CLASS_NAME, true, classLoader).getDeclaredConstructor(String.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.debug("JFR events are disabled, the JFR API isn't available: {}", e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package eu.softake.tools.mvn.vaadindeployplugin.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Listener emitting Java Flight Recorder events. It references the {@code jdk.jfr} API, so it must only be
+ * loaded through {@link FlightRecorderEvents}.
+ * <p>
+ * An event is begun when an operation starts and committed when it finishes. Both happen on the thread
+ * executing the operation, so the begun events are kept on per-thread stacks, which also covers commands
+ * and transfers nested in steps.
+ * </p>
+ */
+final class JfrDeployListener implements DeployListener {
+
+    // Constants
+    static final String CATEGORY = "Vaadin Deploy";
+
+    // Data
+    private final String server;
+    private final ThreadLocal<Deque<StepEvent>> steps = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<Deque<CommandEvent>> commands = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<Deque<TransferEvent>> transfers = ThreadLocal.withInitial(ArrayDeque::new);
+
+    JfrDeployListener(String server) {
+        this.server = server;
+    }
+
+    @Override
+    public void stepStarted(int step, String description, List<Integer> dependencies) {
+        final StepEvent event = new StepEvent();
+        event.begin();
+        steps.get().push(event);
+    }
+
+    @Override
+    public void stepFinished(int step, String description, long startNanos, long endNanos, Throwable error) {
+        final StepEvent event = steps.get().poll();
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.server = server;
+            event.step = step;
+            event.description = description;
+            event.error = error != null ? String.valueOf(error.getMessage()) : null;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void commandStarted(String command) {
+        final CommandEvent event = new CommandEvent();
+        event.begin();
+        commands.get().push(event);
+    }
+
+    @Override
+    public void commandFinished(String command, Integer exitCode, long startNanos, long endNanos) {
+        final CommandEvent event = commands.get().poll();
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.server = server;
+            event.command = command;
+            event.exitCode = exitCode != null ? exitCode : -1;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void transferStarted(String remotePath) {
+        final TransferEvent event = new TransferEvent();
+        event.begin();
+        transfers.get().push(event);
+    }
+
+    @Override
+    public void transferFinished(String remotePath, long bytes, long startNanos, long endNanos) {
+        final TransferEvent event = transfers.get().poll();
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.server = server;
+            event.remotePath = remotePath;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void serviceReady(String service, String status, long startNanos, long endNanos) {
+        final ServiceReadyEvent event = new ServiceReadyEvent();
+        if (event.shouldCommit()) {
+            event.server = server;
+            event.service = service;
+            event.status = status;
+            event.timeToReady = endNanos - startNanos;
+            event.commit();
+        }
+    }
+
+    @Name("eu.softake.vaadindeploy.Step")
+    @Label("Deploy Step")
+    @Category(CATEGORY)
+    @Description("Execution of a deployment workflow step")
+    static class StepEvent extends Event {
+        @Label("Server")
+        String server;
+
+        @Label("Step")
+        @Description("Position of the step in the workflow")
+        int step;
+
+        @Label("Description")
+        String description;
+
+        @Label("Error")
+        String error;
+    }
+
+    @Name("eu.softake.vaadindeploy.Command")
+    @Label("SSH Command")
+    @Category(CATEGORY)
+    @Description("Execution of a command on the server")
+    static class CommandEvent extends Event {
+        @Label("Server")
+        String server;
+
+        @Label("Command")
+        String command;
+
+        @Label("Exit Code")
+        @Description("Exit code of the command, -1 if it didn't finish")
+        int exitCode;
+    }
+
+    @Name("eu.softake.vaadindeploy.Transfer")
+    @Label("SFTP Transfer")
+    @Category(CATEGORY)
+    @Description("Upload of a file or a directory to the server")
+    static class TransferEvent extends Event {
+        @Label("Server")
+        String server;
+
+        @Label("Remote Path")
+        String remotePath;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("eu.softake.vaadindeploy.ServiceReady")
+    @Label("Service Ready")
+    @Category(CATEGORY)
+    @Description("A service of the Docker Compose project became ready after a deploy")
+    static class ServiceReadyEvent extends Event {
+        @Label("Server")
+        String server;
+
+        @Label("Service")
+        String service;
+
+        @Label("Status")
+        String status;
+
+        @Label("Time to Ready")
+        @Timespan(Timespan.NANOSECONDS)
+        long timeToReady;
+    }
+}
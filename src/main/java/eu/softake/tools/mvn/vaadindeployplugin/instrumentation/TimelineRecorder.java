@@ -0,0 +1,174 @@
+package eu.softake.tools.mvn.vaadindeployplugin.instrumentation;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the steps, remote commands, file transfers and service startups of a deployment as spans on a common time axis.
+ * <p>
+ * A listener bound to a server is obtained with {@link #forServer(String)}. The recorded spans are written
+ * as a report by {@link TimelineReportWriter}.
+ * </p>
+ */
+public class TimelineRecorder {
+
+    // Data
+    private final long originNanos = System.nanoTime();
+    private final long originEpochMillis = System.currentTimeMillis();
+    private final List<Span> spans = new ArrayList<>();
+    private final Map<String, Map<Integer, List<Integer>>> stepDependencies = new HashMap<>();
+
+    /**
+     * Returns a listener recording the events of a server.
+     *
+     * @param server the name of the server, usually its domain
+     * @return the listener
+     */
+    public DeployListener forServer(String server) {
+        return new DeployListener() {
+            @Override
+            public void stepStarted(int step, String description, List<Integer> dependencies) {
+                synchronized (spans) {
+                    stepDependencies.computeIfAbsent(server, k -> new HashMap<>()).put(step, new ArrayList<>(dependencies));
+                }
+            }
+
+            @Override
+            public void stepFinished(int step, String description, long startNanos, long endNanos, Throwable error) {
+                add(new Span(server, SpanType.STEP, step, description, startNanos - originNanos, endNanos - originNanos,
+                        0, error != null ? String.valueOf(error.getMessage()) : null));
+            }
+
+            @Override
+            public void commandFinished(String command, Integer exitCode, long startNanos, long endNanos) {
+                add(new Span(server, SpanType.COMMAND, 0, command, startNanos - originNanos, endNanos - originNanos,
+                        0, exitCode != null && exitCode == 0 ? null : "exit code " + exitCode));
+            }
+
+            @Override
+            public void transferFinished(String remotePath, long bytes, long startNanos, long endNanos) {
+                add(new Span(server, SpanType.TRANSFER, 0, remotePath, startNanos - originNanos, endNanos - originNanos,
+                        bytes, null));
+            }
+
+            @Override
+            public void serviceReady(String service, String status, long startNanos, long endNanos) {
+                add(new Span(server, SpanType.SERVICE, 0, service + " (" + status + ")", startNanos - originNanos,
+                        endNanos - originNanos, 0, null));
+            }
+        };
+    }
+
+    /**
+     * Returns all recorded spans ordered by start time.
+     *
+     * @return the spans
+     */
+    public List<Span> getSpans() {
+        synchronized (spans) {
+            final List<Span> copy = new ArrayList<>(spans);
+            copy.sort((a, b) -> Long.compare(a.getStartNanos(), b.getStartNanos()));
+            return copy;
+        }
+    }
+
+    /**
+     * Returns the wall clock time the recording started at.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getOriginEpochMillis() {
+        return originEpochMillis;
+    }
+
+    /**
+     * Finds the critical path of every server: the chain of steps which determined the total time.
+     * It's found by walking back from the step which finished last, each time to the dependency which finished last.
+     *
+     * @return the critical steps by server
+     */
+    public Map<String, Set<Integer>> getCriticalPaths() {
+        final Map<String, Set<Integer>> result = new HashMap<>();
+        synchronized (spans) {
+            final Map<String, Map<Integer, Span>> stepsByServer = new HashMap<>();
+            for (Span span : spans) {
+                if (span.getType() == SpanType.STEP) {
+                    stepsByServer.computeIfAbsent(span.getServer(), k -> new HashMap<>()).put(span.getStep(), span);
+                }
+            }
+
+            for (Map.Entry<String, Map<Integer, Span>> entry : stepsByServer.entrySet()) {
+                final Map<Integer, Span> steps = entry.getValue();
+                final Map<Integer, List<Integer>> dependencies = stepDependencies.getOrDefault(entry.getKey(), Collections.emptyMap());
+                final Set<Integer> path = new HashSet<>();
+
+                Span current = steps.values().stream().max((a, b) -> Long.compare(a.getEndNanos(), b.getEndNanos())).orElse(null);
+                while (current != null && path.add(current.getStep())) {
+                    Span latest = null;
+                    for (Integer dependency : dependencies.getOrDefault(current.getStep(), Collections.emptyList())) {
+                        final Span candidate = steps.get(dependency);
+                        if (candidate != null && (latest == null || candidate.getEndNanos() > latest.getEndNanos())) {
+                            latest = candidate;
+                        }
+                    }
+                    current = latest;
+                }
+                result.put(entry.getKey(), path);
+            }
+        }
+        return result;
+    }
+
+    private void add(Span span) {
+        synchronized (spans) {
+            spans.add(span);
+        }
+    }
+
+    /**
+     * Kind of a recorded span.
+     */
+    public enum SpanType {
+        STEP, COMMAND, TRANSFER, SERVICE
+    }
+
+    /**
+     * A recorded operation. Times are relative to the start of the recording.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Span {
+
+        /** The server the operation belongs to. */
+        private final String server;
+
+        /** The kind of the operation. */
+        private final SpanType type;
+
+        /** The position of the step in the workflow; 0 for other spans. */
+        private final int step;
+
+        /** The step description, the command, the remote path or the service. */
+        private final String name;
+
+        /** The start time in nanoseconds. */
+        private final long startNanos;
+
+        /** The end time in nanoseconds. */
+        private final long endNanos;
+
+        /** The number of bytes transferred; 0 for other spans. */
+        private final long bytes;
+
+        /** The error, or {@code null} if the operation succeeded. */
+        private final String error;
+    }
+}
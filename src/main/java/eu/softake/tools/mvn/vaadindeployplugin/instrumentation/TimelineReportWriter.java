@@ -0,0 +1,191 @@
+package eu.softake.tools.mvn.vaadindeployplugin.instrumentation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the spans of a {@link TimelineRecorder} as a JSON document for tooling and as a self-contained
+ * HTML timeline for people. Steps on the critical path are marked in both, and the time each service took
+ * to become ready is shown as a span of its own.
+ */
+public final class TimelineReportWriter {
+
+    // Constants
+    public static final String JSON_FILE_NAME = "deploy-timeline.json";
+    public static final String HTML_FILE_NAME = "deploy-timeline.html";
+
+    private TimelineReportWriter() {
+    }
+
+    /**
+     * Writes both reports into a directory, creating it if necessary.
+     *
+     * @param recorder  the recorded deployment
+     * @param outputDir the directory to write {@value #JSON_FILE_NAME} and {@value #HTML_FILE_NAME} to
+     * @throws IOException if the reports can't be written
+     */
+    public static void write(TimelineRecorder recorder, Path outputDir) throws IOException {
+        Files.createDirectories(outputDir);
+        writeJson(recorder, outputDir.resolve(JSON_FILE_NAME));
+        writeHtml(recorder, outputDir.resolve(HTML_FILE_NAME));
+    }
+
+    /**
+     * Writes the JSON report.
+     *
+     * @param recorder the recorded deployment
+     * @param file     the file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void writeJson(TimelineRecorder recorder, Path file) throws IOException {
+        final Map<String, Set<Integer>> criticalPaths = recorder.getCriticalPaths();
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\n  \"startedAt\": " + quote(Instant.ofEpochMilli(recorder.getOriginEpochMillis()).toString()) + ",\n");
+            out.write("  \"spans\": [");
+            boolean first = true;
+            for (TimelineRecorder.Span span : recorder.getSpans()) {
+                out.write(first ? "\n" : ",\n");
+                first = false;
+                out.write("    {\"server\": " + quote(span.getServer())
+                        + ", \"type\": " + quote(span.getType().name())
+                        + (span.getStep() > 0 ? ", \"step\": " + span.getStep() : "")
+                        + ", \"name\": " + quote(span.getName())
+                        + ", \"startMs\": " + millis(span.getStartNanos())
+                        + ", \"durationMs\": " + millis(span.getEndNanos() - span.getStartNanos())
+                        + (span.getType() == TimelineRecorder.SpanType.TRANSFER
+                            ? ", \"bytes\": " + span.getBytes() + ", \"bytesPerSecond\": " + throughput(span) : "")
+                        + (span.getType() == TimelineRecorder.SpanType.STEP
+                            ? ", \"critical\": " + isCritical(span, criticalPaths) : "")
+                        + (span.getError() != null ? ", \"error\": " + quote(span.getError()) : "")
+                        + "}");
+            }
+            out.write("\n  ]\n}\n");
+        }
+    }
+
+    /**
+     * Writes the HTML timeline: a lane per server with a bar for every step, command, transfer and service startup.
+     *
+     * @param recorder the recorded deployment
+     * @param file     the file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void writeHtml(TimelineRecorder recorder, Path file) throws IOException {
+        final List<TimelineRecorder.Span> spans = recorder.getSpans();
+        final Map<String, Set<Integer>> criticalPaths = recorder.getCriticalPaths();
+        final long totalNanos = Math.max(1, spans.stream().mapToLong(TimelineRecorder.Span::getEndNanos).max().orElse(1));
+        final Map<String, List<TimelineRecorder.Span>> spansByServer = new LinkedHashMap<>();
+        for (TimelineRecorder.Span span : spans) {
+            spansByServer.computeIfAbsent(span.getServer(), k -> new ArrayList<>()).add(span);
+        }
+
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Deploy timeline</title>\n<style>\n"
+                    + "body{font-family:sans-serif;font-size:13px;margin:20px}\n"
+                    + ".row{display:flex;align-items:center;height:20px}\n"
+                    + ".label{width:360px;overflow:hidden;white-space:nowrap;text-overflow:ellipsis;padding-right:8px}\n"
+                    + ".lane{position:relative;flex:1;height:14px;background:#f3f3f3}\n"
+                    + ".bar{position:absolute;height:14px;min-width:1px}\n"
+                    + ".STEP{background:#5b8def}.critical{background:#e4572e}.COMMAND{background:#9a9a9a}.TRANSFER{background:#4caf50}.SERVICE{background:#ab47bc}\n"
+                    + ".error{outline:2px solid #b00020}\n"
+                    + "</style></head><body>\n");
+            out.write("<h1>Deploy timeline</h1>\n<p>Started at " + escape(Instant.ofEpochMilli(recorder.getOriginEpochMillis()).toString())
+                    + ", total " + seconds(totalNanos) + ". Steps on the critical path are red.</p>\n");
+
+            for (Map.Entry<String, List<TimelineRecorder.Span>> entry : spansByServer.entrySet()) {
+                out.write("<h2>" + escape(entry.getKey()) + "</h2>\n");
+                final Set<Integer> criticalPath = criticalPaths.getOrDefault(entry.getKey(), Collections.emptySet());
+                for (TimelineRecorder.Span span : entry.getValue()) {
+                    final long duration = span.getEndNanos() - span.getStartNanos();
+                    final boolean critical = span.getType() == TimelineRecorder.SpanType.STEP && criticalPath.contains(span.getStep());
+                    final String details = span.getType() + " " + seconds(duration)
+                            + (span.getType() == TimelineRecorder.SpanType.TRANSFER
+                                ? ", " + span.getBytes() + " bytes, " + throughput(span) / 1024 + " KiB/s" : "")
+                            + (span.getError() != null ? ", " + span.getError() : "");
+                    out.write(String.format(Locale.ROOT,
+                            "<div class=\"row\"><div class=\"label\" title=\"%1$s\">%1$s</div><div class=\"lane\">"
+                                    + "<div class=\"bar %2$s%3$s%4$s\" style=\"left:%5$.3f%%;width:%6$.3f%%\" title=\"%7$s\"></div></div></div>%n",
+                            escape(label(span)), span.getType(), critical ? " critical" : "", span.getError() != null ? " error" : "",
+                            100.0 * span.getStartNanos() / totalNanos, 100.0 * duration / totalNanos, escape(details)));
+                }
+            }
+            out.write("</body></html>\n");
+        }
+    }
+
+    private static String label(TimelineRecorder.Span span) {
+        switch (span.getType()) {
+            case STEP:
+                return span.getStep() + ". " + span.getName();
+            case COMMAND:
+                return "$ " + span.getName();
+            case SERVICE:
+                return "◷ " + span.getName();
+            default:
+                return "→ " + span.getName();
+        }
+    }
+
+    private static boolean isCritical(TimelineRecorder.Span span, Map<String, Set<Integer>> criticalPaths) {
+        return criticalPaths.getOrDefault(span.getServer(), Collections.emptySet()).contains(span.getStep());
+    }
+
+    private static long throughput(TimelineRecorder.Span span) {
+        final long duration = Math.max(1, span.getEndNanos() - span.getStartNanos());
+        return (long) (span.getBytes() * 1e9 / duration);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.2f s", nanos / 1e9);
+    }
+
+    private static String quote(String value) {
+        if (value == null) return "null";
+        final StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
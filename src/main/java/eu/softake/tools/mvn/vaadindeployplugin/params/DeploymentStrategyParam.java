@@ -0,0 +1,26 @@
+package eu.softake.tools.mvn.vaadindeployplugin.params;
+
+/**
+ * Enum representing the ways a new release replaces the running one on a server.
+ */
+public enum DeploymentStrategyParam {
+    /**
+     * The running stack is stopped first, then the files in the deployment directory are updated
+     * and the image is built and started. The application is down for the whole upload and build.
+     */
+    IN_PLACE,
+
+    /**
+     * The new release is uploaded into its own directory and its image is built while the running stack keeps serving.
+     * Only then is the running stack stopped, the deployment directory, which is a symlink, switched to the new
+     * release and the stack started again. The application is down only for the stop and the start.
+     */
+    STAGED,
+
+    /**
+     * The application runs in one of two slots of the blue/green Docker Compose template. The new release is
+     * started in the idle slot and nginx is switched to it once it's healthy, then the old slot is drained and
+     * removed. The other services keep running, so the application isn't down at all.
+     */
+    BLUE_GREEN
+}
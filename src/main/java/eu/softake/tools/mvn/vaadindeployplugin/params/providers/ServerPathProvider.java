@@ -5,6 +5,7 @@ import lombok.Getter;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 /**
  * Provides server-related file system paths for deployment.
@@ -16,6 +17,9 @@ public class ServerPathProvider {
     /** Formatter for naming backup directories with timestamped folder names. */
     private static final DateTimeFormatter folderNameFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
 
+    /** Formatter for naming release directories, precise enough for names to be unique and in the order of the deploys. */
+    private static final DateTimeFormatter releaseNameFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss-SSS");
+
     /** The directory where the application will be deployed on the server. */
     private final String deployDir;
 
@@ -31,6 +35,21 @@ public class ServerPathProvider {
     /** The target directory within the deployment directory where compiled artifacts are stored. */
     private final String targetDir;
 
+    /** The nginx include file naming the application slot which receives the traffic in blue/green deployments. */
+    private final String nginxUpstreamFile;
+
+    /** The directory holding the releases of the staged deployment, next to the deployment directory. */
+    private final String releasesDir;
+
+    /** The name of the release directory of this deployment, a timestamp. */
+    private final String releaseName;
+
+    /** The directory the staged deployment uploads the new release to. */
+    private final String releaseDir;
+
+    /** The Docker Compose project name, derived from the deployment directory the same way Docker Compose does. */
+    private final String dockerComposeProjectName;
+
     /**
      * Constructs a ServerPathProvider instance using the provided server parameters.
      *
@@ -41,12 +60,31 @@ public class ServerPathProvider {
         this.appsDataDir = serverParam.getAppsDataDir();
         this.dockerComposeFile = this.deployDir + "/docker-compose.yaml";
         this.targetDir = this.deployDir + "/target";
+        this.nginxUpstreamFile = this.appsDataDir + "/nginx/upstream/vaadin-app.conf";
+
+        final LocalDateTime now = LocalDateTime.now();
+        this.releasesDir = this.deployDir + ".releases";
+        this.releaseName = releaseNameFormatter.format(now);
+        this.releaseDir = this.releasesDir + "/" + this.releaseName;
+        this.dockerComposeProjectName = toDockerComposeProjectName(this.deployDir);
 
         if (serverParam.getBackupDir() != null) {
             this.backupDir = serverParam.getBackupDir() +
-                    "/" + folderNameFormatter.format(LocalDateTime.now());
+                    "/" + folderNameFormatter.format(now);
         } else {
             this.backupDir = null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Derives the project name Docker Compose uses by default for a compose file in the given directory:
+     * the directory name in lower case without the characters a project name can't contain.
+     *
+     * @param deployDir the directory of the compose file
+     * @return the project name
+     */
+    private static String toDockerComposeProjectName(String deployDir) {
+        final String name = deployDir.substring(deployDir.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        return name.replaceAll("[^a-z0-9_-]", "").replaceFirst("^[^a-z0-9]+", "");
+    }
+}
@@ -0,0 +1,20 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown when uploaded files don't match the SHA-256 of the local files. Unlike a connection failure,
+ * uploading the same content again doesn't help, so the upload isn't retried.
+ */
+public class ChecksumMismatchException extends IOException {
+
+    /**
+     * Creates the exception.
+     *
+     * @param message the description of the mismatch
+     * @param cause   the failure of the verification on the server
+     */
+    public ChecksumMismatchException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
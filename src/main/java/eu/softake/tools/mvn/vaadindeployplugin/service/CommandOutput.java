@@ -0,0 +1,190 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Output of a remote command, consumed line by line while the command is running.
+ * <p>
+ * Every complete line of stdout and stderr is passed to the line consumer as soon as it arrives, and only
+ * the last {@link #maxTailLines} lines are kept for log and error messages. Very long lines are split there.
+ * </p>
+ * <p>
+ * The complete output is kept as well, unchanged, for callers which parse it, up to {@link #maxOutputBytes}.
+ * </p>
+ */
+public class CommandOutput {
+
+    // Constants
+    public static final int DEFAULT_MAX_TAIL_LINES = 200;
+    public static final int DEFAULT_MAX_OUTPUT_BYTES = 16 * 1024 * 1024;
+    static final int MAX_LINE_LENGTH = 4096;
+
+    // Data
+    private final Consumer<String> lineConsumer;
+    private final int maxTailLines;
+    private final int maxOutputBytes;
+    private final Deque<String> tail = new ArrayDeque<>();
+    private final LineOutputStream stdout = new LineOutputStream();
+    private final LineOutputStream stderr = new LineOutputStream();
+    private long lineCount;
+    private long outputBytes;
+
+    /**
+     * Constructs the output keeping up to {@link #DEFAULT_MAX_OUTPUT_BYTES} of the complete output.
+     *
+     * @param lineConsumer the consumer of the lines as they arrive
+     * @param maxTailLines the number of last lines kept for messages
+     */
+    public CommandOutput(Consumer<String> lineConsumer, int maxTailLines) {
+        this(lineConsumer, maxTailLines, DEFAULT_MAX_OUTPUT_BYTES);
+    }
+
+    /**
+     * Constructs the output.
+     *
+     * @param lineConsumer   the consumer of the lines as they arrive
+     * @param maxTailLines   the number of last lines kept for messages
+     * @param maxOutputBytes the maximum size of the complete output kept for {@link #getOutput()}
+     */
+    public CommandOutput(Consumer<String> lineConsumer, int maxTailLines, int maxOutputBytes) {
+        this.lineConsumer = lineConsumer;
+        this.maxTailLines = Math.max(1, maxTailLines);
+        this.maxOutputBytes = Math.max(0, maxOutputBytes);
+    }
+
+    /**
+     * Returns the stream to attach to the stdout of the command.
+     *
+     * @return the stdout stream
+     */
+    public OutputStream getStdout() {
+        return stdout;
+    }
+
+    /**
+     * Returns the stream to attach to the stderr of the command.
+     *
+     * @return the stderr stream
+     */
+    public OutputStream getStderr() {
+        return stderr;
+    }
+
+    /**
+     * Returns the last lines of the output, including unterminated last lines of both streams.
+     *
+     * @return the tail of the output, lines separated by {@code \n}
+     */
+    public String getTail() {
+        stdout.flushLine();
+        stderr.flushLine();
+        synchronized (tail) {
+            final StringBuilder sb = new StringBuilder();
+            if (lineCount > tail.size()) {
+                sb.append("... ").append(lineCount - tail.size()).append(" lines skipped ...\n");
+            }
+            for (String line : tail) {
+                sb.append(line).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Returns the complete output: stdout followed by stderr.
+     *
+     * @return the output
+     * @throws IOException if the output has been larger than {@link #maxOutputBytes}
+     */
+    public String getOutput() throws IOException {
+        synchronized (tail) {
+            if (outputBytes > maxOutputBytes) {
+                throw new IOException(String.format("The output of the command has %d bytes, more than the %d bytes kept",
+                        outputBytes, maxOutputBytes));
+            }
+        }
+        return stdout.getContent() + stderr.getContent();
+    }
+
+    /**
+     * Counts the output and tells whether it still fits into the kept content.
+     */
+    private boolean keep(int bytes) {
+        synchronized (tail) {
+            outputBytes += bytes;
+            return outputBytes <= maxOutputBytes;
+        }
+    }
+
+    private void addLine(String line) {
+        synchronized (tail) {
+            if (tail.size() == maxTailLines) {
+                tail.removeFirst();
+            }
+            tail.addLast(line);
+            lineCount++;
+        }
+        lineConsumer.accept(line);
+    }
+
+    /**
+     * Stream splitting the bytes of one output stream into lines.
+     */
+    private class LineOutputStream extends OutputStream {
+
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            if (keep(1)) {
+                content.write(b);
+            }
+            splitLine(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            if (keep(length)) {
+                content.write(bytes, offset, length);
+            }
+            for (int i = offset; i < offset + length; i++) {
+                splitLine(bytes[i]);
+            }
+        }
+
+        private void splitLine(int b) {
+            if (b == '\n' || b == '\r') {
+                // Progress output redraws the line with a carriage return
+                flushLine();
+            } else {
+                line.write(b);
+                if (line.size() >= MAX_LINE_LENGTH) {
+                    flushLine();
+                }
+            }
+        }
+
+        private synchronized String getContent() {
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            flushLine();
+        }
+
+        private synchronized void flushLine() {
+            if (line.size() == 0) return;
+            final String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            line.reset();
+            addLine(text);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package eu.softake.tools.mvn.vaadindeployplugin.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -14,8 +15,8 @@ import java.util.Optional;
  * A utility service for performing file-related operations, such as retrieving files from a directory
  * and copying files between paths.
  * <p>
- * This class provides methods to get child files from a directory that match a given pattern and to copy files
- * from a source path to a destination path.
+ * This class provides methods to get child files from a directory that match a given pattern, to copy files
+ * from a source path to a destination path and to write generated files.
  * </p>
  */
 public class LocalFileService {
@@ -78,4 +79,21 @@ public class LocalFileService {
         // Copy file to destination
         Files.copy(srcPath, destPath, StandardCopyOption.REPLACE_EXISTING);
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes text to a file as UTF-8.
+     * <p>
+     * This method creates the target directory if it does not exist and replaces any existing file.
+     * </p>
+     *
+     * @param destPathString the destination file path as a string
+     * @param content        the text to write
+     * @throws IOException if an I/O error occurs during writing
+     */
+    public void writeFile(String destPathString, String content) throws IOException {
+        final Path destPath = Paths.get(destPathString);
+        // Ensure the target directory exists
+        Files.createDirectories(destPath.getParent());
+        Files.write(destPath, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
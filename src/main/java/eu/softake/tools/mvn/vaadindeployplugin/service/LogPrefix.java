@@ -0,0 +1,40 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+/**
+ * Prefix of the log lines written while a server is deployed, so that the output of servers deployed
+ * concurrently can be told apart. The prefix is inherited by threads started by the deploying thread,
+ * such as step and upload workers.
+ */
+public final class LogPrefix {
+
+    private static final InheritableThreadLocal<String> prefix = new InheritableThreadLocal<>();
+
+    private LogPrefix() {
+    }
+
+    /**
+     * Sets the prefix for the current thread and the threads it starts.
+     *
+     * @param name the name to show in the log lines, usually the domain of the server
+     */
+    public static void set(String name) {
+        prefix.set("[" + name + "] ");
+    }
+
+    /**
+     * Removes the prefix of the current thread.
+     */
+    public static void clear() {
+        prefix.remove();
+    }
+
+    /**
+     * Returns the prefix of the current thread.
+     *
+     * @return the prefix including a trailing space, or an empty string if none is set
+     */
+    public static String get() {
+        final String value = prefix.get();
+        return value != null ? value : "";
+    }
+}
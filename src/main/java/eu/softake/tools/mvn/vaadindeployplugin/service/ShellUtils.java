@@ -0,0 +1,20 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+/**
+ * Helpers for building shell commands which are executed on the remote server.
+ */
+public final class ShellUtils {
+
+    private ShellUtils() {
+    }
+
+    /**
+     * Quotes a value so that a POSIX shell treats it as a single word, whatever characters it contains.
+     *
+     * @param value the value to quote
+     * @return the value wrapped into single quotes
+     */
+    public static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+}
@@ -1,57 +1,194 @@
 package eu.softake.tools.mvn.vaadindeployplugin.service;
 
+import eu.softake.tools.mvn.vaadindeployplugin.instrumentation.DeployListener;
 import eu.softake.tools.mvn.vaadindeployplugin.params.SshConnectionParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.BlockDelta;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.BlockSignature;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.Checksums;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.DeploymentManifest;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.ParallelSftpUploader;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.TarArchiveWriter;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.TransferMode;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.channel.ClientChannel;
 import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.session.ClientSession;
-import org.apache.sshd.common.config.keys.FilePasswordProvider;
-import org.apache.sshd.common.io.nio2.Nio2ServiceFactoryFactory;
-import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.apache.sshd.common.SshException;
+import org.apache.sshd.common.channel.exception.SshChannelException;
+import org.apache.sshd.common.util.io.IoUtils;
 import org.apache.sshd.sftp.client.SftpClient;
 import org.apache.sshd.sftp.client.SftpClientFactory;
+import org.apache.sshd.sftp.client.extensions.openssh.OpenSSHPosixRenameExtension;
+import org.apache.sshd.sftp.client.impl.SftpOutputStreamAsync;
 import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
 import org.apache.sshd.sftp.common.SftpHelper;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Service class for handling SSH connections and file transfers via SFTP.
  * This class provides methods to upload files and directories to a remote server,
  * execute remote commands, and check if directories or files exist on the server.
  * It manages the SSH connection, SFTP client, and session lifecycle.
- * Implements AutoCloseable to automatically close the SSH session after use.
+ * <p>
+ * The service may be used by several deploy steps at the same time. An SFTP channel serves one request at a time,
+ * so every call borrows a channel from a small pool of the service and returns it afterwards; a new channel is
+ * opened when all of them are in use. The channels of the running operations can be closed with {@link #abort()}
+ * to stop the steps which are cancelled after another step has failed.
+ * </p>
+ * Implements AutoCloseable to automatically return the SSH session to the {@link SshSessionRegistry} after use.
  */
 @Slf4j
 public class SshService implements AutoCloseable {
 
+    // Constants
+    public static final int DEFAULT_TRANSFER_CONCURRENCY = 4;
+    public static final int DEFAULT_UPLOAD_RETRIES = 3;
+    public static final long DEFAULT_COMMAND_TIMEOUT_SECONDS = 1800;
+    public static final int TAR_MIN_FILE_COUNT = 16;
+    public static final long TAR_MAX_AVERAGE_FILE_SIZE = 64 * 1024;
+    private static final String CMD_TAR_EXTRACT_TEMPLATE = "mkdir -p %1$s && tar -xzpf - -C %1$s";
+    private static final String CMD_VERIFY_TEMPLATE = "cd %s && sha256sum -c --quiet - <<'EOF'\n%sEOF";
+    private static final String CMD_MKDIR = "mkdir -p";
+    private static final int MAX_COMMAND_LENGTH = 32 * 1024;
+    private static final String TEMP_FILE_SUFFIX = ".part";
+    private static final String CMD_PREFIX_SHA256_TEMPLATE = "head -c %d %s | sha256sum";
+    private static final long RETRY_INITIAL_DELAY_MILLIS = 1_000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 30_000;
+    private static final String BLOCK_SIGNATURE_FILE_NAME = ".vaadin-deploy.signature";
+    private static final String CMD_REBUILD_TEMPLATE = "sh %s && echo '%s  '%s | sha256sum -c --status - && mv -f %s %s";
+
     // Services
     private final SshConnectionParam sshConnection;
-    private final ClientSession clientSession;
-    private final SftpClient sftpClient;
+    private volatile SshSessionRegistry.Lease sessionLease;
+    private volatile ClientSession clientSession;
+
+    // SFTP channels of the current session which aren't used at the moment
+    private final Deque<SftpClient> idleSftpClients = new ArrayDeque<>();
+
+    // Remote directories known to exist in this session
+    private final Set<String> knownRemoteDirs = ConcurrentHashMap.newKeySet();
+
+    // Exec and SFTP channels of the running operations, closed by abort()
+    private final Set<ClientChannel> activeChannels = ConcurrentHashMap.newKeySet();
+    private volatile boolean aborted;
+
+    // Settings
+    private int transferConcurrency = DEFAULT_TRANSFER_CONCURRENCY;
+    private TransferMode transferMode = TransferMode.AUTO;
+    private int uploadRetries = DEFAULT_UPLOAD_RETRIES;
+    private long commandTimeoutSeconds = DEFAULT_COMMAND_TIMEOUT_SECONDS;
+    private DeployListener listener = DeployListener.NONE;
 
     /**
      * Constructor to initialize the SSH service with the provided connection parameters.
+     * The SSH session is leased from the {@link SshSessionRegistry}, so an open session to the same server is reused.
      *
      * @param sshConnection SSH connection parameters.
      * @throws Exception If an error occurs while establishing the SSH connection or initializing the SFTP client.
      */
     public SshService(SshConnectionParam sshConnection) throws Exception {
         this.sshConnection = sshConnection;
-        this.clientSession = buildSshClientSession(sshConnection);
-        this.sftpClient = SftpClientFactory.instance().createSftpClient(clientSession);
+        this.sessionLease = SshSessionRegistry.getInstance().acquire(sshConnection);
+        this.clientSession = sessionLease.getSession();
+        try {
+            idleSftpClients.push(SftpClientFactory.instance().createSftpClient(clientSession));
+        } catch (Exception e) {
+            sessionLease.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the maximum number of SFTP channels used to upload files of a directory in parallel.
+     *
+     * @param transferConcurrency the number of channels; values below 1 are treated as 1
+     */
+    public void setTransferConcurrency(int transferConcurrency) {
+        this.transferConcurrency = Math.max(1, transferConcurrency);
+    }
+
+    /**
+     * Sets the way the files of a directory are transferred to the server.
+     *
+     * @param transferMode the transfer mode; {@code null} means {@link TransferMode#AUTO}
+     */
+    public void setTransferMode(TransferMode transferMode) {
+        this.transferMode = transferMode != null ? transferMode : TransferMode.AUTO;
+    }
+
+    /**
+     * Returns the listener notified about remote commands and file transfers.
+     *
+     * @return the listener, {@link DeployListener#NONE} if none has been set
+     */
+    public DeployListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the listener notified about remote commands and file transfers.
+     *
+     * @param listener the listener; {@code null} means no listener
+     */
+    public void setListener(DeployListener listener) {
+        this.listener = listener != null ? listener : DeployListener.NONE;
+    }
+
+    /**
+     * Sets the maximum time a remote command may run.
+     *
+     * @param commandTimeoutSeconds the timeout in seconds; 0 waits forever
+     */
+    public void setCommandTimeout(long commandTimeoutSeconds) {
+        this.commandTimeoutSeconds = Math.max(0, commandTimeoutSeconds);
+    }
+
+    /**
+     * Sets how many times an interrupted upload of a single file is resumed after reconnecting.
+     *
+     * @param uploadRetries the number of retries; 0 disables retrying
+     */
+    public void setUploadRetries(int uploadRetries) {
+        this.uploadRetries = Math.max(0, uploadRetries);
     }
 
     /**
      * Copies a local directory to the remote server.
      * It recursively walks through the local directory and uploads files to the specified remote directory.
+     * The manifest of a previous {@link #syncDirToServer(String, String, boolean) synchronization} is removed first,
+     * because it doesn't describe the uploaded files anymore.
      *
      * @param localDir  The path to the local directory to be uploaded.
      * @param remoteDir The path to the remote directory where files will be uploaded.
@@ -59,19 +196,67 @@ public class SshService implements AutoCloseable {
      */
     public void copyDirToServer(String localDir, String remoteDir) throws Exception {
         final Path localDirPath = Paths.get(localDir);
+        final List<String> relativePaths;
 
-        Files.walk(localDirPath).forEach(localPath -> {
-            try {
-                if (Files.isRegularFile(localPath)) {
-                    final Path relativePath = localDirPath.relativize(localPath);
-                    final Path remoteFilePath = Paths.get(remoteDir + "/" + relativePath.toString().replace("\\", "/"));
+        try (Stream<Path> walk = Files.walk(localDirPath)) {
+            relativePaths = walk.filter(Files::isRegularFile)
+                    .map(localPath -> localDirPath.relativize(localPath).toString().replace("\\", "/"))
+                    .collect(Collectors.toList());
+        }
 
-                    copyFileToServer(localPath.toFile(), remoteFilePath.getParent().toString());
-                }
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to upload: " + localPath, e);
+        removeFile(remoteDir + "/" + DeploymentManifest.FILE_NAME);
+        uploadFiles(localDirPath, relativePaths, remoteDir);
+    }
+
+    /**
+     * Synchronizes a local directory with the remote one by uploading only new or changed files.
+     * <p>
+     * A manifest of the local directory (relative path, size and SHA-256) is compared with the manifest stored
+     * in the remote directory by the previous synchronization. If there is no remote manifest, all files are uploaded.
+     * Files whose size or modification time on the server differs from the one recorded in the remote manifest,
+     * or which are missing on the server, have been changed outside of the plugin and are uploaded as well.
+     * Files listed in the previous manifest but missing locally are removed from the server when {@code deleteStale}
+     * is set. Files which were never uploaded by the plugin are left untouched. The new manifest, with the size and
+     * the modification time of the uploaded files, is written to the server after all files have been uploaded successfully.
+     * </p>
+     *
+     * @param localDir    The path to the local directory to be synchronized.
+     * @param remoteDir   The path to the remote directory to synchronize with.
+     * @param deleteStale Whether files removed locally must be deleted from the server.
+     * @return The difference between the local directory and the previous deploy.
+     * @throws Exception If an error occurs while building the manifest or copying files.
+     */
+    public DeploymentManifest.Diff syncDirToServer(String localDir, String remoteDir, boolean deleteStale) throws Exception {
+        final Path localDirPath = Paths.get(localDir);
+        final String remoteManifestPath = remoteDir + "/" + DeploymentManifest.FILE_NAME;
+
+        final DeploymentManifest localManifest = DeploymentManifest.build(localDirPath);
+        final DeploymentManifest remoteManifest = readRemoteManifest(remoteManifestPath);
+        final DeploymentManifest.Diff diff = localManifest.diff(remoteManifest,
+                remoteManifest != null ? listRemoteFiles(remoteDir) : null);
+
+        log.info("Delta sync of `{}`: {} of {} files changed, {} stale",
+                localDir, diff.getChanged().size(), localManifest.getEntries().size(), diff.getStale().size());
+
+        uploadFiles(localDirPath, diff.getChanged().stream()
+                .map(DeploymentManifest.Entry::getPath)
+                .collect(Collectors.toList()), remoteDir);
+
+        if (deleteStale) {
+            for (String stalePath : diff.getStale()) {
+                removeRemoteFile(remoteDir + "/" + stalePath);
             }
+        }
+
+        ensureDirExists(remoteDir);
+        final DeploymentManifest uploadedManifest = localManifest.withRemoteFiles(listRemoteFiles(remoteDir));
+        withSftpClient(client -> {
+            try (OutputStream out = client.write(remoteManifestPath)) {
+                uploadedManifest.write(out);
+            }
+            return null;
         });
+        return diff;
     }
 
     /**
@@ -92,6 +277,54 @@ public class SshService implements AutoCloseable {
         uploadFileToServer(localFilePath, remoteFilePath);
     }
 
+    /**
+     * Copies a single file to the remote server, sending only the blocks which differ from the previous version.
+     * <p>
+     * The block signature of every uploaded file is kept in the remote directory. When a signature exists and still
+     * matches the remote file, the new file is compared against it with a rolling checksum, only literal data is
+     * uploaded and the file is rebuilt on the server. The result is verified against the SHA-256 of the local file
+     * before it replaces the target. If anything goes wrong, the whole file is uploaded instead.
+     * In both cases a previous version with a different name is removed.
+     * </p>
+     *
+     * @param srcFile   The local file to be uploaded.
+     * @param remoteDir The remote directory where the file will be uploaded.
+     * @throws Exception If an error occurs while copying the file.
+     */
+    public void copyFileToServerWithDelta(File srcFile, String remoteDir) throws Exception {
+        ensureDirExists(remoteDir);
+
+        final Path localFilePath = srcFile.toPath();
+        final String remoteFilePath = remoteDir + "/" + srcFile.getName();
+        final String signaturePath = remoteDir + "/" + BLOCK_SIGNATURE_FILE_NAME;
+        final BlockSignature newSignature = BlockSignature.of(localFilePath, BlockSignature.DEFAULT_BLOCK_SIZE);
+        final BlockSignature oldSignature = readRemoteSignature(signaturePath);
+
+        boolean transferred = false;
+        if (oldSignature != null) {
+            try {
+                transferred = uploadDelta(localFilePath, remoteDir, remoteFilePath, oldSignature, newSignature);
+            } catch (Exception e) {
+                log.warn("Delta transfer of `{}` failed. The whole file will be uploaded: {}", localFilePath, e.getMessage());
+            }
+        }
+
+        if (!transferred) {
+            copyFileToServer(srcFile, remoteDir);
+        }
+        if (oldSignature != null && !oldSignature.getFileName().equals(srcFile.getName())) {
+            // Keep a single package in the target dir, whichever way the new one has been transferred
+            removeRemoteFile(remoteDir + "/" + oldSignature.getFileName());
+        }
+
+        withSftpClient(client -> {
+            try (OutputStream out = client.write(signaturePath)) {
+                newSignature.write(out);
+            }
+            return null;
+        });
+    }
+
     /**
      * Checks whether the specified remote directory is empty.
      * If the directory does not exist, it returns true.
@@ -101,15 +334,20 @@ public class SshService implements AutoCloseable {
      * @throws Exception If an error occurs while checking the directory.
      */
     public boolean isDirEmpty(String remoteDir) throws Exception {
-        try (SftpClient.CloseableHandle handle = sftpClient.openDir(remoteDir)) {
-            Iterable<SftpClient.DirEntry> entries = sftpClient.listDir(handle);
+        try {
+            return withSftpClient(client -> {
+                try (SftpClient.CloseableHandle handle = client.openDir(remoteDir)) {
+                    Iterable<SftpClient.DirEntry> entries = client.listDir(handle);
 
-            for (SftpClient.DirEntry entry : entries) {
-                String filename = entry.getFilename();
-                if (!".".equals(filename) && !"..".equals(filename)) {
-                    return false;
+                    for (SftpClient.DirEntry entry : entries) {
+                        String filename = entry.getFilename();
+                        if (!".".equals(filename) && !"..".equals(filename)) {
+                            return false;
+                        }
+                    }
                 }
-            }
+                return true;
+            });
         } catch (Exception e) {
             if (SftpConstants.SSH_FX_NO_SUCH_FILE == SftpHelper.resolveSubstatus(e)) {
                 return true;
@@ -117,8 +355,6 @@ public class SshService implements AutoCloseable {
             log.warn("Can't check whether the dir `{}` is empty", remoteDir, e);
             throw e;
         }
-
-        return true;
     }
 
     /**
@@ -129,9 +365,8 @@ public class SshService implements AutoCloseable {
      * @throws Exception If an error occurs while checking the file.
      */
     public boolean isFileExist(String remoteFilePath) throws Exception {
-        try (SftpClient sftpClient = SftpClientFactory.instance().createSftpClient(clientSession)) {
-            final SftpClient.Attributes attributes = sftpClient.stat(remoteFilePath);
-            return attributes != null;
+        try {
+            return withSftpClient(client -> client.stat(remoteFilePath) != null);
         } catch (Exception e) {
             if (SftpConstants.SSH_FX_NO_SUCH_FILE == SftpHelper.resolveSubstatus(e)) {
                 return false;
@@ -142,58 +377,222 @@ public class SshService implements AutoCloseable {
     }
 
     /**
-     * Executes a command on the remote server.
+     * Reads a small text file from the remote server.
+     *
+     * @param remoteFilePath The remote file path to read.
+     * @return The content of the file, or {@code null} if it doesn't exist.
+     * @throws IOException If the file exists but can't be read.
+     */
+    public String readTextFile(String remoteFilePath) throws IOException {
+        try {
+            return withSftpClient(client -> {
+                try (InputStream in = client.read(remoteFilePath)) {
+                    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    IoUtils.copy(in, content);
+                    return new String(content.toByteArray(), StandardCharsets.UTF_8);
+                }
+            });
+        } catch (IOException e) {
+            if (SftpConstants.SSH_FX_NO_SUCH_FILE == SftpHelper.resolveSubstatus(e)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a small text file to the remote server, replacing an existing one. The parent directory must exist.
+     *
+     * @param remoteFilePath The remote file path to write.
+     * @param content        The content of the file.
+     * @throws IOException If the file can't be written.
+     */
+    public void writeTextFile(String remoteFilePath, String content) throws IOException {
+        withSftpClient(client -> {
+            try (OutputStream out = client.write(remoteFilePath)) {
+                out.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Removes a file from the remote server. A missing file isn't treated as an error.
+     *
+     * @param remoteFilePath The remote file path to remove.
+     * @throws IOException If the file exists but can't be removed.
+     */
+    public void removeFile(String remoteFilePath) throws IOException {
+        try {
+            withSftpClient(client -> {
+                client.remove(remoteFilePath);
+                return null;
+            });
+        } catch (IOException e) {
+            final int substatus = SftpHelper.resolveSubstatus(e);
+            if (SftpConstants.SSH_FX_NO_SUCH_FILE != substatus && SftpConstants.SSH_FX_NO_SUCH_PATH != substatus) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Executes a command on the remote server with the default command timeout.
      *
      * @param command The command to execute.
-     * @return The combined output (stdout and stderr) of the command.
-     * @throws Exception If an error occurs while executing the command.
+     * @return The output of the command: stdout followed by stderr.
+     * @throws Exception If an error occurs while executing the command, it fails or times out.
      */
     public String execCommand(String command) throws Exception {
-        log.info("Execute command on the server: `{}`", command);
+        return execCommand(command, commandTimeoutSeconds);
+    }
 
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             ByteArrayOutputStream err = new ByteArrayOutputStream();
-             ClientChannel channel = this.clientSession.createExecChannel(command)) {
-            channel.setOut(out);
-            channel.setErr(err);
+    /**
+     * Executes a command on the remote server.
+     * The output is written to the log line by line while the command is running; error messages only contain
+     * the last {@link CommandOutput#DEFAULT_MAX_TAIL_LINES} lines.
+     *
+     * @param command        The command to execute.
+     * @param timeoutSeconds The maximum time to wait for the command; 0 waits forever.
+     * @return The output of the command: stdout followed by stderr, up to {@link CommandOutput#DEFAULT_MAX_OUTPUT_BYTES}.
+     * @throws TimeoutException If the command doesn't finish in time. The channel is closed in this case.
+     * @throws Exception If an error occurs while executing the command or it fails.
+     */
+    public String execCommand(String command, long timeoutSeconds) throws Exception {
+        log.info("{}Execute command on the server: `{}`", LogPrefix.get(), summarize(command));
+
+        final String logPrefix = LogPrefix.get();
+        final CommandOutput output = new CommandOutput(line -> log.info("{}> {}", logPrefix, line), CommandOutput.DEFAULT_MAX_TAIL_LINES);
+        final long startTime = System.nanoTime();
+        Integer exitCode = null;
+        listener.commandStarted(summarize(command));
+        try (ClientChannel channel = createExecChannel(command)) {
+            channel.setOut(output.getStdout());
+            channel.setErr(output.getStderr());
             channel.open().verify();
-            channel.waitFor(Collections.singleton(ClientChannelEvent.CLOSED), 0);
-            int exitCode = channel.getExitStatus();
-            String combinedOutput = out + err.toString();
-            log.info("Result: `{}`", combinedOutput);
-            if (exitCode == 0) {
-                return combinedOutput;
+            waitForExit(channel, timeoutSeconds, output, command);
+
+            exitCode = channel.getExitStatus();
+            if (exitCode != null && exitCode == 0) {
+                return output.getOutput();
             } else {
-                throw new Exception("Command failed with exit code " + exitCode + ": " + combinedOutput);
+                throw new Exception("Command failed with exit code " + exitCode + ": " + output.getTail());
+            }
+        } finally {
+            listener.commandFinished(summarize(command), exitCode, startTime, System.nanoTime());
+        }
+    }
+
+    /**
+     * Executes a command on the remote server and streams data into its standard input over the same exec channel,
+     * e.g. an image archive into {@code docker load}. Nothing is written to a temporary file.
+     * The stream is reported to the listener as a transfer.
+     *
+     * @param command the command reading the data from its standard input
+     * @param name    the name of the transferred data for the log and the listener
+     * @param writer  writes the data and returns the number of bytes written
+     * @return The output of the command: stdout followed by stderr.
+     * @throws Exception If the data can't be written, the command fails or times out.
+     */
+    public String execCommandWithInput(String command, String name, InputWriter writer) throws Exception {
+        log.info("{}Stream `{}` to the command on the server: `{}`", LogPrefix.get(), name, summarize(command));
+
+        final String logPrefix = LogPrefix.get();
+        final CommandOutput output = new CommandOutput(line -> log.info("{}> {}", logPrefix, line), CommandOutput.DEFAULT_MAX_TAIL_LINES);
+        final long startTime = System.nanoTime();
+        long bytes = 0;
+        listener.transferStarted(name);
+        try (ClientChannel channel = createExecChannel(command)) {
+            channel.setOut(output.getStdout());
+            channel.setErr(output.getStderr());
+            channel.open().verify();
+
+            try (OutputStream in = new BufferedOutputStream(channel.getInvertedIn(), 64 * 1024)) {
+                bytes = writer.write(in);
+            }
+
+            waitForExit(channel, commandTimeoutSeconds, output, command);
+            final Integer exitCode = channel.getExitStatus();
+            if (exitCode == null || exitCode != 0) {
+                throw new Exception("Command failed with exit code " + exitCode + ": " + output.getTail());
             }
+            return output.getOutput();
+        } finally {
+            listener.transferFinished(name, bytes, startTime, System.nanoTime());
         }
     }
 
     /**
      * Ensures that the specified remote directory exists, creating any necessary subdirectories.
+     * Directories which are already known to exist in this session are not checked again.
      *
      * @param remoteDir The remote directory to ensure exists.
      * @throws IOException If an error occurs while checking or creating the directory.
      */
     public void ensureDirExists(String remoteDir) throws IOException {
+        if (knownRemoteDirs.contains(normalizeDir(remoteDir))) {
+            return;
+        }
+
         final String[] folders = remoteDir.split("/");
         final StringBuilder pathBuilder = new StringBuilder();
 
-        for (String folder : folders) {
-            if (folder.isEmpty()) continue;
-            pathBuilder.append('/').append(folder);
+        withSftpClient(client -> {
+            for (String folder : folders) {
+                if (folder.isEmpty()) continue;
+                pathBuilder.append('/').append(folder);
 
-            final String currentPath = pathBuilder.toString();
-            try {
-                this.sftpClient.stat(currentPath);
-            } catch (IOException e) {
-                if (SftpConstants.SSH_FX_NO_SUCH_FILE == SftpHelper.resolveSubstatus(e)) {
-                    log.info("Create folder: `{}`", currentPath);
-                    this.sftpClient.mkdir(currentPath);
-                } else {
-                    throw e;
+                final String currentPath = pathBuilder.toString();
+                if (knownRemoteDirs.contains(currentPath)) continue;
+                try {
+                    client.stat(currentPath);
+                } catch (IOException e) {
+                    if (SftpConstants.SSH_FX_NO_SUCH_FILE == SftpHelper.resolveSubstatus(e)) {
+                        log.info("Create folder: `{}`", currentPath);
+                        mkdirIfMissing(client, currentPath);
+                    } else {
+                        throw e;
+                    }
                 }
+                knownRemoteDirs.add(currentPath);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Ensures that all the specified remote directories exist.
+     * The directories which aren't known yet are created with a single {@code mkdir -p} call
+     * instead of checking every path segment over SFTP.
+     *
+     * @param remoteDirs The remote directories to ensure exist.
+     * @throws Exception If an error occurs while creating the directories.
+     */
+    public void ensureDirsExist(Collection<String> remoteDirs) throws Exception {
+        final Set<String> missingDirs = new TreeSet<>();
+        for (String remoteDir : remoteDirs) {
+            final String dir = normalizeDir(remoteDir);
+            if (!dir.isEmpty() && !knownRemoteDirs.contains(dir)) {
+                missingDirs.add(dir);
+            }
+        }
+        if (missingDirs.isEmpty()) {
+            return;
+        }
+
+        // Keep the command line reasonably short
+        StringBuilder command = new StringBuilder(CMD_MKDIR);
+        for (String dir : missingDirs) {
+            if (command.length() + dir.length() > MAX_COMMAND_LENGTH) {
+                execCommand(command.toString());
+                command = new StringBuilder(CMD_MKDIR);
             }
+            command.append(' ').append(ShellUtils.quote(dir));
+        }
+        execCommand(command.toString());
+
+        for (String dir : missingDirs) {
+            rememberDirWithParents(dir);
         }
     }
 
@@ -206,64 +605,806 @@ public class SshService implements AutoCloseable {
         return clientSession.isOpen() && clientSession.isAuthenticated();
     }
 
+    /**
+     * Uploads files of a local directory to the remote one.
+     * Depending on the {@link TransferMode}, the files are either streamed as a single tar archive
+     * or uploaded using up to {@link #transferConcurrency} SFTP channels. Uploaded files are verified with a single
+     * checksum call and renamed into place only when all of them have been transferred.
+     *
+     * @param localDirPath  the local root directory
+     * @param relativePaths the paths of the files to upload, relative to the root directory
+     * @param remoteDir     the remote root directory
+     * @throws Exception if any of the files couldn't be uploaded
+     */
+    private void uploadFiles(Path localDirPath, List<String> relativePaths, String remoteDir) throws Exception {
+        final List<ParallelSftpUploader.UploadTask> tasks = new ArrayList<>();
+        final Set<String> remoteDirs = new TreeSet<>();
+        long totalSize = 0;
+
+        for (String relativePath : relativePaths) {
+            final Path localPath = localDirPath.resolve(relativePath);
+            final String remoteFilePath = remoteDir + "/" + relativePath;
+            final long size = Files.size(localPath);
+            remoteDirs.add(remoteFilePath.substring(0, remoteFilePath.lastIndexOf('/')));
+            tasks.add(new ParallelSftpUploader.UploadTask(localPath, remoteFilePath, size));
+            totalSize += size;
+        }
+
+        if (tasks.isEmpty()) return;
+
+        if (isTarTransfer(tasks.size(), totalSize)) {
+            uploadFilesAsTar(localDirPath, relativePaths, remoteDir);
+            return;
+        }
+
+        ensureDirsExist(remoteDirs);
+
+        final String hostname = this.sshConnection.getHostName();
+        final Map<String, String> checksums = new ConcurrentHashMap<>();
+        // Files whose temporary file may exist, including the failed and the interrupted ones
+        final Set<String> startedFiles = ConcurrentHashMap.newKeySet();
+        try {
+            new ParallelSftpUploader(clientSession, transferConcurrency, (client, task) -> {
+                log.info("Copy file from `{}` to `{}:{}`", task.getLocalFile(), hostname, task.getRemoteFilePath());
+                startedFiles.add(task.getRemoteFilePath());
+                checksums.put(task.getRemoteFilePath(), uploadToTempFile(client, task.getLocalFile(), task.getRemoteFilePath()));
+            }).upload(tasks);
+        } catch (Exception e) {
+            removeTempFiles(startedFiles);
+            throw e;
+        }
+        commitTempFiles(new TreeMap<>(checksums));
+    }
+
+    /**
+     * Decides whether the files are transferred as a tar stream.
+     * In {@link TransferMode#AUTO} mode it's the case for many files with a small average size,
+     * where per-file SFTP round trips cost more than the data itself.
+     *
+     * @param fileCount the number of files
+     * @param totalSize the total size of the files in bytes
+     * @return true if the tar stream must be used
+     */
+    private boolean isTarTransfer(int fileCount, long totalSize) {
+        switch (transferMode) {
+            case TAR:
+                return true;
+            case SFTP:
+                return false;
+            default:
+                return fileCount >= TAR_MIN_FILE_COUNT && totalSize / fileCount <= TAR_MAX_AVERAGE_FILE_SIZE;
+        }
+    }
+
+    /**
+     * Streams the files as a gzip-compressed tar archive into {@code tar -x} on the server over a single
+     * exec channel. Nothing is written to a temporary file. The permissions of the files are kept,
+     * and the extracted files are verified against the SHA-256 calculated while archiving.
+     *
+     * @param localDirPath  the local root directory
+     * @param relativePaths the paths of the files to upload, relative to the root directory
+     * @param remoteDir     the remote root directory
+     * @throws Exception if the archive can't be transferred or the verification fails
+     */
+    private void uploadFilesAsTar(Path localDirPath, List<String> relativePaths, String remoteDir) throws Exception {
+        final String command = String.format(CMD_TAR_EXTRACT_TEMPLATE, ShellUtils.quote(remoteDir));
+        final List<String> checksums = new ArrayList<>();
+
+        log.info("Stream {} files from `{}` to `{}:{}` as a tar archive",
+                relativePaths.size(), localDirPath, this.sshConnection.getHostName(), remoteDir);
+
+        final String logPrefix = LogPrefix.get();
+        final CommandOutput output = new CommandOutput(line -> log.info("{}> {}", logPrefix, line), CommandOutput.DEFAULT_MAX_TAIL_LINES);
+        final long startTime = System.nanoTime();
+        long bytes = 0;
+        listener.transferStarted(remoteDir);
+        try (ClientChannel channel = createExecChannel(command)) {
+            channel.setOut(output.getStdout());
+            channel.setErr(output.getStderr());
+            channel.open().verify();
+
+            try (TarArchiveWriter tar = new TarArchiveWriter(new GZIPOutputStream(
+                    new BufferedOutputStream(channel.getInvertedIn(), 64 * 1024)))) {
+                for (String relativePath : relativePaths) {
+                    final Path localPath = localDirPath.resolve(relativePath);
+                    final MessageDigest digest = Checksums.newSha256Digest();
+                    try (InputStream in = new DigestInputStream(Files.newInputStream(localPath), digest)) {
+                        tar.putFile(relativePath, localPath, in);
+                    }
+                    bytes += Files.size(localPath);
+                    checksums.add(Checksums.toHex(digest.digest()) + "  " + relativePath);
+                }
+            }
+
+            waitForExit(channel, commandTimeoutSeconds, output, command);
+            final Integer exitCode = channel.getExitStatus();
+            if (exitCode == null || exitCode != 0) {
+                throw new IOException("Extracting the tar stream failed with exit code " + exitCode + ": " + output.getTail());
+            }
+        } finally {
+            listener.transferFinished(remoteDir, bytes, startTime, System.nanoTime());
+        }
+
+        verifyChecksums(ShellUtils.quote(remoteDir), checksums);
+    }
+
+    /**
+     * Creates a remote directory. A directory created concurrently by another step isn't treated as an error.
+     *
+     * @param client    the SFTP channel to use
+     * @param remoteDir the directory to create
+     * @throws IOException if the directory can't be created
+     */
+    private static void mkdirIfMissing(SftpClient client, String remoteDir) throws IOException {
+        try {
+            client.mkdir(remoteDir);
+        } catch (IOException e) {
+            try {
+                if (client.stat(remoteDir).isDirectory()) return;
+            } catch (IOException statException) {
+                e.addSuppressed(statException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the directory and all its parents to the cache of known remote directories.
+     *
+     * @param dir the normalized directory path
+     */
+    private void rememberDirWithParents(String dir) {
+        for (String current = dir; !current.isEmpty(); current = current.substring(0, Math.max(0, current.lastIndexOf('/')))) {
+            knownRemoteDirs.add(current);
+        }
+    }
+
+    /**
+     * Removes trailing slashes from a directory path.
+     *
+     * @param dir the directory path
+     * @return the normalized path
+     */
+    private static String normalizeDir(String dir) {
+        return dir.replaceAll("/+$", "");
+    }
+
+    /**
+     * Reads the manifest stored on the server by the previous synchronization.
+     *
+     * @param remoteManifestPath the path to the manifest on the server
+     * @return the manifest, or {@code null} if it doesn't exist
+     * @throws IOException if the manifest exists but can't be read
+     */
+    private DeploymentManifest readRemoteManifest(String remoteManifestPath) throws IOException {
+        try {
+            return withSftpClient(client -> {
+                try (InputStream in = client.read(remoteManifestPath)) {
+                    return DeploymentManifest.read(in);
+                }
+            });
+        } catch (IOException e) {
+            if (SftpConstants.SSH_FX_NO_SUCH_FILE == SftpHelper.resolveSubstatus(e)) {
+                log.info("No manifest `{}` found on the server. All files will be uploaded", remoteManifestPath);
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Lists the size and the modification time of all regular files inside a remote directory tree.
+     *
+     * @param remoteDir the remote root directory
+     * @return the files keyed by the path relative to the root directory; empty if the directory doesn't exist
+     * @throws IOException if the directory can't be listed
+     */
+    private Map<String, DeploymentManifest.RemoteFile> listRemoteFiles(String remoteDir) throws IOException {
+        final Map<String, DeploymentManifest.RemoteFile> files = new TreeMap<>();
+        try {
+            withSftpClient(client -> {
+                final Deque<String> dirs = new ArrayDeque<>(Collections.singleton(""));
+                while (!dirs.isEmpty()) {
+                    final String dir = dirs.pop();
+                    for (SftpClient.DirEntry entry : client.readDir(dir.isEmpty() ? remoteDir : remoteDir + "/" + dir)) {
+                        final String name = entry.getFilename();
+                        if (".".equals(name) || "..".equals(name)) continue;
+
+                        final String relativePath = dir.isEmpty() ? name : dir + "/" + name;
+                        final SftpClient.Attributes attributes = entry.getAttributes();
+                        if (attributes.isDirectory()) {
+                            dirs.push(relativePath);
+                        } else if (attributes.isRegularFile()) {
+                            files.put(relativePath, new DeploymentManifest.RemoteFile(attributes.getSize(),
+                                    attributes.getModifyTime().to(TimeUnit.SECONDS)));
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            if (SftpConstants.SSH_FX_NO_SUCH_FILE != SftpHelper.resolveSubstatus(e)) {
+                throw e;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Reads the block signature of the previously uploaded file.
+     *
+     * @param signaturePath the path to the signature on the server
+     * @return the signature, or {@code null} if it doesn't exist or can't be parsed
+     * @throws IOException if the signature exists but can't be read
+     */
+    private BlockSignature readRemoteSignature(String signaturePath) throws IOException {
+        try {
+            return withSftpClient(client -> {
+                try (InputStream in = client.read(signaturePath)) {
+                    return BlockSignature.read(in);
+                }
+            });
+        } catch (IOException e) {
+            if (SftpConstants.SSH_FX_NO_SUCH_FILE == SftpHelper.resolveSubstatus(e)) {
+                log.info("No block signature `{}` found on the server. The whole file will be uploaded", signaturePath);
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads the delta of a file against its previous version and rebuilds the file on the server.
+     *
+     * @return true if the file has been transferred, false if the previous version can't be used
+     * @throws Exception if an error occurs while uploading or rebuilding the file
+     */
+    private boolean uploadDelta(Path localFilePath, String remoteDir, String remoteFilePath,
+                                BlockSignature oldSignature, BlockSignature newSignature) throws Exception {
+        final String oldFilePath = remoteDir + "/" + oldSignature.getFileName();
+        final String oldFileSha256 = execCommand("sha256sum " + ShellUtils.quote(oldFilePath)).trim().split("\\s+")[0];
+
+        if (!oldFileSha256.equals(oldSignature.getFileSha256())) {
+            log.warn("File `{}` doesn't match its block signature", oldFilePath);
+            return false;
+        }
+        if (oldFilePath.equals(remoteFilePath) && oldFileSha256.equals(newSignature.getFileSha256())) {
+            log.info("File `{}:{}` is up to date", this.sshConnection.getHostName(), remoteFilePath);
+            return true;
+        }
+
+        final BlockDelta delta = BlockDelta.compute(localFilePath, oldSignature);
+        log.info("Delta transfer of `{}`: {} literal bytes of {} ({} instructions)",
+                localFilePath, delta.getLiteralBytes(), delta.getFileLength(), delta.getInstructions().size());
+
+        final String literalsPath = remoteFilePath + ".literals";
+        final String scriptPath = remoteFilePath + ".rebuild.sh";
+        final String tempFilePath = tempPathOf(remoteFilePath);
+
+        try {
+            final long startTime = System.nanoTime();
+            listener.transferStarted(literalsPath);
+            try {
+                withSftpClient(client -> {
+                    try (OutputStream out = client.write(literalsPath)) {
+                        delta.writeLiterals(localFilePath, out);
+                    }
+                    return null;
+                });
+            } finally {
+                listener.transferFinished(literalsPath, delta.getLiteralBytes(), startTime, System.nanoTime());
+            }
+            writeTextFile(scriptPath, delta.toShellScript(oldFilePath, literalsPath, tempFilePath));
+
+            execCommand(String.format(CMD_REBUILD_TEMPLATE,
+                    ShellUtils.quote(scriptPath),
+                    newSignature.getFileSha256(), ShellUtils.quote(tempFilePath),
+                    ShellUtils.quote(tempFilePath), ShellUtils.quote(remoteFilePath)));
+        } finally {
+            execCommand("rm -f " + ShellUtils.quote(literalsPath) + " " + ShellUtils.quote(scriptPath) + " " + ShellUtils.quote(tempFilePath));
+        }
+        return true;
+    }
+
+    /**
+     * Removes a file from the remote server. A missing file is not treated as an error.
+     *
+     * @param remoteFilePath the path to the file on the server
+     * @throws IOException if the file exists but can't be removed
+     */
+    private void removeRemoteFile(String remoteFilePath) throws IOException {
+        log.info("Remove stale file `{}:{}`", this.sshConnection.getHostName(), remoteFilePath);
+        removeFile(remoteFilePath);
+    }
+
     /**
      * Uploads a file from the local machine to the remote server.
+     * The file is written under a temporary name, verified against the SHA-256 calculated while it was streamed
+     * and only then renamed into place, so the target path never contains a partially written file.
+     * <p>
+     * If the connection drops, the session is re-established with exponential backoff and the upload continues
+     * from the end of the partially written temporary file, provided that its content still matches the local
+     * file. A temporary file left by a failed deploy is resumed the same way.
+     * </p>
      *
      * @param localFilePath the path to the local file to be uploaded
      * @param remoteFilePath the path where the file will be uploaded on the remote server
-     * @throws Exception if an error occurs during file upload
+     * @throws Exception if an error occurs during file upload or the verification fails
      */
     private void uploadFileToServer(Path localFilePath, String remoteFilePath) throws Exception {
-        this.sftpClient.put(localFilePath, remoteFilePath);
+        long delay = RETRY_INITIAL_DELAY_MILLIS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                final String sha256 = uploadToTempFileResumable(localFilePath, remoteFilePath);
+                commitTempFiles(Collections.singletonMap(remoteFilePath, sha256));
+                return;
+            } catch (IOException e) {
+                if (!isConnectionFailure(e) || aborted || attempt >= uploadRetries) {
+                    throw e;
+                }
+                log.warn("Upload of `{}` has been interrupted: {}. Reconnecting in {} ms (retry {} of {})",
+                        localFilePath, e.getMessage(), delay, attempt + 1, uploadRetries);
+                Thread.sleep(delay);
+                delay = Math.min(delay * 2, RETRY_MAX_DELAY_MILLIS);
+                reconnect();
+            }
+        }
+    }
+
+    /**
+     * Returns whether an upload failed because of the connection or the channel, so that it may succeed after reconnecting.
+     * A mismatch of the checksums, an error status of the SFTP server or a local error are not retried.
+     *
+     * @param e the failure of the upload
+     * @return true if the session or the channel has failed
+     */
+    private boolean isConnectionFailure(IOException e) {
+        if (e instanceof ChecksumMismatchException || e instanceof SftpException) {
+            return false;
+        }
+        final ClientSession session = clientSession;
+        return session == null || !session.isOpen() || e instanceof SshException || e instanceof SshChannelException
+                || e instanceof EOFException || e instanceof SocketException || e instanceof InterruptedIOException;
+    }
+
+    /**
+     * Uploads a local file to the temporary path of the remote file, continuing a partial upload when possible.
+     *
+     * @param localFilePath  the local file
+     * @param remoteFilePath the final path of the file on the server
+     * @return the SHA-256 of the whole file
+     * @throws IOException if the file can't be read or written
+     */
+    private String uploadToTempFileResumable(Path localFilePath, String remoteFilePath) throws IOException {
+        return withSftpClient(client -> {
+            final String tempFilePath = tempPathOf(remoteFilePath);
+            final MessageDigest digest = Checksums.newSha256Digest();
+            final long offset = resumableOffset(client, localFilePath, tempFilePath, digest);
+            final byte[] buffer = new byte[64 * 1024];
+            final long startTime = System.nanoTime();
+            long bytes = 0;
+
+            listener.transferStarted(remoteFilePath);
+            try (InputStream in = new DigestInputStream(skipFully(Files.newInputStream(localFilePath), offset), digest);
+                 OutputStream out = openTempFile(client, tempFilePath, offset)) {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                    bytes += read;
+                }
+            } finally {
+                listener.transferFinished(remoteFilePath, bytes, startTime, System.nanoTime());
+            }
+            return Checksums.toHex(digest.digest());
+        });
+    }
+
+    /**
+     * Finds the offset an upload can be continued from: the size of the existing temporary file,
+     * if it's a prefix of the local file. The digest is updated with the content of that prefix.
+     *
+     * @param client        the SFTP channel to use
+     * @param localFilePath the local file
+     * @param tempFilePath  the temporary file on the server
+     * @param digest        the digest of the whole file, which is fed with the prefix
+     * @return the offset to continue from; 0 if the upload must start from the beginning
+     * @throws IOException if the local file can't be read or the connection fails
+     */
+    private long resumableOffset(SftpClient client, Path localFilePath, String tempFilePath, MessageDigest digest) throws IOException {
+        final long remoteSize;
+        try {
+            remoteSize = client.stat(tempFilePath).getSize();
+        } catch (SftpException e) {
+            return 0;
+        }
+        if (remoteSize <= 0 || remoteSize > Files.size(localFilePath)) {
+            return 0;
+        }
+
+        final byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(localFilePath)) {
+            long remaining = remoteSize;
+            while (remaining > 0) {
+                final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) break;
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+
+        final String localPrefixSha256;
+        try {
+            localPrefixSha256 = Checksums.toHex(((MessageDigest) digest.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            digest.reset();
+            return 0;
+        }
+
+        final String remotePrefixSha256;
+        try {
+            remotePrefixSha256 = execCommand(String.format(CMD_PREFIX_SHA256_TEMPLATE, remoteSize, ShellUtils.quote(tempFilePath)))
+                    .trim().split("\\s+")[0];
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Couldn't check the partial file `{}`: {}", tempFilePath, e.getMessage());
+            digest.reset();
+            return 0;
+        }
+
+        if (!localPrefixSha256.equals(remotePrefixSha256)) {
+            log.info("Partial file `{}` doesn't match the local file. Uploading from the beginning", tempFilePath);
+            digest.reset();
+            return 0;
+        }
+        log.info("Resuming upload to `{}` at {} of {} bytes", tempFilePath, remoteSize, Files.size(localFilePath));
+        return remoteSize;
+    }
+
+    /**
+     * Opens the temporary file for writing at the given offset. The file is truncated when writing from the start.
+     *
+     * @param client       the SFTP channel to use
+     * @param tempFilePath the temporary file on the server
+     * @param offset       the offset to write from
+     * @return the stream writing to the file
+     * @throws IOException if the file can't be opened
+     */
+    private static OutputStream openTempFile(SftpClient client, String tempFilePath, long offset) throws IOException {
+        if (offset == 0) {
+            return client.write(tempFilePath);
+        }
+        final OutputStream out = client.write(tempFilePath, SftpClient.OpenMode.Write, SftpClient.OpenMode.Create);
+        if (!(out instanceof SftpOutputStreamAsync)) {
+            out.close();
+            throw new SftpException(SftpConstants.SSH_FX_OP_UNSUPPORTED, "Writing at an offset isn't supported");
+        }
+        ((SftpOutputStreamAsync) out).setOffset(offset);
+        return out;
+    }
+
+    /**
+     * Replaces the current session with a new one after a connection failure.
+     * The failed session is only released, other servers on the same host may still be using it.
+     * Uploads of several threads may reconnect at the same time, so the lease is replaced under the lock of the service.
+     *
+     * @throws Exception if the connection can't be re-established
+     */
+    private synchronized void reconnect() throws Exception {
+        checkNotAborted();
+        closeIdleSftpClients();
+        this.sessionLease = SshSessionRegistry.getInstance().renew(sessionLease, sshConnection);
+        this.clientSession = sessionLease.getSession();
+    }
+
+    /**
+     * Runs SFTP requests on a channel which no other thread uses at the same time.
+     *
+     * @param call the requests
+     * @return the result of the requests
+     * @throws IOException if a request fails or no channel can be opened
+     */
+    private <R> R withSftpClient(SftpCall<R> call) throws IOException {
+        final SftpClient client = borrowSftpClient();
+        activeChannels.add(client.getClientChannel());
+        try {
+            checkNotAborted();
+            return call.apply(client);
+        } finally {
+            activeChannels.remove(client.getClientChannel());
+            returnSftpClient(client);
+        }
+    }
+
+    /**
+     * Creates an exec channel which is closed by {@link #abort()} while it's in use.
+     *
+     * @param command the command to execute
+     * @return the channel, which still has to be opened
+     * @throws IOException if the channel can't be created or the service has been aborted
+     */
+    private ClientChannel createExecChannel(String command) throws IOException {
+        final ClientChannel channel = this.clientSession.createExecChannel(command);
+        activeChannels.add(channel);
+        channel.addCloseFutureListener(future -> activeChannels.remove(channel));
+        if (aborted) {
+            channel.close(true);
+            checkNotAborted();
+        }
+        return channel;
+    }
+
+    private void checkNotAborted() throws IOException {
+        if (aborted) {
+            throw new IOException("SSH operations on `" + this.sshConnection.getHostName() + "` have been aborted");
+        }
+    }
+
+    /**
+     * Takes an idle SFTP channel of the current session, or opens a new one if all of them are in use.
+     *
+     * @return the channel, which must be returned with {@link #returnSftpClient(SftpClient)}
+     * @throws IOException if the channel can't be opened
+     */
+    private SftpClient borrowSftpClient() throws IOException {
+        synchronized (idleSftpClients) {
+            for (SftpClient client = idleSftpClients.poll(); client != null; client = idleSftpClients.poll()) {
+                if (client.isOpen()) {
+                    return client;
+                }
+                closeQuietly(client);
+            }
+        }
+        return SftpClientFactory.instance().createSftpClient(clientSession);
+    }
+
+    /**
+     * Makes a borrowed SFTP channel available again. Channels of a replaced session are closed.
+     *
+     * @param client the borrowed channel
+     */
+    private void returnSftpClient(SftpClient client) {
+        synchronized (idleSftpClients) {
+            if (client.isOpen() && client.getClientSession() == clientSession) {
+                idleSftpClients.push(client);
+                return;
+            }
+        }
+        closeQuietly(client);
+    }
+
+    private void closeIdleSftpClients() {
+        synchronized (idleSftpClients) {
+            idleSftpClients.forEach(SshService::closeQuietly);
+            idleSftpClients.clear();
+        }
+    }
+
+    private static void closeQuietly(SftpClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            log.debug("Can't close SFTP channel", e);
+        }
+    }
+
+    /**
+     * Waits until the command finishes. On timeout the channel is closed immediately, which terminates
+     * the command on most servers.
+     *
+     * @param channel        the channel of the command
+     * @param timeoutSeconds the maximum time to wait; 0 waits forever
+     * @param output         the output of the command, used in the error message
+     * @param command        the command, used in the error message
+     * @throws TimeoutException if the command doesn't finish in time
+     */
+    private static void waitForExit(ClientChannel channel, long timeoutSeconds, CommandOutput output, String command) throws TimeoutException {
+        final Set<ClientChannelEvent> events = channel.waitFor(Collections.singleton(ClientChannelEvent.CLOSED),
+                TimeUnit.SECONDS.toMillis(timeoutSeconds));
+        if (events.contains(ClientChannelEvent.TIMEOUT)) {
+            channel.close(true);
+            throw new TimeoutException(String.format("Command `%s` didn't finish in %d s: %s",
+                    summarize(command), timeoutSeconds, output.getTail()));
+        }
+    }
+
+    /**
+     * Shortens a command for logging: multi-line commands such as checksum lists are cut after the first line.
+     *
+     * @param command the command
+     * @return the command or its first line
+     */
+    private static String summarize(String command) {
+        final int newLine = command.indexOf('\n');
+        return newLine < 0 ? command : command.substring(0, newLine) + " ...";
+    }
+
+    private static InputStream skipFully(InputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            final long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                in.close();
+                throw new IOException("Local file is shorter than " + bytes + " bytes");
+            }
+            remaining -= skipped;
+        }
+        return in;
+    }
+
+    /**
+     * Streams a local file to the temporary path of the remote file, calculating its SHA-256 on the way.
+     *
+     * @param client         the SFTP channel to use
+     * @param localFilePath  the local file
+     * @param remoteFilePath the final path of the file on the server
+     * @return the SHA-256 of the uploaded content
+     * @throws IOException if the file can't be read or written
+     */
+    private String uploadToTempFile(SftpClient client, Path localFilePath, String remoteFilePath) throws IOException {
+        final MessageDigest digest = Checksums.newSha256Digest();
+        final byte[] buffer = new byte[64 * 1024];
+        final long startTime = System.nanoTime();
+        long bytes = 0;
+
+        listener.transferStarted(remoteFilePath);
+        try (InputStream in = new DigestInputStream(Files.newInputStream(localFilePath), digest);
+             OutputStream out = client.write(tempPathOf(remoteFilePath))) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                bytes += read;
+            }
+        } finally {
+            listener.transferFinished(remoteFilePath, bytes, startTime, System.nanoTime());
+        }
+        return Checksums.toHex(digest.digest());
     }
 
     /**
-     * Establishes an SSH client session using the provided SSH connection parameters.
+     * Verifies uploaded temporary files with batched {@code sha256sum} calls on the server and renames them
+     * into place. If the files don't match, the temporary files are removed and the targets are left untouched.
+     * If the connection fails, the temporary files are kept, so that a retry can resume them.
      *
-     * @param sshConnection the connection parameters containing host, port, username, etc.
-     * @return the created {@link ClientSession} instance
-     * @throws Exception if an error occurs during session creation or authentication
+     * @param checksums the SHA-256 of the uploaded content by the final path of the file
+     * @throws ChecksumMismatchException if the uploaded files don't match
+     * @throws Exception if the verification can't be executed or a rename fails
      */
-    private ClientSession buildSshClientSession(SshConnectionParam sshConnection) throws Exception {
-        final int port = sshConnection.getPort();
-        final String host = sshConnection.getHostName();
-        final String userName = sshConnection.getUser();
-        final String identityFile = sshConnection.getIdentityFile();
-        final String passphrase = sshConnection.getPassPhrase();
-        final String password = sshConnection.getPassword();
+    private void commitTempFiles(Map<String, String> checksums) throws Exception {
+        if (checksums.isEmpty()) return;
+
+        final List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, String> entry : checksums.entrySet()) {
+            lines.add(entry.getValue() + "  " + tempPathOf(entry.getKey()));
+        }
+        try {
+            verifyChecksums("/", lines);
+        } catch (IOException | TimeoutException e) {
+            throw e;
+        } catch (Exception e) {
+            removeTempFiles(checksums.keySet());
+            throw new ChecksumMismatchException("Uploaded files don't match the local ones: " + e.getMessage(), e);
+        }
+
+        try {
+            for (String remoteFilePath : checksums.keySet()) {
+                renameAtomically(tempPathOf(remoteFilePath), remoteFilePath);
+            }
+        } catch (Exception e) {
+            // The files renamed already are in place, removing their temporary paths has no effect
+            removeTempFiles(checksums.keySet());
+            throw e;
+        }
+    }
 
-        SshClient client = SshClient.setUpDefaultClient();
-        client.setIoServiceFactoryFactory(new Nio2ServiceFactoryFactory());
-        client.setServerKeyVerifier((clientSession, remoteAddress, serverKey) -> true);
-        client.start();
-        log.info("Connecting to the server {}@{}:{}", userName, host, port);
-        ClientSession session = client.connect(userName, host, port).verify().getSession();
-        authenticateUserSession(identityFile, passphrase, password, session);
-        log.info("SSH session has been established");
-        return session;
+    /**
+     * Checks files on the server against their SHA-256 with {@code sha256sum -c}. The lines are split into
+     * as few commands as the command length allows, because a shell rejects a single huge argument.
+     *
+     * @param dir   the quoted directory the paths are relative to
+     * @param lines the {@code sha256sum} lines: checksum, two spaces and path
+     * @throws Exception if a file doesn't match or can't be read
+     */
+    private void verifyChecksums(String dir, List<String> lines) throws Exception {
+        StringBuilder batch = new StringBuilder();
+        for (String line : lines) {
+            if (batch.length() > 0 && batch.length() + line.length() > MAX_COMMAND_LENGTH) {
+                execCommand(String.format(CMD_VERIFY_TEMPLATE, dir, batch));
+                batch = new StringBuilder();
+            }
+            batch.append(line).append('\n');
+        }
+        if (batch.length() > 0) {
+            execCommand(String.format(CMD_VERIFY_TEMPLATE, dir, batch));
+        }
     }
 
     /**
-     * Authenticates the user session using either public key or password-based authentication.
+     * Replaces the target with the source file in a single step.
+     * The {@code posix-rename@openssh.com} extension is used when the server supports it, an overwriting atomic
+     * rename on SFTP v5 and later, and {@code mv -f} otherwise.
      *
-     * @param identityFile the path to the identity file for public key authentication, or null for password authentication
-     * @param passphrase the passphrase for the identity file, if applicable
-     * @param password the password for password-based authentication
-     * @param session the {@link ClientSession} to authenticate
-     * @throws Exception if authentication fails
+     * @param fromPath the path of the file to rename
+     * @param toPath   the target path, which is replaced if it exists
+     * @throws Exception if the file can't be renamed
      */
-    private void authenticateUserSession(String identityFile, String passphrase, String password, ClientSession session) throws Exception {
-        if (identityFile != null) {
-            FileKeyPairProvider keyPairProvider = new FileKeyPairProvider(Paths.get(identityFile));
-            if (passphrase != null) {
-                keyPairProvider.setPasswordFinder(FilePasswordProvider.of(passphrase));
+    private void renameAtomically(String fromPath, String toPath) throws Exception {
+        final boolean renamed = withSftpClient(client -> {
+            final OpenSSHPosixRenameExtension posixRename = client.getExtension(OpenSSHPosixRenameExtension.class);
+            if (posixRename != null && posixRename.isSupported()) {
+                posixRename.posixRename(fromPath, toPath);
+                return true;
+            } else if (client.getVersion() >= SftpConstants.SFTP_V5) {
+                client.rename(fromPath, toPath, SftpClient.CopyMode.Atomic, SftpClient.CopyMode.Overwrite);
+                return true;
             }
-            session.addPublicKeyIdentity(keyPairProvider.loadKeys(null).iterator().next());
-        } else {
-            session.addPasswordIdentity(password);
+            return false;
+        });
+        if (!renamed) {
+            execCommand("mv -f " + ShellUtils.quote(fromPath) + " " + ShellUtils.quote(toPath));
         }
-        session.auth().verify();
-        log.info("Authenticated successfully");
+    }
+
+    /**
+     * Removes the temporary files of failed uploads. Errors are only logged.
+     *
+     * @param remoteFilePaths the final paths of the files
+     */
+    private void removeTempFiles(Collection<String> remoteFilePaths) {
+        if (remoteFilePaths.isEmpty()) return;
+        final StringBuilder command = new StringBuilder("rm -f");
+        for (String remoteFilePath : remoteFilePaths) {
+            command.append(' ').append(ShellUtils.quote(tempPathOf(remoteFilePath)));
+        }
+        try {
+            execCommand(command.toString());
+        } catch (Exception e) {
+            log.warn("Couldn't remove temporary files: {}", e.getMessage());
+        }
+    }
+
+    private static String tempPathOf(String remoteFilePath) {
+        return remoteFilePath + TEMP_FILE_SUFFIX;
+    }
+
+    /**
+     * Writer of the data streamed to the standard input of a remote command.
+     */
+    @FunctionalInterface
+    public interface InputWriter {
+
+        /**
+         * Writes the data. The stream is closed by the caller.
+         *
+         * @param out the standard input of the command
+         * @return the number of bytes written
+         * @throws IOException if the data can't be written
+         */
+        long write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * SFTP requests run on a borrowed channel.
+     */
+    @FunctionalInterface
+    private interface SftpCall<R> {
+
+        R apply(SftpClient client) throws IOException;
+    }
+
+    /**
+     * Aborts the operations running on other threads, e.g. the deploy steps cancelled after another step has failed.
+     * Blocking reads of SSH channels don't react to interrupts, so the channels in use are closed immediately,
+     * which makes the blocked calls fail. Any later operation of the service fails as well. The session stays open,
+     * other servers on the same host may still be using it.
+     */
+    public void abort() {
+        aborted = true;
+        for (ClientChannel channel : activeChannels) {
+            log.warn("Closing SSH channel {} of an aborted operation", channel.getChannelId());
+            channel.close(true);
+        }
+        closeIdleSftpClients();
     }
 
     /**
@@ -273,7 +1414,11 @@ public class SshService implements AutoCloseable {
      */
     @Override
     public void close() throws Exception {
-        clientSession.close();
-        log.info("SSH session has been closed");
+        try {
+            closeIdleSftpClients();
+        } finally {
+            sessionLease.close();
+        }
+        log.info("SSH session has been released");
     }
 }
\ No newline at end of file
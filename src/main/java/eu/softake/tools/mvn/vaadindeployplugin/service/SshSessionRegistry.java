@@ -0,0 +1,379 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.SshConnectionParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.Checksums;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.config.keys.FilePasswordProvider;
+import org.apache.sshd.common.io.nio2.Nio2ServiceFactoryFactory;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide registry of authenticated SSH sessions.
+ * <p>
+ * All sessions are opened by a single shared {@link SshClient}. A session is identified by user, host, port
+ * and credentials (identity file, passphrase or password), so several servers on the same host and several deploy goals executed in the same JVM (reactor builds, mvnd)
+ * reuse one connection instead of repeating the handshake and the authentication.
+ * Sessions are leased: a session which isn't leased for longer than the idle timeout is closed, and the client
+ * itself is stopped once no sessions remain. Everything is closed when the JVM shuts down.
+ * </p>
+ */
+@Slf4j
+public final class SshSessionRegistry {
+
+    // Constants
+    public static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 300;
+    private static final long EVICTION_PERIOD_MILLIS = 5_000;
+    private static final SshSessionRegistry INSTANCE = new SshSessionRegistry();
+
+    // Data
+    private final Map<String, Entry> entries = new HashMap<>();
+    private SshClient client;
+    private ScheduledExecutorService evictor;
+    private long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_IDLE_TIMEOUT_SECONDS);
+
+    SshSessionRegistry() {
+    }
+
+    /**
+     * Returns the registry shared by the whole JVM.
+     *
+     * @return the registry
+     */
+    public static SshSessionRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets how long a session may stay unused before it's closed.
+     *
+     * @param idleTimeoutSeconds the idle timeout in seconds; 0 closes a session as soon as it's released
+     */
+    public synchronized void setIdleTimeout(long idleTimeoutSeconds) {
+        this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(0, idleTimeoutSeconds));
+    }
+
+    /**
+     * Leases an authenticated session to the server. An open session with the same user, host, port and credentials
+     * is reused, otherwise a new one is established.
+     *
+     * @param sshConnection the connection parameters
+     * @return the lease, which must be closed when the session isn't needed anymore
+     * @throws Exception if the connection or the authentication fails
+     */
+    public Lease acquire(SshConnectionParam sshConnection) throws Exception {
+        final String key = keyOf(sshConnection);
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.computeIfAbsent(key, k -> new Entry(labelOf(sshConnection)));
+            entry.leases++;
+            startClient();
+        }
+
+        try {
+            // Sessions to different hosts are established concurrently, to the same host one after another
+            synchronized (entry) {
+                final ClientSession current = getSession(entry);
+                if (current != null && current.isOpen() && current.isAuthenticated()) {
+                    log.info("Reusing SSH session to {}", entry.label);
+                    return new Lease(entry, current, false);
+                }
+                closeQuietly(current);
+
+                final ClientSession session = connect(getClient(), sshConnection);
+                synchronized (this) {
+                    entry.session = session;
+                }
+                return new Lease(entry, session, false);
+            }
+        } catch (Exception e) {
+            release(entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the session of a lease after a connection failure. The given lease is closed, but the session it shares
+     * with other leases isn't: they may still be using it. If another lease has already replaced the broken shared
+     * session, the replacement is reused. Otherwise a new session is established, which becomes the shared one if the
+     * old one has been closed, and belongs to the returned lease alone if the old one is still open.
+     *
+     * @param lease         the lease whose session has failed
+     * @param sshConnection the connection parameters
+     * @return the lease of the new session, which must be closed when the session isn't needed anymore
+     * @throws Exception if the connection or the authentication fails
+     */
+    public Lease renew(Lease lease, SshConnectionParam sshConnection) throws Exception {
+        final Entry entry = lease.entry;
+        synchronized (this) {
+            entry.leases++;
+            startClient();
+        }
+        lease.close();
+
+        try {
+            synchronized (entry) {
+                final ClientSession current = getSession(entry);
+                if (current != null && current != lease.session && current.isOpen() && current.isAuthenticated()) {
+                    log.info("Reusing SSH session to {}", entry.label);
+                    return new Lease(entry, current, false);
+                }
+
+                final ClientSession session = connect(getClient(), sshConnection);
+                synchronized (this) {
+                    if (entry.session == null || !entry.session.isOpen()) {
+                        entry.session = session;
+                        return new Lease(entry, session, false);
+                    }
+                }
+                return new Lease(entry, session, true);
+            }
+        } catch (Exception e) {
+            release(entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes all sessions and stops the client.
+     */
+    public synchronized void shutdown() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.session);
+            entry.session = null;
+        }
+        entries.clear();
+        stopClient();
+    }
+
+    /**
+     * Returns a lease to the registry.
+     */
+    private synchronized void release(Entry entry) {
+        entry.leases--;
+        entry.lastReleased = System.currentTimeMillis();
+        if (entry.leases == 0 && idleTimeoutMillis == 0) {
+            evictIdleSessions();
+        }
+    }
+
+    /**
+     * Closes the sessions which have been idle for longer than the timeout and stops the client when nothing is left.
+     */
+    private synchronized void evictIdleSessions() {
+        final long now = System.currentTimeMillis();
+        boolean inUse = false;
+
+        for (Entry entry : entries.values()) {
+            if (entry.leases > 0) {
+                inUse = true;
+            } else if (entry.session != null && now - entry.lastReleased >= idleTimeoutMillis) {
+                log.info("Closing idle SSH session to {}", entry.label);
+                closeQuietly(entry.session);
+                entry.session = null;
+            } else if (entry.session != null) {
+                inUse = true;
+            }
+        }
+        if (!inUse) {
+            entries.clear();
+            stopClient();
+        }
+    }
+
+    private synchronized ClientSession getSession(Entry entry) {
+        return entry.session;
+    }
+
+    private synchronized SshClient getClient() {
+        return client;
+    }
+
+    /**
+     * Starts the shared client and the eviction task if they aren't running.
+     */
+    private void startClient() {
+        if (client != null) return;
+
+        client = SshClient.setUpDefaultClient();
+        client.setIoServiceFactoryFactory(new Nio2ServiceFactoryFactory());
+        client.setServerKeyVerifier((clientSession, remoteAddress, serverKey) -> true);
+        client.start();
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ssh-session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdleSessions, EVICTION_PERIOD_MILLIS, EVICTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        ShutdownHook.register(this);
+    }
+
+    /**
+     * Stops the shared client and the eviction task.
+     */
+    private void stopClient() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        if (client != null) {
+            client.stop();
+            client = null;
+            log.debug("SSH client has been stopped");
+        }
+    }
+
+    /**
+     * Establishes and authenticates a new session.
+     *
+     * @param client        the shared client
+     * @param sshConnection the connection parameters
+     * @return the authenticated session
+     * @throws Exception if the connection or the authentication fails
+     */
+    private static ClientSession connect(SshClient client, SshConnectionParam sshConnection) throws Exception {
+        final String host = sshConnection.getHostName();
+        final String userName = sshConnection.getUser();
+        final int port = sshConnection.getPort();
+
+        log.info("Connecting to the server {}@{}:{}", userName, host, port);
+        final ClientSession session = client.connect(userName, host, port).verify().getSession();
+        try {
+            authenticateUserSession(sshConnection.getIdentityFile(), sshConnection.getPassPhrase(), sshConnection.getPassword(), session);
+        } catch (Exception e) {
+            closeQuietly(session);
+            throw e;
+        }
+        log.info("SSH session has been established");
+        return session;
+    }
+
+    /**
+     * Authenticates the user session using either public key or password-based authentication.
+     *
+     * @param identityFile the path to the identity file for public key authentication, or null for password authentication
+     * @param passphrase the passphrase for the identity file, if applicable
+     * @param password the password for password-based authentication
+     * @param session the {@link ClientSession} to authenticate
+     * @throws Exception if authentication fails
+     */
+    private static void authenticateUserSession(String identityFile, String passphrase, String password, ClientSession session) throws Exception {
+        if (identityFile != null) {
+            FileKeyPairProvider keyPairProvider = new FileKeyPairProvider(Paths.get(identityFile));
+            if (passphrase != null) {
+                keyPairProvider.setPasswordFinder(FilePasswordProvider.of(passphrase));
+            }
+            session.addPublicKeyIdentity(keyPairProvider.loadKeys(null).iterator().next());
+        } else {
+            session.addPasswordIdentity(password);
+        }
+        session.auth().verify();
+        log.info("Authenticated successfully");
+    }
+
+    /**
+     * Identifies the session by the login and a digest of the credentials, which keeps the secrets out of the key.
+     */
+    private static String keyOf(SshConnectionParam sshConnection) {
+        final String identityFile = sshConnection.getIdentityFile() == null ? null
+                : Paths.get(sshConnection.getIdentityFile()).toAbsolutePath().normalize().toString();
+        final MessageDigest digest = Checksums.newSha256Digest();
+        for (String credential : new String[]{identityFile, sshConnection.getPassPhrase(), sshConnection.getPassword()}) {
+            digest.update((credential == null ? "-" : "+" + credential).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return labelOf(sshConnection) + "#" + Checksums.toHex(digest.digest());
+    }
+
+    private static String labelOf(SshConnectionParam sshConnection) {
+        return sshConnection.getUser() + "@" + sshConnection.getHostName() + ":" + sshConnection.getPort();
+    }
+
+    private static void closeQuietly(ClientSession session) {
+        if (session == null) return;
+        try {
+            session.close();
+        } catch (IOException e) {
+            log.debug("Can't close SSH session", e);
+        }
+    }
+
+    /**
+     * Leased session. Closing the lease returns the session to the registry, the session itself stays open,
+     * unless it has been established by {@link #renew(Lease, SshConnectionParam)} for this lease alone.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final Entry entry;
+        private final ClientSession session;
+        private final boolean exclusive;  // The session isn't shared and is closed with the lease
+        private boolean released;
+
+        private Lease(Entry entry, ClientSession session, boolean exclusive) {
+            this.entry = entry;
+            this.session = session;
+            this.exclusive = exclusive;
+        }
+
+        /**
+         * Returns the leased session.
+         *
+         * @return the authenticated session
+         */
+        public ClientSession getSession() {
+            return session;
+        }
+
+        /**
+         * Returns the session to the registry. Repeated calls have no effect.
+         */
+        @Override
+        public synchronized void close() {
+            if (released) return;
+            released = true;
+            if (exclusive) {
+                closeQuietly(session);
+            }
+            release(entry);
+        }
+    }
+
+    /**
+     * Session to a single user, host and port with the same credentials.
+     */
+    private static final class Entry {
+        private final String label;  // Login without the credentials, for the log
+        private ClientSession session;
+        private int leases;
+        private long lastReleased;
+
+        private Entry(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Registers a single JVM shutdown hook closing the registry.
+     */
+    private static final class ShutdownHook {
+        private static boolean registered;
+
+        private static synchronized void register(SshSessionRegistry registry) {
+            if (registered) return;
+            registered = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(registry::shutdown, "ssh-session-registry-shutdown"));
+        }
+    }
+}
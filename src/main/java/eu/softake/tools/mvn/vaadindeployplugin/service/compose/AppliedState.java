@@ -0,0 +1,77 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.compose;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * State of the deployment directory which the running services have been started with, stored in the file
+ * {@value #FILE_NAME} of the deployment directory once a restart has succeeded.
+ * <p>
+ * The files on the server can't tell what is running: after a failed restart they are already new while the
+ * services still run the old ones. The next deploy therefore compares with this record instead. The file lists
+ * one {@code file <sha256> <path>} line per file and one {@code env <line>} line per line of the {@code .env} file.
+ * </p>
+ */
+@Getter
+@AllArgsConstructor
+public class AppliedState {
+
+    // Constants
+    public static final String FILE_NAME = ".vaadin-deploy.applied";
+    private static final String FILE_PREFIX = "file ";
+    private static final String ENV_PREFIX = "env ";
+
+    /** SHA-256 hashes of the files keyed by path relative to the deployment directory. */
+    private final Map<String, String> hashes;
+
+    /** Content of the {@code .env} file, or {@code null} if there is none. */
+    private final String env;
+
+    /**
+     * Parses the state file.
+     *
+     * @param content the content of the file, or {@code null} if there is none
+     * @return the state, or {@code null} if there is no file
+     */
+    public static AppliedState parse(String content) {
+        if (content == null) {
+            return null;
+        }
+        final Map<String, String> hashes = new TreeMap<>();
+        final StringBuilder env = new StringBuilder();
+        boolean hasEnv = false;
+        for (String line : content.split("\n")) {
+            if (line.startsWith(FILE_PREFIX)) {
+                final int separator = line.indexOf(' ', FILE_PREFIX.length());
+                if (separator > 0) {
+                    hashes.put(line.substring(separator + 1), line.substring(FILE_PREFIX.length(), separator));
+                }
+            } else if (line.startsWith(ENV_PREFIX)) {
+                env.append(line, ENV_PREFIX.length(), line.length()).append('\n');
+                hasEnv = true;
+            }
+        }
+        return new AppliedState(hashes, hasEnv ? env.toString() : null);
+    }
+
+    /**
+     * Formats the state file.
+     *
+     * @return the content of the file
+     */
+    public String format() {
+        final StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet()) {
+            content.append(FILE_PREFIX).append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+        }
+        if (env != null) {
+            for (String line : env.split("\r?\n")) {
+                content.append(ENV_PREFIX).append(line).append('\n');
+            }
+        }
+        return content.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.compose;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits until the containers of a Docker Compose project are ready after they have been started.
+ * <p>
+ * The state of all containers is read with a single {@code docker inspect} over the SSH session per poll.
+ * A container with a healthcheck is ready when it's {@code healthy}, one without a healthcheck when it's running
+ * or has finished. The interval between the polls starts short and grows while nothing changes, so a fast
+ * start is noticed quickly without polling a slow one every second. The time each service took to become ready
+ * is logged and reported to the listener of the SSH service. When a container becomes {@code unhealthy}
+ * or the deadline passes, the tail of the logs of the services which aren't ready is part of the exception.
+ * </p>
+ */
+@Slf4j
+public class ContainerHealthPoller {
+
+    // Constants
+    public static final String CMD_STATUS_TEMPLATE = "ids=$(docker compose %s ps -aq%s) || exit 1; [ -z \"$ids\" ] || docker inspect -f"
+            + " '{{index .Config.Labels \"com.docker.compose.service\"}} {{.State.Status}}"
+            + " {{if .State.Health}}{{.State.Health.Status}}{{else}}none{{end}} {{.State.ExitCode}}' $ids";
+    public static final String CMD_LOGS_TEMPLATE = "docker compose %s logs --no-color --tail %d%s";
+    static final long INITIAL_INTERVAL_MILLIS = 1_000;
+    static final long MAX_INTERVAL_MILLIS = 10_000;
+    private static final double BACKOFF_FACTOR = 1.5;
+    private static final int LOG_TAIL_LINES = 50;
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String composeArgs;  // Arguments selecting the project, e.g. -f 'docker-compose.yaml'
+
+    /**
+     * Constructs the poller.
+     *
+     * @param sshService  the SSH service for remote command execution
+     * @param composeArgs the arguments of {@code docker compose} selecting the project: the file, the project name, profiles
+     */
+    public ContainerHealthPoller(SshService sshService, String composeArgs) {
+        this.sshService = sshService;
+        this.composeArgs = composeArgs;
+    }
+
+    /**
+     * Polls the containers until all of them are ready.
+     *
+     * @param services       the services to wait for; all services of the project when empty
+     * @param timeoutSeconds how long the services may take to become ready
+     * @return the time each service took to become ready in milliseconds, in the order they became ready
+     * @throws MojoExecutionException if a container is unhealthy or not all services are ready before the deadline
+     * @throws Exception              if a command fails
+     */
+    public Map<String, Long> waitUntilReady(List<String> services, long timeoutSeconds) throws Exception {
+        final String serviceArgs = toArgs(services);
+        final long startNanos = System.nanoTime();
+        final long deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        final Map<String, Long> readyMillis = new LinkedHashMap<>();
+        Map<String, ServiceState> previous = Collections.emptyMap();
+        long interval = INITIAL_INTERVAL_MILLIS;
+
+        while (true) {
+            final Map<String, ServiceState> states = parseStates(
+                    sshService.execCommand(String.format(CMD_STATUS_TEMPLATE, composeArgs, serviceArgs)));
+            final long now = System.nanoTime();
+            final List<String> pending = new ArrayList<>(services);
+            for (Map.Entry<String, ServiceState> entry : states.entrySet()) {
+                final String service = entry.getKey();
+                final ServiceState state = entry.getValue();
+                if (state.getReadiness() == Readiness.FAILED) {
+                    throw failure(String.format("Service `%s` is %s", service, state.getStatus()), Collections.singletonList(service));
+                }
+                if (state.getReadiness() == Readiness.READY) {
+                    pending.remove(service);
+                    if (!readyMillis.containsKey(service)) {
+                        readyMillis.put(service, TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+                        log.info("Service {} is ready ({}) after {} ms", service, state.getStatus(), readyMillis.get(service));
+                        sshService.getListener().serviceReady(service, state.getStatus(), startNanos, now);
+                    }
+                } else if (!pending.contains(service)) {
+                    pending.add(service);
+                }
+            }
+            if (pending.isEmpty() && !states.isEmpty()) {
+                return readyMillis;
+            }
+
+            final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - now);
+            if (remainingMillis <= 0) {
+                throw failure(String.format("Services %s didn't become ready within %d s",
+                        pending.isEmpty() ? "of the project" : pending, timeoutSeconds), pending);
+            }
+            // Back off while nothing happens, poll quickly again once the containers move on
+            interval = states.equals(previous) ? nextInterval(interval) : INITIAL_INTERVAL_MILLIS;
+            previous = states;
+            log.debug("Waiting {} ms for the services {}", Math.min(interval, remainingMillis), pending);
+            TimeUnit.MILLISECONDS.sleep(Math.min(interval, remainingMillis));
+        }
+    }
+
+    /**
+     * Builds the exception of a failed wait, including the last lines of the logs of the services.
+     */
+    private MojoExecutionException failure(String message, List<String> services) {
+        String logs;
+        try {
+            logs = sshService.execCommand(String.format(CMD_LOGS_TEMPLATE, composeArgs, LOG_TAIL_LINES, toArgs(services)));
+        } catch (Exception e) {
+            logs = "Logs aren't available: " + e.getMessage();
+        }
+        log.error("{}, the last lines of the logs:\n{}", message, logs);
+        return new MojoExecutionException(message + ". The last lines of the logs:\n" + logs);
+    }
+
+    private static String toArgs(List<String> services) {
+        return services.isEmpty() ? "" : " " + String.join(" ", services);
+    }
+
+    /**
+     * Returns the interval before the next poll when nothing has changed since the last one.
+     *
+     * @param interval the current interval in milliseconds
+     * @return the longer interval, at most {@value #MAX_INTERVAL_MILLIS} ms
+     */
+    static long nextInterval(long interval) {
+        return Math.min(MAX_INTERVAL_MILLIS, (long) (interval * BACKOFF_FACTOR));
+    }
+
+    /**
+     * Parses the output of the status command: one line per container with the service, the container status,
+     * the health status and the exit code. A service with several containers gets the state of the least ready one.
+     *
+     * @param output the output of {@link #CMD_STATUS_TEMPLATE}
+     * @return the state of each service, in the order of the output
+     */
+    static Map<String, ServiceState> parseStates(String output) {
+        final Map<String, ServiceState> states = new LinkedHashMap<>();
+        for (String line : output.split("\n")) {
+            final String[] fields = line.trim().split("\\s+");
+            if (fields.length < 4) continue;
+            final ServiceState state = stateOf(fields[1], fields[2], fields[3]);
+            states.merge(fields[0], state, (a, b) -> a.getReadiness().compareTo(b.getReadiness()) >= 0 ? a : b);
+        }
+        return states;
+    }
+
+    private static ServiceState stateOf(String status, String health, String exitCode) {
+        if (!"none".equals(health)) {
+            switch (health) {
+                case "healthy":
+                    return new ServiceState(Readiness.READY, health);
+                case "unhealthy":
+                    return new ServiceState(Readiness.FAILED, health);
+                default:
+                    return new ServiceState(Readiness.WAITING, health);
+            }
+        }
+        switch (status) {
+            case "running":
+                return new ServiceState(Readiness.READY, status);
+            case "exited":
+                // One-off containers like certbot finish; their own failures don't fail the deploy
+                return new ServiceState(Readiness.READY, "0".equals(exitCode) ? status : status + " with code " + exitCode);
+            case "dead":
+                return new ServiceState(Readiness.FAILED, status);
+            default:
+                return new ServiceState(Readiness.WAITING, status);
+        }
+    }
+
+    /**
+     * Readiness of a service, from the most to the least ready.
+     */
+    enum Readiness {
+        READY, WAITING, FAILED
+    }
+
+    /**
+     * State of a service seen by a poll.
+     */
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    static class ServiceState {
+
+        /** Whether the service is ready. */
+        private final Readiness readiness;
+
+        /** The health status, or the container status if there is no healthcheck. */
+        private final String status;
+    }
+}
@@ -0,0 +1,146 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.compose;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Services of the Docker Compose project which have to be restarted because their inputs changed.
+ * <p>
+ * The plan is derived from the files of the deployment directory which differ from the server and from the
+ * changed variables of the {@code .env} file:
+ * </p>
+ * <ul>
+ *     <li>the built package and the {@code Dockerfile} rebuild {@value #APP_SERVICE}</li>
+ *     <li>{@code DB_*} variables recreate {@value #DB_SERVICE} and {@value #APP_SERVICE}, which connects with them</li>
+ *     <li>the nginx configuration restarts {@value #PROXY_SERVICE}</li>
+ *     <li>the certbot configuration is used by the next run of certbot and restarts nothing</li>
+ *     <li>the compose file, any other variable or any other file restarts the whole project</li>
+ * </ul>
+ */
+@Getter
+@AllArgsConstructor
+public class RestartPlan {
+
+    // Constants
+    public static final String DB_SERVICE = "db";
+    public static final String APP_SERVICE = "vaadin-app";
+    public static final String PROXY_SERVICE = "proxy";
+    public static final String DB_VARIABLE_PREFIX = "DB_";
+
+    /** Plan restarting the whole project, used when the impact of a change isn't known. */
+    public static final RestartPlan FULL = new RestartPlan(true, Collections.emptySet(), false);
+
+    /** Whether the whole project is taken down and started again. */
+    private final boolean full;
+
+    /** Services which are brought up again with a rebuilt image or a changed configuration, in start order. */
+    private final Set<String> services;
+
+    /** Whether the proxy is restarted, so that it reads its configuration files again. */
+    private final boolean proxyRestart;
+
+    /**
+     * Derives the plan from the changes of a deploy.
+     *
+     * @param changedPaths        paths relative to the deployment directory which are new or changed; the built
+     *                            package counts as {@code target/<file name>}
+     * @param changedEnvVariables names of the {@code .env} variables which are new, changed or removed
+     * @return the plan
+     */
+    public static RestartPlan of(Collection<String> changedPaths, Collection<String> changedEnvVariables) {
+        final Set<String> services = new LinkedHashSet<>();
+        boolean proxyRestart = false;
+
+        for (String variable : changedEnvVariables) {
+            if (!variable.startsWith(DB_VARIABLE_PREFIX)) {
+                return FULL;
+            }
+            services.add(DB_SERVICE);
+            services.add(APP_SERVICE);
+        }
+
+        for (String path : changedPaths) {
+            if (path.equals(".env") || path.startsWith("configs/certbot/")) {
+                continue;
+            }
+            if (path.equals("Dockerfile") || path.startsWith("target/")) {
+                services.add(APP_SERVICE);
+            } else if (path.startsWith("configs/nginx/")) {
+                proxyRestart = true;
+            } else {
+                return FULL;
+            }
+        }
+        return new RestartPlan(false, Collections.unmodifiableSet(services), proxyRestart);
+    }
+
+    /**
+     * Compares two versions of an {@code .env} file.
+     *
+     * @param localEnv  the content of the new file
+     * @param remoteEnv the content of the file on the server, or {@code null} if there is none
+     * @return the names of the variables which are new, changed or removed
+     */
+    public static Set<String> changedEnvVariables(String localEnv, String remoteEnv) {
+        final Map<String, String> local = parseEnv(localEnv);
+        final Map<String, String> remote = parseEnv(remoteEnv);
+        final Set<String> changed = new TreeSet<>();
+        for (Map.Entry<String, String> entry : local.entrySet()) {
+            if (!entry.getValue().equals(remote.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String name : remote.keySet()) {
+            if (!local.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    private static Map<String, String> parseEnv(String content) {
+        final Map<String, String> variables = new HashMap<>();
+        if (content == null) {
+            return variables;
+        }
+        for (String line : content.split("\r?\n")) {
+            final String trimmed = line.trim();
+            final int separator = trimmed.indexOf('=');
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || separator < 1) {
+                continue;
+            }
+            variables.put(trimmed.substring(0, separator).trim(), trimmed.substring(separator + 1).trim());
+        }
+        return variables;
+    }
+
+    /**
+     * Returns whether nothing has to be restarted.
+     *
+     * @return true if no service is affected
+     */
+    public boolean isEmpty() {
+        return !full && services.isEmpty() && !proxyRestart;
+    }
+
+    @Override
+    public String toString() {
+        if (full) {
+            return "restart of all services";
+        }
+        if (isEmpty()) {
+            return "no restart";
+        }
+        return (services.isEmpty() ? "" : "recreate " + String.join(", ", services))
+                + (services.isEmpty() || !proxyRestart ? "" : "; ")
+                + (proxyRestart ? "restart " + PROXY_SERVICE : "");
+    }
+}
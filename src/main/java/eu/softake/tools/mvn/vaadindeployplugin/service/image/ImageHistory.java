@@ -0,0 +1,92 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * History of the application images deployed to a server, stored in the file {@value #FILE_NAME} of the
+ * deployment directory: one image tag per line, from the oldest to the current image.
+ * <p>
+ * The images in the history are kept on the server, so a rollback only has to point the application service
+ * at an older tag again. A tag deployed again moves to the end instead of being listed twice.
+ * </p>
+ */
+public final class ImageHistory {
+
+    // Constants
+    public static final String FILE_NAME = ".vaadin-deploy.images";
+    private static final Pattern IMAGE_PATTERN = Pattern.compile("^\\s*image:\\s*(\\S+)\\s*$", Pattern.MULTILINE);
+
+    private ImageHistory() {
+    }
+
+    /**
+     * Parses the history file.
+     *
+     * @param content the content of the file, or {@code null} if there is none
+     * @return the tags from the oldest to the current one
+     */
+    public static List<String> parse(String content) {
+        if (content == null) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(content.split("\n")).map(String::trim).filter(tag -> !tag.isEmpty())
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Formats the history file.
+     *
+     * @param tags the tags from the oldest to the current one
+     * @return the content of the file
+     */
+    public static String format(List<String> tags) {
+        return tags.isEmpty() ? "" : String.join("\n", tags) + "\n";
+    }
+
+    /**
+     * Adds the current image to the history and drops the oldest images beyond the limit.
+     *
+     * @param history the tags from the oldest to the current one
+     * @param tag     the tag of the image deployed now
+     * @param keep    the number of images to keep, including the current one
+     * @return the new history
+     */
+    public static List<String> record(List<String> history, String tag, int keep) {
+        final List<String> tags = new ArrayList<>(history);
+        tags.remove(tag);
+        tags.add(tag);
+        return new ArrayList<>(tags.subList(Math.max(0, tags.size() - Math.max(1, keep)), tags.size()));
+    }
+
+    /**
+     * Drops the images deployed after the one rolled back to, so that it becomes the current image again.
+     *
+     * @param history the tags from the oldest to the current one
+     * @param tag     the tag rolled back to
+     * @return the new history, or an empty list if the tag isn't in the history
+     */
+    public static List<String> rollBackTo(List<String> history, String tag) {
+        final int index = history.indexOf(tag);
+        return index < 0 ? Collections.emptyList() : new ArrayList<>(history.subList(0, index + 1));
+    }
+
+    /**
+     * Reads the image a Compose override file points the application service at.
+     *
+     * @param overrideFile the content of the override file, or {@code null} if there is none
+     * @return the tag of the image, or {@code null} if the file doesn't name one
+     */
+    public static String readImage(String overrideFile) {
+        if (overrideFile == null) {
+            return null;
+        }
+        final Matcher matcher = IMAGE_PATTERN.matcher(overrideFile);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
@@ -0,0 +1,52 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.image;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Container image of the application built locally by {@link LayeredImageBuilder}: the base image it runs on,
+ * the layers with the content of the application, and the command starting it.
+ * <p>
+ * The layers are uncompressed tar files, so their digests are the diff IDs Docker uses to identify them.
+ * The configuration of the image is only completed on the server, where the base image is known.
+ * </p>
+ */
+@Getter
+@AllArgsConstructor
+public class LayeredImage {
+
+    /** The base image named by the {@code FROM} instruction of the Dockerfile. */
+    private final String baseImage;
+
+    /** The layers from the least to the most frequently changed one. */
+    private final List<Layer> layers;
+
+    /** The entrypoint of the image. */
+    private final List<String> entrypoint;
+
+    /** The ports exposed by the Dockerfile, e.g. {@code 8080/tcp}. */
+    private final List<String> exposedPorts;
+
+    /**
+     * A layer of the image.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Layer {
+
+        /** The name of the layer, e.g. {@code dependencies}. */
+        private final String name;
+
+        /** The SHA-256 digest of the tar file in the form {@code sha256:<hex>}. */
+        private final String diffId;
+
+        /** The local tar file. */
+        private final Path file;
+
+        /** The size of the tar file in bytes. */
+        private final long size;
+    }
+}
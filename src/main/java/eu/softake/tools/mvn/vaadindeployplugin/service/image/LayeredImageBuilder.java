@@ -0,0 +1,361 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.image;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.LocalFileService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.Checksums;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.TarArchiveWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the container image of the application locally, without a Docker daemon, in the way of Jib.
+ * <p>
+ * A Spring Boot JAR is extracted into the layers listed in its {@code BOOT-INF/layers.idx}, or into
+ * {@code dependencies}, {@code spring-boot-loader}, {@code snapshot-dependencies} and {@code application} if it has
+ * no index, and started with its launcher. Any other JAR becomes a single layer started with {@code java -jar}.
+ * The layers are written reproducibly: sorted entries, a fixed owner and modification time. So a layer whose
+ * content hasn't changed has the same digest as before and doesn't have to be sent to a server which has it.
+ * The image is built once, however many servers it's deployed to.
+ * </p>
+ * <p>
+ * Only the base image and the exposed ports are taken from the Dockerfile. The build fails if its final stage
+ * contains any other instruction, e.g. {@code ENV}, {@code RUN} or an {@code ENTRYPOINT} with JVM options,
+ * instead of deploying an image which silently lacks it.
+ * </p>
+ */
+@Slf4j
+public class LayeredImageBuilder {
+
+    // Constants
+    public static final String APP_DIR = "app";
+    public static final String OUTPUT_DIR_NAME = "vaadin-deploy-image";
+    static final String LAYERS_INDEX = "BOOT-INF/layers.idx";
+    static final List<String> DEFAULT_LAYERS = Arrays.asList("dependencies", "spring-boot-loader", "snapshot-dependencies", "application");
+    private static final String APPLICATION_LAYER = "application";
+    private static final String BOOT_INF_PREFIX = "BOOT-INF/";
+    private static final String LIB_PREFIX = BOOT_INF_PREFIX + "lib/";
+    private static final String LOADER_PREFIX = "org/springframework/boot/loader/";
+    private static final long MODIFICATION_TIME = 1;
+    private static final int FILE_MODE = 0644;
+    private static final String GENERATED_ENTRYPOINT = "[\"java\",\"@/" + APP_DIR + "/app.args\"]";  // Of the layered Dockerfile of `init`
+    private static final Pattern INSTRUCTION_PATTERN = Pattern.compile("^\\s*(\\w+)\\s*(.*)$", Pattern.DOTALL);
+    private static final Pattern PORT_PATTERN = Pattern.compile("^\\d+(/(tcp|udp))?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FROM_PATTERN = Pattern.compile("^\\s*FROM\\s+(?:--\\S+\\s+)*(\\S+)(?:\\s+AS\\s+(\\S+))?\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INDEX_LAYER_PATTERN = Pattern.compile("^- \"(.+)\":$");
+    private static final Pattern INDEX_ENTRY_PATTERN = Pattern.compile("^\\s+- \"(.+)\"$");
+
+    // Services
+    private final LocalFileService localFileService;
+
+    // Data
+    private final String localTargetDir;  // Directory with the built JAR; the layers are written below it
+    private final String dockerfilePath;  // Dockerfile naming the base image
+    private LayeredImage image;
+
+    /**
+     * Constructs the builder.
+     *
+     * @param localFileService the service to find the built JAR
+     * @param localTargetDir   the directory with the built JAR
+     * @param dockerfilePath   the Dockerfile whose last {@code FROM} names the base image
+     */
+    public LayeredImageBuilder(LocalFileService localFileService, String localTargetDir, String dockerfilePath) {
+        this.localFileService = localFileService;
+        this.localTargetDir = localTargetDir;
+        this.dockerfilePath = dockerfilePath;
+    }
+
+    /**
+     * Returns the image, building it on the first call.
+     *
+     * @return the image
+     * @throws IOException if the JAR or the Dockerfile can't be read or the layers can't be written
+     */
+    public synchronized LayeredImage getImage() throws IOException {
+        if (image == null) {
+            final long startTime = System.nanoTime();
+            image = build();
+            log.info("Image layers have been built in {} ms", (System.nanoTime() - startTime) / 1_000_000);
+        }
+        return image;
+    }
+
+    private LayeredImage build() throws IOException {
+        final List<File> jars = localFileService.getChildren(new File(localTargetDir), ".*\\.jar$");
+        if (jars.size() != 1) {
+            throw new IOException(String.format("Exactly one JAR is expected in `%s` to build the image, found %d", localTargetDir, jars.size()));
+        }
+        final String baseImage = readBaseImage(Paths.get(dockerfilePath));
+        final List<String> exposedPorts = validateDockerfile(Paths.get(dockerfilePath));
+        final Path outputDir = Files.createDirectories(Paths.get(localTargetDir, OUTPUT_DIR_NAME));
+
+        try (JarFile jar = new JarFile(jars.get(0))) {
+            final List<JarEntry> entries = Collections.list(jar.entries());
+            if (entries.stream().noneMatch(entry -> entry.getName().startsWith(BOOT_INF_PREFIX))) {
+                final Path layerFile = outputDir.resolve(APPLICATION_LAYER + ".tar");
+                final String diffId = writeLayer(layerFile, tar -> {
+                    try (InputStream in = Files.newInputStream(jars.get(0).toPath())) {
+                        tar.putEntry(APP_DIR + "/app.jar", jars.get(0).length(), FILE_MODE, MODIFICATION_TIME, in);
+                    }
+                });
+                return new LayeredImage(baseImage,
+                        Collections.singletonList(new LayeredImage.Layer(APPLICATION_LAYER, diffId, layerFile, Files.size(layerFile))),
+                        Arrays.asList("java", "-jar", "/" + APP_DIR + "/app.jar"), exposedPorts);
+            }
+
+            final Map<String, List<String>> index = readLayersIndex(jar);
+            final Map<String, List<JarEntry>> entriesByLayer = new LinkedHashMap<>();
+            for (String layer : index != null ? index.keySet() : DEFAULT_LAYERS) {
+                entriesByLayer.put(layer, new ArrayList<>());
+            }
+            entries.sort((a, b) -> a.getName().compareTo(b.getName()));
+            for (JarEntry entry : entries) {
+                if (!entry.isDirectory()) {
+                    entriesByLayer.computeIfAbsent(layerOf(entry.getName(), index), k -> new ArrayList<>()).add(entry);
+                }
+            }
+
+            final List<LayeredImage.Layer> layers = new ArrayList<>();
+            for (Map.Entry<String, List<JarEntry>> layer : entriesByLayer.entrySet()) {
+                if (layer.getValue().isEmpty()) continue;
+                final Path layerFile = outputDir.resolve(layer.getKey() + ".tar");
+                final String diffId = writeLayer(layerFile, tar -> {
+                    for (JarEntry entry : layer.getValue()) {
+                        try (InputStream in = jar.getInputStream(entry)) {
+                            tar.putEntry(APP_DIR + "/" + entry.getName(), entry.getSize(), FILE_MODE, MODIFICATION_TIME, in);
+                        }
+                    }
+                });
+                layers.add(new LayeredImage.Layer(layer.getKey(), diffId, layerFile, Files.size(layerFile)));
+                log.info("Image layer `{}`: {} files, {} bytes, {}", layer.getKey(), layer.getValue().size(), Files.size(layerFile), diffId);
+            }
+            final Manifest manifest = jar.getManifest();
+            final String mainClass = manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS) : null;
+            if (mainClass == null) {
+                throw new IOException(String.format("JAR `%s` has no Main-Class", jars.get(0)));
+            }
+            return new LayeredImage(baseImage, layers, Arrays.asList("java", "-cp", "/" + APP_DIR, mainClass), exposedPorts);
+        }
+    }
+
+    /**
+     * Finds the layer of a JAR entry.
+     *
+     * @param name  the name of the entry
+     * @param index the layers index of the JAR, or {@code null} to apply the default Spring Boot layers
+     * @return the name of the layer
+     */
+    static String layerOf(String name, Map<String, List<String>> index) {
+        if (index == null) {
+            if (name.startsWith(LIB_PREFIX)) {
+                return name.contains("SNAPSHOT") ? "snapshot-dependencies" : "dependencies";
+            }
+            return name.startsWith(LOADER_PREFIX) ? "spring-boot-loader" : APPLICATION_LAYER;
+        }
+        for (Map.Entry<String, List<String>> layer : index.entrySet()) {
+            for (String prefix : layer.getValue()) {
+                if (prefix.endsWith("/") ? name.startsWith(prefix) : name.equals(prefix)) {
+                    return layer.getKey();
+                }
+            }
+        }
+        return APPLICATION_LAYER;
+    }
+
+    /**
+     * Reads the Spring Boot layers index: the layers in order, each with the entries and directories it contains.
+     *
+     * @return the layers, or {@code null} if the JAR has no index
+     */
+    static Map<String, List<String>> readLayersIndex(JarFile jar) throws IOException {
+        final JarEntry entry = jar.getJarEntry(LAYERS_INDEX);
+        if (entry == null) {
+            return null;
+        }
+        final Map<String, List<String>> index = new LinkedHashMap<>();
+        List<String> current = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                final Matcher layer = INDEX_LAYER_PATTERN.matcher(line);
+                final Matcher layerEntry = INDEX_ENTRY_PATTERN.matcher(line);
+                if (layer.matches()) {
+                    current = index.computeIfAbsent(layer.group(1), k -> new ArrayList<>());
+                } else if (layerEntry.matches() && current != null) {
+                    current.add(layerEntry.group(1));
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reads the base image from the last {@code FROM} instruction of a Dockerfile.
+     *
+     * @param dockerfile the Dockerfile
+     * @return the base image
+     * @throws IOException if the Dockerfile can't be read, has no {@code FROM} or the last one refers to a build stage
+     */
+    public static String readBaseImage(Path dockerfile) throws IOException {
+        String baseImage = null;
+        final List<String> stages = new ArrayList<>();
+        for (String line : Files.readAllLines(dockerfile, StandardCharsets.UTF_8)) {
+            final Matcher matcher = FROM_PATTERN.matcher(line);
+            if (matcher.matches()) {
+                baseImage = matcher.group(1);
+                if (matcher.group(2) != null) {
+                    stages.add(matcher.group(2));
+                }
+            }
+        }
+        if (baseImage == null || stages.contains(baseImage)) {
+            throw new IOException(String.format("The base image can't be found in `%s`: its last FROM must name an image", dockerfile));
+        }
+        return baseImage;
+    }
+
+    /**
+     * Checks that the builder reproduces the final stage of a Dockerfile. Besides {@code FROM} and {@code ARG}, the stage
+     * may only copy JARs or files of an earlier build stage, set {@code /app} as the working directory, expose ports and
+     * use the entrypoint of the layered Dockerfile generated by {@code vaadin-deploy:init}.
+     *
+     * @param dockerfile the Dockerfile
+     * @return the ports exposed by the final stage, e.g. {@code 8080/tcp}
+     * @throws IOException if the Dockerfile can't be read or its final stage has instructions the builder can't reproduce
+     */
+    public static List<String> validateDockerfile(Path dockerfile) throws IOException {
+        final List<String> stages = new ArrayList<>();
+        final Map<Integer, String> finalStage = new LinkedHashMap<>();
+        final List<String> lines = Files.readAllLines(dockerfile, StandardCharsets.UTF_8);
+
+        for (int i = 0; i < lines.size(); i++) {
+            final int lineNumber = i + 1;
+            if (lines.get(i).trim().isEmpty() || lines.get(i).trim().startsWith("#")) continue;
+
+            // An instruction continues on the next line after a backslash, comments in between are skipped
+            final StringBuilder instruction = new StringBuilder(lines.get(i).trim());
+            while (instruction.length() > 0 && instruction.charAt(instruction.length() - 1) == '\\' && i + 1 < lines.size()) {
+                instruction.setLength(instruction.length() - 1);
+                final String next = lines.get(++i).trim();
+                if (!next.startsWith("#")) {
+                    instruction.append(' ').append(next);
+                }
+            }
+
+            final Matcher from = FROM_PATTERN.matcher(instruction);
+            if (from.matches()) {
+                if (from.group(2) != null) {
+                    stages.add(from.group(2));
+                }
+                finalStage.clear();
+            } else {
+                finalStage.put(lineNumber, instruction.toString());
+            }
+        }
+
+        final List<String> exposedPorts = new ArrayList<>();
+        final List<String> unsupported = new ArrayList<>();
+        for (Map.Entry<Integer, String> line : finalStage.entrySet()) {
+            if (!isReproducible(line.getValue(), stages, exposedPorts)) {
+                unsupported.add(String.format("line %d `%s`", line.getKey(), line.getValue()));
+            }
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IOException(String.format("localImageBuild can't reproduce these instructions of `%s`: %s. "
+                    + "Remove them from the final stage or disable localImageBuild", dockerfile, String.join(", ", unsupported)));
+        }
+        return exposedPorts;
+    }
+
+    /**
+     * Checks whether the builder reproduces an instruction of the final stage, collecting the exposed ports.
+     */
+    private static boolean isReproducible(String instruction, List<String> stages, List<String> exposedPorts) {
+        final Matcher matcher = INSTRUCTION_PATTERN.matcher(instruction);
+        if (!matcher.matches()) {
+            return false;
+        }
+        final String arguments = matcher.group(2).trim();
+        final List<String> tokens = arguments.isEmpty() ? Collections.emptyList() : Arrays.asList(arguments.split("\\s+"));
+
+        switch (matcher.group(1).toUpperCase(Locale.ROOT)) {
+            case "ARG":
+                return true;
+            case "WORKDIR":
+                return arguments.equals("/" + APP_DIR) || arguments.equals("/" + APP_DIR + "/");
+            case "EXPOSE":
+                for (String port : tokens) {
+                    if (!PORT_PATTERN.matcher(port).matches()) {
+                        return false;
+                    }
+                    exposedPorts.add(port.contains("/") ? port.toLowerCase(Locale.ROOT) : port + "/tcp");
+                }
+                return !tokens.isEmpty();
+            case "ENTRYPOINT":
+                return arguments.replaceAll("\\s+", "").equals(GENERATED_ENTRYPOINT);
+            case "COPY":
+            case "ADD":
+                final List<String> paths = new ArrayList<>();
+                String fromStage = null;
+                for (String token : tokens) {
+                    if (token.startsWith("--from=")) {
+                        fromStage = token.substring("--from=".length());
+                    } else if (!token.equals("--link")) {
+                        paths.add(token);
+                    }
+                }
+                if (paths.size() < 2 || paths.stream().anyMatch(path -> path.startsWith("--") || path.startsWith("["))) {
+                    return false;
+                }
+                return fromStage != null ? stages.contains(fromStage) || fromStage.matches("\\d+")
+                        : paths.subList(0, paths.size() - 1).stream().allMatch(source -> source.endsWith(".jar"));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes a layer and calculates its diff ID.
+     *
+     * @return the diff ID in the form {@code sha256:<hex>}
+     */
+    private static String writeLayer(Path layerFile, LayerContent content) throws IOException {
+        final MessageDigest digest = Checksums.newSha256Digest();
+        try (TarArchiveWriter tar = new TarArchiveWriter(new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(layerFile), 64 * 1024), digest))) {
+            content.write(tar);
+        }
+        return "sha256:" + Checksums.toHex(digest.digest());
+    }
+
+    /**
+     * Content of a layer.
+     */
+    @FunctionalInterface
+    private interface LayerContent {
+        void write(TarArchiveWriter tar) throws IOException;
+    }
+}
@@ -0,0 +1,259 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between a new local file and an old remote file described by its {@link BlockSignature}.
+ * <p>
+ * The new file is scanned with a {@link RollingChecksum}. Every window whose weak checksum and strong hash match
+ * a block of the old file becomes a copy instruction, everything in between is sent as literal data.
+ * The server rebuilds the new file from the old file and the literals with the script rendered by
+ * {@link #toShellScript(String, String, String)}.
+ * </p>
+ */
+@Getter
+public class BlockDelta {
+
+    // Constants
+    private static final int TAG_TABLE_SIZE = 1 << 16;
+
+    /** Block size of the signature the delta was computed against. */
+    private final int blockSize;
+
+    /** Instructions to rebuild the new file, in file order. */
+    private final List<Instruction> instructions;
+
+    /** Total number of literal bytes which have to be sent. */
+    private final long literalBytes;
+
+    /** Length of the new file. */
+    private final long fileLength;
+
+    private BlockDelta(int blockSize, List<Instruction> instructions, long literalBytes, long fileLength) {
+        this.blockSize = blockSize;
+        this.instructions = Collections.unmodifiableList(instructions);
+        this.literalBytes = literalBytes;
+        this.fileLength = fileLength;
+    }
+
+    /**
+     * Computes the delta of a new file against the signature of the old one.
+     *
+     * @param newFile   the new local file
+     * @param signature the signature of the old remote file
+     * @return the delta
+     * @throws IOException if the new file can't be read
+     */
+    public static BlockDelta compute(Path newFile, BlockSignature signature) throws IOException {
+        final int blockSize = signature.getBlockSize();
+        final Map<Integer, List<Integer>> blocksByWeak = new HashMap<>();
+        final boolean[] tags = new boolean[TAG_TABLE_SIZE];
+
+        // Index full blocks only: a short last block can't be found at an arbitrary offset
+        final List<BlockSignature.Block> blocks = signature.getBlocks();
+        for (int i = 0; i < blocks.size(); i++) {
+            if ((long) (i + 1) * blockSize > signature.getFileLength()) break;
+            final int weak = blocks.get(i).getWeak();
+            blocksByWeak.computeIfAbsent(weak, k -> new ArrayList<>()).add(i);
+            tags[tag(weak)] = true;
+        }
+
+        try (FileChannel channel = FileChannel.open(newFile, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large for delta transfer: " + newFile);
+            }
+            final MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return scan(data, (int) size, signature, blocksByWeak, tags);
+        }
+    }
+
+    /**
+     * Writes the literal data of the delta in instruction order.
+     *
+     * @param newFile      the new local file the delta was computed for
+     * @param outputStream the stream to write the literals to; it isn't closed by this method
+     * @throws IOException if the file can't be read or the stream can't be written
+     */
+    public void writeLiterals(Path newFile, OutputStream outputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(newFile, StandardOpenOption.READ)) {
+            final MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final byte[] buffer = new byte[64 * 1024];
+
+            for (Instruction instruction : instructions) {
+                if (instruction.getType() != InstructionType.LITERAL) continue;
+                int position = (int) instruction.getSourceOffset();
+                long remaining = instruction.getLength();
+                while (remaining > 0) {
+                    final int chunk = (int) Math.min(buffer.length, remaining);
+                    data.position(position);
+                    data.get(buffer, 0, chunk);
+                    outputStream.write(buffer, 0, chunk);
+                    position += chunk;
+                    remaining -= chunk;
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders a POSIX shell script which rebuilds the new file on the server.
+     * It relies on GNU {@code dd} for byte-precise reads of the literals file.
+     *
+     * @param oldFilePath  the path to the old file on the server
+     * @param literalsPath the path to the uploaded literals on the server
+     * @param targetPath   the path to write the rebuilt file to
+     * @return the script
+     */
+    public String toShellScript(String oldFilePath, String literalsPath, String targetPath) {
+        final StringBuilder script = new StringBuilder("set -e\n{\n");
+        final String oldFile = ShellUtils.quote(oldFilePath);
+        final String literals = ShellUtils.quote(literalsPath);
+        long literalsOffset = 0;
+
+        for (Instruction instruction : instructions) {
+            if (instruction.getType() == InstructionType.COPY) {
+                script.append(String.format("dd if=%s bs=%d skip=%d count=%d 2>/dev/null%n",
+                        oldFile, blockSize, instruction.getSourceOffset(), instruction.getLength()));
+            } else {
+                script.append(String.format("dd if=%s bs=%d iflag=skip_bytes,count_bytes skip=%d count=%d 2>/dev/null%n",
+                        literals, blockSize, literalsOffset, instruction.getLength()));
+                literalsOffset += instruction.getLength();
+            }
+        }
+        return script.append("} > ").append(ShellUtils.quote(targetPath)).append('\n').toString();
+    }
+
+    /**
+     * Scans the new file and produces the instructions.
+     */
+    private static BlockDelta scan(MappedByteBuffer data, int length, BlockSignature signature,
+                                   Map<Integer, List<Integer>> blocksByWeak, boolean[] tags) {
+        final int blockSize = signature.getBlockSize();
+        final List<Instruction> instructions = new ArrayList<>();
+        final RollingChecksum checksum = new RollingChecksum(blockSize);
+        final byte[] window = new byte[blockSize];
+        long literalBytes = 0;
+        int literalStart = 0;
+        int position = 0;
+
+        if (length >= blockSize && !blocksByWeak.isEmpty()) {
+            resetWindow(data, position, window, checksum);
+
+            while (true) {
+                final int weak = checksum.getValue();
+                final int matchedBlock = tags[tag(weak)] ? findBlock(data, position, window, weak, signature, blocksByWeak) : -1;
+
+                if (matchedBlock >= 0) {
+                    literalBytes += addLiteral(instructions, literalStart, position);
+                    addCopy(instructions, matchedBlock);
+                    position += blockSize;
+                    literalStart = position;
+                    if (position + blockSize > length) break;
+                    resetWindow(data, position, window, checksum);
+                } else {
+                    if (position + blockSize >= length) break;
+                    checksum.roll(data.get(position), data.get(position + blockSize));
+                    position++;
+                }
+            }
+        }
+
+        literalBytes += addLiteral(instructions, literalStart, length);
+        return new BlockDelta(blockSize, instructions, literalBytes, length);
+    }
+
+    /**
+     * Confirms a weak checksum match with the strong hash.
+     *
+     * @return the index of the matching block, or -1 if there is none
+     */
+    private static int findBlock(MappedByteBuffer data, int position, byte[] window, int weak,
+                                 BlockSignature signature, Map<Integer, List<Integer>> blocksByWeak) {
+        final List<Integer> candidates = blocksByWeak.get(weak);
+        if (candidates == null) return -1;
+
+        data.position(position);
+        data.get(window, 0, window.length);
+        final String strong = BlockSignature.strongHash(window, 0, window.length);
+
+        for (int candidate : candidates) {
+            if (strong.equals(signature.getBlocks().get(candidate).getStrong())) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private static void resetWindow(MappedByteBuffer data, int position, byte[] window, RollingChecksum checksum) {
+        data.position(position);
+        data.get(window, 0, window.length);
+        checksum.reset(window, 0);
+    }
+
+    private static long addLiteral(List<Instruction> instructions, int from, int to) {
+        if (to <= from) return 0;
+        final Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+        if (last != null && last.getType() == InstructionType.LITERAL && last.getSourceOffset() + last.getLength() == from) {
+            instructions.set(instructions.size() - 1, new Instruction(InstructionType.LITERAL, last.getSourceOffset(), last.getLength() + to - from));
+        } else {
+            instructions.add(new Instruction(InstructionType.LITERAL, from, to - from));
+        }
+        return to - from;
+    }
+
+    private static void addCopy(List<Instruction> instructions, int block) {
+        final Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+        if (last != null && last.getType() == InstructionType.COPY && last.getSourceOffset() + last.getLength() == block) {
+            // Extend the range of consecutive blocks
+            instructions.set(instructions.size() - 1, new Instruction(InstructionType.COPY, last.getSourceOffset(), last.getLength() + 1));
+        } else {
+            instructions.add(new Instruction(InstructionType.COPY, block, 1));
+        }
+    }
+
+    private static int tag(int weak) {
+        return ((weak >>> 16) ^ weak) & (TAG_TABLE_SIZE - 1);
+    }
+
+    /**
+     * Type of a delta instruction.
+     */
+    public enum InstructionType {
+        /** Copy a range of blocks from the old file. */
+        COPY,
+        /** Take a range of bytes from the literal data. */
+        LITERAL
+    }
+
+    /**
+     * Single step of rebuilding the new file.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Instruction {
+
+        /** Type of the instruction. */
+        private final InstructionType type;
+
+        /** First block of the old file for {@code COPY}, offset in the new file for {@code LITERAL}. */
+        private final long sourceOffset;
+
+        /** Number of blocks for {@code COPY}, number of bytes for {@code LITERAL}. */
+        private final long length;
+    }
+}
@@ -0,0 +1,168 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Block signature of a file: the weak rolling checksum and a strong hash of every fixed-size block,
+ * plus the length and SHA-256 of the whole file.
+ * <p>
+ * The signature is calculated locally when a file is uploaded and kept on the server next to it.
+ * On the next upload it describes the remote file without downloading it, so that only the blocks
+ * which aren't found in the old file have to be sent.
+ * </p>
+ */
+@Getter
+@AllArgsConstructor
+public class BlockSignature {
+
+    /** Default block size in bytes. */
+    public static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+
+    // Constants
+    private static final String HEADER = "vaadin-deploy-signature";
+
+    /** Name of the file described by the signature. */
+    private final String fileName;
+
+    /** Size of a block in bytes. Only the last block may be shorter. */
+    private final int blockSize;
+
+    /** Length of the whole file in bytes. */
+    private final long fileLength;
+
+    /** SHA-256 of the whole file. */
+    private final String fileSha256;
+
+    /** Signatures of the blocks in file order. */
+    private final List<Block> blocks;
+
+    /**
+     * Calculates the signature of a file.
+     *
+     * @param file      the file to describe
+     * @param blockSize the size of a block in bytes
+     * @return the signature
+     * @throws IOException if the file can't be read
+     */
+    public static BlockSignature of(Path file, int blockSize) throws IOException {
+        final MessageDigest fileDigest = Checksums.newSha256Digest();
+        final List<Block> blocks = new ArrayList<>();
+        final byte[] buffer = new byte[blockSize];
+        long fileLength = 0;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = readBlock(in, buffer)) > 0) {
+                fileDigest.update(buffer, 0, read);
+                blocks.add(new Block(RollingChecksum.of(buffer, 0, read), strongHash(buffer, 0, read)));
+                fileLength += read;
+            }
+        }
+        return new BlockSignature(file.getFileName().toString(), blockSize, fileLength,
+                Checksums.toHex(fileDigest.digest()), Collections.unmodifiableList(blocks));
+    }
+
+    /**
+     * Reads a signature previously written with {@link #write(OutputStream)}.
+     *
+     * @param inputStream the stream to read from; it isn't closed by this method
+     * @return the parsed signature
+     * @throws IOException if the stream can't be read or has a wrong format
+     */
+    public static BlockSignature read(InputStream inputStream) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        final String header = reader.readLine();
+        final String[] headerParts = header != null ? header.split(" ", 5) : new String[0];
+
+        if (headerParts.length != 5 || !HEADER.equals(headerParts[0])) {
+            throw new IOException("Malformed block signature header: `" + header + "`");
+        }
+
+        final List<Block> blocks = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            final String[] parts = line.split(" ");
+            blocks.add(new Block((int) Long.parseLong(parts[0], 16), parts[1]));
+        }
+        return new BlockSignature(headerParts[4], Integer.parseInt(headerParts[1]), Long.parseLong(headerParts[2]),
+                headerParts[3], Collections.unmodifiableList(blocks));
+    }
+
+    /**
+     * Writes the signature in its textual format.
+     *
+     * @param outputStream the stream to write to; it isn't closed by this method
+     * @throws IOException if the stream can't be written
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        final Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        writer.write(HEADER + " " + blockSize + " " + fileLength + " " + fileSha256 + " " + fileName + "\n");
+        for (Block block : blocks) {
+            writer.write(Integer.toHexString(block.getWeak()) + " " + block.getStrong() + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Calculates the strong hash of a block: the first 128 bits of its SHA-256.
+     *
+     * @param data   the data buffer
+     * @param offset the offset of the block in the buffer
+     * @param length the length of the block
+     * @return the strong hash as a hex string
+     */
+    static String strongHash(byte[] data, int offset, int length) {
+        final MessageDigest digest = Checksums.newSha256Digest();
+        digest.update(data, offset, length);
+        return Checksums.toHex(digest.digest()).substring(0, 32);
+    }
+
+    /**
+     * Reads as many bytes as possible into the buffer.
+     *
+     * @param in     the stream to read from
+     * @param buffer the buffer to fill
+     * @return the number of bytes read; 0 at the end of the stream
+     * @throws IOException if the stream can't be read
+     */
+    private static int readBlock(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            final int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Signature of a single block.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Block {
+
+        /** Weak rolling checksum of the block. */
+        private final int weak;
+
+        /** Strong hash of the block. */
+        private final String strong;
+    }
+}
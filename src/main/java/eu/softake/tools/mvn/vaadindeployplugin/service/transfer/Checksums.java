@@ -0,0 +1,67 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility methods for calculating SHA-256 checksums of local files.
+ * <p>
+ * The hashes are rendered as lowercase hex strings, the same way {@code sha256sum} prints them on the server,
+ * so local and remote values can be compared directly.
+ * </p>
+ */
+public final class Checksums {
+
+    private Checksums() {
+    }
+
+    /**
+     * Calculates the SHA-256 hash of a file.
+     *
+     * @param file the file to hash
+     * @return the hash as a lowercase hex string
+     * @throws IOException if the file can't be read
+     */
+    public static String sha256(Path file) throws IOException {
+        final MessageDigest digest = newSha256Digest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            final byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer) != -1) {
+                // Digest is updated while reading
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a new SHA-256 message digest.
+     *
+     * @return the message digest
+     */
+    public static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+        }
+    }
+
+    /**
+     * Converts bytes to a lowercase hex string.
+     *
+     * @param bytes the bytes to convert
+     * @return the hex string
+     */
+    public static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
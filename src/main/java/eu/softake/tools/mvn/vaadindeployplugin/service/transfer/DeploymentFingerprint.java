@@ -0,0 +1,64 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Combined SHA-256 fingerprint of everything a deploy puts on a server: the deployment tree generated for
+ * the domain, the built artifacts and the options which decide how they are deployed.
+ * <p>
+ * The fingerprint is stored on the server after a successful deploy. If the next deploy computes the same
+ * fingerprint, nothing has changed and the deploy can be skipped. It covers relative paths, sizes and contents,
+ * so renaming, adding or removing a file changes it as well, and so does switching e.g. the deployment strategy.
+ * </p>
+ */
+public final class DeploymentFingerprint {
+
+    /** Name of the fingerprint file kept in the remote deploy directory. */
+    public static final String FILE_NAME = ".vaadin-deploy.fingerprint";
+
+    private DeploymentFingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of a deployment.
+     *
+     * @param deploymentDir the local deployment tree of the domain; a missing directory counts as empty
+     * @param artifacts     the built artifacts which are uploaded; only their names and contents count
+     * @param options       the effective deploy options and server paths by name; the order doesn't count
+     * @return the fingerprint as a lowercase hex string
+     * @throws IOException if a file can't be read
+     */
+    public static String compute(Path deploymentDir, List<File> artifacts, Map<String, String> options) throws IOException {
+        final MessageDigest digest = Checksums.newSha256Digest();
+
+        if (Files.isDirectory(deploymentDir)) {
+            for (DeploymentManifest.Entry entry : DeploymentManifest.build(deploymentDir).getEntries()) {
+                update(digest, "deployment", entry.getPath(), entry.getSize(), entry.getSha256());
+            }
+        }
+        final List<File> sortedArtifacts = artifacts.stream()
+                .sorted(Comparator.comparing(File::getName))
+                .collect(Collectors.toList());
+        for (File artifact : sortedArtifacts) {
+            update(digest, "artifact", artifact.getName(), artifact.length(), Checksums.sha256(artifact.toPath()));
+        }
+        for (Map.Entry<String, String> option : new TreeMap<>(options).entrySet()) {
+            digest.update(("option " + option.getKey() + "=" + option.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return Checksums.toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String kind, String path, long size, String sha256) {
+        digest.update((kind + " " + sha256 + " " + size + " " + path + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
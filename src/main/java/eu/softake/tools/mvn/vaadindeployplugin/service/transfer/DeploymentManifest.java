@@ -0,0 +1,255 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Describes the content of a directory tree as a list of relative paths with their size and SHA-256 hash.
+ * <p>
+ * A manifest is built for the local deployment directory and compared with the manifest stored on the server
+ * during the previous deploy. The difference tells which files have to be uploaded and which ones became stale.
+ * The stored manifest also records the size and the modification time the files had on the server after the upload,
+ * so that files changed or removed on the server since then are uploaded again.
+ * The textual format is a {@value #HEADER} line followed by one line per file:
+ * {@code <sha256> <size> <remote mtime> <relative path>}. Manifests without the header have no modification times.
+ * </p>
+ */
+public class DeploymentManifest {
+
+    /** Name of the manifest file kept in the remote directory. */
+    public static final String FILE_NAME = ".vaadin-deploy.manifest";
+
+    /** First line of the manifests which record the remote modification times. */
+    public static final String HEADER = "# vaadin-deploy manifest v2";
+
+    /** Modification time of a file which hasn't been seen on the server. */
+    public static final long UNKNOWN_MODIFIED = -1;
+
+    // Entries sorted by relative path
+    private final Map<String, Entry> entries;
+
+    /**
+     * Constructs a manifest from the given entries.
+     *
+     * @param entries the entries keyed by relative path
+     */
+    public DeploymentManifest(Map<String, Entry> entries) {
+        this.entries = Collections.unmodifiableMap(new TreeMap<>(entries));
+    }
+
+    /**
+     * Builds a manifest of all regular files inside the given directory.
+     *
+     * @param dir the root directory
+     * @return the manifest describing the directory
+     * @throws IOException if a file can't be read
+     */
+    public static DeploymentManifest build(Path dir) throws IOException {
+        final Map<String, Entry> entries = new TreeMap<>();
+        final List<Path> files;
+
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            final String relativePath = dir.relativize(file).toString().replace("\\", "/");
+            entries.put(relativePath, new Entry(relativePath, Files.size(file), Checksums.sha256(file), UNKNOWN_MODIFIED));
+        }
+        return new DeploymentManifest(entries);
+    }
+
+    /**
+     * Reads a manifest previously written with {@link #write(OutputStream)}.
+     *
+     * @param inputStream the stream to read from; it isn't closed by this method
+     * @return the parsed manifest
+     * @throws IOException if the stream can't be read or has a wrong format
+     */
+    public static DeploymentManifest read(InputStream inputStream) throws IOException {
+        final Map<String, Entry> entries = new TreeMap<>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+
+        String line = reader.readLine();
+        final boolean withModified = HEADER.equals(line);
+        if (withModified) {
+            line = reader.readLine();
+        }
+        for (; line != null; line = reader.readLine()) {
+            if (line.trim().isEmpty()) continue;
+            final String[] parts = line.split(" ", withModified ? 4 : 3);
+            if (parts.length != (withModified ? 4 : 3)) {
+                throw new IOException("Malformed manifest line: `" + line + "`");
+            }
+            try {
+                final String path = parts[parts.length - 1];
+                final long modified = withModified ? Long.parseLong(parts[2]) : UNKNOWN_MODIFIED;
+                entries.put(path, new Entry(path, Long.parseLong(parts[1]), parts[0], modified));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed manifest line: `" + line + "`", e);
+            }
+        }
+        return new DeploymentManifest(entries);
+    }
+
+    /**
+     * Writes the manifest in its textual format.
+     *
+     * @param outputStream the stream to write to; it isn't closed by this method
+     * @throws IOException if the stream can't be written
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        final Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        writer.write(HEADER + "\n");
+        for (Entry entry : entries.values()) {
+            writer.write(entry.getSha256() + " " + entry.getSize() + " " + entry.getModified() + " " + entry.getPath() + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Compares the content of this (local) manifest with the manifest of the previous deploy,
+     * without checking the files on the server.
+     *
+     * @param previous the manifest stored on the server, or {@code null} if there is none
+     * @return the difference between the two manifests
+     */
+    public Diff diff(DeploymentManifest previous) {
+        return diff(previous, null);
+    }
+
+    /**
+     * Compares this (local) manifest with the manifest of the previous deploy and the files currently on the server.
+     * A file is unchanged only if its content matches the previous manifest and the file on the server still has
+     * the size and the modification time recorded after the previous upload.
+     *
+     * @param previous    the manifest stored on the server, or {@code null} if there is none
+     * @param remoteFiles the files on the server keyed by relative path, or {@code null} to compare the content only
+     * @return the difference between the local files and the server
+     */
+    public Diff diff(DeploymentManifest previous, Map<String, RemoteFile> remoteFiles) {
+        final List<Entry> changed = new ArrayList<>();
+        final List<String> stale = new ArrayList<>();
+        final Map<String, Entry> previousEntries = previous != null ? previous.entries : Collections.emptyMap();
+
+        for (Entry entry : entries.values()) {
+            final Entry previousEntry = previousEntries.get(entry.getPath());
+            if (!entry.equals(previousEntry)
+                    || remoteFiles != null && !previousEntry.isUploadedAs(remoteFiles.get(entry.getPath()))) {
+                changed.add(entry);
+            }
+        }
+        for (String path : previousEntries.keySet()) {
+            if (!entries.containsKey(path)) {
+                stale.add(path);
+            }
+        }
+        return new Diff(changed, stale);
+    }
+
+    /**
+     * Returns a copy of this manifest recording the size and the modification time of the uploaded files on the server.
+     *
+     * @param remoteFiles the files on the server keyed by relative path
+     * @return the manifest to be stored on the server
+     */
+    public DeploymentManifest withRemoteFiles(Map<String, RemoteFile> remoteFiles) {
+        final Map<String, Entry> uploaded = new TreeMap<>();
+        for (Entry entry : entries.values()) {
+            final RemoteFile remoteFile = remoteFiles.get(entry.getPath());
+            final long modified = remoteFile != null && remoteFile.getSize() == entry.getSize()
+                    ? remoteFile.getModified() : UNKNOWN_MODIFIED;
+            uploaded.put(entry.getPath(), new Entry(entry.getPath(), entry.getSize(), entry.getSha256(), modified));
+        }
+        return new DeploymentManifest(uploaded);
+    }
+
+    /**
+     * Returns the manifest entries.
+     *
+     * @return the entries sorted by relative path
+     */
+    public List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * A single file of the manifest. Entries are equal if they describe the same content.
+     */
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    public static class Entry {
+
+        /** Path relative to the manifest root, always with '/' as separator. */
+        private final String path;
+
+        /** Size of the file in bytes. */
+        private final long size;
+
+        /** SHA-256 hash of the file content. */
+        private final String sha256;
+
+        /** Modification time of the uploaded file on the server in epoch seconds, or {@link DeploymentManifest#UNKNOWN_MODIFIED}. */
+        @EqualsAndHashCode.Exclude
+        private final long modified;
+
+        /**
+         * Checks whether the file on the server is still the one uploaded for this entry.
+         *
+         * @param remoteFile the file on the server, or {@code null} if it doesn't exist
+         * @return true if the file has the recorded size and modification time
+         */
+        private boolean isUploadedAs(RemoteFile remoteFile) {
+            return remoteFile != null && modified != UNKNOWN_MODIFIED
+                    && remoteFile.getSize() == size && remoteFile.getModified() == modified;
+        }
+    }
+
+    /**
+     * Size and modification time of a file on the server.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class RemoteFile {
+
+        /** Size of the file in bytes. */
+        private final long size;
+
+        /** Modification time in epoch seconds. */
+        private final long modified;
+    }
+
+    /**
+     * Difference between a local manifest and the manifest of the previous deploy.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Diff {
+
+        /** Files which are new or whose content has changed. */
+        private final List<Entry> changed;
+
+        /** Relative paths of files which were deployed before but don't exist locally anymore. */
+        private final List<String> stale;
+    }
+}
@@ -0,0 +1,189 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads files over a bounded pool of SFTP channels multiplexed on a single SSH session.
+ * <p>
+ * Files are scheduled largest first, so that big files start early and small ones fill the gaps at the end.
+ * A failed file doesn't stop the others: all failures are collected and reported together once every file
+ * has been processed.
+ * </p>
+ */
+@Slf4j
+public class ParallelSftpUploader {
+
+    // Constants
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    // Data
+    private final ClientSession clientSession;
+    private final int concurrency;
+    private final UploadAction uploadAction;
+
+    /**
+     * Constructs an uploader.
+     *
+     * @param clientSession the authenticated session to open the SFTP channels on
+     * @param concurrency   the maximum number of channels used at the same time
+     * @param uploadAction  the action uploading a single file over a channel
+     */
+    public ParallelSftpUploader(ClientSession clientSession, int concurrency, UploadAction uploadAction) {
+        this.clientSession = clientSession;
+        this.concurrency = Math.max(1, concurrency);
+        this.uploadAction = uploadAction;
+    }
+
+    /**
+     * Uploads all the given files.
+     *
+     * @param tasks the files to upload
+     * @throws IOException if any of the files couldn't be uploaded; the failures of other files are suppressed
+     * @throws InterruptedException if the thread is interrupted while waiting for the uploads
+     */
+    public void upload(List<UploadTask> tasks) throws IOException, InterruptedException {
+        if (tasks.isEmpty()) return;
+
+        final List<UploadTask> sortedTasks = new ArrayList<>(tasks);
+        sortedTasks.sort(Comparator.comparingLong(UploadTask::getSize).reversed());
+
+        final int channels = Math.min(concurrency, sortedTasks.size());
+        final BlockingQueue<SftpClient> clients = new ArrayBlockingQueue<>(channels);
+        final List<SftpClient> openedClients = new ArrayList<>();
+        final List<Failure> failures = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(channels, newThreadFactory());
+
+        try {
+            for (int i = 0; i < channels; i++) {
+                final SftpClient client = SftpClientFactory.instance().createSftpClient(clientSession);
+                openedClients.add(client);
+                clients.add(client);
+            }
+
+            final List<Future<?>> futures = new ArrayList<>();
+            for (UploadTask task : sortedTasks) {
+                futures.add(executor.submit(() -> {
+                    final SftpClient client = clients.take();
+                    try {
+                        uploadAction.upload(client, task);
+                    } catch (Exception e) {
+                        log.error("Failed to upload `{}`: {}", task.getLocalFile(), e.getMessage());
+                        synchronized (failures) {
+                            failures.add(new Failure(task, e));
+                        }
+                    } finally {
+                        clients.put(client);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Upload has been interrupted", e.getCause());
+                }
+            }
+        } finally {
+            // Closing the channels in use as well stops the uploads when the thread has been interrupted
+            executor.shutdownNow();
+            for (SftpClient client : openedClients) {
+                closeQuietly(client);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            final IOException exception = new IOException(String.format("Failed to upload %d of %d files: %s",
+                    failures.size(), sortedTasks.size(), describe(failures)));
+            failures.forEach(failure -> exception.addSuppressed(failure.getCause()));
+            throw exception;
+        }
+    }
+
+    private static String describe(List<Failure> failures) {
+        final StringBuilder sb = new StringBuilder();
+        for (Failure failure : failures) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append('`').append(failure.getTask().getLocalFile()).append("` (").append(failure.getCause().getMessage()).append(')');
+        }
+        return sb.toString();
+    }
+
+    private static void closeQuietly(SftpClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            log.debug("Can't close SFTP channel", e);
+        }
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "sftp-upload-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Uploads a single file over the given SFTP channel.
+     */
+    @FunctionalInterface
+    public interface UploadAction {
+
+        /**
+         * Uploads a file.
+         *
+         * @param sftpClient the channel to use
+         * @param task       the file to upload
+         * @throws Exception if the file can't be uploaded
+         */
+        void upload(SftpClient sftpClient, UploadTask task) throws Exception;
+    }
+
+    /**
+     * A file to upload.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class UploadTask {
+
+        /** The local file. */
+        private final Path localFile;
+
+        /** The full path of the file on the server. */
+        private final String remoteFilePath;
+
+        /** Size of the file in bytes, used for scheduling. */
+        private final long size;
+    }
+
+    /**
+     * A failed upload.
+     */
+    @Getter
+    @AllArgsConstructor
+    private static class Failure {
+        private final UploadTask task;
+        private final Exception cause;
+    }
+}
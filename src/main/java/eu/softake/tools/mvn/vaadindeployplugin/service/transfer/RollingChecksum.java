@@ -0,0 +1,82 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+/**
+ * Weak rolling checksum used to find blocks of an old file inside a new one (the rsync algorithm).
+ * <p>
+ * The checksum of a window can be updated in constant time when the window slides by one byte,
+ * which makes it cheap to test every offset of the new file against the block signatures of the old file.
+ * Candidates found by the weak checksum are then confirmed with a strong hash.
+ * </p>
+ */
+public class RollingChecksum {
+
+    // Constants
+    private static final int MASK = 0xFFFF;
+
+    // State
+    private final int windowSize;
+    private int a;
+    private int b;
+
+    /**
+     * Constructs a checksum for windows of the given size.
+     *
+     * @param windowSize the number of bytes in the window
+     */
+    public RollingChecksum(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Calculates the checksum of a whole block at once.
+     *
+     * @param data   the data buffer
+     * @param offset the offset of the block in the buffer
+     * @param length the length of the block
+     * @return the weak checksum of the block
+     */
+    public static int of(byte[] data, int offset, int length) {
+        final RollingChecksum checksum = new RollingChecksum(length);
+        checksum.reset(data, offset);
+        return checksum.getValue();
+    }
+
+    /**
+     * Recalculates the checksum for the window starting at the given offset.
+     *
+     * @param data   the data buffer
+     * @param offset the first byte of the window
+     */
+    public void reset(byte[] data, int offset) {
+        a = 0;
+        b = 0;
+        for (int i = 0; i < windowSize; i++) {
+            final int value = data[offset + i] & 0xFF;
+            a += value;
+            b += (windowSize - i) * value;
+        }
+        a &= MASK;
+        b &= MASK;
+    }
+
+    /**
+     * Slides the window by one byte.
+     *
+     * @param outByte the byte leaving the window
+     * @param inByte  the byte entering the window
+     */
+    public void roll(byte outByte, byte inByte) {
+        final int out = outByte & 0xFF;
+        a = (a - out + (inByte & 0xFF)) & MASK;
+        b = (b - windowSize * out + a) & MASK;
+    }
+
+    /**
+     * Returns the checksum of the current window.
+     *
+     * @return the 32-bit weak checksum
+     */
+    public int getValue() {
+        return (b << 16) | a;
+    }
+}
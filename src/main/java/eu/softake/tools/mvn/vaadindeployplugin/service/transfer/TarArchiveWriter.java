@@ -0,0 +1,206 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * Minimal streaming writer of POSIX (ustar) tar archives containing regular files only.
+ * <p>
+ * Entries are written straight to the underlying stream, so an archive of any size can be piped to the server
+ * without a temporary file. Names which don't fit into the ustar name and prefix fields are written with
+ * a GNU long name entry, which is understood by GNU tar and BusyBox.
+ * </p>
+ */
+public class TarArchiveWriter implements Closeable {
+
+    // Constants
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_GNU_LONG_NAME = 'L';
+    private static final int DEFAULT_FILE_MODE = 0644;
+    private static final int DEFAULT_EXECUTABLE_MODE = 0755;
+
+    // Data
+    private final OutputStream out;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    /**
+     * Constructs a writer.
+     *
+     * @param out the stream to write the archive to
+     */
+    public TarArchiveWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Adds a local file to the archive, keeping its permissions and modification time.
+     *
+     * @param name the name of the entry, relative to the extraction directory
+     * @param file the local file
+     * @param in   the content of the file; it must provide exactly the current size of the file
+     * @throws IOException if the file can't be read or the archive can't be written
+     */
+    public void putFile(String name, Path file, InputStream in) throws IOException {
+        final long size = Files.size(file);
+        final long modificationTime = Files.getLastModifiedTime(file).toMillis() / 1000;
+        putEntry(name, size, modeOf(file), modificationTime, in);
+    }
+
+    /**
+     * Adds an entry to the archive.
+     *
+     * @param name             the name of the entry
+     * @param size             the size of the content in bytes
+     * @param mode             the permission bits
+     * @param modificationTime the modification time in seconds since the epoch
+     * @param in               the content of the entry
+     * @throws IOException if the content can't be read or the archive can't be written
+     */
+    public void putEntry(String name, long size, int mode, long modificationTime, InputStream in) throws IOException {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        String entryName = name;
+        String prefix = "";
+
+        if (nameBytes.length > NAME_LENGTH) {
+            final int split = findPrefixSplit(name);
+            if (split > 0) {
+                prefix = name.substring(0, split);
+                entryName = name.substring(split + 1);
+            } else {
+                writeLongName(nameBytes);
+                entryName = name.substring(0, Math.min(name.length(), NAME_LENGTH - 1));
+            }
+        }
+
+        out.write(header(entryName, prefix, size, mode, modificationTime, TYPE_FILE));
+
+        long remaining = size;
+        while (remaining > 0) {
+            final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new IOException("File `" + name + "` has been truncated while archiving");
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+        pad(size);
+    }
+
+    /**
+     * Writes the end-of-archive marker. The underlying stream isn't closed.
+     *
+     * @throws IOException if the archive can't be written
+     */
+    public void finish() throws IOException {
+        out.write(new byte[BLOCK_SIZE * 2]);
+        out.flush();
+    }
+
+    /**
+     * Finishes the archive and closes the underlying stream.
+     *
+     * @throws IOException if the archive can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Resolves the permission bits of a local file.
+     * On file systems without POSIX permissions the executable flag is used to choose between 0755 and 0644.
+     *
+     * @param file the local file
+     * @return the permission bits
+     * @throws IOException if the permissions can't be read
+     */
+    static int modeOf(Path file) throws IOException {
+        try {
+            final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file, LinkOption.NOFOLLOW_LINKS);
+            int mode = 0;
+            for (PosixFilePermission permission : permissions) {
+                mode |= 1 << (8 - permission.ordinal());
+            }
+            return mode;
+        } catch (UnsupportedOperationException e) {
+            return Files.isExecutable(file) ? DEFAULT_EXECUTABLE_MODE : DEFAULT_FILE_MODE;
+        }
+    }
+
+    private void writeLongName(byte[] nameBytes) throws IOException {
+        out.write(header("././@LongLink", "", nameBytes.length + 1, 0, 0, TYPE_GNU_LONG_NAME));
+        out.write(nameBytes);
+        out.write(0);
+        pad(nameBytes.length + 1);
+    }
+
+    private void pad(long size) throws IOException {
+        final int remainder = (int) (size % BLOCK_SIZE);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK_SIZE - remainder]);
+        }
+    }
+
+    private static int findPrefixSplit(String name) {
+        for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+            final int prefixLength = name.substring(0, i).getBytes(StandardCharsets.UTF_8).length;
+            final int nameLength = name.substring(i + 1).getBytes(StandardCharsets.UTF_8).length;
+            if (prefixLength <= PREFIX_LENGTH && nameLength <= NAME_LENGTH && nameLength > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] header(String name, String prefix, long size, int mode, long modificationTime, byte type) {
+        final byte[] header = new byte[BLOCK_SIZE];
+        putString(header, 0, NAME_LENGTH, name);
+        putOctal(header, 100, 8, mode);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, modificationTime);
+        header[156] = type;
+        putString(header, 257, 6, "ustar");
+        putString(header, 263, 2, "00");
+        putString(header, 345, PREFIX_LENGTH, prefix);
+
+        // The checksum is calculated with the checksum field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 7, checksum);
+        header[154] = 0;
+        return header;
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        final String octal = Long.toOctalString(value);
+        if (octal.length() > length - 1) {
+            throw new IllegalArgumentException("Value " + value + " doesn't fit into the tar header");
+        }
+        final String padded = String.format("%" + (length - 1) + "s", octal).replace(' ', '0');
+        putString(header, offset, length - 1, padded);
+    }
+}
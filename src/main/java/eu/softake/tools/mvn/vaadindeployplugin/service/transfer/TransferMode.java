@@ -0,0 +1,21 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+/**
+ * Enum representing the ways the files of a directory can be transferred to the server.
+ */
+public enum TransferMode {
+    /**
+     * Choose automatically: a tar stream for many small files, SFTP otherwise.
+     */
+    AUTO,
+
+    /**
+     * Upload every file separately over SFTP channels.
+     */
+    SFTP,
+
+    /**
+     * Stream a compressed tar archive into {@code tar -x} on the server over a single exec channel.
+     */
+    TAR
+}
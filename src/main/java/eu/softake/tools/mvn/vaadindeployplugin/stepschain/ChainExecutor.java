@@ -1,9 +1,13 @@
 package eu.softake.tools.mvn.vaadindeployplugin.stepschain;
 
+import eu.softake.tools.mvn.vaadindeployplugin.instrumentation.DeployListener;
+import eu.softake.tools.mvn.vaadindeployplugin.service.LogPrefix;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Executes a sequence of {@link ChainStepHandler} instances in a defined order.
@@ -16,6 +20,9 @@ public class ChainExecutor<T> {
     // List of steps in the execution chain
     private final LinkedList<ChainStepHandler<T>> steps;
 
+    // Receiver of step timings
+    private DeployListener listener = DeployListener.NONE;
+
     /**
      * Constructs a {@code ChainExecutor} with a given list of steps.
      *
@@ -53,11 +60,44 @@ public class ChainExecutor<T> {
         if (steps.isEmpty()) {
             throw new IllegalStateException("No steps to execute!");
         }
+        int index = 0;
         for (ChainStepHandler<T> step : steps) {
-            log.info(step.getStepDescription(dataObj));
+            index++;
+            log.info(LogPrefix.get() + step.getStepDescription(dataObj));
+            runStep(index, step, dataObj, index > 1 ? Collections.singletonList(index - 1) : Collections.emptyList());
+            log.info(LogPrefix.get() + "OK");
+        }
+    }
+
+    /**
+     * Sets the listener notified about the start and the end of every step.
+     *
+     * @param listener the listener; {@code null} means no listener
+     */
+    public void setListener(DeployListener listener) {
+        this.listener = listener != null ? listener : DeployListener.NONE;
+    }
+
+    /**
+     * Executes a single step and reports its timing to the listener.
+     *
+     * @param index        the position of the step, starting with 1
+     * @param step         the step to execute
+     * @param dataObj      the data object to be processed
+     * @param dependencies the positions of the steps this step waited for
+     * @throws Exception if the step fails
+     */
+    protected void runStep(int index, ChainStepHandler<T> step, T dataObj, List<Integer> dependencies) throws Exception {
+        final String description = step.getStepDescription(dataObj);
+        listener.stepStarted(index, description, dependencies);
+        final long startTime = System.nanoTime();
+        try {
             step.handle(dataObj);
-            log.info("OK");
+        } catch (Exception e) {
+            listener.stepFinished(index, description, startTime, System.nanoTime(), e);
+            throw e;
         }
+        listener.stepFinished(index, description, startTime, System.nanoTime(), null);
     }
 
     /**
@@ -0,0 +1,293 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.LogPrefix;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes {@link ChainStepHandler} instances as a directed acyclic graph of dependencies.
+ * <p>
+ * A step starts as soon as all the steps it depends on have finished, so independent steps run concurrently
+ * on a pool of up to {@code parallelism} threads. Dependencies can only refer to steps which have been added
+ * before, which keeps the graph acyclic and makes the declaration order a valid execution order.
+ * With a parallelism of 1 the steps are executed one after another in declaration order, exactly like
+ * {@link ChainExecutor}.
+ * </p>
+ * <p>
+ * When a step fails, no further steps are started, running steps are interrupted, and the exception of the
+ * first failed step is rethrown once they have stopped. Steps blocked in I/O which ignores interrupts, such as
+ * SSH reads, are stopped by the cancellation handler, e.g. by closing their channels. Steps which still don't stop
+ * within a minute are logged as abandoned and left to finish on their daemon threads.
+ * Start and completion of every step are logged with its position in the declaration order, and a summary
+ * is logged in that order at the end.
+ * </p>
+ *
+ * @param <T> the type of data object that the steps process
+ */
+@Slf4j
+public class DagChainExecutor<T> extends ChainExecutor<T> {
+
+    // Constants
+    private static final long CANCELLATION_TIMEOUT_SECONDS = 60;
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    // Data
+    private final int parallelism;
+    private final List<Node<T>> nodes = new ArrayList<>();
+    private final Map<ChainStepHandler<T>, Node<T>> nodesByHandler = new IdentityHashMap<>();
+    private Runnable cancellationHandler = () -> { };  // Stops the running steps which don't react to interrupts
+
+    /**
+     * Constructs an executor without steps.
+     *
+     * @param parallelism the maximum number of steps executed at the same time; values below 1 are treated as 1
+     */
+    public DagChainExecutor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Adds a step which depends on the previously added step.
+     *
+     * @param flowStepHandler the step handler to be added
+     */
+    @Override
+    public void addStep(ChainStepHandler<T> flowStepHandler) {
+        if (nodes.isEmpty()) {
+            addStep(flowStepHandler, Collections.emptyList());
+        } else {
+            addStep(flowStepHandler, Collections.singletonList(nodes.get(nodes.size() - 1).handler));
+        }
+    }
+
+    /**
+     * Adds a step which starts once all the given steps have finished.
+     *
+     * @param flowStepHandler the step handler to be added
+     * @param dependencies    the steps this step depends on; they must have been added before
+     * @throws IllegalArgumentException if a dependency hasn't been added or the step has been added already
+     */
+    @SafeVarargs
+    public final void addStep(ChainStepHandler<T> flowStepHandler, ChainStepHandler<T>... dependencies) {
+        addStep(flowStepHandler, Arrays.asList(dependencies));
+    }
+
+    /**
+     * Adds a step which starts once all the given steps have finished.
+     *
+     * @param flowStepHandler the step handler to be added
+     * @param dependencies    the steps this step depends on; they must have been added before
+     * @throws IllegalArgumentException if a dependency hasn't been added or the step has been added already
+     */
+    public void addStep(ChainStepHandler<T> flowStepHandler, List<ChainStepHandler<T>> dependencies) {
+        if (nodesByHandler.containsKey(flowStepHandler)) {
+            throw new IllegalArgumentException("Step has been added already: " + flowStepHandler.getClass().getSimpleName());
+        }
+        final Node<T> node = new Node<>(nodes.size() + 1, flowStepHandler);
+        for (ChainStepHandler<T> dependency : dependencies) {
+            final Node<T> dependencyNode = nodesByHandler.get(dependency);
+            if (dependencyNode == null) {
+                throw new IllegalArgumentException("Dependency of step " + flowStepHandler.getClass().getSimpleName()
+                        + " must be added before it: " + dependency.getClass().getSimpleName());
+            }
+            if (!node.dependencies.contains(dependencyNode)) {
+                node.dependencies.add(dependencyNode);
+                dependencyNode.dependents.add(node);
+            }
+        }
+        nodes.add(node);
+        nodesByHandler.put(flowStepHandler, node);
+    }
+
+    /**
+     * Sets the action which stops the running steps after a step has failed, in addition to interrupting them.
+     *
+     * @param cancellationHandler the action; {@code null} means interrupting only
+     */
+    public void setCancellationHandler(Runnable cancellationHandler) {
+        this.cancellationHandler = cancellationHandler != null ? cancellationHandler : () -> { };
+    }
+
+    /**
+     * Starts the execution of the steps.
+     *
+     * @param dataObj the data object to be processed by each step
+     * @throws Exception the exception of the first failed step
+     * @throws IllegalStateException if there are no steps to execute
+     */
+    @Override
+    public void start(T dataObj) throws Exception {
+        if (nodes.isEmpty()) {
+            throw new IllegalStateException("No steps to execute!");
+        }
+        if (parallelism == 1) {
+            for (Node<T> node : nodes) {
+                log.info(LogPrefix.get() + node.handler.getStepDescription(dataObj));
+                runStep(node.index, node.handler, dataObj, node.dependencyIndexes());
+                log.info(LogPrefix.get() + "OK");
+            }
+            return;
+        }
+
+        final String prefix = Thread.currentThread().getName() + "-step-";
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, nodes.size()), runnable -> {
+            final Thread thread = new Thread(runnable, prefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            execute(dataObj, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Schedules the steps whose dependencies have finished until all steps are done or one of them fails.
+     */
+    private void execute(T dataObj, ExecutorService executor) throws Exception {
+        final CompletionService<Node<T>> completionService = new ExecutorCompletionService<>(executor);
+        final Map<Node<T>, Integer> pendingDependencies = new HashMap<>();
+        final Map<Node<T>, Future<Node<T>>> running = new IdentityHashMap<>();
+        final Map<Node<T>, Long> durations = new IdentityHashMap<>();
+        Exception failure = null;
+
+        for (Node<T> node : nodes) {
+            pendingDependencies.put(node, node.dependencies.size());
+            if (node.dependencies.isEmpty()) {
+                submit(node, dataObj, completionService, running, durations);
+            }
+        }
+
+        while (!running.isEmpty()) {
+            final Future<Node<T>> future = completionService.take();
+            Node<T> completed = null;
+            try {
+                completed = future.get();
+            } catch (ExecutionException e) {
+                failure = toException(e.getCause());
+            }
+            running.values().remove(future);
+
+            if (failure != null) {
+                cancel(running, executor);
+                break;
+            }
+
+            log.info("{}[{}/{}] OK: {}", LogPrefix.get(), completed.index, nodes.size(), completed.handler.getStepDescription(dataObj));
+            for (Node<T> dependent : completed.dependents) {
+                final int remaining = pendingDependencies.merge(dependent, -1, Integer::sum);
+                if (remaining == 0) {
+                    submit(dependent, dataObj, completionService, running, durations);
+                }
+            }
+        }
+
+        logSummary(dataObj, durations);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void submit(Node<T> node, T dataObj, CompletionService<Node<T>> completionService,
+                        Map<Node<T>, Future<Node<T>>> running, Map<Node<T>, Long> durations) {
+        log.info("{}[{}/{}] {}", LogPrefix.get(), node.index, nodes.size(), node.handler.getStepDescription(dataObj));
+        running.put(node, completionService.submit(() -> {
+            final long startTime = System.nanoTime();
+            try {
+                runStep(node.index, node.handler, dataObj, node.dependencyIndexes());
+                return node;
+            } finally {
+                synchronized (durations) {
+                    durations.put(node, System.nanoTime() - startTime);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Interrupts the running steps, runs the cancellation handler and waits until their threads have stopped.
+     * Steps which are still running after the timeout are abandoned.
+     */
+    private void cancel(Map<Node<T>, Future<Node<T>>> running, ExecutorService executor) throws InterruptedException {
+        for (Node<T> node : running.keySet()) {
+            log.warn("{}[{}/{}] Cancelling step {}", LogPrefix.get(), node.index, nodes.size(), node.handler.getClass().getSimpleName());
+        }
+        executor.shutdownNow();
+        if (!running.isEmpty()) {
+            try {
+                cancellationHandler.run();
+            } catch (RuntimeException e) {
+                log.warn("{}Cancellation handler failed: {}", LogPrefix.get(), e.getMessage());
+            }
+        }
+        if (!executor.awaitTermination(CANCELLATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            for (Map.Entry<Node<T>, Future<Node<T>>> step : running.entrySet()) {
+                if (!step.getValue().isDone()) {
+                    log.warn("{}[{}/{}] Step {} didn't stop in {} s and has been abandoned", LogPrefix.get(), step.getKey().index,
+                            nodes.size(), step.getKey().handler.getClass().getSimpleName(), CANCELLATION_TIMEOUT_SECONDS);
+                }
+            }
+        }
+        running.clear();
+    }
+
+    private void logSummary(T dataObj, Map<Node<T>, Long> durations) {
+        synchronized (durations) {
+            for (Node<T> node : nodes) {
+                final Long duration = durations.get(node);
+                log.info("{}[{}/{}] {} {}", LogPrefix.get(), node.index, nodes.size(),
+                        duration != null ? String.format("%7.1f s", duration / 1e9) : "skipped  ",
+                        node.handler.getStepDescription(dataObj));
+            }
+        }
+    }
+
+    private static Exception toException(Throwable throwable) {
+        if (throwable instanceof Exception) {
+            return (Exception) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        return new Exception(throwable);
+    }
+
+    /**
+     * Step of the graph.
+     */
+    private static final class Node<T> {
+        private final int index;
+        private final ChainStepHandler<T> handler;
+        private final List<Node<T>> dependencies = new ArrayList<>();
+        private final List<Node<T>> dependents = new ArrayList<>();
+
+        private Node(int index, ChainStepHandler<T> handler) {
+            this.index = index;
+            this.handler = handler;
+        }
+
+        private List<Integer> dependencyIndexes() {
+            final List<Integer> indexes = new ArrayList<>();
+            for (Node<T> dependency : dependencies) {
+                indexes.add(dependency.index);
+            }
+            return indexes;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.LocalFileService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.Checksums;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Handler that tags the image of the {@value LoadLayeredImageHandler#SERVICE} service with the content hash of its inputs,
+ * the built package and the {@code Dockerfile}, and builds it only if the server doesn't have an image with this tag yet.
+ * <p>
+ * A Compose override file names the tag, so that {@code docker compose build} tags the image it builds with it and
+ * {@link DockerComposeStartHandler} starts the service from it without building. Redeploying a package which has
+ * been deployed before, e.g. after a rollback, doesn't build anything.
+ * </p>
+ */
+@AllArgsConstructor
+@Slf4j
+public class BuildTaggedImageHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String CMD_IMAGE_ID_TEMPLATE = "docker image inspect --format '{{.Id}}' %s 2>/dev/null || true";
+    public static final String CMD_BUILD_TEMPLATE = "docker compose -f %s -f %s build %s";
+    private static final int TAG_LENGTH = 12;
+
+    // Services
+    private final SshService sshService;
+    private final LocalFileService localFileService;
+
+    // Data
+    private final String packaging;  // The packaging type (e.g., "jar")
+    private final String localTargetDir;  // Local directory with the built package
+    private final String localDockerfilePath;  // Local Dockerfile the image is built from
+    private final String dockerComposeFileRemotePath;
+    private final String imageOverrideFilePath;  // Compose override file naming the tagged image
+
+    /**
+     * Provides a description of the step: building the tagged image.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return "Build the application image tagged with its content hash...";
+    }
+
+    /**
+     * Points the service at the tag of the current content and builds the image unless it already exists.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if the package can't be read or the build fails
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        final List<File> inputs = new ArrayList<>(localFileService.getChildren(new File(localTargetDir), ".*\\." + packaging + "$"));
+        inputs.sort(Comparator.comparing(File::getName));
+        final List<Path> paths = new ArrayList<>();
+        inputs.forEach(file -> paths.add(file.toPath()));
+        paths.add(Paths.get(localDockerfilePath));
+        final String tag = LoadLayeredImageHandler.IMAGE_REPOSITORY + ":" + contentHash(paths).substring(0, TAG_LENGTH);
+
+        sshService.writeTextFile(imageOverrideFilePath,
+                String.format(LoadLayeredImageHandler.IMAGE_OVERRIDE_TEMPLATE, LoadLayeredImageHandler.SERVICE, tag));
+        if (!sshService.execCommand(String.format(CMD_IMAGE_ID_TEMPLATE, ShellUtils.quote(tag))).trim().isEmpty()) {
+            log.info("Image {} already exists on the server. Skipping the build", tag);
+            return;
+        }
+        sshService.execCommand(String.format(CMD_BUILD_TEMPLATE,
+                dockerComposeFileRemotePath, imageOverrideFilePath, LoadLayeredImageHandler.SERVICE));
+        log.info("Image {} has been built", tag);
+    }
+
+    /**
+     * Computes the hash of the contents of files.
+     *
+     * @param files the files in a stable order
+     * @return the hash as hex
+     * @throws IOException if a file can't be read
+     */
+    static String contentHash(List<Path> files) throws IOException {
+        final MessageDigest digest = Checksums.newSha256Digest();
+        for (Path file : files) {
+            digest.update((Checksums.sha256(file) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return Checksums.toHex(digest.digest());
+    }
+}
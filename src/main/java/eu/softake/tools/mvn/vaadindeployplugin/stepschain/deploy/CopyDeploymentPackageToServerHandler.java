@@ -14,6 +14,8 @@ public class CopyDeploymentPackageToServerHandler implements ChainStepHandler<Se
     // Data
     private final String deployDirLocalPath;  // Local directory containing deployment files
     private final String deployDirRemotePath;  // Remote directory on the server where files will be copied
+    private final boolean deltaSync;  // Upload only new or changed files
+    private final boolean deleteStaleFiles;  // Remove files which no longer exist locally (delta sync only)
 
     /**
      * Provides a description of the step, including the target domain and hostname.
@@ -30,13 +32,19 @@ public class CopyDeploymentPackageToServerHandler implements ChainStepHandler<Se
 
     /**
      * Handles the process of copying the deployment package from the local machine to the remote server.
+     * In delta sync mode only the files which differ from the previous deploy are uploaded.
      *
      * @param serverModel the server configuration object
      * @throws Exception if an error occurs during the file copy process
      */
     @Override
     public void handle(ServerParam serverModel) throws Exception {
-        // Use SSH service to copy the deployment directory from the local path to the remote server
-        sshService.copyDirToServer(deployDirLocalPath, deployDirRemotePath);
+        if (deltaSync) {
+            // Upload only the files changed since the previous deploy
+            sshService.syncDirToServer(deployDirLocalPath, deployDirRemotePath, deleteStaleFiles);
+        } else {
+            // Use SSH service to copy the deployment directory from the local path to the remote server
+            sshService.copyDirToServer(deployDirLocalPath, deployDirRemotePath);
+        }
     }
 }
\ No newline at end of file
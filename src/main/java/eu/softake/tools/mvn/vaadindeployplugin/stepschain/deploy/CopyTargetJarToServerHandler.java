@@ -27,6 +27,7 @@ public class CopyTargetJarToServerHandler implements ChainStepHandler<ServerPara
     private final String packaging;  // The packaging type (e.g., "jar")
     private final String remoteTargetDir;  // The target directory on the remote server
     private final String localTargetDir;  // The source directory on the local machine
+    private final boolean deltaTransfer;  // Send only the blocks changed since the previous upload
 
     /**
      * Provides the description of the step, including the packaging type and local target directory.
@@ -43,6 +44,7 @@ public class CopyTargetJarToServerHandler implements ChainStepHandler<ServerPara
      * Handles the process of copying the compiled package from the local machine to the remote server.
      * It looks for files in the local target directory that match the packaging type (e.g., `.jar`)
      * and copies them to the remote target directory on the server.
+     * In delta transfer mode only the blocks which differ from the package uploaded before are sent.
      *
      * @param serverModel the server configuration object
      * @throws Exception if an error occurs during the file copy process
@@ -54,7 +56,11 @@ public class CopyTargetJarToServerHandler implements ChainStepHandler<ServerPara
 
         // Copy each file found to the remote server
         for (File childFile : children) {
-            sshService.copyFileToServer(childFile, remoteTargetDir);
+            if (deltaTransfer) {
+                sshService.copyFileToServerWithDelta(childFile, remoteTargetDir);
+            } else {
+                sshService.copyFileToServer(childFile, remoteTargetDir);
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+
+/**
+ * Handler that dumps the database of the running {@value #CONTAINER} container into the backup directory on the server.
+ * The dump is streamed from {@code pg_dump} or {@code mariadb-dump} straight into a compressor, with {@code zstd -T0}
+ * or {@code pigz} using all cores where they are installed and {@code gzip} otherwise, so it never lands uncompressed on disk.
+ * The credentials are the ones the container has been started with.
+ * <p>
+ * The step is skipped if the backup directory isn't configured, the server has no database
+ * or the database container isn't running, e.g. on the first deploy. The size and the throughput of the dump are logged.
+ * </p>
+ */
+@AllArgsConstructor
+@Slf4j
+public class DatabaseDumpHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String CONTAINER = "db";
+    public static final String DUMP_FILE_NAME_TEMPLATE = "%s-dump.sql";  // Without the extension of the compressor
+    public static final String CMD_RUNNING_TEMPLATE = "docker ps -q --filter 'name=^%s$' --filter status=running";
+    public static final String POSTGRES_DUMP = "pg_dump -U \"$POSTGRES_USER\" \"$POSTGRES_DB\"";
+    public static final String MARIADB_DUMP = "MYSQL_PWD=\"$MYSQL_PASSWORD\" mariadb-dump -u \"$MYSQL_USER\""
+            + " --single-transaction --no-tablespaces --routines --triggers \"$MYSQL_DATABASE\"";
+    public static final String CMD_DUMP_TEMPLATE = "if command -v zstd >/dev/null 2>&1; then z='zstd -q -T0'; f=%3$s.zst;"
+            + " elif command -v pigz >/dev/null 2>&1; then z=pigz; f=%3$s.gz; else z=gzip; f=%3$s.gz; fi;"
+            + " { docker exec %1$s sh -c %2$s || touch \"$f.failed\"; } | $z -c > \"$f\";"
+            + " if [ -e \"$f.failed\" ]; then rm -f \"$f\" \"$f.failed\"; exit 1; fi;"
+            + " echo \"$f\"; wc -c < \"$f\"";
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String serverBackupDirPath;  // Path to the backup directory of this deploy on the server
+
+    /**
+     * Provides a description of the step, including the destination directory.
+     *
+     * @param dataObj the server configuration object
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return String.format("Dump the database to `%s`", serverBackupDirPath);
+    }
+
+    /**
+     * Streams the dump of the database through the compressor into the backup directory.
+     *
+     * @param serverModel the server configuration object
+     * @throws Exception if the dump or the compression fails
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        if (serverBackupDirPath == null) {
+            log.warn("The backup dir isn't configured ('server.backupDir') for the server `{}`. Skipping the database dump", serverModel.getDomain());
+            return;
+        }
+        final String dumpCommand = dumpCommandOf(serverModel.getDbProvider());
+        if (dumpCommand == null) {
+            log.info("The server `{}` has no database to dump", serverModel.getDomain());
+            return;
+        }
+        if (sshService.execCommand(String.format(CMD_RUNNING_TEMPLATE, CONTAINER)).trim().isEmpty()) {
+            log.warn("The database won't be dumped, because the `{}` container isn't running on the server `{}`", CONTAINER, serverModel.getDomain());
+            return;
+        }
+
+        final long startTime = System.nanoTime();
+        sshService.ensureDirExists(serverBackupDirPath);
+        final String dumpFile = serverBackupDirPath + "/" + String.format(DUMP_FILE_NAME_TEMPLATE, serverModel.getDbProvider());
+        final String[] output = sshService.execCommand(String.format(CMD_DUMP_TEMPLATE,
+                CONTAINER, ShellUtils.quote(dumpCommand), ShellUtils.quote(dumpFile))).trim().split("\\r?\\n");
+        final long bytes = Long.parseLong(output[output.length - 1].trim());
+        final long millis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+        log.info("Database dump `{}` has been taken in {} ms: {} KB compressed, {} MB/s", output[0].trim(), millis, bytes / 1024,
+                String.format(Locale.ROOT, "%.1f", bytes * 1000.0 / millis / (1024 * 1024)));
+    }
+
+    /**
+     * Returns the command dumping the database inside its container.
+     *
+     * @param dbProvider the database provider of the server
+     * @return the command, or {@code null} if the provider has no database
+     */
+    private static String dumpCommandOf(String dbProvider) {
+        if ("postgres".equals(dbProvider)) {
+            return POSTGRES_DUMP;
+        } else if ("mariadb".equals(dbProvider)) {
+            return MARIADB_DUMP;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,110 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.LocalFileService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.compose.AppliedState;
+import eu.softake.tools.mvn.vaadindeployplugin.service.compose.RestartPlan;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.Checksums;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.DeploymentManifest;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handler that works out which services are affected by a deploy, before anything is uploaded.
+ * <p>
+ * The local deployment directory and the built package are compared with the {@link AppliedState} recorded by
+ * {@link SelectiveRestartHandler} after the last successful restart, not with the files on the server, which are
+ * already new if that restart failed. The variables of the {@code .env} file are compared one by one.
+ * The resulting {@link RestartPlan} is used by {@link SelectiveRestartHandler}, which records the local state
+ * once it has been applied. The record is removed here, before anything is uploaded, so a deploy failing
+ * from now on leaves none behind. Without a record, e.g. if the project hasn't been deployed yet,
+ * the plan restarts everything.
+ * </p>
+ */
+@AllArgsConstructor
+@Slf4j
+public class DetectServiceChangesHandler implements ChainStepHandler<ServerParam> {
+
+    // Services
+    private final SshService sshService;
+    private final LocalFileService localFileService;
+
+    // Data
+    private final String packaging;  // The packaging type (e.g., "jar")
+    private final String localDeployDir;  // Local deployment directory of the domain
+    private final String localTargetDir;  // Local directory of the built package
+    private final String serverDeployDir;  // Deployment directory on the server
+    private final AtomicReference<RestartPlan> restartPlan;  // Receives the plan
+    private final AtomicReference<AppliedState> localState;  // Receives the state to record once the plan is applied
+
+    /**
+     * Provides a description of the step: detecting the services affected by the deploy.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return "Detect the services affected by the changes...";
+    }
+
+    /**
+     * Compares the local files with the applied state, invalidates it and stores the restart plan.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if the files can't be read or compared
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        final Map<String, String> localHashes = new TreeMap<>();
+        for (DeploymentManifest.Entry entry : DeploymentManifest.build(Paths.get(localDeployDir)).getEntries()) {
+            localHashes.put(entry.getPath(), entry.getSha256());
+        }
+        for (File artifact : localFileService.getChildren(new File(localTargetDir), ".*\\." + packaging + "$")) {
+            localHashes.put("target/" + artifact.getName(), Checksums.sha256(artifact.toPath()));
+        }
+        final Path localEnvFile = Paths.get(localDeployDir, ".env");
+        final String localEnv = Files.isRegularFile(localEnvFile) ? new String(Files.readAllBytes(localEnvFile), StandardCharsets.UTF_8) : null;
+        localState.set(new AppliedState(localHashes, localEnv));
+
+        final String appliedStateFilePath = serverDeployDir + "/" + AppliedState.FILE_NAME;
+        final AppliedState appliedState = sshService.isFileExist(serverDeployDir + "/docker-compose.yaml")
+                ? AppliedState.parse(sshService.readTextFile(appliedStateFilePath)) : null;
+        if (appliedState == null) {
+            log.info("No state of a successful restart has been recorded, all services will be restarted");
+            restartPlan.set(RestartPlan.FULL);
+            return;
+        }
+        sshService.removeFile(appliedStateFilePath);
+
+        final Set<String> changedPaths = new TreeSet<>();
+        for (Map.Entry<String, String> entry : localHashes.entrySet()) {
+            if (!entry.getValue().equals(appliedState.getHashes().get(entry.getKey()))) {
+                changedPaths.add(entry.getKey());
+            }
+        }
+
+        Set<String> changedVariables = Collections.emptySet();
+        if (changedPaths.contains(".env") && localEnv != null) {
+            changedVariables = RestartPlan.changedEnvVariables(localEnv, appliedState.getEnv());
+        }
+
+        final RestartPlan plan = RestartPlan.of(changedPaths, changedVariables);
+        log.info("Changed files: {}, changed variables: {}. Plan: {}", changedPaths, changedVariables, plan);
+        restartPlan.set(plan);
+    }
+}
@@ -1,6 +1,7 @@
 package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
 
 import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
 import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
 import lombok.AllArgsConstructor;
@@ -10,13 +11,35 @@ import lombok.extern.slf4j.Slf4j;
  * Handler responsible for creating a backup of the deployment directory on the server.
  * It checks if the deployment directory exists, and if so, it copies it to the backup directory.
  * If the backup directory is not configured, the backup step is skipped.
+ * <p>
+ * An incremental backup hard-links the files which haven't changed since the newest backup of the deployment
+ * directory instead of copying them, with {@code rsync --link-dest} or, without rsync, {@code cp -al} and
+ * a copy of the changed files. Every backup is still a complete snapshot, but only takes the space of the changes.
+ * The size and the duration of the backup are logged; with {@code keepBackups} the oldest backups are removed,
+ * together with the database dumps taken next to them.
+ * </p>
  */
 @AllArgsConstructor
 @Slf4j
 public class DockerComposeBackupHandler implements ChainStepHandler<ServerParam> {
 
     // Constants
-    public static final String CMD_COPY_TEMPLATE = "cp -r %s %s";  // Command to copy files recursively
+    public static final String CMD_COPY_TEMPLATE = "cp -rH %s %s";  // Command to copy files recursively, following a symlinked deploy dir
+    public static final String BACKUP_NAME_GLOB = "[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]_[0-9][0-9]-[0-9][0-9]-[0-9][0-9]";  // Timestamped backup dirs
+    public static final String CMD_INCREMENTAL_TEMPLATE = "prev=$(ls -1d %1$s/" + BACKUP_NAME_GLOB + "/%2$s 2>/dev/null | sort | tail -n 1); "
+            + "if [ -z \"$prev\" ]; then cp -rH %3$s %4$s; "
+            + "elif command -v rsync >/dev/null 2>&1; then rsync -a --link-dest=\"$prev\" %3$s/ %5$s/; "
+            + "else cp -al \"$prev\" %5$s"
+            + " && (cd %3$s/ && find . ! -type d) | while IFS= read -r f; do"
+            + " cmp -s %3$s/\"$f\" %5$s/\"$f\" || { rm -f %5$s/\"$f\"; mkdir -p \"$(dirname %5$s/\"$f\")\"; cp -Pp %3$s/\"$f\" %5$s/\"$f\"; }; done"
+            + " && (cd %5$s && find . ! -type d) | while IFS= read -r f; do"
+            + " [ -e %3$s/\"$f\" ] || [ -L %3$s/\"$f\" ] || rm -f %5$s/\"$f\"; done; fi"
+            + " && echo \"$prev\"";
+    public static final String CMD_SIZE_TEMPLATE = "du -sk %s | tail -n 1 | cut -f1";  // Hard links are only counted for the first directory
+    public static final String CMD_PRUNE_TEMPLATE = "cd %1$s && ls -1d " + BACKUP_NAME_GLOB + "/%2$s"
+            + " 2>/dev/null | sort -r | tail -n +%3$d | while IFS= read -r backup; do"
+            + " rm -rf -- \"$backup\" \"$(dirname -- \"$backup\")\"/*-dump.sql.*"
+            + " && rmdir -- \"$(dirname -- \"$backup\")\" 2>/dev/null; done; true";
 
     // Services
     private final SshService sshService;
@@ -24,6 +47,8 @@ public class DockerComposeBackupHandler implements ChainStepHandler<ServerParam>
     // Data
     private final String serverDeployDirPath;  // Path to the deployment directory on the server
     private final String serverBackupDirPath;  // Path to the backup directory on the server
+    private final boolean incremental;  // Hard-link the files which haven't changed since the newest backup
+    private final int keepBackups;  // Number of newest backups to keep, 0 keeps all
 
     /**
      * Provides a description of the backup step, including the source and destination directories.
@@ -33,13 +58,14 @@ public class DockerComposeBackupHandler implements ChainStepHandler<ServerParam>
      */
     @Override
     public String getStepDescription(ServerParam dataObj) {
-        return String.format("Backup dir on server from `%s` to `%s`", serverDeployDirPath, serverBackupDirPath);
+        return String.format(incremental ? "Incremental backup dir on server from `%s` to `%s`" : "Backup dir on server from `%s` to `%s`",
+                serverDeployDirPath, serverBackupDirPath);
     }
 
     /**
      * Handles the backup of the deployment directory on the server.
      * If the deployment directory exists and the backup directory is configured,
-     * it copies the deployment directory to the backup directory.
+     * it copies the deployment directory to the backup directory and removes the backups beyond {@code keepBackups}.
      *
      * @param serverModel the server configuration object
      * @throws Exception if an error occurs while executing the backup command
@@ -52,12 +78,38 @@ public class DockerComposeBackupHandler implements ChainStepHandler<ServerParam>
 
             // Make sure the deployment directory exists on the server
             if (sshService.isFileExist(serverDeployDirPath)) {
+                final long startTime = System.nanoTime();
                 // Ensure the backup directory exists
                 sshService.ensureDirExists(serverBackupDirPath);
 
-                // Copy the deployment directory to the backup directory
-                final String copyCommand = String.format(CMD_COPY_TEMPLATE, serverDeployDirPath, serverBackupDirPath);
-                sshService.execCommand(copyCommand);
+                final String backupRootDir = parentOf(serverBackupDirPath);
+                final String deployDirName = serverDeployDirPath.substring(serverDeployDirPath.lastIndexOf('/') + 1);
+                final String snapshotDir = serverBackupDirPath + "/" + deployDirName;
+                String previousBackup = "";
+                if (incremental) {
+                    // Link the unchanged files to the newest backup of the deployment directory
+                    previousBackup = sshService.execCommand(String.format(CMD_INCREMENTAL_TEMPLATE, ShellUtils.quote(backupRootDir),
+                            ShellUtils.quote(deployDirName), ShellUtils.quote(serverDeployDirPath),
+                            ShellUtils.quote(serverBackupDirPath), ShellUtils.quote(snapshotDir))).trim();
+                } else {
+                    // Copy the deployment directory to the backup directory
+                    final String copyCommand = String.format(CMD_COPY_TEMPLATE, serverDeployDirPath, serverBackupDirPath);
+                    sshService.execCommand(copyCommand);
+                }
+
+                final String sizeKb = sshService.execCommand(String.format(CMD_SIZE_TEMPLATE, previousBackup.isEmpty()
+                        ? ShellUtils.quote(snapshotDir) : ShellUtils.quote(previousBackup) + " " + ShellUtils.quote(snapshotDir))).trim();
+                final long millis = (System.nanoTime() - startTime) / 1_000_000;
+                if (previousBackup.isEmpty()) {
+                    log.info("Backup `{}` has been taken in {} ms: {} KB", snapshotDir, millis, sizeKb);
+                } else {
+                    log.info("Backup `{}` has been taken in {} ms: {} KB changed since `{}`", snapshotDir, millis, sizeKb, previousBackup);
+                }
+
+                if (keepBackups > 0) {
+                    sshService.execCommand(String.format(CMD_PRUNE_TEMPLATE,
+                            ShellUtils.quote(backupRootDir), ShellUtils.quote(deployDirName), keepBackups + 1));
+                }
             } else {
                 // Log warning if deployment directory doesn't exist
                 log.warn("Backup won't be taken for the deployment dir (`{}`), because it doesn't exist on the server `{}`", serverDeployDirPath, serverModel.getDomain());
@@ -67,4 +119,9 @@ public class DockerComposeBackupHandler implements ChainStepHandler<ServerParam>
             log.warn("The backup dir isn't configured ('server.backupDir') for the server `{}`. Skipping the backup step", serverModel.getDomain());
         }
     }
-}
\ No newline at end of file
+
+    private static String parentOf(String path) {
+        final int index = path.lastIndexOf('/');
+        return index > 0 ? path.substring(0, index) : "/";
+    }
+}
@@ -0,0 +1,158 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.compose.ContainerHealthPoller;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handler that replaces the running application without downtime, using the two application slots
+ * ({@value #SERVICE_PREFIX}blue and {@value #SERVICE_PREFIX}green) of the blue/green Docker Compose template.
+ * <p>
+ * The slot which receives the traffic is the one named in the nginx upstream file. The other slot is started
+ * with the new release, and once it's healthy the upstream file is switched to it and nginx is reloaded.
+ * If the new slot doesn't become healthy, it's stopped and the old slot keeps serving.
+ * </p>
+ * <p>
+ * The old slot is drained for the grace period: nginx sets the cookie {@value #SLOT_COOKIE} to the slot which served
+ * a response, and the slots file {@value #SLOTS_FILE_NAME} next to the upstream file maps this cookie to the old
+ * slot while it's draining, so that sessions started on it stay there. New sessions go to the new slot.
+ * After the grace period the old slot is dropped from the slots file, nginx is reloaded and the slot is removed.
+ * </p>
+ */
+@AllArgsConstructor
+@Slf4j
+public class DockerComposeBlueGreenHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String SERVICE_PREFIX = "vaadin-app-";
+    public static final String BLUE = "blue";
+    public static final String GREEN = "green";
+    public static final String UPSTREAM_TEMPLATE = "server %s:8080;\n";
+    public static final String SLOTS_FILE_NAME = "vaadin-app-slots.conf";
+    public static final String SLOT_COOKIE = "vaadin_slot";
+    private static final String SLOT_UPSTREAM_TEMPLATE = "upstream %1$s%2$s {\n    server %1$s%2$s:8080;\n}\n";
+    public static final String CMD_SLOT_UP_TEMPLATE = "docker compose -f %s --profile %s up -d --build %s";
+    public static final String CMD_UP_TEMPLATE = "docker compose -f %s --profile %s up -d --remove-orphans";
+    public static final String CMD_SLOT_REMOVE_TEMPLATE = "docker compose -f %s --profile %s rm -s -f %s";
+    public static final String CMD_NGINX_RELOAD_TEMPLATE = "docker compose -f %s exec -T proxy nginx -s reload";
+    public static final String EXCEPTION_TEMPLATE = "Something went wrong! File `%s` doesn't exist on the server.";
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String dockerComposeFileRemotePath;  // Compose file with both application slots
+    private final String nginxUpstreamFilePath;  // Upstream file on the server naming the active slot
+    private final long healthTimeoutSeconds;  // How long the new slot may take to become healthy
+    private final long gracePeriodSeconds;  // How long the sessions of the old slot stay on it after the switch
+
+    /**
+     * Provides a description of the step: the blue/green switch of the application.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return "Start the idle slot and switch nginx to it (blue/green)...";
+    }
+
+    /**
+     * Starts the idle slot, waits for its healthcheck, switches nginx to it and removes the old slot
+     * after draining it for the grace period.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if the new slot doesn't become healthy or a command fails
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        if (!sshService.isFileExist(dockerComposeFileRemotePath)) {
+            throw new MojoExecutionException(String.format(EXCEPTION_TEMPLATE, dockerComposeFileRemotePath));
+        }
+        final String composeFile = ShellUtils.quote(dockerComposeFileRemotePath);
+        final String activeSlot = readActiveSlot();
+        final String newSlot = BLUE.equals(activeSlot) ? GREEN : BLUE;
+        final String newService = SERVICE_PREFIX + newSlot;
+        log.info("Active slot: {}, starting the release in the slot: {}", activeSlot != null ? activeSlot : "none", newSlot);
+
+        sshService.execCommand(String.format(CMD_SLOT_UP_TEMPLATE, composeFile, newSlot, newService));
+        waitUntilHealthy(composeFile, newSlot, newService);
+
+        // Switch the traffic, then bring up the other services with their current configuration
+        final String upstreamDir = nginxUpstreamFilePath.substring(0, nginxUpstreamFilePath.lastIndexOf('/'));
+        final String slotsFile = upstreamDir + "/" + SLOTS_FILE_NAME;
+        final boolean drain = activeSlot != null && gracePeriodSeconds > 0;
+        sshService.ensureDirExists(upstreamDir);
+        sshService.writeTextFile(nginxUpstreamFilePath, String.format(UPSTREAM_TEMPLATE, newService));
+        sshService.writeTextFile(slotsFile, slotsConfig(newSlot, drain ? activeSlot : null));
+        sshService.execCommand(String.format(CMD_UP_TEMPLATE, composeFile, newSlot));
+        sshService.execCommand(String.format(CMD_NGINX_RELOAD_TEMPLATE, composeFile));
+        log.info("Nginx has been switched to the slot: {}", newSlot);
+
+        if (activeSlot != null) {
+            if (drain) {
+                log.info("Draining the sessions of the slot {} for {} s", activeSlot, gracePeriodSeconds);
+                TimeUnit.SECONDS.sleep(gracePeriodSeconds);
+                // nginx must not refer to the old slot any more when its container is removed
+                sshService.writeTextFile(slotsFile, slotsConfig(newSlot, null));
+                sshService.execCommand(String.format(CMD_NGINX_RELOAD_TEMPLATE, composeFile));
+            }
+            sshService.execCommand(String.format(CMD_SLOT_REMOVE_TEMPLATE, composeFile, activeSlot, SERVICE_PREFIX + activeSlot));
+        }
+    }
+
+    /**
+     * Creates the slots file: an upstream per running slot and the map choosing the slot by the {@value #SLOT_COOKIE} cookie.
+     *
+     * @param activeSlot   the slot receiving new sessions
+     * @param drainingSlot the slot keeping its sessions, or {@code null} if there is none
+     * @return the content of the file
+     */
+    static String slotsConfig(String activeSlot, String drainingSlot) {
+        final StringBuilder config = new StringBuilder(String.format(SLOT_UPSTREAM_TEMPLATE, SERVICE_PREFIX, activeSlot));
+        if (drainingSlot != null) {
+            config.append(String.format(SLOT_UPSTREAM_TEMPLATE, SERVICE_PREFIX, drainingSlot));
+        }
+        config.append("map $cookie_").append(SLOT_COOKIE).append(" $vaadin_app_slot {\n")
+                .append("    default ").append(activeSlot).append(";\n");
+        if (drainingSlot != null) {
+            config.append("    ").append(drainingSlot).append(' ').append(drainingSlot).append(";\n");
+        }
+        return config.append("}\n").toString();
+    }
+
+    /**
+     * Reads the slot which receives the traffic from the upstream file.
+     *
+     * @return {@value #BLUE}, {@value #GREEN} or {@code null} if no slot has been deployed yet
+     */
+    private String readActiveSlot() throws Exception {
+        final String upstream = sshService.readTextFile(nginxUpstreamFilePath);
+        if (upstream == null) {
+            return null;
+        }
+        return upstream.contains(SERVICE_PREFIX + GREEN) ? GREEN : BLUE;
+    }
+
+    /**
+     * Polls the state of the new slot until it's healthy. A failed slot is stopped, the old one keeps serving.
+     */
+    private void waitUntilHealthy(String composeFile, String slot, String service) throws Exception {
+        try {
+            new ContainerHealthPoller(sshService, "-f " + composeFile + " --profile " + slot)
+                    .waitUntilReady(Collections.singletonList(service), healthTimeoutSeconds);
+        } catch (Exception e) {
+            log.error("The slot {} didn't become healthy, the traffic stays on the old slot", slot);
+            sshService.execCommand(String.format(CMD_SLOT_REMOVE_TEMPLATE, composeFile, slot, service));
+            throw new MojoExecutionException(String.format("`%s` didn't become healthy within %d s", service, healthTimeoutSeconds), e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Handler that builds the images of a staged release by executing the 'docker compose build' command on the server,
+ * while the running stack keeps serving. The images are built for the project name of the running stack,
+ * so that {@link DockerComposeStartHandler} finds them after the switch.
+ * <p>
+ * The {@code .env} file of the release sets {@code VAADIN_PROJECT_DIR}, the build context, to the deployment directory,
+ * which still points at the running release during the build. The variable is therefore set to the release directory
+ * for the command, as the shell environment takes precedence over the {@code .env} file.
+ * </p>
+ */
+@AllArgsConstructor
+@Slf4j
+public class DockerComposeBuildHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String CMD_DOCKER_BUILD_TEMPLATE = "VAADIN_PROJECT_DIR=%s docker compose -p %s -f %s build";
+    public static final String EXCEPTION_TEMPLATE = "Something went wrong! File `%s` doesn't exist on the server.";
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String serverReleaseDirPath;  // Directory of the new release, the build context of the images
+    private final String dockerComposeFileRemotePath;  // Compose file of the new release
+    private final String dockerComposeProjectName;  // Project name of the running stack
+
+    /**
+     * Provides a description of the step: building the images of the new release.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return "Build DockerCompose images of the new release...";
+    }
+
+    /**
+     * Builds the images of the new release.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if the build fails or the Docker Compose file doesn't exist
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        if (!sshService.isFileExist(dockerComposeFileRemotePath)) {
+            throw new MojoExecutionException(String.format(EXCEPTION_TEMPLATE, dockerComposeFileRemotePath));
+        }
+        sshService.execCommand(String.format(CMD_DOCKER_BUILD_TEMPLATE, ShellUtils.quote(serverReleaseDirPath),
+                ShellUtils.quote(dockerComposeProjectName), ShellUtils.quote(dockerComposeFileRemotePath)));
+    }
+}
@@ -10,6 +10,10 @@ import org.apache.maven.plugin.MojoExecutionException;
 /**
  * Handler that starts Docker Compose services by executing the 'docker compose up' command on the server.
  * If the Docker Compose file doesn't exist on the server, an exception is thrown.
+ * The images are built as part of the start unless they have been built by {@link DockerComposeBuildHandler} before,
+ * in which case the project name used for the build is passed explicitly, or the application image has been loaded
+ * by {@link LoadLayeredImageHandler} or built by {@link BuildTaggedImageHandler}, in which case its Compose override file
+ * is added and nothing is built.
  */
 @AllArgsConstructor
 @Slf4j
@@ -17,6 +21,8 @@ public class DockerComposeStartHandler implements ChainStepHandler<ServerParam>
 
     // Constants
     public static final String CMD_DOCKER_UP_TEMPLATE = "docker compose -f %s up -d --build";
+    public static final String CMD_DOCKER_PREBUILT_UP_TEMPLATE = "docker compose -p %s -f %s up -d";
+    public static final String CMD_DOCKER_LOADED_IMAGE_UP_TEMPLATE = "docker compose -f %s -f %s up -d --no-build";
     public static final String EXCEPTION_TEMPLATE = "Something went wrong! File `%s` doesn't exist on the server.";
 
     // Service
@@ -24,6 +30,8 @@ public class DockerComposeStartHandler implements ChainStepHandler<ServerParam>
 
     // Data
     private final String dockerComposeFileRemotePath;
+    private final String prebuiltProjectName;  // Project name the images have been built for, or null to build them now
+    private final String imageOverrideFilePath;  // Compose override file naming the loaded or tagged image, or null to build it now
 
     /**
      * Provides a description of the step: starting Docker Compose services on the server.
@@ -40,21 +48,23 @@ public class DockerComposeStartHandler implements ChainStepHandler<ServerParam>
      * Handles the starting of Docker Compose services.
      * It checks if the Docker Compose file exists on the server and executes the 'docker compose up' command if the file is present.
      * If the file doesn't exist, an exception is thrown.
-     * It also adds a 2-second sleep to ensure that any previous operation, such as uploading a JAR file, has completed fully.
+     * No delay is needed before the start: uploaded files are verified and renamed into place before the upload steps finish.
      *
      * @param serverModel the server configuration object containing deployment parameters
      * @throws Exception if an error occurs during the execution of the command or if the Docker Compose file doesn't exist
      */
     @Override
     public void handle(ServerParam serverModel) throws Exception {
-        // Workaround to prevent JAR file corruption if 'docker compose up' is executed immediately after uploading
-        log.info("Sleep for 2 sec to allow the previous operation finish completely");
-        Thread.sleep(2000); // Sleep for 2 seconds to ensure previous operation completes
-        log.info("Resume thread");
-
         boolean fileExist = sshService.isFileExist(dockerComposeFileRemotePath);
         if (fileExist) {
-            final String dockerComposeUpCommand = String.format(CMD_DOCKER_UP_TEMPLATE, dockerComposeFileRemotePath);
+            final String dockerComposeUpCommand;
+            if (prebuiltProjectName != null) {
+                dockerComposeUpCommand = String.format(CMD_DOCKER_PREBUILT_UP_TEMPLATE, prebuiltProjectName, dockerComposeFileRemotePath);
+            } else if (imageOverrideFilePath != null) {
+                dockerComposeUpCommand = String.format(CMD_DOCKER_LOADED_IMAGE_UP_TEMPLATE, dockerComposeFileRemotePath, imageOverrideFilePath);
+            } else {
+                dockerComposeUpCommand = String.format(CMD_DOCKER_UP_TEMPLATE, dockerComposeFileRemotePath);
+            }
             sshService.execCommand(dockerComposeUpCommand);
         } else {
             throw new MojoExecutionException(String.format(EXCEPTION_TEMPLATE, dockerComposeFileRemotePath));
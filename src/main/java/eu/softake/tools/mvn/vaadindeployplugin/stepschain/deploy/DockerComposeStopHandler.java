@@ -9,6 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Handler that stops the Docker Compose services by executing the 'docker compose down' command on the server.
  * If the Docker Compose file doesn't exist on the server, the operation is skipped.
+ * The project name is passed explicitly if it's given, so that a stack started from another directory can be stopped.
  */
 @AllArgsConstructor
 @Slf4j
@@ -16,10 +17,12 @@ public class DockerComposeStopHandler implements ChainStepHandler<ServerParam> {
 
     // Constants
     public static final String CMD_DOCKER_DOWN_TEMPLATE = "docker compose -f %s down -v";
+    public static final String CMD_DOCKER_PROJECT_DOWN_TEMPLATE = "docker compose -p %s -f %s down -v";
 
     // Service
     private final SshService sshService;
     private final String dockerComposeFilePath;
+    private final String dockerComposeProjectName;  // Explicit project name, or null for the one derived from the file path
 
     /**
      * Provides a description of the step: stopping the Docker Compose services on the server.
@@ -46,7 +49,9 @@ public class DockerComposeStopHandler implements ChainStepHandler<ServerParam> {
         final boolean fileExist = sshService.isFileExist(dockerComposeFilePath);
 
         if (fileExist) {
-            final String dockerDownCommand = String.format(CMD_DOCKER_DOWN_TEMPLATE, dockerComposeFilePath);
+            final String dockerDownCommand = dockerComposeProjectName != null
+                    ? String.format(CMD_DOCKER_PROJECT_DOWN_TEMPLATE, dockerComposeProjectName, dockerComposeFilePath)
+                    : String.format(CMD_DOCKER_DOWN_TEMPLATE, dockerComposeFilePath);
             sshService.execCommand(dockerDownCommand);
         } else {
             log.info("DockerCompose file doesn't exist on the server. No need to stop");
@@ -0,0 +1,45 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handler that removes the deployment fingerprint from the server before anything on it is changed.
+ * A deploy which fails halfway, or one done without {@code skipUnchanged}, therefore never leaves a fingerprint
+ * describing content that isn't on the server.
+ */
+@AllArgsConstructor
+@Slf4j
+public class InvalidateDeploymentFingerprintHandler implements ChainStepHandler<ServerParam> {
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String fingerprintFilePath;  // Fingerprint file in the deploy dir on the server
+
+    /**
+     * Provides a description of the step: removing the fingerprint of the previous deploy.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return String.format("Invalidate the deployment fingerprint `%s`...", fingerprintFilePath);
+    }
+
+    /**
+     * Removes the fingerprint file. A missing file is fine.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if the file exists but can't be removed
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        sshService.removeFile(fingerprintFilePath);
+    }
+}
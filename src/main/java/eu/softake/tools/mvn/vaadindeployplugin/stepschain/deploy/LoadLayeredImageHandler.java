@@ -0,0 +1,203 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.LayeredImage;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.LayeredImageBuilder;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.Checksums;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.TarArchiveWriter;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Handler that loads the image built locally by {@link LayeredImageBuilder} into Docker on the server
+ * for the {@value #SERVICE} service, so that the server doesn't build the image itself.
+ * <p>
+ * The configuration of the image is completed with the environment, the user and the layers of the base image
+ * on the server, which is pulled if it's missing. The image is streamed into {@code docker load} in the format of
+ * {@code docker save}, but without the layers the server already has: the base image and the unchanged layers of
+ * the images loaded before. Docker only reads a layer from the archive when it doesn't have the same chain of
+ * layers yet, which is the case for Docker's classic image store. The containerd image store expects every layer in
+ * the archive, so a server using it fails the step before anything is sent. The image is tagged with the beginning
+ * of its ID, which {@link WriteImageOverrideHandler} writes to the Compose override file {@value #IMAGE_OVERRIDE_FILE_NAME}
+ * next to the Compose file once the old stack has been stopped.
+ * </p>
+ */
+@AllArgsConstructor
+@Slf4j
+public class LoadLayeredImageHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String IMAGE_REPOSITORY = "vaadin-app";
+    public static final String SERVICE = "vaadin-app";
+    public static final String IMAGE_OVERRIDE_FILE_NAME = "docker-compose.image.yaml";
+    public static final String IMAGE_OVERRIDE_TEMPLATE = "services:\n  %s:\n    image: %s\n    pull_policy: never\n";
+    public static final String CMD_INSPECT_BASE_TEMPLATE = "docker image inspect %1$s >/dev/null 2>&1 || docker pull -q %1$s >/dev/null"
+            + " && docker image inspect -f '{{.Architecture}}{{println}}{{.Os}}{{println}}{{json .Config.Env}}{{println}}"
+            + "{{json .Config.User}}{{println}}{{range .RootFS.Layers}}{{.}} {{end}}' %1$s";
+    public static final String CMD_LIST_LAYERS_TEMPLATE = "for i in $(docker image ls -q %s | sort -u | head -n %d); do"
+            + " docker image inspect -f '{{range .RootFS.Layers}}{{.}} {{end}}' \"$i\"; done";
+    public static final String CMD_LOAD = "docker load";
+    public static final String CMD_DRIVER_STATUS = "docker info -f '{{json .DriverStatus}}'";
+    public static final String CONTAINERD_SNAPSHOTTER = "io.containerd.snapshotter";
+    private static final int MAX_INSPECTED_IMAGES = 10;
+    private static final long MODIFICATION_TIME = 1;
+    private static final int FILE_MODE = 0644;
+
+    // Services
+    private final SshService sshService;
+    private final LayeredImageBuilder imageBuilder;  // Shared by all servers, builds the image once
+
+    // Data
+    private final AtomicReference<String> loadedImage;  // Receives the tag of the loaded image
+
+    /**
+     * Provides a description of the step: loading the image.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return "Load the locally built image layers into Docker...";
+    }
+
+    /**
+     * Completes the configuration of the image, streams the missing layers into {@code docker load}
+     * and stores the tag of the image.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if the server uses the containerd image store, the image can't be built,
+     *                   the base image can't be inspected or the load fails
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        if (sshService.execCommand(CMD_DRIVER_STATUS).contains(CONTAINERD_SNAPSHOTTER)) {
+            throw new MojoExecutionException("localImageBuild requires Docker's classic image store, but the server uses"
+                    + " the containerd image store, which can't load an image without the layers of its base image."
+                    + " Disable localImageBuild or the containerd image store of the server.");
+        }
+        final LayeredImage image = imageBuilder.getImage();
+        final String[] base = lastLines(sshService.execCommand(
+                String.format(CMD_INSPECT_BASE_TEMPLATE, ShellUtils.quote(image.getBaseImage()))), 5);
+        final List<String> diffIds = new ArrayList<>(splitLayers(base[4]));
+        final int baseLayerCount = diffIds.size();
+        image.getLayers().forEach(layer -> diffIds.add(layer.getDiffId()));
+
+        final byte[] config = configJson(base[0], base[1], base[2], base[3], image.getEntrypoint(), image.getExposedPorts(), diffIds)
+                .getBytes(StandardCharsets.UTF_8);
+        final String imageId = Checksums.toHex(Checksums.newSha256Digest().digest(config));
+        final String tag = IMAGE_REPOSITORY + ":" + imageId.substring(0, 12);
+
+        // The longest chain of layers an image on the server shares with the new one is already there
+        int knownLayerCount = baseLayerCount;
+        for (String line : sshService.execCommand(String.format(CMD_LIST_LAYERS_TEMPLATE, IMAGE_REPOSITORY, MAX_INSPECTED_IMAGES)).split("\n")) {
+            knownLayerCount = Math.max(knownLayerCount, commonPrefixLength(diffIds, splitLayers(line)));
+        }
+        log.info("Image {}: the server has {} of {} layers", tag, knownLayerCount, diffIds.size());
+
+        try {
+            load(image, tag, config, imageId, diffIds, knownLayerCount);
+        } catch (Exception e) {
+            if (knownLayerCount == baseLayerCount) throw e;
+            // An image may have been removed since its layers were listed
+            log.warn("Loading the image without the known layers failed, sending all layers: {}", e.getMessage());
+            load(image, tag, config, imageId, diffIds, baseLayerCount);
+        }
+
+        loadedImage.set(tag);
+    }
+
+    /**
+     * Streams the image into {@code docker load}, starting with the first layer the server doesn't have.
+     */
+    private void load(LayeredImage image, String tag, byte[] config, String imageId, List<String> diffIds, int knownLayerCount) throws Exception {
+        final int baseLayerCount = diffIds.size() - image.getLayers().size();
+        final String manifest = "[{\"Config\":\"" + imageId + ".json\",\"RepoTags\":[\"" + tag + "\"],\"Layers\":["
+                + diffIds.stream().map(diffId -> "\"" + hexOf(diffId) + "/layer.tar\"").collect(Collectors.joining(",")) + "]}]";
+
+        sshService.execCommandWithInput(CMD_LOAD, tag, out -> {
+            long bytes = 0;
+            final TarArchiveWriter tar = new TarArchiveWriter(out);
+            bytes += putBytes(tar, imageId + ".json", config);
+            for (int i = Math.max(knownLayerCount, baseLayerCount); i < diffIds.size(); i++) {
+                final LayeredImage.Layer layer = image.getLayers().get(i - baseLayerCount);
+                try (InputStream in = Files.newInputStream(layer.getFile())) {
+                    tar.putEntry(hexOf(layer.getDiffId()) + "/layer.tar", layer.getSize(), FILE_MODE, MODIFICATION_TIME, in);
+                }
+                bytes += layer.getSize();
+            }
+            bytes += putBytes(tar, "manifest.json", manifest.getBytes(StandardCharsets.UTF_8));
+            tar.finish();
+            return bytes;
+        });
+    }
+
+    /**
+     * Builds the configuration of the image. The environment and the user are taken over from the base image as JSON.
+     *
+     * @return the configuration as JSON
+     */
+    static String configJson(String architecture, String os, String envJson, String userJson, List<String> entrypoint,
+                             List<String> exposedPorts, List<String> diffIds) {
+        return "{\"architecture\":" + quote(architecture) + ",\"os\":" + quote(os) + ",\"created\":\"1970-01-01T00:00:00Z\""
+                + ",\"config\":{\"Env\":" + envJson + ",\"User\":" + userJson + ",\"WorkingDir\":\"/" + LayeredImageBuilder.APP_DIR + "\""
+                + ",\"Entrypoint\":[" + entrypoint.stream().map(LoadLayeredImageHandler::quote).collect(Collectors.joining(",")) + "]"
+                + (exposedPorts.isEmpty() ? "" : ",\"ExposedPorts\":{"
+                        + exposedPorts.stream().map(port -> quote(port) + ":{}").collect(Collectors.joining(",")) + "}")
+                + "}"
+                + ",\"rootfs\":{\"type\":\"layers\",\"diff_ids\":["
+                + diffIds.stream().map(LoadLayeredImageHandler::quote).collect(Collectors.joining(",")) + "]}}";
+    }
+
+    /**
+     * Returns the number of leading layers two images have in common.
+     */
+    static int commonPrefixLength(List<String> a, List<String> b) {
+        int i = 0;
+        while (i < a.size() && i < b.size() && a.get(i).equals(b.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static long putBytes(TarArchiveWriter tar, String name, byte[] content) throws IOException {
+        tar.putEntry(name, content.length, FILE_MODE, MODIFICATION_TIME, new ByteArrayInputStream(content));
+        return content.length;
+    }
+
+    private static String[] lastLines(String output, int count) throws MojoExecutionException {
+        final String[] lines = output.split("\n", -1);
+        final int end = lines.length > 0 && lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length;
+        if (end < count) {
+            throw new MojoExecutionException("Unexpected output of `docker image inspect`: " + output);
+        }
+        return Arrays.copyOfRange(lines, end - count, end);
+    }
+
+    private static List<String> splitLayers(String line) {
+        return Arrays.stream(line.trim().split("\\s+")).filter(s -> !s.isEmpty()).collect(Collectors.toList());
+    }
+
+    private static String hexOf(String diffId) {
+        return diffId.substring(diffId.indexOf(':') + 1);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,53 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handler that removes old releases of the staged deployment from the server.
+ * Release names are timestamps, so the newest releases are the last ones in name order.
+ * The current release is never removed.
+ */
+@AllArgsConstructor
+@Slf4j
+public class PruneReleasesHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String CMD_PRUNE_TEMPLATE = "cd %1$s && ls -1 | sort -r | tail -n +%2$d"
+            + " | while IFS= read -r release; do [ \"$release\" = %3$s ] || rm -rf -- \"$release\"; done";
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String serverReleasesDirPath;  // Directory of all releases on the server
+    private final String currentReleaseName;  // Release the deployment directory points to
+    private final int keepReleases;  // Number of newest releases to keep, including the current one
+
+    /**
+     * Provides a description of the step, including the number of kept releases.
+     *
+     * @param dataObj the server configuration object
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return String.format("Remove old releases from `%s`, keeping %d", serverReleasesDirPath, keepReleases);
+    }
+
+    /**
+     * Removes all releases except the newest ones.
+     *
+     * @param serverModel the server configuration object
+     * @throws Exception if an error occurs while executing the command
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        sshService.execCommand(String.format(CMD_PRUNE_TEMPLATE,
+                ShellUtils.quote(serverReleasesDirPath), Math.max(1, keepReleases) + 1, ShellUtils.quote(currentReleaseName)));
+    }
+}
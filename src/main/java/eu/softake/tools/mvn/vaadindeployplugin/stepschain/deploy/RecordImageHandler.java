@@ -0,0 +1,73 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.ImageHistory;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Handler that adds the image the application has been started with to the {@link ImageHistory} of the server
+ * and removes the tagged images of the {@value LoadLayeredImageHandler#IMAGE_REPOSITORY} repository which have dropped
+ * out of it. Images still used by a container are left in place by Docker.
+ */
+@AllArgsConstructor
+@Slf4j
+public class RecordImageHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String CMD_LIST_TAGS_TEMPLATE = "docker image ls %s --format '{{.Repository}}:{{.Tag}}'";
+    public static final String CMD_REMOVE_TEMPLATE = "docker image rm %s >/dev/null 2>&1 || true";
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String imageHistoryFilePath;  // History file in the deploy dir on the server
+    private final String imageOverrideFilePath;  // Compose override file naming the current image
+    private final int keepImages;  // Number of images to keep, including the current one
+
+    /**
+     * Provides a description of the step, including the number of kept images.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return String.format("Record the deployed image, keeping %d images for rollbacks", keepImages);
+    }
+
+    /**
+     * Updates the history file and removes the images which aren't in it any more.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if the files can't be read or written or the images can't be listed
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        final String tag = ImageHistory.readImage(sshService.readTextFile(imageOverrideFilePath));
+        if (tag == null) {
+            throw new MojoExecutionException(String.format("`%s` doesn't name the deployed image", imageOverrideFilePath));
+        }
+        final List<String> history = ImageHistory.record(ImageHistory.parse(sshService.readTextFile(imageHistoryFilePath)), tag, keepImages);
+        sshService.writeTextFile(imageHistoryFilePath, ImageHistory.format(history));
+
+        final List<String> stale = ImageHistory.parse(sshService.execCommand(
+                        String.format(CMD_LIST_TAGS_TEMPLATE, LoadLayeredImageHandler.IMAGE_REPOSITORY))).stream()
+                .filter(image -> !image.endsWith(":<none>") && !history.contains(image))
+                .collect(Collectors.toList());
+        if (!stale.isEmpty()) {
+            sshService.execCommand(String.format(CMD_REMOVE_TEMPLATE,
+                    stale.stream().map(ShellUtils::quote).collect(Collectors.joining(" "))));
+            log.info("Removed old images: {}", String.join(", ", stale));
+        }
+        log.info("Images kept for rollbacks: {}", String.join(", ", history));
+    }
+}
@@ -0,0 +1,85 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.compose.AppliedState;
+import eu.softake.tools.mvn.vaadindeployplugin.service.compose.RestartPlan;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handler that restarts only the services affected by a deploy, following the plan of {@link DetectServiceChangesHandler}.
+ * <p>
+ * Affected services are brought up again with {@code --no-deps}, so their dependencies keep running. The proxy is
+ * restarted instead of reloaded: configuration files are replaced by a rename when they are uploaded, and a running
+ * container keeps seeing the old file through its bind mount until it's restarted. When the plan restarts
+ * everything, the project is taken down and started like without this option.
+ * Once the plan has been executed, the local state it was derived from is recorded as the {@link AppliedState},
+ * which the next deploy compares with.
+ * </p>
+ */
+@AllArgsConstructor
+@Slf4j
+public class SelectiveRestartHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String CMD_DOCKER_UP_SERVICES_TEMPLATE = "docker compose -f %s up -d --no-deps --build %s";
+    public static final String CMD_DOCKER_RESTART_TEMPLATE = "docker compose -f %s restart %s";
+    public static final String EXCEPTION_TEMPLATE = "Something went wrong! File `%s` doesn't exist on the server.";
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String dockerComposeFileRemotePath;
+    private final AtomicReference<RestartPlan> restartPlan;  // Plan of the detection step
+    private final AtomicReference<AppliedState> localState;  // State the plan has been derived from
+    private final String appliedStateFilePath;  // Applied state file in the deploy dir on the server
+
+    /**
+     * Provides a description of the step: restarting the affected services.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return "Restart the affected DockerCompose services...";
+    }
+
+    /**
+     * Executes the restart plan and records the applied state.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if a command fails or the Docker Compose file doesn't exist
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        if (!sshService.isFileExist(dockerComposeFileRemotePath)) {
+            throw new MojoExecutionException(String.format(EXCEPTION_TEMPLATE, dockerComposeFileRemotePath));
+        }
+        final RestartPlan plan = restartPlan.get() != null ? restartPlan.get() : RestartPlan.FULL;
+        log.info("Restart plan: {}", plan);
+
+        if (plan.isFull()) {
+            sshService.execCommand(String.format(DockerComposeStopHandler.CMD_DOCKER_DOWN_TEMPLATE, dockerComposeFileRemotePath));
+            sshService.execCommand(String.format(DockerComposeStartHandler.CMD_DOCKER_UP_TEMPLATE, dockerComposeFileRemotePath));
+        } else {
+            if (!plan.getServices().isEmpty()) {
+                sshService.execCommand(String.format(CMD_DOCKER_UP_SERVICES_TEMPLATE, dockerComposeFileRemotePath,
+                        String.join(" ", plan.getServices())));
+            }
+            if (plan.isProxyRestart()) {
+                sshService.execCommand(String.format(CMD_DOCKER_RESTART_TEMPLATE, dockerComposeFileRemotePath, RestartPlan.PROXY_SERVICE));
+            }
+        }
+
+        if (localState.get() != null) {
+            sshService.writeTextFile(appliedStateFilePath, localState.get().format());
+        }
+    }
+}
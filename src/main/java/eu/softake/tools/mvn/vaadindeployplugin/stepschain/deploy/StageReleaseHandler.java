@@ -0,0 +1,51 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handler that creates the directory of a new release for the staged deployment.
+ * The release is seeded with a copy of the running release, so that delta uploads only send what has changed
+ * and the running release itself is never modified.
+ */
+@AllArgsConstructor
+@Slf4j
+public class StageReleaseHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String CMD_STAGE_TEMPLATE = "mkdir -p %2$s && if [ -d %1$s ]; then cp -a %1$s/. %2$s/; fi";
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String serverDeployDirPath;  // Deployment directory on the server, the running release
+    private final String serverReleaseDirPath;  // Directory of the new release on the server
+
+    /**
+     * Provides a description of the step, including the directory of the new release.
+     *
+     * @param dataObj the server configuration object
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return String.format("Stage a new release in `%s`", serverReleaseDirPath);
+    }
+
+    /**
+     * Creates the release directory and copies the running release into it, if there is one.
+     *
+     * @param serverModel the server configuration object
+     * @throws Exception if an error occurs while executing the command
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        sshService.execCommand(String.format(CMD_STAGE_TEMPLATE,
+                ShellUtils.quote(serverDeployDirPath), ShellUtils.quote(serverReleaseDirPath)));
+    }
+}
@@ -0,0 +1,46 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handler that stores the fingerprint of the deployed content on the server once the deploy has succeeded,
+ * so that the next deploy of the same content can be skipped.
+ */
+@AllArgsConstructor
+@Slf4j
+public class StoreDeploymentFingerprintHandler implements ChainStepHandler<ServerParam> {
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String fingerprintFilePath;  // Fingerprint file in the deploy dir on the server
+    private final String fingerprint;  // Fingerprint of the deployed content
+
+    /**
+     * Provides a description of the step: storing the fingerprint of this deploy.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return String.format("Store the deployment fingerprint `%s`...", fingerprintFilePath);
+    }
+
+    /**
+     * Writes the fingerprint file.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if the file can't be written
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        sshService.writeTextFile(fingerprintFilePath, fingerprint);
+        log.info("Deployment fingerprint: {}", fingerprint);
+    }
+}
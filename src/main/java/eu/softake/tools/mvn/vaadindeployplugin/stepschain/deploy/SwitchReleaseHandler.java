@@ -0,0 +1,63 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Handler that points the deployment directory, a symlink, to the new release of the staged deployment.
+ * <p>
+ * The new symlink is created under a temporary name and renamed over the old one, so the deployment directory
+ * always points to a complete release. A deployment directory which is still a real directory, left behind by
+ * the in-place deployment, is moved into the releases directory first, under a name sorting before all releases.
+ * </p>
+ */
+@AllArgsConstructor
+@Slf4j
+public class SwitchReleaseHandler implements ChainStepHandler<ServerParam> {
+
+    // Constants
+    public static final String NEXT_LINK_SUFFIX = ".next";
+    public static final String IN_PLACE_RELEASE_PREFIX = "0-in-place-";
+    public static final String CMD_SWITCH_TEMPLATE = "if [ -d %1$s ] && [ ! -L %1$s ]; then mv %1$s %2$s; fi"
+            + " && ln -sfn %3$s %4$s && mv -T %4$s %1$s";
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String serverDeployDirPath;  // Deployment directory on the server, the symlink to switch
+    private final String serverReleasesDirPath;  // Directory of all releases on the server
+    private final String releaseName;  // Name of the new release in the releases directory
+
+    /**
+     * Provides a description of the step, including the new release.
+     *
+     * @param dataObj the server configuration object
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return String.format("Switch `%s` to the release `%s`", serverDeployDirPath, releaseName);
+    }
+
+    /**
+     * Replaces the symlink atomically. The symlink is relative, so the deployment can be moved as a whole.
+     *
+     * @param serverModel the server configuration object
+     * @throws Exception if an error occurs while executing the command
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        final String releasesDirName = serverReleasesDirPath.substring(serverReleasesDirPath.lastIndexOf('/') + 1);
+        final String command = String.format(CMD_SWITCH_TEMPLATE,
+                ShellUtils.quote(serverDeployDirPath),
+                ShellUtils.quote(serverReleasesDirPath + "/" + IN_PLACE_RELEASE_PREFIX + releaseName),
+                ShellUtils.quote(releasesDirName + "/" + releaseName),
+                ShellUtils.quote(serverDeployDirPath + NEXT_LINK_SUFFIX));
+        sshService.execCommand(command);
+    }
+}
@@ -0,0 +1,56 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.compose.ContainerHealthPoller;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Handler that waits until all services of the started Docker Compose project are healthy, so that a deploy
+ * only succeeds when the application has actually come up. The time every service took is logged;
+ * if a service becomes unhealthy or doesn't become ready in time, the deploy fails with the tail of its logs.
+ */
+@AllArgsConstructor
+@Slf4j
+public class WaitForHealthyServicesHandler implements ChainStepHandler<ServerParam> {
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String dockerComposeFileRemotePath;
+    private final String projectName;  // Project name the stack has been started with, or null for the default one
+    private final long timeoutSeconds;  // How long the services may take to become ready
+
+    /**
+     * Provides a description of the step: waiting for the services.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return "Wait for the DockerCompose services to become healthy...";
+    }
+
+    /**
+     * Polls the containers of the project until all of them are ready.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if a service is unhealthy, isn't ready before the timeout or a command fails
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        final String composeArgs = (projectName != null ? "-p " + projectName + " " : "")
+                + "-f " + ShellUtils.quote(dockerComposeFileRemotePath);
+        final Map<String, Long> readyMillis = new ContainerHealthPoller(sshService, composeArgs)
+                .waitUntilReady(Collections.emptyList(), timeoutSeconds);
+        log.info("All services are ready: {}", readyMillis);
+    }
+}
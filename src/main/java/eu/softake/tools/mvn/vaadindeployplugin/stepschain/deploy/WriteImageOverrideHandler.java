@@ -0,0 +1,55 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handler that points the {@value LoadLayeredImageHandler#SERVICE} service at the image loaded by {@link LoadLayeredImageHandler}
+ * by writing the Compose override file. It runs once the old stack has been stopped, so the backup of the deployment
+ * directory and the stopped stack still go with the previous image.
+ */
+@AllArgsConstructor
+@Slf4j
+public class WriteImageOverrideHandler implements ChainStepHandler<ServerParam> {
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String imageOverrideFilePath;  // Compose override file pointing the service at the loaded image
+    private final AtomicReference<String> loadedImage;  // Tag of the image loaded by the load step
+
+    /**
+     * Provides a description of the step: pointing the application service at the loaded image.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return String.format("Point the application at the loaded image in `%s`...", imageOverrideFilePath);
+    }
+
+    /**
+     * Writes the Compose override file.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if no image has been loaded or the file can't be written
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        final String tag = loadedImage.get();
+        if (tag == null) {
+            throw new MojoExecutionException("Something went wrong! No image has been loaded.");
+        }
+        sshService.writeTextFile(imageOverrideFilePath,
+                String.format(LoadLayeredImageHandler.IMAGE_OVERRIDE_TEMPLATE, LoadLayeredImageHandler.SERVICE, tag));
+        log.info("The service {} uses the image {}", LoadLayeredImageHandler.SERVICE, tag);
+    }
+}
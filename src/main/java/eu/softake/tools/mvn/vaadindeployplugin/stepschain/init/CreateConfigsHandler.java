@@ -9,6 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Handler that creates the configuration files for the deployment by copying the configurations folder
  * from the source path to the destination deployment directory.
+ * For blue/green deployments the nginx configuration proxies to the upstream slot chosen by the deploy goal.
  */
 @Slf4j
 @AllArgsConstructor
@@ -19,6 +20,7 @@ public class CreateConfigsHandler implements ChainStepHandler<ServerParam> {
 
     // Data
     private final String deployDirLocalPath;
+    private final boolean blueGreen;
 
     /**
      * Provides a description of the step: creating the configuration files.
@@ -46,6 +48,9 @@ public class CreateConfigsHandler implements ChainStepHandler<ServerParam> {
         final String configsDestPath = getConfigsDestPath();
 
         fileService.copyFolder(configsSourcePath, configsDestPath);
+        if (blueGreen) {
+            fileService.copyFile("templates/blue-green/nginx.conf", configsDestPath + "/nginx/nginx.conf");
+        }
     }
 
     /**
@@ -11,6 +11,7 @@ import java.util.Locale;
 /**
  * Handler that creates the 'docker-compose.yaml' file for deploying the application. It copies the appropriate
  * template based on the database provider from the templates directory to the destination deployment directory.
+ * For blue/green deployments the template with two slots of the application is used.
  */
 @Slf4j
 @AllArgsConstructor
@@ -21,6 +22,7 @@ public class CreateDockerComposeFileHandler implements ChainStepHandler<ServerPa
 
     // Data
     private final String deployDirLocalPath;
+    private final boolean blueGreen;
 
     /**
      * Provides a description of the step: creating the 'docker-compose.yaml' file.
@@ -71,6 +73,6 @@ public class CreateDockerComposeFileHandler implements ChainStepHandler<ServerPa
         } else {
             dbProvider = "nodatabase";
         }
-        return "templates/" + dbProvider + "/docker-compose.yaml";
+        return "templates/" + dbProvider + (blueGreen ? "/docker-compose-blue-green.yaml" : "/docker-compose.yaml");
     }
 }
\ No newline at end of file
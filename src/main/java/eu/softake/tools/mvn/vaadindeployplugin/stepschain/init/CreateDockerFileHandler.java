@@ -3,25 +3,56 @@ package eu.softake.tools.mvn.vaadindeployplugin.stepschain.init;
 import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
 import eu.softake.tools.mvn.vaadindeployplugin.params.ServerTypeParam;
 import eu.softake.tools.mvn.vaadindeployplugin.service.LocalFileService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.LayeredImageBuilder;
 import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.file.Paths;
+
 /**
  * Handler that creates the Dockerfile for deploying the application. It copies the Dockerfile template from
  * the Vaadin project directory to the destination deployment directory. If the server type is LOCAL, the
  * creation of the Dockerfile is skipped.
+ * <p>
+ * With {@code layered} a multi-stage Dockerfile is generated instead, on the base image of the project's Dockerfile.
+ * It extracts the Spring Boot JAR with its layer tools and copies the {@value #LAYERS} layers one by one, from the
+ * least to the most frequently changed one. Docker then reuses the cached dependency layers when only the code
+ * of the application has changed.
+ * </p>
  */
 @Slf4j
 @AllArgsConstructor
 public class CreateDockerFileHandler implements ChainStepHandler<ServerParam> {
 
+    // Constants
+    public static final String LAYERS = "dependencies spring-boot-loader snapshot-dependencies application";
+    public static final String LAYERED_DOCKERFILE_TEMPLATE = "# Generated by `vaadin-deploy:init` from the Dockerfile of the project.\n"
+            + "# The layers of the Spring Boot JAR are copied from the least to the most frequently changed one,\n"
+            + "# so a rebuild after a code change only replaces the small application layer.\n"
+            + "FROM %1$s AS extract\n"
+            + "WORKDIR /extract\n"
+            + "COPY target/*.jar app.jar\n"
+            + "RUN (java -Djarmode=layertools -jar app.jar extract --destination layers && test -d layers/application \\\n"
+            + "      || java -Djarmode=tools -jar app.jar extract --layers --launcher --destination layers) \\\n"
+            + "    && cd layers && mkdir -p %2$s \\\n"
+            + "    && printf -- '-cp\\n/app\\n%%s\\n' \"$(sed -n 's/^Main-Class: *//p' application/META-INF/MANIFEST.MF | tr -d '\\r')\" \\\n"
+            + "       > application/app.args\n"
+            + "\n"
+            + "FROM %1$s\n"
+            + "WORKDIR /app\n"
+            + "%3$s"
+            + "EXPOSE 8080\n"
+            + "ENTRYPOINT [\"java\", \"@/app/app.args\"]\n";
+    public static final String LAYER_COPY_TEMPLATE = "COPY --from=extract /extract/layers/%s/ ./\n";
+
     // Services
     private final LocalFileService fileService;
 
     // Data
     private final String deployDirLocalPath;
     private final String vaadinProjectDirLocalPath;
+    private final boolean layered;  // Generate a layered Dockerfile instead of copying the project's one
 
     /**
      * Provides a description of the step: creating the Dockerfile.
@@ -32,15 +63,16 @@ public class CreateDockerFileHandler implements ChainStepHandler<ServerParam> {
     @Override
     public String getStepDescription(ServerParam serverModel) {
         final String destPath = getDestEnvFilePath();
-        return String.format("Create Dockerfile: `%s`", destPath);
+        return String.format(layered ? "Generate layered Dockerfile: `%s`" : "Create Dockerfile: `%s`", destPath);
     }
 
     /**
      * Handles the creation of the Dockerfile by copying the appropriate template from the Vaadin project directory
-     * to the destination deployment directory. If the server type is LOCAL, the process is skipped.
+     * to the destination deployment directory, or by generating the layered Dockerfile on its base image.
+     * If the server type is LOCAL, the process is skipped.
      *
      * @param serverModel the server configuration containing deployment parameters
-     * @throws Exception if an error occurs during the file copy process
+     * @throws Exception if an error occurs during the file copy process or the base image can't be found
      */
     @Override
     public void handle(ServerParam serverModel) throws Exception {
@@ -53,7 +85,27 @@ public class CreateDockerFileHandler implements ChainStepHandler<ServerParam> {
         final String srcPath = getSrcEnvFilePath();
         final String destPath = getDestEnvFilePath();
 
-        fileService.copyFile(srcPath, destPath);
+        if (layered) {
+            final String baseImage = LayeredImageBuilder.readBaseImage(Paths.get(srcPath));
+            log.info("Generate layered Dockerfile on the base image `{}`", baseImage);
+            fileService.writeFile(destPath, layeredDockerfile(baseImage));
+        } else {
+            fileService.copyFile(srcPath, destPath);
+        }
+    }
+
+    /**
+     * Builds the layered Dockerfile.
+     *
+     * @param baseImage the image the application runs on
+     * @return the content of the Dockerfile
+     */
+    static String layeredDockerfile(String baseImage) {
+        final StringBuilder copyLayers = new StringBuilder();
+        for (String layer : LAYERS.split(" ")) {
+            copyLayers.append(String.format(LAYER_COPY_TEMPLATE, layer));
+        }
+        return String.format(LAYERED_DOCKERFILE_TEMPLATE, baseImage, LAYERS, copyLayers);
     }
 
     /**
@@ -0,0 +1,74 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.rollback;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.ShellUtils;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshService;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.ImageHistory;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.BuildTaggedImageHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.LoadLayeredImageHandler;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.List;
+
+/**
+ * Handler that selects the image to roll back to from the {@link ImageHistory} of the server: the image deployed
+ * before the current one, or the given tag. It points the Compose override file at the image and drops the newer
+ * images from the history, so the next rollback goes back further. The dropped images are removed by the next deploy.
+ */
+@AllArgsConstructor
+@Slf4j
+public class SelectRollbackImageHandler implements ChainStepHandler<ServerParam> {
+
+    // Services
+    private final SshService sshService;
+
+    // Data
+    private final String imageHistoryFilePath;  // History file in the deploy dir on the server
+    private final String imageOverrideFilePath;  // Compose override file naming the image to start
+    private final String rollbackTo;  // Tag to roll back to, or null for the previous image
+
+    /**
+     * Provides a description of the step: selecting the image to roll back to.
+     *
+     * @param dataObj the server configuration object containing deployment parameters
+     * @return the description of the step
+     */
+    @Override
+    public String getStepDescription(ServerParam dataObj) {
+        return rollbackTo != null ? String.format("Select the image `%s` to roll back to", rollbackTo) : "Select the previous image to roll back to";
+    }
+
+    /**
+     * Finds the image, checks that it still exists and makes it the current one.
+     *
+     * @param serverModel the server configuration object containing deployment parameters
+     * @throws Exception if there is no image to roll back to or the files can't be read or written
+     */
+    @Override
+    public void handle(ServerParam serverModel) throws Exception {
+        final List<String> history = ImageHistory.parse(sshService.readTextFile(imageHistoryFilePath));
+        final String target;
+        if (rollbackTo == null) {
+            if (history.size() < 2) {
+                throw new MojoExecutionException(String.format("There is no previous image to roll back to in `%s`", imageHistoryFilePath));
+            }
+            target = history.get(history.size() - 2);
+        } else {
+            target = rollbackTo.contains(":") ? rollbackTo : LoadLayeredImageHandler.IMAGE_REPOSITORY + ":" + rollbackTo;
+            if (!history.contains(target)) {
+                throw new MojoExecutionException(String.format("Image `%s` isn't one of the deployed images %s", target, history));
+            }
+        }
+        if (sshService.execCommand(String.format(BuildTaggedImageHandler.CMD_IMAGE_ID_TEMPLATE, ShellUtils.quote(target))).trim().isEmpty()) {
+            throw new MojoExecutionException(String.format("Image `%s` doesn't exist on the server any more", target));
+        }
+
+        sshService.writeTextFile(imageOverrideFilePath,
+                String.format(LoadLayeredImageHandler.IMAGE_OVERRIDE_TEMPLATE, LoadLayeredImageHandler.SERVICE, target));
+        sshService.writeTextFile(imageHistoryFilePath, ImageHistory.format(ImageHistory.rollBackTo(history, target)));
+        log.info("Rolling back from {} to {}", history.get(history.size() - 1), target);
+    }
+}
@@ -0,0 +1,667 @@
+package eu.softake.tools.mvn.vaadindeployplugin;
+
+import eu.softake.tools.mvn.vaadindeployplugin.e2e.DeployTestServer;
+import eu.softake.tools.mvn.vaadindeployplugin.e2e.NetworkShaper;
+import eu.softake.tools.mvn.vaadindeployplugin.params.DeploymentStrategyParam;
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerParam;
+import eu.softake.tools.mvn.vaadindeployplugin.params.ServerTypeParam;
+import eu.softake.tools.mvn.vaadindeployplugin.service.SshSessionRegistry;
+import eu.softake.tools.mvn.vaadindeployplugin.service.image.ImageHistory;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.TransferMode;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.DockerComposeBlueGreenHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.LoadLayeredImageHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy.SwitchReleaseHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end performance test of the deploy goal against a {@link DeployTestServer}.
+ * <p>
+ * Every scenario deploys a generated project twice: the first deployment fills the empty server and warms up
+ * the JVM, the second one is measured like a regular redeploy, including a new SSH session, stopping the
+ * running containers and the backup. Total deploy time, round trips and bytes sent are written to
+ * {@code target/e2e} and checked against the limits in {@code e2e-thresholds.properties}, which can be
+ * overridden with system properties of the same name. The {@code lan-parallel} scenario runs the independent
+ * steps concurrently, like all the other tests do.
+ * </p>
+ * <p>
+ * Other tests check that a redeploy of unchanged content is skipped with {@code skipUnchanged}, that the
+ * staged deployment builds the new release before it stops the running stack and switches to it, and that the
+ * blue/green deployment alternates the slots and keeps the old one when the new one is unhealthy, that the
+ * selective restart only recreates the services whose inputs have changed, that {@code waitUntilHealthy}
+ * waits for the services and fails with their logs, that a locally built image is loaded without the layers
+ * the server already has, that a tagged image is built only once and can be rolled back to without a build,
+ * and that incremental backups hard-link the unchanged files and only the newest backups are kept.
+ * </p>
+ */
+class DeployPerformanceIT {
+
+    // Constants
+    private static final String THRESHOLDS_RESOURCE = "/e2e-thresholds.properties";
+    private static final String DOMAIN = "e2e.softake.eu";
+    private static final int CONFIG_FILE_COUNT = 60;
+    private static final int APPS_DATA_FILE_COUNT = 20;
+    private static final int JAR_SIZE = 8 * 1024 * 1024;
+    private static final double DOCKER_DOWN_SECONDS = 0.2;
+    private static final double DOCKER_UP_SECONDS = 0.5;
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void closeSessions() {
+        SshSessionRegistry.getInstance().shutdown();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "lan, 0, 0, 1",
+            "lan-parallel, 0, 0, 4",
+            "wan, 40, 10485760, 1"
+    })
+    void redeployStaysWithinThresholds(String scenario, long roundTripMillis, long bytesPerSecond, int stepsParallelism) throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        final byte[] jar = createProject(projectDir, server);
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, roundTripMillis, bytesPerSecond)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.stepsParallelism = stepsParallelism;
+            final NetworkShaper network = deployServer.getNetworkShaper();
+
+            mojo.execute();
+            SshSessionRegistry.getInstance().shutdown();
+            network.resetCounters();
+
+            final long startTime = System.nanoTime();
+            mojo.execute();
+            final long deployMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            final long roundTrips = network.getRoundTrips();
+            final long bytesSent = network.getBytesSent();
+            final long bytesReceived = network.getBytesReceived();
+
+            final Properties metrics = new Properties();
+            metrics.setProperty("deployMillis", String.valueOf(deployMillis));
+            metrics.setProperty("roundTrips", String.valueOf(roundTrips));
+            metrics.setProperty("bytesSent", String.valueOf(bytesSent));
+            metrics.setProperty("bytesReceived", String.valueOf(bytesReceived));
+            writeMetrics(scenario, metrics);
+            System.out.printf("E2E deploy [%s]: %d ms, %d round trips, %d bytes sent, %d bytes received%n",
+                    scenario, deployMillis, roundTrips, bytesSent, bytesReceived);
+
+            final String composeFile = server.getDeployDir() + "/docker-compose.yaml";
+            assertEquals(expectedDockerCalls(composeFile), deployServer.getDockerCalls());
+            assertArrayEquals(jar, Files.readAllBytes(Paths.get(server.getDeployDir(), "target", "app.jar")));
+            assertTrue(Files.isRegularFile(Paths.get(server.getAppsDataDir(), "data-0.txt")));
+            assertTrue(Files.isRegularFile(Paths.get(server.getDeployDir(), "configs", "config-0.conf")));
+
+            final Properties thresholds = loadThresholds();
+            assertWithinThreshold(thresholds, scenario, "deployMillis", deployMillis);
+            assertWithinThreshold(thresholds, scenario, "roundTrips", roundTrips);
+            assertWithinThreshold(thresholds, scenario, "bytesSent", bytesSent);
+        }
+    }
+
+    @Test
+    void unchangedRedeployIsSkipped() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.skipUnchanged = true;
+
+            mojo.execute();
+            final int dockerCalls = deployServer.getDockerCalls().size();
+            mojo.execute();
+            assertEquals(dockerCalls, deployServer.getDockerCalls().size());
+
+            Files.write(projectDir.resolve("target/app.jar"), new byte[]{1, 2, 3});
+            mojo.execute();
+            assertEquals(dockerCalls + 3, deployServer.getDockerCalls().size());
+        }
+    }
+
+    @Test
+    void stagedDeploySwitchesToTheNewRelease() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            final Path deployDir = Paths.get(server.getDeployDir());
+            final Path releasesDir = Paths.get(server.getDeployDir() + ".releases");
+
+            // An in-place deployment is migrated by the first staged one
+            mojo.execute();
+            mojo.deploymentStrategy = DeploymentStrategyParam.STAGED;
+            mojo.keepReleases = 2;
+            mojo.execute();
+            assertTrue(Files.isSymbolicLink(deployDir));
+            assertTrue(Files.isDirectory(releasesDir.resolve(SwitchReleaseHandler.IN_PLACE_RELEASE_PREFIX
+                    + deployDir.toRealPath().getFileName())));
+
+            final byte[] jar = new byte[]{1, 2, 3};
+            Files.write(projectDir.resolve("target/app.jar"), jar);
+            final int firstCall = deployServer.getDockerCalls().size();
+            mojo.execute();
+
+            final Path release = deployDir.toRealPath();
+            try (Stream<Path> releases = Files.list(releasesDir)) {
+                assertEquals(2, releases.count());
+            }
+            assertEquals(releasesDir.toRealPath(), release.getParent());
+            assertArrayEquals(jar, Files.readAllBytes(deployDir.resolve("target/app.jar")));
+            assertTrue(Files.isRegularFile(deployDir.resolve("configs/config-0.conf")));
+
+            final String composeFile = server.getDeployDir() + "/docker-compose.yaml";
+            assertEquals(Arrays.asList(
+                    "compose version",
+                    "compose -p app -f " + release.resolve("docker-compose.yaml") + " build",
+                    "compose -p app -f " + composeFile + " down -v",
+                    "compose -p app -f " + composeFile + " up -d"
+            ), deployServer.getDockerCalls().subList(firstCall, deployServer.getDockerCalls().size()));
+            final List<String> buildContexts = deployServer.getBuildContexts();
+            assertEquals(release.toString(), buildContexts.get(buildContexts.size() - 1), "the release is built from its own directory");
+
+            // The migrated in-place release is the oldest one and is removed first
+            try (Stream<Path> releases = Files.list(releasesDir)) {
+                assertEquals(2, releases.filter(r -> !r.getFileName().toString().startsWith(SwitchReleaseHandler.IN_PLACE_RELEASE_PREFIX)).count());
+            }
+        }
+    }
+
+    @Test
+    void blueGreenDeployAlternatesSlots() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.deploymentStrategy = DeploymentStrategyParam.BLUE_GREEN;
+            mojo.blueGreenHealthTimeout = 4;
+            mojo.blueGreenGracePeriod = 0;
+            final Path upstream = Paths.get(server.getAppsDataDir(), "nginx", "upstream", "vaadin-app.conf");
+            final String composeFile = server.getDeployDir() + "/docker-compose.yaml";
+
+            mojo.execute();
+            assertEquals("server vaadin-app-blue:8080;\n", new String(Files.readAllBytes(upstream), StandardCharsets.UTF_8));
+            assertTrue(deployServer.getDockerCalls().contains("compose -f " + composeFile + " --profile blue up -d --build vaadin-app-blue"));
+
+            final int secondDeploy = deployServer.getDockerCalls().size();
+            mojo.blueGreenGracePeriod = 1;
+            mojo.execute();
+            final List<String> calls = deployServer.getDockerCalls().subList(secondDeploy, deployServer.getDockerCalls().size());
+            assertEquals("server vaadin-app-green:8080;\n", new String(Files.readAllBytes(upstream), StandardCharsets.UTF_8));
+            assertEquals("compose -f " + composeFile + " --profile green up -d --build vaadin-app-green", calls.get(1));
+            // nginx is reloaded for the switch and again after the drain, before the old slot is removed
+            final String reload = "compose -f " + composeFile + " exec -T proxy nginx -s reload";
+            assertEquals(Arrays.asList(reload, reload, "compose -f " + composeFile + " --profile blue rm -s -f vaadin-app-blue"),
+                    calls.stream().filter(call -> call.equals(reload) || call.contains(" rm ")).collect(Collectors.toList()));
+            assertEquals("upstream vaadin-app-green {\n    server vaadin-app-green:8080;\n}\n"
+                            + "map $cookie_vaadin_slot $vaadin_app_slot {\n    default green;\n}\n",
+                    new String(Files.readAllBytes(upstream.resolveSibling(DockerComposeBlueGreenHandler.SLOTS_FILE_NAME)), StandardCharsets.UTF_8));
+            assertTrue(calls.stream().noneMatch(call -> call.contains(" down")));
+
+            // An unhealthy release is removed and the traffic stays on the running slot
+            deployServer.setHealthStatus("unhealthy");
+            final int thirdDeploy = deployServer.getDockerCalls().size();
+            assertThrows(Exception.class, mojo::execute);
+            final List<String> failedCalls = deployServer.getDockerCalls().subList(thirdDeploy, deployServer.getDockerCalls().size());
+            assertEquals("server vaadin-app-green:8080;\n", new String(Files.readAllBytes(upstream), StandardCharsets.UTF_8));
+            assertEquals("compose -f " + composeFile + " --profile blue rm -s -f vaadin-app-blue", failedCalls.get(failedCalls.size() - 1));
+        }
+    }
+
+    @Test
+    void selectiveRestartRecreatesOnlyAffectedServices() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.selectiveRestart = true;
+            final String composeFile = server.getDeployDir() + "/docker-compose.yaml";
+            final Path deployDir = Paths.get(projectDir + "/_deployment/" + DOMAIN + server.getDeployDir());
+
+            mojo.execute();
+            assertEquals(Arrays.asList("compose version", "compose -f " + composeFile + " down -v",
+                    "compose -f " + composeFile + " up -d --build"), deployServer.getDockerCalls());
+
+            Files.write(projectDir.resolve("target/app.jar"), new byte[]{1, 2, 3});
+            Files.write(deployDir.resolve("configs/config-0.conf"), new byte[0]);
+            write(Files.createDirectories(deployDir.resolve("configs/nginx")).resolve("nginx.conf"), "events {}\n");
+            write(deployDir.resolve(".env"), env("mariadb", server));
+            int firstCall = deployServer.getDockerCalls().size();
+            mojo.execute();
+            assertEquals(Collections.singletonList("compose -f " + composeFile + " down -v"),
+                    deployServer.getDockerCalls().subList(firstCall + 1, firstCall + 2), "an unknown config file restarts everything");
+
+            Files.write(projectDir.resolve("target/app.jar"), new byte[]{4, 5, 6});
+            write(deployDir.resolve("configs/nginx/nginx.conf"), "events { worker_connections 64; }\n");
+            write(deployDir.resolve(".env"), env("postgres", server));
+            firstCall = deployServer.getDockerCalls().size();
+            mojo.execute();
+            assertEquals(Arrays.asList("compose version",
+                    "compose -f " + composeFile + " up -d --no-deps --build db vaadin-app",
+                    "compose -f " + composeFile + " restart proxy"),
+                    deployServer.getDockerCalls().subList(firstCall, deployServer.getDockerCalls().size()));
+            assertArrayEquals(new byte[]{4, 5, 6}, Files.readAllBytes(Paths.get(server.getDeployDir(), "target", "app.jar")));
+
+            // After a failed restart the uploaded files are on the server, but not running
+            write(deployDir.resolve("configs/nginx/nginx.conf"), "events { worker_connections 128; }\n");
+            deployServer.failCommandsContaining("restart proxy");
+            assertThrows(Exception.class, mojo::execute);
+            deployServer.failCommandsContaining("");
+            firstCall = deployServer.getDockerCalls().size();
+            mojo.execute();
+            assertEquals(Collections.singletonList("compose -f " + composeFile + " down -v"),
+                    deployServer.getDockerCalls().subList(firstCall + 1, firstCall + 2), "a failed restart restarts everything next time");
+            firstCall = deployServer.getDockerCalls().size();
+            mojo.execute();
+            assertEquals(Collections.singletonList("compose version"),
+                    deployServer.getDockerCalls().subList(firstCall, deployServer.getDockerCalls().size()), "an applied state restarts nothing");
+        }
+    }
+
+    @Test
+    void healthGatedDeployWaitsForTheServices() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.waitUntilHealthy = true;
+            mojo.healthCheckTimeout = 20;
+            final String composeFile = server.getDeployDir() + "/docker-compose.yaml";
+
+            // The deploy finishes once the starting services have become healthy
+            deployServer.setHealthStatus("starting");
+            final Thread becomeHealthy = new Thread(() -> {
+                try {
+                    while (deployServer.getDockerCalls().stream().noneMatch(call -> call.startsWith("inspect "))) {
+                        Thread.sleep(50);
+                    }
+                    Thread.sleep(1000);
+                    deployServer.setHealthStatus("healthy");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            becomeHealthy.start();
+            mojo.execute();
+            becomeHealthy.join();
+            final List<String> calls = deployServer.getDockerCalls();
+            assertTrue(calls.indexOf("compose -f " + composeFile + " up -d --build") < calls.indexOf("compose -f " + composeFile + " ps -aq"));
+            assertTrue(calls.stream().filter(call -> call.startsWith("inspect ")).count() > 1);
+
+            deployServer.setHealthStatus("unhealthy");
+            final Exception unhealthy = assertThrows(Exception.class, mojo::execute);
+            assertTrue(messages(unhealthy).contains("Application run failed"), messages(unhealthy));
+
+            deployServer.setHealthStatus("starting");
+            mojo.healthCheckTimeout = 2;
+            final Exception timedOut = assertThrows(Exception.class, mojo::execute);
+            assertTrue(messages(timedOut).contains("didn't become ready within 2 s"), messages(timedOut));
+        }
+    }
+
+    @Test
+    void localImageBuildLoadsOnlyChangedLayers() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+        writeSpringBootJar(projectDir.resolve("target/app.jar"), "v1");
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.localImageBuild = true;
+            final String composeFile = server.getDeployDir() + "/docker-compose.yaml";
+            final Path overrideFile = Paths.get(server.getDeployDir(), LoadLayeredImageHandler.IMAGE_OVERRIDE_FILE_NAME);
+
+            mojo.execute();
+            assertTrue(deployServer.getDockerCalls().contains("compose -f " + composeFile + " -f " + overrideFile + " up -d --no-build"));
+            assertFalse(Files.exists(Paths.get(server.getDeployDir(), "target", "app.jar")));
+            final String firstOverride = new String(Files.readAllBytes(overrideFile), StandardCharsets.UTF_8);
+            assertTrue(firstOverride.contains("image: " + LoadLayeredImageHandler.IMAGE_REPOSITORY + ":"), firstOverride);
+            assertEquals(3, deployServer.getLoadedLayers().indexOf(""), "dependencies, loader and application are loaded");
+
+            // Only the application layer has changed, the base image and the dependencies are on the server
+            writeSpringBootJar(projectDir.resolve("target/app.jar"), "v2");
+            final int loadedLines = deployServer.getLoadedLayers().size();
+            mojo.execute();
+            assertEquals(loadedLines + 2, deployServer.getLoadedLayers().size(), "only the application layer is loaded");
+            final String secondOverride = new String(Files.readAllBytes(overrideFile), StandardCharsets.UTF_8);
+            assertFalse(firstOverride.equals(secondOverride));
+
+            // The override file is only changed once the old stack has been stopped
+            writeSpringBootJar(projectDir.resolve("target/app.jar"), "v3");
+            deployServer.failCommandsContaining(" down");
+            assertThrows(Exception.class, mojo::execute);
+            deployServer.failCommandsContaining("");
+            assertEquals(secondOverride, new String(Files.readAllBytes(overrideFile), StandardCharsets.UTF_8));
+
+            // The containerd image store needs the base layers in the archive, which aren't sent
+            deployServer.setDriverStatus(DeployTestServer.CONTAINERD_DRIVER_STATUS);
+            final int calls = deployServer.getDockerCalls().size();
+            final Exception containerd = assertThrows(Exception.class, mojo::execute);
+            assertTrue(messages(containerd).contains("containerd image store"), messages(containerd));
+            assertFalse(deployServer.getDockerCalls().subList(calls, deployServer.getDockerCalls().size()).contains("load"));
+        }
+    }
+
+    @Test
+    void taggedImageIsReusedAndRolledBackWithoutBuild() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+        final Path jar = projectDir.resolve("target/app.jar");
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.imageTagging = true;
+            mojo.keepImages = 2;
+            final String composeFile = server.getDeployDir() + "/docker-compose.yaml";
+            final Path overrideFile = Paths.get(server.getDeployDir(), LoadLayeredImageHandler.IMAGE_OVERRIDE_FILE_NAME);
+            final String buildCall = "compose -f " + composeFile + " -f " + overrideFile + " build vaadin-app";
+            final String upCall = "compose -f " + composeFile + " -f " + overrideFile + " up -d --no-build";
+
+            mojo.execute();
+            final String first = ImageHistory.readImage(new String(Files.readAllBytes(overrideFile), StandardCharsets.UTF_8));
+            write(jar, "v2");
+            mojo.execute();
+            final String second = ImageHistory.readImage(new String(Files.readAllBytes(overrideFile), StandardCharsets.UTF_8));
+            assertEquals(2, Collections.frequency(deployServer.getDockerCalls(), buildCall));
+            assertEquals(Stream.of(first, second).sorted().collect(Collectors.toList()), deployServer.getImageTags());
+
+            // The rollback only restarts with the previous image
+            final int calls = deployServer.getDockerCalls().size();
+            final RollbackMojo rollback = new RollbackMojo();
+            rollback.servers = Collections.singletonList(server);
+            rollback.certbotEmail = "admin@softake.eu";
+            rollback.serverType = ServerTypeParam.PROD;
+            rollback.execute();
+            final List<String> rollbackCalls = deployServer.getDockerCalls().subList(calls, deployServer.getDockerCalls().size());
+            assertTrue(rollbackCalls.contains(upCall), rollbackCalls.toString());
+            assertFalse(rollbackCalls.contains(buildCall), rollbackCalls.toString());
+            assertTrue(Files.readAllLines(overrideFile, StandardCharsets.UTF_8).contains("    image: " + first));
+            assertThrows(Exception.class, rollback::execute, "there is nothing before the first image");
+
+            // Deploying the newer package again reuses its image, a new package drops the oldest image
+            mojo.execute();
+            assertEquals(2, Collections.frequency(deployServer.getDockerCalls(), buildCall));
+            write(jar, "v3");
+            mojo.execute();
+            assertEquals(3, Collections.frequency(deployServer.getDockerCalls(), buildCall));
+            assertEquals(2, deployServer.getImageTags().size());
+            assertFalse(deployServer.getImageTags().contains(first));
+        }
+    }
+
+    @Test
+    void incrementalBackupLinksUnchangedFiles() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+        final Path localConfig = Paths.get(projectDir + "/_deployment/" + DOMAIN + server.getDeployDir(), "configs", "config-0.conf");
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.incrementalBackup = true;
+            mojo.keepBackups = 1;
+            final Path backupRoot = Paths.get(server.getBackupDir());
+
+            // The first deploy has nothing to back up, the second one takes a full backup
+            mojo.execute();
+            write(localConfig, "changed");
+            TimeUnit.SECONDS.sleep(1);
+            mojo.execute();
+            final Path firstBackup = onlyBackup(backupRoot);
+            final Object jarInode = Files.getAttribute(firstBackup.resolve("target/app.jar"), "unix:ino");
+
+            TimeUnit.SECONDS.sleep(1);
+            mojo.execute();
+            final Path secondBackup = onlyBackup(backupRoot);
+            assertFalse(secondBackup.equals(firstBackup), "the older backup has been removed");
+            assertEquals(jarInode, Files.getAttribute(secondBackup.resolve("target/app.jar"), "unix:ino"));
+            assertEquals("changed", new String(Files.readAllBytes(secondBackup.resolve("configs/config-0.conf")), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void databaseIsDumpedBeforeTheStop() throws Exception {
+        final Path projectDir = tempDir.resolve("project");
+        final ServerParam server = createServer();
+        createProject(projectDir, server);
+
+        try (DeployTestServer deployServer = new DeployTestServer(Files.createDirectories(tempDir.resolve("work")),
+                DOCKER_DOWN_SECONDS, DOCKER_UP_SECONDS, 0, 0)) {
+            server.setSshConnection(deployServer.connection());
+            final DeployProdMojo mojo = createMojo(projectDir, server);
+            mojo.keepBackups = 1;
+
+            // The stack runs from the second deploy on, the older backup and its dump are removed by the third one
+            mojo.execute();
+            mojo.databaseDump = true;
+            mojo.execute();
+            TimeUnit.SECONDS.sleep(1);
+            mojo.execute();
+            final Path dump = onlyBackup(Paths.get(server.getBackupDir())).resolveSibling("postgres-dump.sql.gz");
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(dump))) {
+                final ByteArrayOutputStream sql = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                for (int read; (read = in.read(buffer)) > 0; ) {
+                    sql.write(buffer, 0, read);
+                }
+                assertTrue(new String(sql.toByteArray(), StandardCharsets.UTF_8).startsWith("CREATE TABLE app"));
+            }
+            final List<String> calls = deployServer.getDockerCalls();
+            final int dumpCall = calls.lastIndexOf(calls.stream().filter(call -> call.startsWith("exec db sh -c pg_dump")).findFirst().orElse(""));
+            final int downCall = calls.lastIndexOf(calls.stream().filter(call -> call.endsWith(" down -v")).findFirst().orElse(""));
+            assertTrue(dumpCall >= 0 && dumpCall < downCall, calls.toString());
+        }
+    }
+
+    private static Path onlyBackup(Path backupRoot) throws IOException {
+        try (Stream<Path> backups = Files.list(backupRoot)) {
+            final List<Path> dirs = backups.collect(Collectors.toList());
+            assertEquals(1, dirs.size(), dirs.toString());
+            return dirs.get(0).resolve("app");
+        }
+    }
+
+    /**
+     * Writes a JAR with the layout of a Spring Boot application: a dependency, the loader and the application classes.
+     */
+    private static void writeSpringBootJar(Path file, String version) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "org.springframework.boot.loader.launch.JarLauncher");
+        final byte[] dependency = new byte[512 * 1024];
+        new Random(2).nextBytes(dependency);
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+            jar.putNextEntry(new JarEntry("org/springframework/boot/loader/launch/JarLauncher.class"));
+            jar.write(new byte[]{(byte) 0xCA, (byte) 0xFE});
+            jar.putNextEntry(new JarEntry("BOOT-INF/lib/dependency-1.0.jar"));
+            jar.write(dependency);
+            jar.putNextEntry(new JarEntry("BOOT-INF/classes/eu/softake/App.class"));
+            jar.write(version.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String messages(Throwable throwable) {
+        final StringBuilder sb = new StringBuilder();
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            sb.append(t.getMessage()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private ServerParam createServer() {
+        final Path serverDir = tempDir.resolve("server");
+        final ServerParam server = new ServerParam();
+        server.setType(ServerTypeParam.PROD);
+        server.setDomain(DOMAIN);
+        server.setDbProvider("postgres");
+        server.setDeployDir(serverDir.resolve("opt/app").toString());
+        server.setAppsDataDir(serverDir.resolve("opt/apps_data").toString());
+        server.setBackupDir(serverDir.resolve("backup").toString());
+        return server;
+    }
+
+    /**
+     * Generates the deployment folder of the server and a built JAR, as the init goal and the build would.
+     *
+     * @return the content of the JAR
+     */
+    private static byte[] createProject(Path projectDir, ServerParam server) throws Exception {
+        final Path deploymentRoot = projectDir.resolve("_deployment").resolve(DOMAIN);
+        final Path deployDir = Files.createDirectories(Paths.get(deploymentRoot + server.getDeployDir()));
+        final Path appsDataDir = Files.createDirectories(Paths.get(deploymentRoot + server.getAppsDataDir()));
+
+        write(deployDir.resolve("Dockerfile"), "FROM eclipse-temurin:17-jre\nCOPY target/*.jar /app.jar\n");
+        write(deployDir.resolve("docker-compose.yaml"), "services:\n  app:\n    build:\n"
+                + "      context: ${VAADIN_PROJECT_DIR}\n      dockerfile: ${VAADIN_PROJECT_DIR}/Dockerfile\n");
+        write(deployDir.resolve(".env"), env("postgres", server));
+        final Random random = new Random(1);
+        for (int i = 0; i < CONFIG_FILE_COUNT; i++) {
+            final char[] content = new char[1024 + random.nextInt(4096)];
+            for (int c = 0; c < content.length; c++) {
+                content[c] = (char) ('a' + random.nextInt(26));
+            }
+            write(Files.createDirectories(deployDir.resolve("configs")).resolve("config-" + i + ".conf"), new String(content));
+        }
+        for (int i = 0; i < APPS_DATA_FILE_COUNT; i++) {
+            write(appsDataDir.resolve("data-" + i + ".txt"), "data " + i + "\n");
+        }
+
+        final byte[] jar = new byte[JAR_SIZE];
+        random.nextBytes(jar);
+        Files.write(Files.createDirectories(projectDir.resolve("target")).resolve("app.jar"), jar);
+        return jar;
+    }
+
+    /**
+     * Returns the {@code .env} file of the templates, which points the build context at the deployment directory.
+     */
+    private static String env(String dbProvider, ServerParam server) {
+        return "DB_PROVIDER=" + dbProvider + "\nVAADIN_PROJECT_DIR=" + server.getDeployDir() + "\n";
+    }
+
+    private static DeployProdMojo createMojo(Path projectDir, ServerParam server) throws Exception {
+        final DeployProdMojo mojo = new DeployProdMojo();
+        mojo.projectBaseDir = projectDir.toFile();
+        mojo.vaadinProjectDir = projectDir.toFile();
+        mojo.servers = Collections.singletonList(server);
+        mojo.packaging = "jar";
+        mojo.sftpConcurrency = 4;
+        mojo.transferMode = TransferMode.AUTO;
+        mojo.uploadRetries = 3;
+        mojo.remoteCommandTimeout = 60;
+        mojo.stepsParallelism = 4;
+        mojo.serversParallelism = 1;
+        mojo.sshSessionIdleTimeout = 300;
+        mojo.deploymentStrategy = DeploymentStrategyParam.IN_PLACE;
+        mojo.keepReleases = 3;
+        mojo.healthCheckTimeout = 300;
+        mojo.blueGreenHealthTimeout = 300;
+        mojo.blueGreenGracePeriod = 30;
+        final Field certbotEmail = AbstractDeployMojo.class.getDeclaredField("certbotEmail");
+        certbotEmail.setAccessible(true);
+        certbotEmail.set(mojo, "admin@softake.eu");
+        return mojo;
+    }
+
+    private static List<String> expectedDockerCalls(String composeFile) {
+        final List<String> calls = new ArrayList<>();
+        // First deployment: nothing to stop yet
+        calls.add("compose version");
+        calls.add("compose -f " + composeFile + " up -d --build");
+        // Measured redeploy
+        calls.add("compose version");
+        calls.add("compose -f " + composeFile + " down -v");
+        calls.add("compose -f " + composeFile + " up -d --build");
+        return calls;
+    }
+
+    private static void writeMetrics(String scenario, Properties metrics) throws Exception {
+        final Path reportDir = Files.createDirectories(Paths.get(System.getProperty("e2e.reportDir", "target/e2e")));
+        try (OutputStream out = Files.newOutputStream(reportDir.resolve("deploy-" + scenario + ".properties"))) {
+            metrics.store(out, "End-to-end deploy metrics of the scenario " + scenario);
+        }
+    }
+
+    private static Properties loadThresholds() throws Exception {
+        final Properties thresholds = new Properties();
+        try (InputStream in = DeployPerformanceIT.class.getResourceAsStream(THRESHOLDS_RESOURCE)) {
+            thresholds.load(in);
+        }
+        return thresholds;
+    }
+
+    private static void assertWithinThreshold(Properties thresholds, String scenario, String metric, long value) {
+        final String key = "e2e." + scenario + ".max." + metric;
+        final long limit = Long.parseLong(System.getProperty(key, thresholds.getProperty(key)));
+        assertTrue(value <= limit, String.format("%s regressed: %d > %d (%s)", metric, value, limit, key));
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
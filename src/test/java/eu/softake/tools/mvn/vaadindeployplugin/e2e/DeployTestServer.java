@@ -0,0 +1,243 @@
+package eu.softake.tools.mvn.vaadindeployplugin.e2e;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.SshConnectionParam;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-process stand-in for a deployment server: an Apache MINA SSH server with SFTP, which executes commands
+ * with the local {@code sh} and a scripted {@code docker} first on the {@code PATH}.
+ * <p>
+ * The fake {@code docker} answers {@code compose version}, {@code compose ... build}, {@code compose ... down} and {@code compose ... up}
+ * like Docker Compose v2, accepts the {@code ps}, {@code rm}, {@code exec}, {@code restart} and {@code logs} commands
+ * of the blue/green deployment, the selective restart and the health checks,
+ * and reports every container as running with the health status set with {@link #setHealthStatus(String)} to {@code inspect}.
+ * For the locally built image it describes a base image with the layers {@link #BASE_IMAGE_LAYERS}, and {@code load}
+ * remembers the layers of every loaded image and which layer files the archive contained. {@code info} reports the
+ * driver status set with {@link #setDriverStatus(String)}, the classic image store by default.
+ * {@code compose ... build vaadin-app} creates the image tag named by the Compose override file, which
+ * {@code image inspect --format}, {@code image ls} and {@code image rm} then work with.
+ * {@code compose ... build} remembers the build context, the {@code VAADIN_PROJECT_DIR} of the environment
+ * or else of the {@code .env} file next to the Compose file.
+ * Every call is appended to a log, so tests can check what has been executed, and calls can be made to fail
+ * with {@link #failCommandsContaining(String)}.
+ * Any user authenticates with the password {@value #PASSWORD}. Clients connect through a {@link NetworkShaper},
+ * which simulates the network and counts the traffic.
+ * </p>
+ */
+public final class DeployTestServer implements AutoCloseable {
+
+    // Constants
+    public static final String PASSWORD = "secret";
+    public static final String DOCKER_COMPOSE_VERSION = "Docker Compose version v2.29.7";
+    public static final List<String> BASE_IMAGE_LAYERS = Arrays.asList(
+            "sha256:" + String.join("", Collections.nCopies(64, "a")), "sha256:" + String.join("", Collections.nCopies(64, "b")));
+    public static final String CLASSIC_DRIVER_STATUS = "[[\"Backing Filesystem\",\"extfs\"],[\"Supports d_type\",\"true\"]]";
+    public static final String CONTAINERD_DRIVER_STATUS = "[[\"driver-type\",\"io.containerd.snapshotter.v1\"]]";
+    private static final String FAKE_DOCKER_TEMPLATE = "#!/bin/sh\n"
+            + "echo \"$*\" >> '%1$s'\n"
+            + "f=$(cat '%11$s'); if [ -n \"$f\" ] && case \"$*\" in *\"$f\"*) true ;; *) false ;; esac;"
+            + " then echo \"docker: failed: $*\" >&2; exit 1; fi\n"
+            + "case \"$*\" in\n"
+            + "  'compose version') echo '%2$s' ;;\n"
+            + "  compose*' build') o=$(echo \"$*\" | sed 's/.* -f \\([^ ]*\\) build$/\\1/');"
+            + " echo \"${VAADIN_PROJECT_DIR:-$(sed -n 's/^VAADIN_PROJECT_DIR=//p' \"$(dirname \"$o\")/.env\")}\" >> '%10$s';"
+            + " sleep %4$s; echo ' Image app  Built' ;;\n"
+            + "  compose*' build vaadin-app') o=$(echo \"$*\" | sed 's/.* -f \\([^ ]*\\) build .*/\\1/');"
+            + " sleep %4$s; touch '%9$s'/\"$(sed -n 's/^ *image: *//p' \"$o\")\"; echo ' Image vaadin-app  Built' ;;\n"
+            + "  compose*' down'*) sleep %3$s; echo ' Container app  Removed' ;;\n"
+            + "  compose*' up'*) sleep %4$s; echo ' Container app  Started' ;;\n"
+            + "  compose*' ps -aq'*) s=$(echo \"$*\" | sed 's/.* ps -aq *//'); echo ${s:-db vaadin-app proxy} ;;\n"
+            + "  compose*' rm '*) echo ' Container app  Removed' ;;\n"
+            + "  compose*' exec '*|compose*' restart '*) ;;\n"
+            + "  compose*' logs '*) echo 'app  | Application run failed' ;;\n"
+            + "  inspect*) h=$(cat '%5$s'); shift 3; for c in \"$@\"; do echo \"$c running $h 0\"; done ;;\n"
+            + "  'image inspect -f {{.Architecture}}'*) printf 'amd64\\nlinux\\n[\"PATH=/usr/bin\"]\\n\"\"\\n%6$s \\n' ;;\n"
+            + "  'image inspect -f {{range'*) for a; do l=$a; done; cat '%7$s'/\"$l\" ;;\n"
+            + "  'image inspect --format '*) for a; do l=$a; done; if [ -f '%9$s'/\"$l\" ]; then echo \"sha256:$l\"; fi ;;\n"
+            + "  'image inspect '*) ;;\n"
+            + "  'image ls vaadin-app --format '*) ls '%9$s' ;;\n"
+            + "  'image rm '*) shift 2; for t; do rm -f '%9$s'/\"$t\"; done ;;\n"
+            + "  'image ls -q '*) ls '%7$s' ;;\n"
+            + "  'ps -q --filter name=^db$ --filter status=running') echo 0123456789ab ;;\n"
+            + "  'exec db sh -c '*) echo 'CREATE TABLE app (id integer);'; echo 'COPY app (id) FROM stdin;' ;;\n"
+            + "  'info -f '*) cat '%12$s' ;;\n"
+            + "  load) t=$(mktemp); cat > \"$t\"; tar -tf \"$t\" | grep layer.tar >> '%8$s'; echo >> '%8$s';"
+            + " m=$(tar -xOf \"$t\" manifest.json); id=$(echo \"$m\" | sed 's/.*\"Config\":\"\\([0-9a-f]*\\)\\.json\".*/\\1/');"
+            + " echo \"$m\" | grep -o '[0-9a-f]\\{64\\}/layer.tar' | sed 's|/layer.tar||;s|^|sha256:|' | tr '\\n' ' ' > '%7$s'/\"$id\";"
+            + " rm \"$t\"; echo \"Loaded image ID: sha256:$id\" ;;\n"
+            + "  *) echo \"docker: unsupported command: $*\" >&2; exit 1 ;;\n"
+            + "esac\n";
+
+    // Data
+    private final SshServer server;
+    private final Path dockerLog;
+    private final Path healthStatus;
+    private final Path imagesDir;
+    private final Path loadedLayersLog;
+    private final Path tagsDir;
+    private final Path buildContextsLog;
+    private final Path failingCommand;
+    private final Path driverStatus;
+    private final NetworkShaper networkShaper;
+
+    /**
+     * Starts the server.
+     *
+     * @param workDir         the directory for the host key, the fake {@code docker} and its log
+     * @param downSeconds     how long {@code docker compose down} takes
+     * @param upSeconds       how long {@code docker compose up} takes
+     * @param roundTripMillis the latency added to the connection
+     * @param bytesPerSecond  the bandwidth of the connection; 0 means unlimited
+     * @throws Exception if the server can't be started
+     */
+    public DeployTestServer(Path workDir, double downSeconds, double upSeconds, long roundTripMillis, long bytesPerSecond) throws Exception {
+        final Path binDir = Files.createDirectories(workDir.resolve("bin"));
+        dockerLog = workDir.resolve("docker.log");
+        Files.createFile(dockerLog);
+        healthStatus = workDir.resolve("health");
+        setHealthStatus("healthy");
+        imagesDir = Files.createDirectories(workDir.resolve("images"));
+        loadedLayersLog = workDir.resolve("loaded-layers.log");
+        Files.createFile(loadedLayersLog);
+        tagsDir = Files.createDirectories(workDir.resolve("tags"));
+        buildContextsLog = workDir.resolve("build-contexts.log");
+        Files.createFile(buildContextsLog);
+        failingCommand = workDir.resolve("failing-command");
+        failCommandsContaining("");
+        driverStatus = workDir.resolve("driver-status");
+        setDriverStatus(CLASSIC_DRIVER_STATUS);
+        final Path docker = binDir.resolve("docker");
+        Files.write(docker, String.format(FAKE_DOCKER_TEMPLATE, dockerLog, DOCKER_COMPOSE_VERSION, downSeconds, upSeconds, healthStatus,
+                        String.join(" ", BASE_IMAGE_LAYERS), imagesDir, loadedLayersLog, tagsDir, buildContextsLog, failingCommand, driverStatus)
+                .getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(docker, PosixFilePermissions.fromString("rwxr-xr-x"));
+        final String path = binDir + ":" + System.getenv("PATH");
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(workDir.resolve("host.key")));
+        server.setPasswordAuthenticator((user, password, session) -> PASSWORD.equals(password));
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setCommandFactory((channel, command) ->
+                new ProcessShellFactory(command, Arrays.asList("env", "PATH=" + path, "sh", "-c", command)).createShell(channel));
+        server.start();
+
+        networkShaper = new NetworkShaper(server.getPort(), roundTripMillis, bytesPerSecond);
+    }
+
+    /**
+     * Returns the connection parameters of the server, through the network shaper.
+     *
+     * @return the connection parameters
+     */
+    public SshConnectionParam connection() {
+        final SshConnectionParam connection = new SshConnectionParam();
+        connection.setHostName("127.0.0.1");
+        connection.setPort(networkShaper.getPort());
+        connection.setUser("deploy");
+        connection.setPassword(PASSWORD);
+        return connection;
+    }
+
+    /**
+     * Returns the network shaper the connections are routed through.
+     *
+     * @return the shaper
+     */
+    public NetworkShaper getNetworkShaper() {
+        return networkShaper;
+    }
+
+    /**
+     * Returns the calls of the fake {@code docker}, one line of arguments per call.
+     *
+     * @return the calls in execution order
+     * @throws IOException if the log can't be read
+     */
+    public List<String> getDockerCalls() throws IOException {
+        return Files.readAllLines(dockerLog, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the layer files contained in the archives passed to {@code docker load}, an empty line after each archive.
+     *
+     * @return the layer files in loading order
+     * @throws IOException if the log can't be read
+     */
+    public List<String> getLoadedLayers() throws IOException {
+        return Files.readAllLines(loadedLayersLog, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the build contexts of the {@code compose ... build} calls.
+     *
+     * @return the build contexts in execution order
+     * @throws IOException if the log can't be read
+     */
+    public List<String> getBuildContexts() throws IOException {
+        return Files.readAllLines(buildContextsLog, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the image tags built with {@code compose ... build vaadin-app} and not removed since.
+     *
+     * @return the tags in name order
+     * @throws IOException if the tags can't be listed
+     */
+    public List<String> getImageTags() throws IOException {
+        try (Stream<Path> tags = Files.list(tagsDir)) {
+            return tags.map(tag -> tag.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Sets the health status {@code docker inspect} reports for every container.
+     *
+     * @param status the health status, e.g. {@code healthy} or {@code unhealthy}
+     * @throws IOException if the status can't be written
+     */
+    public void setHealthStatus(String status) throws IOException {
+        Files.write(healthStatus, (status + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Makes the fake {@code docker} fail every call whose arguments contain the given text.
+     *
+     * @param arguments the text, or an empty string to let all calls succeed again
+     * @throws IOException if the setting can't be written
+     */
+    public void failCommandsContaining(String arguments) throws IOException {
+        Files.write(failingCommand, arguments.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets the driver status {@code docker info} reports, e.g. {@link #CONTAINERD_DRIVER_STATUS}.
+     *
+     * @param status the driver status as JSON
+     * @throws IOException if the status can't be written
+     */
+    public void setDriverStatus(String status) throws IOException {
+        Files.write(driverStatus, (status + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws Exception {
+        networkShaper.close();
+        server.stop(true);
+    }
+}
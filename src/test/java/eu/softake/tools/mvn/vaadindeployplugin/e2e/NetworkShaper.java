@@ -0,0 +1,216 @@
+package eu.softake.tools.mvn.vaadindeployplugin.e2e;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TCP proxy on the loopback interface simulating a network link between the plugin and the server.
+ * <p>
+ * Every chunk of data is delayed by half of the round-trip time in each direction, and with a bandwidth cap
+ * the chunks of a direction are serialized onto the link at that rate. The proxy counts the bytes sent
+ * in both directions and the round trips: a round trip is counted whenever the client sends data after it
+ * has received data on the same connection, which is exact for request/response exchanges and a lower
+ * bound when requests are pipelined.
+ * </p>
+ */
+public final class NetworkShaper implements AutoCloseable {
+
+    // Constants
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    // Data
+    private final int targetPort;
+    private final long oneWayDelayNanos;
+    private final long bytesPerSecond;
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "network-shaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts the proxy on a free port.
+     *
+     * @param targetPort      the local port to forward the connections to
+     * @param roundTripMillis the latency added to every round trip
+     * @param bytesPerSecond  the bandwidth of each direction; 0 means unlimited
+     * @throws IOException if the server socket can't be opened
+     */
+    public NetworkShaper(int targetPort, long roundTripMillis, long bytesPerSecond) throws IOException {
+        this.targetPort = targetPort;
+        this.oneWayDelayNanos = TimeUnit.MILLISECONDS.toNanos(roundTripMillis) / 2;
+        this.bytesPerSecond = bytesPerSecond;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::acceptConnections);
+    }
+
+    /**
+     * Returns the port clients have to connect to.
+     *
+     * @return the port of the proxy
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of bytes sent by the clients.
+     *
+     * @return the bytes sent to the server
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Returns the number of bytes sent by the server.
+     *
+     * @return the bytes received by the clients
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Returns the number of round trips of all connections.
+     *
+     * @return the round trips
+     */
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    /**
+     * Resets the counters, e.g. after a warm-up.
+     */
+    public void resetCounters() {
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        roundTrips.set(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket client = serverSocket.accept();
+                final Socket server = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(server);
+                final Connection connection = new Connection();
+                forward(client, server, connection, true);
+                forward(server, client, connection, false);
+            } catch (IOException e) {
+                // The proxy has been closed
+            }
+        }
+    }
+
+    /**
+     * Forwards one direction of a connection: a reader thread stamps the chunks with the time they leave
+     * the link and a writer thread sends them when it's reached.
+     */
+    private void forward(Socket from, Socket to, Connection connection, boolean upstream) {
+        final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        executor.execute(() -> {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long linkFreeNanos = 0;
+            try (InputStream in = from.getInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    connection.record(upstream, read);
+                    final long now = System.nanoTime();
+                    final long transmissionNanos = bytesPerSecond > 0 ? read * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond : 0;
+                    linkFreeNanos = Math.max(now, linkFreeNanos) + transmissionNanos;
+                    queue.add(new Chunk(linkFreeNanos + oneWayDelayNanos, Arrays.copyOf(buffer, read)));
+                }
+            } catch (IOException e) {
+                // Connection closed
+            }
+            queue.add(new Chunk(Math.max(System.nanoTime(), linkFreeNanos) + oneWayDelayNanos, END_OF_STREAM));
+        });
+        executor.execute(() -> {
+            try {
+                final OutputStream out = to.getOutputStream();
+                while (true) {
+                    final Chunk chunk = queue.take();
+                    long remaining;
+                    while ((remaining = chunk.dueNanos - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(remaining);
+                    }
+                    if (chunk.data == END_OF_STREAM) {
+                        to.shutdownOutput();
+                        return;
+                    }
+                    out.write(chunk.data);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Connection or proxy closed
+            }
+        });
+    }
+
+    /**
+     * Traffic state of a single connection.
+     */
+    private final class Connection {
+        private boolean clientWaiting;
+
+        private synchronized void record(boolean upstream, int bytes) {
+            if (upstream) {
+                bytesSent.addAndGet(bytes);
+                if (!clientWaiting) {
+                    roundTrips.incrementAndGet();
+                    clientWaiting = true;
+                }
+            } else {
+                bytesReceived.addAndGet(bytes);
+                clientWaiting = false;
+            }
+        }
+    }
+
+    /**
+     * Data read from a connection together with the time it may be written.
+     */
+    private static final class Chunk {
+        private final long dueNanos;
+        private final byte[] data;
+
+        private Chunk(long dueNanos, byte[] data) {
+            this.dueNanos = dueNanos;
+            this.data = data;
+        }
+    }
+}
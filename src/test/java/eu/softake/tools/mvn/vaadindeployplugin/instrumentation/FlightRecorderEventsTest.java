@@ -0,0 +1,76 @@
+package eu.softake.tools.mvn.vaadindeployplugin.instrumentation;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightRecorderEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void emitsStepCommandAndTransferEvents() throws Exception {
+        assertTrue(FlightRecorderEvents.isAvailable());
+        final DeployListener listener = FlightRecorderEvents.forServer("example.com");
+        assertNotSame(DeployListener.NONE, listener);
+
+        final Path file = tempDir.resolve("deploy.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("eu.softake.vaadindeploy.Step");
+            recording.enable("eu.softake.vaadindeploy.Command");
+            recording.enable("eu.softake.vaadindeploy.Transfer");
+            recording.start();
+
+            final long now = System.nanoTime();
+            listener.stepStarted(2, "Stop", Collections.singletonList(1));
+            listener.commandStarted("docker compose stop");
+            listener.commandFinished("docker compose stop", 0, now, now);
+            listener.transferStarted("/opt/app/app.jar");
+            listener.transferFinished("/opt/app/app.jar", 4096, now, now);
+            listener.stepFinished(2, "Stop", now, now, new IllegalStateException("failed"));
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        final Map<String, RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .collect(Collectors.toMap(event -> event.getEventType().getName(), Function.identity()));
+        final RecordedEvent step = events.get("eu.softake.vaadindeploy.Step");
+        assertEquals("example.com", step.getString("server"));
+        assertEquals(2, step.getInt("step"));
+        assertEquals("failed", step.getString("error"));
+        assertEquals(0, events.get("eu.softake.vaadindeploy.Command").getInt("exitCode"));
+        assertEquals(4096, events.get("eu.softake.vaadindeploy.Transfer").getLong("bytes"));
+    }
+
+    @Test
+    void combinedListenerSkipsNone() {
+        final List<Integer> steps = new ArrayList<>();
+        final DeployListener recording = new DeployListener() {
+            @Override
+            public void stepStarted(int step, String description, List<Integer> dependencies) {
+                steps.add(step);
+            }
+        };
+        assertEquals(DeployListener.NONE, DeployListener.of(null, DeployListener.NONE));
+        assertEquals(recording, DeployListener.of(recording, null));
+        DeployListener.of(recording, recording).stepStarted(3, "Start", Collections.emptyList());
+        assertEquals(Arrays.asList(3, 3), steps);
+    }
+}
@@ -0,0 +1,75 @@
+package eu.softake.tools.mvn.vaadindeployplugin.instrumentation;
+
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.ChainStepHandler;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.DagChainExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimelineRecorderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void criticalPathFollowsSlowestDependencies() throws Exception {
+        TimelineRecorder recorder = new TimelineRecorder();
+        ChainStepHandler<String> check = step("check", 0);
+        ChainStepHandler<String> fastUpload = step("fast upload", 10);
+        ChainStepHandler<String> slowUpload = step("slow upload", 200);
+        ChainStepHandler<String> start = step("start", 0);
+
+        DagChainExecutor<String> executor = new DagChainExecutor<>(4);
+        executor.addStep(check);
+        executor.addStep(fastUpload, check);
+        executor.addStep(slowUpload, check);
+        executor.addStep(start, fastUpload, slowUpload);
+        executor.setListener(recorder.forServer("example.com"));
+        executor.start("server");
+
+        assertEquals(new HashSet<>(Arrays.asList(1, 3, 4)), recorder.getCriticalPaths().get("example.com"));
+    }
+
+    @Test
+    void reportsContainStepsCommandsAndTransfers() throws Exception {
+        TimelineRecorder recorder = new TimelineRecorder();
+        DeployListener listener = recorder.forServer("example.com");
+        long now = System.nanoTime();
+        listener.stepStarted(1, "Copy \"target\" JAR", Collections.emptyList());
+        listener.commandFinished("docker compose version", 0, now, now + 1_000_000);
+        listener.transferFinished("/opt/app/target/app.jar", 2048, now, now + 2_000_000);
+        listener.stepFinished(1, "Copy \"target\" JAR", now, now + 3_000_000, null);
+
+        TimelineReportWriter.write(recorder, tempDir);
+
+        String json = new String(Files.readAllBytes(tempDir.resolve(TimelineReportWriter.JSON_FILE_NAME)), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"name\": \"Copy \\\"target\\\" JAR\""));
+        assertTrue(json.contains("\"critical\": true"));
+        assertTrue(json.contains("\"bytes\": 2048, \"bytesPerSecond\": 1024000"));
+        String html = new String(Files.readAllBytes(tempDir.resolve(TimelineReportWriter.HTML_FILE_NAME)), StandardCharsets.UTF_8);
+        assertTrue(html.contains("$ docker compose version"));
+    }
+
+    private static ChainStepHandler<String> step(String name, long sleepMillis) {
+        return new ChainStepHandler<String>() {
+            @Override
+            public String getStepDescription(String dataObj) {
+                return name;
+            }
+
+            @Override
+            public void handle(String dataObj) throws Exception {
+                Thread.sleep(sleepMillis);
+            }
+        };
+    }
+}
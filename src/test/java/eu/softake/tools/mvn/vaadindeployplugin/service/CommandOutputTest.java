@@ -0,0 +1,75 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandOutputTest {
+
+    @Test
+    void linesArePassedAsTheyArrive() throws Exception {
+        List<String> lines = new ArrayList<>();
+        CommandOutput output = new CommandOutput(lines::add, 10);
+        OutputStream stdout = output.getStdout();
+
+        stdout.write("Building vaa".getBytes(StandardCharsets.UTF_8));
+        assertTrue(lines.isEmpty());
+
+        stdout.write("din-app\r\nStep 1/4\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("Building vaadin-app", "Step 1/4"), lines);
+    }
+
+    @Test
+    void onlyTailIsKept() throws Exception {
+        CommandOutput output = new CommandOutput(line -> { }, 2);
+        OutputStream stderr = output.getStderr();
+
+        stderr.write("one\ntwo\nthree\nfour".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("... 2 lines skipped ...\nthree\nfour\n", output.getTail());
+    }
+
+    @Test
+    void longLinesAreSplit() throws Exception {
+        List<String> lines = new ArrayList<>();
+        CommandOutput output = new CommandOutput(lines::add, 10);
+
+        output.getStdout().write(new byte[CommandOutput.MAX_LINE_LENGTH + 1]);
+        output.getStdout().close();
+
+        assertEquals(2, lines.size());
+        assertEquals(CommandOutput.MAX_LINE_LENGTH, lines.get(0).length());
+    }
+
+    @Test
+    void completeOutputIsKeptUnchanged() throws Exception {
+        CommandOutput output = new CommandOutput(line -> { }, 2);
+        byte[] longLine = new byte[CommandOutput.MAX_LINE_LENGTH * 2];
+        Arrays.fill(longLine, (byte) 'a');
+
+        output.getStderr().write("warning\n".getBytes(StandardCharsets.UTF_8));
+        output.getStdout().write("one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8));
+        output.getStdout().write(longLine);
+
+        assertEquals("one\ntwo\nthree\n" + new String(longLine, StandardCharsets.UTF_8) + "warning\n", output.getOutput());
+    }
+
+    @Test
+    void outputLargerThanTheLimitIsRejected() throws Exception {
+        CommandOutput output = new CommandOutput(line -> { }, 2, 4);
+
+        output.getStdout().write("12345".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, output::getOutput);
+        assertEquals("12345\n", output.getTail());
+    }
+}
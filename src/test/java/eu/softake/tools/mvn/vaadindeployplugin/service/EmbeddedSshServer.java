@@ -0,0 +1,58 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.SshConnectionParam;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * In-process SSH server for tests. Commands are executed with the local {@code sh}, files are served over SFTP
+ * from the local file system, and any user authenticates with the password {@code secret}.
+ * Commands may be replaced by scripts in a directory put first on the {@code PATH}.
+ */
+class EmbeddedSshServer implements AutoCloseable {
+
+    static final String PASSWORD = "secret";
+
+    private final SshServer server;
+
+    EmbeddedSshServer(Path workDir) throws Exception {
+        this(workDir, null);
+    }
+
+    EmbeddedSshServer(Path workDir, Path binDir) throws Exception {
+        final String path = binDir != null ? binDir + ":" + System.getenv("PATH") : System.getenv("PATH");
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(workDir.resolve("host.key")));
+        server.setPasswordAuthenticator((user, password, session) -> PASSWORD.equals(password));
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setCommandFactory((channel, command) ->
+                new ProcessShellFactory(command, Arrays.asList("env", "PATH=" + path, "sh", "-c", command)).createShell(channel));
+        server.start();
+    }
+
+    SshConnectionParam connection() {
+        SshConnectionParam connection = new SshConnectionParam();
+        connection.setHostName("127.0.0.1");
+        connection.setPort(server.getPort());
+        connection.setUser("deploy");
+        connection.setPassword(PASSWORD);
+        return connection;
+    }
+
+    int getPort() {
+        return server.getPort();
+    }
+
+    @Override
+    public void close() throws Exception {
+        server.stop(true);
+    }
+}
@@ -0,0 +1,282 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.DeploymentManifest;
+import eu.softake.tools.mvn.vaadindeployplugin.service.transfer.TransferMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SshServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private EmbeddedSshServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new EmbeddedSshServer(tempDir);
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        SshSessionRegistry.getInstance().shutdown();
+        server.close();
+    }
+
+    @Test
+    void fileReplacesTargetAfterVerification() throws Exception {
+        Path local = Files.write(tempDir.resolve("app.jar"), new byte[200_000]);
+        Path remoteDir = Files.createDirectories(tempDir.resolve("server/target"));
+        Files.write(remoteDir.resolve("app.jar"), "old".getBytes(StandardCharsets.UTF_8));
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.copyFileToServer(local.toFile(), remoteDir.toString());
+        }
+
+        assertArrayEquals(Files.readAllBytes(local), Files.readAllBytes(remoteDir.resolve("app.jar")));
+        assertFalse(Files.exists(remoteDir.resolve("app.jar.part")));
+    }
+
+    @Test
+    void partialUploadIsResumed() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(7).nextBytes(content);
+        Path local = Files.write(tempDir.resolve("app.jar"), content);
+        Path remoteDir = Files.createDirectories(tempDir.resolve("server/target"));
+        Files.write(remoteDir.resolve("app.jar.part"), Arrays.copyOf(content, 100_000));
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.copyFileToServer(local.toFile(), remoteDir.toString());
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(remoteDir.resolve("app.jar")));
+        assertFalse(Files.exists(remoteDir.resolve("app.jar.part")));
+    }
+
+    @Test
+    void mismatchingPartialUploadIsRestarted() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(7).nextBytes(content);
+        Path local = Files.write(tempDir.resolve("app.jar"), content);
+        Path remoteDir = Files.createDirectories(tempDir.resolve("server/target"));
+        Files.write(remoteDir.resolve("app.jar.part"), new byte[100_000]);
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.copyFileToServer(local.toFile(), remoteDir.toString());
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(remoteDir.resolve("app.jar")));
+    }
+
+    @Test
+    void checksumMismatchIsNotRetried() throws Exception {
+        Path local = Files.write(tempDir.resolve("app.jar"), new byte[200_000]);
+        Path remoteDir = Files.createDirectories(tempDir.resolve("server/target"));
+        // Every verification reports a mismatch and is counted
+        Path binDir = Files.createDirectories(tempDir.resolve("bin"));
+        Path verifications = tempDir.resolve("verifications");
+        Path sha256sum = Files.write(binDir.resolve("sha256sum"),
+                ("#!/bin/sh\ncat > /dev/null; echo >> '" + verifications + "'; exit 1\n").getBytes(StandardCharsets.UTF_8));
+        assertTrue(sha256sum.toFile().setExecutable(true));
+        server.close();
+        server = new EmbeddedSshServer(tempDir, binDir);
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.setUploadRetries(3);
+            IOException e = assertThrows(IOException.class, () -> sshService.copyFileToServer(local.toFile(), remoteDir.toString()));
+            assertTrue(e instanceof ChecksumMismatchException, e.toString());
+        }
+
+        assertEquals(1, Files.readAllLines(verifications).size());
+        assertFalse(Files.exists(remoteDir.resolve("app.jar")));
+        assertFalse(Files.exists(remoteDir.resolve("app.jar.part")));
+    }
+
+    @Test
+    void previousPackageIsRemovedWhenTheDeltaFallsBackToAFullUpload() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(7).nextBytes(content);
+        Path oldPackage = Files.write(tempDir.resolve("app-1.0.jar"), content);
+        Path newPackage = Files.write(tempDir.resolve("app-1.1.jar"), content);
+        Path remoteDir = tempDir.resolve("server/target");
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.copyFileToServerWithDelta(oldPackage.toFile(), remoteDir.toString());
+            // The previous package no longer matches its block signature, so the delta can't be used
+            Files.write(remoteDir.resolve("app-1.0.jar"), new byte[10]);
+            sshService.copyFileToServerWithDelta(newPackage.toFile(), remoteDir.toString());
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(remoteDir.resolve("app-1.1.jar")));
+        assertFalse(Files.exists(remoteDir.resolve("app-1.0.jar")));
+    }
+
+    @Test
+    void commandOutputIsReturned() throws Exception {
+        try (SshService sshService = new SshService(server.connection())) {
+            assertEquals("out\nerr\n", sshService.execCommand("echo out; sleep 0.2; echo err >&2"));
+        }
+    }
+
+    @Test
+    void longCommandOutputIsReturnedCompletely() throws Exception {
+        try (SshService sshService = new SshService(server.connection())) {
+            final String output = sshService.execCommand("seq 1 1000; head -c 10000 /dev/zero | tr '\\0' x");
+            assertTrue(output.startsWith("1\n2\n"), output.substring(0, 10));
+            assertTrue(output.endsWith("1000\n" + String.join("", Collections.nCopies(10000, "x"))));
+        }
+    }
+
+    @Test
+    void hangingCommandTimesOut() throws Exception {
+        try (SshService sshService = new SshService(server.connection())) {
+            long start = System.nanoTime();
+            assertThrows(TimeoutException.class, () -> sshService.execCommand("echo started; sleep 30", 1));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        }
+    }
+
+    @Test
+    void abortStopsRunningCommand() throws Exception {
+        try (SshService sshService = new SshService(server.connection())) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<String> command = executor.submit(() -> sshService.execCommand("sleep 30"));
+                Thread.sleep(500);
+                long start = System.nanoTime();
+                sshService.abort();
+
+                assertThrows(ExecutionException.class, () -> command.get(10, TimeUnit.SECONDS));
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+                assertThrows(IOException.class, () -> sshService.execCommand("true"));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void directoryIsUploadedOverSftpWithoutTempFiles() throws Exception {
+        Path localDir = Files.createDirectories(tempDir.resolve("local/configs/nginx"));
+        Files.write(localDir.resolve("nginx.conf"), "events {}".getBytes(StandardCharsets.UTF_8));
+        Files.write(tempDir.resolve("local/.env"), "DB=postgres".getBytes(StandardCharsets.UTF_8));
+        Path remoteDir = tempDir.resolve("server/deploy");
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.setTransferMode(TransferMode.SFTP);
+            sshService.copyDirToServer(tempDir.resolve("local").toString(), remoteDir.toString());
+        }
+
+        assertEquals("events {}", new String(Files.readAllBytes(remoteDir.resolve("configs/nginx/nginx.conf")), StandardCharsets.UTF_8));
+        assertEquals("DB=postgres", new String(Files.readAllBytes(remoteDir.resolve(".env")), StandardCharsets.UTF_8));
+        try (Stream<Path> files = Files.walk(remoteDir)) {
+            assertFalse(files.anyMatch(file -> file.toString().endsWith(".part")));
+        }
+    }
+
+    @Test
+    void failedUploadLeavesNoTempFiles() throws Exception {
+        Path localDir = Files.createDirectories(tempDir.resolve("local"));
+        Files.write(localDir.resolve("ok.conf"), "ok".getBytes(StandardCharsets.UTF_8));
+        // Opens fine, but reading it fails with EIO once the temporary file has been created
+        Files.createSymbolicLink(localDir.resolve("broken.conf"), Paths.get("/proc/self/mem"));
+        Path remoteDir = tempDir.resolve("server/deploy");
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.setTransferMode(TransferMode.SFTP);
+            assertThrows(Exception.class, () -> sshService.copyDirToServer(localDir.toString(), remoteDir.toString()));
+        }
+
+        try (Stream<Path> files = Files.walk(remoteDir)) {
+            assertFalse(files.anyMatch(file -> file.toString().endsWith(".part")));
+        }
+    }
+
+    @Test
+    void manyFilesAreVerifiedInSeveralCommands() throws Exception {
+        // Together the checksum lines are far longer than a single shell argument may be
+        char[] longName = new char[150];
+        Arrays.fill(longName, 'x');
+        Path localDir = Files.createDirectories(tempDir.resolve("local"));
+        for (int i = 0; i < 1000; i++) {
+            Files.write(localDir.resolve(i + new String(longName)), new byte[]{(byte) i});
+        }
+        Path remoteDir = tempDir.resolve("server/deploy");
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.setTransferMode(TransferMode.TAR);
+            sshService.copyDirToServer(localDir.toString(), remoteDir.toString());
+        }
+
+        try (Stream<Path> files = Files.list(remoteDir)) {
+            assertEquals(1000, files.count());
+        }
+    }
+
+    @Test
+    void syncUploadsFilesChangedOnServer() throws Exception {
+        Path localDir = Files.createDirectories(tempDir.resolve("local"));
+        Files.write(localDir.resolve("docker-compose.yaml"), "services:".getBytes(StandardCharsets.UTF_8));
+        Files.write(localDir.resolve(".env"), "DB=postgres".getBytes(StandardCharsets.UTF_8));
+        Files.write(localDir.resolve("nginx.conf"), "events {}".getBytes(StandardCharsets.UTF_8));
+        Path remoteDir = tempDir.resolve("server/deploy");
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.syncDirToServer(localDir.toString(), remoteDir.toString(), false);
+
+            // Same size, but edited on the server; the other file is gone
+            Files.write(remoteDir.resolve(".env"), "DB=mariadb!".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(remoteDir.resolve(".env"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            Files.delete(remoteDir.resolve("nginx.conf"));
+
+            DeploymentManifest.Diff diff = sshService.syncDirToServer(localDir.toString(), remoteDir.toString(), false);
+            assertEquals(Arrays.asList(".env", "nginx.conf"),
+                    diff.getChanged().stream().map(DeploymentManifest.Entry::getPath).collect(Collectors.toList()));
+        }
+
+        assertEquals("DB=postgres", new String(Files.readAllBytes(remoteDir.resolve(".env")), StandardCharsets.UTF_8));
+        assertTrue(Files.exists(remoteDir.resolve("nginx.conf")));
+    }
+
+    @Test
+    void fullUploadRemovesSyncManifest() throws Exception {
+        Path localDir = Files.createDirectories(tempDir.resolve("local"));
+        Files.write(localDir.resolve("docker-compose.yaml"), "services:".getBytes(StandardCharsets.UTF_8));
+        Path remoteDir = tempDir.resolve("server/deploy");
+
+        try (SshService sshService = new SshService(server.connection())) {
+            sshService.syncDirToServer(localDir.toString(), remoteDir.toString(), false);
+            assertTrue(Files.exists(remoteDir.resolve(DeploymentManifest.FILE_NAME)));
+
+            sshService.copyDirToServer(localDir.toString(), remoteDir.toString());
+        }
+
+        assertFalse(Files.exists(remoteDir.resolve(DeploymentManifest.FILE_NAME)));
+    }
+}
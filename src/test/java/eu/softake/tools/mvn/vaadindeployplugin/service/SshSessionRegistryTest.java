@@ -0,0 +1,124 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service;
+
+import eu.softake.tools.mvn.vaadindeployplugin.params.SshConnectionParam;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SshSessionRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private EmbeddedSshServer server;
+    private SshSessionRegistry registry;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new EmbeddedSshServer(tempDir);
+        registry = new SshSessionRegistry();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        registry.shutdown();
+        server.close();
+    }
+
+    @Test
+    void sessionIsReusedForSameUserHostAndPort() throws Exception {
+        try (SshSessionRegistry.Lease first = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD));
+             SshSessionRegistry.Lease second = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD))) {
+            assertSame(first.getSession(), second.getSession());
+            assertTrue(first.getSession().isAuthenticated());
+        }
+    }
+
+    @Test
+    void sessionIsKeptUntilIdleTimeout() throws Exception {
+        registry.setIdleTimeout(60);
+        SshSessionRegistry.Lease first = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD));
+        first.close();
+
+        try (SshSessionRegistry.Lease second = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD))) {
+            assertSame(first.getSession(), second.getSession());
+        }
+    }
+
+    @Test
+    void sessionIsClosedOnReleaseWithoutIdleTimeout() throws Exception {
+        registry.setIdleTimeout(0);
+        SshSessionRegistry.Lease first = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD));
+        first.close();
+        assertFalse(first.getSession().isOpen());
+
+        try (SshSessionRegistry.Lease second = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD))) {
+            assertNotSame(first.getSession(), second.getSession());
+            assertTrue(second.getSession().isOpen());
+        }
+    }
+
+    @Test
+    void failedAuthenticationIsNotCached() throws Exception {
+        assertThrows(Exception.class, () -> registry.acquire(connection("deploy", "wrong")));
+
+        try (SshSessionRegistry.Lease lease = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD))) {
+            assertTrue(lease.getSession().isAuthenticated());
+        }
+    }
+
+    @Test
+    void sessionIsNotReusedForOtherCredentials() throws Exception {
+        try (SshSessionRegistry.Lease lease = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD))) {
+            assertThrows(Exception.class, () -> registry.acquire(connection("deploy", "wrong")));
+            assertTrue(lease.getSession().isOpen());
+        }
+    }
+
+    @Test
+    void renewedLeaseKeepsSharedSessionOpen() throws Exception {
+        try (SshSessionRegistry.Lease first = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD))) {
+            SshSessionRegistry.Lease second = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD));
+            SshSessionRegistry.Lease renewed = registry.renew(second, connection("deploy", EmbeddedSshServer.PASSWORD));
+
+            assertNotSame(first.getSession(), renewed.getSession());
+            assertTrue(first.getSession().isOpen());
+            assertTrue(renewed.getSession().isAuthenticated());
+
+            renewed.close();
+            assertFalse(renewed.getSession().isOpen());
+            assertTrue(first.getSession().isOpen());
+        }
+    }
+
+    @Test
+    void renewedLeaseReplacesClosedSharedSession() throws Exception {
+        registry.setIdleTimeout(60);
+        SshSessionRegistry.Lease first = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD));
+        first.getSession().close(true);
+        SshSessionRegistry.Lease renewed = registry.renew(first, connection("deploy", EmbeddedSshServer.PASSWORD));
+        renewed.close();
+
+        try (SshSessionRegistry.Lease next = registry.acquire(connection("deploy", EmbeddedSshServer.PASSWORD))) {
+            assertSame(renewed.getSession(), next.getSession());
+        }
+    }
+
+    private SshConnectionParam connection(String user, String password) {
+        SshConnectionParam connection = new SshConnectionParam();
+        connection.setHostName("127.0.0.1");
+        connection.setPort(server.getPort());
+        connection.setUser(user);
+        connection.setPassword(password);
+        return connection;
+    }
+}
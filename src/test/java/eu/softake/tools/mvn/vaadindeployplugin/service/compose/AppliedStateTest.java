@@ -0,0 +1,32 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.compose;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AppliedStateTest {
+
+    @Test
+    void stateFileRoundTrips() {
+        final Map<String, String> hashes = new HashMap<>();
+        hashes.put("target/app.jar", "b".concat(String.join("", Collections.nCopies(63, "0"))));
+        hashes.put("configs/nginx/my app.conf", "a".concat(String.join("", Collections.nCopies(63, "0"))));
+
+        final AppliedState state = AppliedState.parse(new AppliedState(hashes, "DB_PROVIDER=postgres\r\n# comment\n").format());
+
+        assertEquals(hashes, state.getHashes());
+        assertEquals(Collections.emptySet(), RestartPlan.changedEnvVariables("DB_PROVIDER=postgres\n", state.getEnv()));
+    }
+
+    @Test
+    void missingFileAndMissingEnvAreKeptApart() {
+        assertNull(AppliedState.parse(null));
+        assertNull(AppliedState.parse(new AppliedState(Collections.emptyMap(), null).format()).getEnv());
+        assertEquals(Collections.emptyMap(), AppliedState.parse("").getHashes());
+    }
+}
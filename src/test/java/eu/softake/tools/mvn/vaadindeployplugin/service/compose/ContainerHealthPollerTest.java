@@ -0,0 +1,54 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.compose;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContainerHealthPollerTest {
+
+    @Test
+    void healthcheckDecidesOverTheContainerStatus() {
+        Map<String, ContainerHealthPoller.ServiceState> states = ContainerHealthPoller.parseStates(
+                "db running healthy 0\nvaadin-app running starting 0\nproxy running unhealthy 0\n");
+
+        assertEquals(Arrays.asList("db", "vaadin-app", "proxy"), Arrays.asList(states.keySet().toArray()));
+        assertEquals(ContainerHealthPoller.Readiness.READY, states.get("db").getReadiness());
+        assertEquals(ContainerHealthPoller.Readiness.WAITING, states.get("vaadin-app").getReadiness());
+        assertEquals(ContainerHealthPoller.Readiness.FAILED, states.get("proxy").getReadiness());
+    }
+
+    @Test
+    void containersWithoutHealthcheckAreReadyWhenRunningOrFinished() {
+        Map<String, ContainerHealthPoller.ServiceState> states = ContainerHealthPoller.parseStates(
+                "proxy running none 0\ncertbot exited none 1\nvaadin-app restarting none 1\ndb dead none 137\n");
+
+        assertEquals(ContainerHealthPoller.Readiness.READY, states.get("proxy").getReadiness());
+        assertEquals(ContainerHealthPoller.Readiness.READY, states.get("certbot").getReadiness());
+        assertEquals("exited with code 1", states.get("certbot").getStatus());
+        assertEquals(ContainerHealthPoller.Readiness.WAITING, states.get("vaadin-app").getReadiness());
+        assertEquals(ContainerHealthPoller.Readiness.FAILED, states.get("db").getReadiness());
+    }
+
+    @Test
+    void serviceWithSeveralContainersWaitsForTheSlowestOne() {
+        Map<String, ContainerHealthPoller.ServiceState> states = ContainerHealthPoller.parseStates(
+                "vaadin-app running healthy 0\nvaadin-app running starting 0\n");
+
+        assertEquals(ContainerHealthPoller.Readiness.WAITING, states.get("vaadin-app").getReadiness());
+    }
+
+    @Test
+    void intervalGrowsUpToTheLimit() {
+        long interval = ContainerHealthPoller.INITIAL_INTERVAL_MILLIS;
+        interval = ContainerHealthPoller.nextInterval(interval);
+        assertEquals(1_500, interval);
+
+        for (int i = 0; i < 20; i++) {
+            interval = ContainerHealthPoller.nextInterval(interval);
+        }
+        assertEquals(ContainerHealthPoller.MAX_INTERVAL_MILLIS, interval);
+    }
+}
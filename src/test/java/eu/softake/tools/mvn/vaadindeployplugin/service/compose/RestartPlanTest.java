@@ -0,0 +1,48 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.compose;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RestartPlanTest {
+
+    @Test
+    void packageAndDockerfileRebuildOnlyTheApp() {
+        RestartPlan plan = RestartPlan.of(Arrays.asList("target/app.jar", "Dockerfile"), Collections.emptySet());
+
+        assertFalse(plan.isFull());
+        assertFalse(plan.isProxyRestart());
+        assertEquals(Collections.singletonList(RestartPlan.APP_SERVICE), Arrays.asList(plan.getServices().toArray()));
+    }
+
+    @Test
+    void dbVariablesRecreateDbBeforeTheApp() {
+        RestartPlan plan = RestartPlan.of(Arrays.asList(".env", "configs/nginx/nginx.conf"),
+                RestartPlan.changedEnvVariables("DB_USER=u\nDB_PASSWORD=new\n# comment\n", "DB_USER=u\nDB_PASSWORD=old\n"));
+
+        assertEquals(Arrays.asList(RestartPlan.DB_SERVICE, RestartPlan.APP_SERVICE), Arrays.asList(plan.getServices().toArray()));
+        assertTrue(plan.isProxyRestart());
+    }
+
+    @Test
+    void composeFileOtherVariablesAndUnknownFilesRestartEverything() {
+        assertSame(RestartPlan.FULL, RestartPlan.of(Collections.singletonList("docker-compose.yaml"), Collections.emptySet()));
+        assertSame(RestartPlan.FULL, RestartPlan.of(Collections.singletonList(".env"),
+                RestartPlan.changedEnvVariables("APPS_DATA=/opt/data\n", "APPS_DATA=/opt/apps_data\n")));
+        assertSame(RestartPlan.FULL, RestartPlan.of(Collections.singletonList("configs/app/application.yaml"), Collections.emptySet()));
+    }
+
+    @Test
+    void certbotConfigAndCommentsRestartNothing() {
+        RestartPlan plan = RestartPlan.of(Arrays.asList("configs/certbot/post-renew-hook.sh", ".env"),
+                RestartPlan.changedEnvVariables("# new comment\nDB_USER=u\n", "DB_USER=u\n"));
+
+        assertTrue(plan.isEmpty());
+    }
+}
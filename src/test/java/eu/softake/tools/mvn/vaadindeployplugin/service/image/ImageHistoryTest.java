@@ -0,0 +1,46 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageHistoryTest {
+
+    @Test
+    void redeployedImageMovesToTheEndAndOldestImagesAreDropped() {
+        List<String> history = ImageHistory.parse("vaadin-app:a\nvaadin-app:b\nvaadin-app:c\n");
+
+        assertEquals(Arrays.asList("vaadin-app:b", "vaadin-app:c", "vaadin-app:d"), ImageHistory.record(history, "vaadin-app:d", 3));
+        assertEquals(Arrays.asList("vaadin-app:c", "vaadin-app:a"), ImageHistory.record(history, "vaadin-app:a", 2));
+        assertEquals(Collections.singletonList("vaadin-app:d"), ImageHistory.record(history, "vaadin-app:d", 0));
+    }
+
+    @Test
+    void rollbackDropsTheNewerImages() {
+        List<String> history = Arrays.asList("vaadin-app:a", "vaadin-app:b", "vaadin-app:c");
+
+        assertEquals(Arrays.asList("vaadin-app:a", "vaadin-app:b"), ImageHistory.rollBackTo(history, "vaadin-app:b"));
+        assertTrue(ImageHistory.rollBackTo(history, "vaadin-app:x").isEmpty());
+    }
+
+    @Test
+    void historyFileRoundTrips() {
+        assertTrue(ImageHistory.parse(null).isEmpty());
+        assertEquals("", ImageHistory.format(Collections.emptyList()));
+        assertEquals("vaadin-app:a\nvaadin-app:b\n", ImageHistory.format(ImageHistory.parse("\nvaadin-app:a\r\nvaadin-app:b")));
+    }
+
+    @Test
+    void imageIsReadFromTheOverrideFile() {
+        assertEquals("vaadin-app:0123456789ab",
+                ImageHistory.readImage("services:\n  vaadin-app:\n    image: vaadin-app:0123456789ab\n    pull_policy: never\n"));
+        assertNull(ImageHistory.readImage("services: {}\n"));
+        assertNull(ImageHistory.readImage(null));
+    }
+}
@@ -0,0 +1,114 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.image;
+
+import eu.softake.tools.mvn.vaadindeployplugin.service.LocalFileService;
+import eu.softake.tools.mvn.vaadindeployplugin.stepschain.init.CreateDockerFileHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayeredImageBuilderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void springBootJarIsSplitIntoReproducibleLayers() throws Exception {
+        final Path dockerfile = write(tempDir.resolve("Dockerfile"), "FROM eclipse-temurin:21-jre\nCOPY target/*.jar app.jar\n");
+        final Path targetDir = Files.createDirectories(tempDir.resolve("target"));
+
+        writeJar(targetDir.resolve("app.jar"), "v1");
+        final LayeredImage first = new LayeredImageBuilder(new LocalFileService(), targetDir.toString(), dockerfile.toString()).getImage();
+        writeJar(targetDir.resolve("app.jar"), "v2");
+        final LayeredImage second = new LayeredImageBuilder(new LocalFileService(), targetDir.toString(), dockerfile.toString()).getImage();
+
+        assertEquals("eclipse-temurin:21-jre", first.getBaseImage());
+        assertEquals(Arrays.asList("java", "-cp", "/app", "org.springframework.boot.loader.launch.JarLauncher"), first.getEntrypoint());
+        assertEquals(Arrays.asList("dependencies", "spring-boot-loader", "snapshot-dependencies", "application"),
+                first.getLayers().stream().map(LayeredImage.Layer::getName).collect(Collectors.toList()));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(first.getLayers().get(i).getDiffId(), second.getLayers().get(i).getDiffId());
+        }
+        assertNotEquals(first.getLayers().get(3).getDiffId(), second.getLayers().get(3).getDiffId());
+    }
+
+    @Test
+    void layersIndexDecidesTheLayerOfAnEntry() {
+        final Map<String, List<String>> index = new LinkedHashMap<>();
+        index.put("dependencies", Collections.singletonList("BOOT-INF/lib/"));
+        index.put("application", Arrays.asList("BOOT-INF/classes/", "META-INF/"));
+
+        assertEquals("dependencies", LayeredImageBuilder.layerOf("BOOT-INF/lib/a-SNAPSHOT.jar", index));
+        assertEquals("application", LayeredImageBuilder.layerOf("org/springframework/boot/loader/Launcher.class", index));
+        assertEquals("snapshot-dependencies", LayeredImageBuilder.layerOf("BOOT-INF/lib/a-SNAPSHOT.jar", null));
+        assertEquals("spring-boot-loader", LayeredImageBuilder.layerOf("org/springframework/boot/loader/Launcher.class", null));
+    }
+
+    @Test
+    void baseImageIsTheLastFromWhichIsNoBuildStage() throws Exception {
+        assertEquals("eclipse-temurin:21-jre", LayeredImageBuilder.readBaseImage(write(tempDir.resolve("a"),
+                "FROM maven:3-eclipse-temurin-21 AS build\nRUN mvn package\nFROM --platform=linux/amd64 eclipse-temurin:21-jre\n")));
+        assertThrows(IOException.class, () -> LayeredImageBuilder.readBaseImage(write(tempDir.resolve("b"),
+                "FROM eclipse-temurin:21-jre AS runtime\nFROM runtime\n")));
+    }
+
+    @Test
+    void generatedLayeredDockerfileIsReproduced() throws Exception {
+        final String dockerfile = String.format(CreateDockerFileHandler.LAYERED_DOCKERFILE_TEMPLATE, "eclipse-temurin:21-jre", CreateDockerFileHandler.LAYERS,
+                String.format(CreateDockerFileHandler.LAYER_COPY_TEMPLATE, "dependencies") + String.format(CreateDockerFileHandler.LAYER_COPY_TEMPLATE, "application"));
+
+        assertEquals(Collections.singletonList("8080/tcp"), LayeredImageBuilder.validateDockerfile(write(tempDir.resolve("Dockerfile"), dockerfile)));
+    }
+
+    @Test
+    void instructionsWhichCantBeReproducedFailTheBuild() throws Exception {
+        final Path dockerfile = write(tempDir.resolve("Dockerfile"), "FROM eclipse-temurin:21-jre\n"
+                + "ENV SPRING_PROFILES_ACTIVE=prod\n"
+                + "COPY target/*.jar app.jar\n"
+                + "ENTRYPOINT [\"java\", \"-Xmx512m\", \\\n    \"-jar\", \"app.jar\"]\n");
+        final Path targetDir = Files.createDirectories(tempDir.resolve("target"));
+        writeJar(targetDir.resolve("app.jar"), "v1");
+
+        final IOException e = assertThrows(IOException.class,
+                () -> new LayeredImageBuilder(new LocalFileService(), targetDir.toString(), dockerfile.toString()).getImage());
+        assertTrue(e.getMessage().contains("line 2 `ENV SPRING_PROFILES_ACTIVE=prod`"), e.getMessage());
+        assertTrue(e.getMessage().contains("line 4 `ENTRYPOINT"), e.getMessage());
+        assertFalse(e.getMessage().contains("COPY"), e.getMessage());
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeJar(Path file, String version) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "org.springframework.boot.loader.launch.JarLauncher");
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+            for (String name : Arrays.asList("BOOT-INF/lib/spring-core-6.1.jar", "BOOT-INF/lib/app-common-1.0-SNAPSHOT.jar",
+                    "org/springframework/boot/loader/launch/JarLauncher.class", "BOOT-INF/classes/App.class")) {
+                jar.putNextEntry(new JarEntry(name));
+                jar.write((name.endsWith("App.class") ? version : name).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
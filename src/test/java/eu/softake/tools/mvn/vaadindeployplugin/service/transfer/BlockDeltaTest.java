@@ -0,0 +1,107 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockDeltaTest {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void identicalFileIsCopiedCompletely() throws Exception {
+        byte[] content = randomBytes(100 * BLOCK_SIZE, 1);
+
+        BlockDelta delta = delta(content, content);
+
+        assertEquals(0, delta.getLiteralBytes());
+        assertEquals(1, delta.getInstructions().size());
+    }
+
+    @Test
+    void insertedBytesAreSentAsLiterals() throws Exception {
+        byte[] oldContent = randomBytes(100 * BLOCK_SIZE + 17, 2);
+        byte[] inserted = randomBytes(300, 3);
+        byte[] newContent = new byte[oldContent.length + inserted.length];
+        int insertAt = 40 * BLOCK_SIZE + 5;
+        System.arraycopy(oldContent, 0, newContent, 0, insertAt);
+        System.arraycopy(inserted, 0, newContent, insertAt, inserted.length);
+        System.arraycopy(oldContent, insertAt, newContent, insertAt + inserted.length, oldContent.length - insertAt);
+
+        BlockDelta delta = delta(oldContent, newContent);
+
+        assertTrue(delta.getLiteralBytes() < 3 * BLOCK_SIZE, "Literal bytes: " + delta.getLiteralBytes());
+        assertArrayEquals(newContent, rebuild(oldContent, newContent, delta));
+    }
+
+    @Test
+    void unrelatedFileIsSentCompletely() throws Exception {
+        byte[] oldContent = randomBytes(20 * BLOCK_SIZE, 4);
+        byte[] newContent = randomBytes(25 * BLOCK_SIZE + 3, 5);
+
+        BlockDelta delta = delta(oldContent, newContent);
+
+        assertEquals(newContent.length, delta.getLiteralBytes());
+        assertArrayEquals(newContent, rebuild(oldContent, newContent, delta));
+    }
+
+    @Test
+    void signatureIsReadBack() throws Exception {
+        Path file = Files.write(dir.resolve("app.jar"), randomBytes(5 * BLOCK_SIZE + 1, 6));
+        BlockSignature signature = BlockSignature.of(file, BLOCK_SIZE);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        signature.write(out);
+        BlockSignature readSignature = BlockSignature.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals("app.jar", readSignature.getFileName());
+        assertEquals(signature.getFileSha256(), readSignature.getFileSha256());
+        assertEquals(6, readSignature.getBlocks().size());
+        assertEquals(signature.getBlocks().get(3).getWeak(), readSignature.getBlocks().get(3).getWeak());
+    }
+
+    private BlockDelta delta(byte[] oldContent, byte[] newContent) throws Exception {
+        Path oldFile = Files.write(dir.resolve("old.jar"), oldContent);
+        Path newFile = Files.write(dir.resolve("new.jar"), newContent);
+        return BlockDelta.compute(newFile, BlockSignature.of(oldFile, BLOCK_SIZE));
+    }
+
+    private byte[] rebuild(byte[] oldContent, byte[] newContent, BlockDelta delta) throws Exception {
+        ByteArrayOutputStream literals = new ByteArrayOutputStream();
+        delta.writeLiterals(dir.resolve("new.jar"), literals);
+        byte[] literalBytes = literals.toByteArray();
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int literalOffset = 0;
+        for (BlockDelta.Instruction instruction : delta.getInstructions()) {
+            if (instruction.getType() == BlockDelta.InstructionType.COPY) {
+                int from = (int) instruction.getSourceOffset() * BLOCK_SIZE;
+                int to = Math.min(oldContent.length, from + (int) instruction.getLength() * BLOCK_SIZE);
+                result.write(oldContent, from, to - from);
+            } else {
+                result.write(literalBytes, literalOffset, (int) instruction.getLength());
+                literalOffset += (int) instruction.getLength();
+            }
+        }
+        assertEquals(newContent.length, result.size());
+        return result.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,68 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class DeploymentFingerprintTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sameContentGivesSameFingerprint() throws Exception {
+        write("deployment/docker-compose.yaml", "services:");
+        List<File> jar = Collections.singletonList(write("target/app.jar", "jar").toFile());
+
+        assertEquals(DeploymentFingerprint.compute(dir.resolve("deployment"), jar, Collections.emptyMap()),
+                DeploymentFingerprint.compute(dir.resolve("deployment"), jar, Collections.emptyMap()));
+    }
+
+    @Test
+    void changedArtifactOrTreeChangesFingerprint() throws Exception {
+        write("deployment/docker-compose.yaml", "services:");
+        List<File> jar = Collections.singletonList(write("target/app.jar", "jar").toFile());
+        String original = DeploymentFingerprint.compute(dir.resolve("deployment"), jar, Collections.emptyMap());
+
+        write("target/app.jar", "jar2");
+        String changedJar = DeploymentFingerprint.compute(dir.resolve("deployment"), jar, Collections.emptyMap());
+        write("deployment/configs/nginx.conf", "events {}");
+        String changedTree = DeploymentFingerprint.compute(dir.resolve("deployment"), jar, Collections.emptyMap());
+
+        assertNotEquals(original, changedJar);
+        assertNotEquals(changedJar, changedTree);
+    }
+
+    @Test
+    void renamedFileChangesFingerprint() throws Exception {
+        write("a/nginx.conf", "events {}");
+        write("b/nginx.conf.bak", "events {}");
+
+        assertNotEquals(DeploymentFingerprint.compute(dir.resolve("a"), Collections.emptyList(), Collections.emptyMap()),
+                DeploymentFingerprint.compute(dir.resolve("b"), Collections.emptyList(), Collections.emptyMap()));
+    }
+
+    @Test
+    void changedOptionChangesFingerprint() throws Exception {
+        write("deployment/docker-compose.yaml", "services:");
+        List<File> jar = Collections.singletonList(write("target/app.jar", "jar").toFile());
+
+        assertNotEquals(DeploymentFingerprint.compute(dir.resolve("deployment"), jar, Collections.singletonMap("deploymentStrategy", "IN_PLACE")),
+                DeploymentFingerprint.compute(dir.resolve("deployment"), jar, Collections.singletonMap("deploymentStrategy", "STAGED")));
+    }
+
+    private Path write(String path, String content) throws Exception {
+        Path file = dir.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
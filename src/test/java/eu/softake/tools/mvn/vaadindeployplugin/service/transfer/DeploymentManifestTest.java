@@ -0,0 +1,114 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeploymentManifestTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void allFilesAreChangedWithoutPreviousManifest() throws Exception {
+        write("docker-compose.yaml", "services:");
+        write("configs/nginx/nginx.conf", "events {}");
+
+        DeploymentManifest.Diff diff = DeploymentManifest.build(dir).diff(null);
+
+        assertEquals(2, diff.getChanged().size());
+        assertTrue(diff.getStale().isEmpty());
+    }
+
+    @Test
+    void writtenManifestIsReadBack() throws Exception {
+        write("configs/nginx/nginx.conf", "events {}");
+        DeploymentManifest manifest = DeploymentManifest.build(dir);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        DeploymentManifest readManifest = DeploymentManifest.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(manifest.getEntries(), readManifest.getEntries());
+        assertTrue(manifest.diff(readManifest).getChanged().isEmpty());
+    }
+
+    @Test
+    void onlyModifiedFilesAreChanged() throws Exception {
+        write("docker-compose.yaml", "services:");
+        write("configs/nginx/nginx.conf", "events {}");
+        DeploymentManifest previous = DeploymentManifest.build(dir);
+
+        write("configs/nginx/nginx.conf", "events { worker_connections 1024; }");
+        DeploymentManifest.Diff diff = DeploymentManifest.build(dir).diff(previous);
+
+        assertEquals(1, diff.getChanged().size());
+        assertEquals("configs/nginx/nginx.conf", diff.getChanged().get(0).getPath());
+    }
+
+    @Test
+    void removedFilesAreStale() throws Exception {
+        write("docker-compose.yaml", "services:");
+        write("scripts/pre-start.sh", "#!/bin/bash");
+        DeploymentManifest previous = DeploymentManifest.build(dir);
+
+        Files.delete(dir.resolve("scripts/pre-start.sh"));
+        DeploymentManifest.Diff diff = DeploymentManifest.build(dir).diff(previous);
+
+        assertTrue(diff.getChanged().isEmpty());
+        assertEquals(Collections.singletonList("scripts/pre-start.sh"), diff.getStale());
+    }
+
+    @Test
+    void filesChangedOnServerAreChanged() throws Exception {
+        write("docker-compose.yaml", "services:");
+        write(".env", "DB=postgres");
+        write("nginx.conf", "events {}");
+        DeploymentManifest local = DeploymentManifest.build(dir);
+        Map<String, DeploymentManifest.RemoteFile> remoteFiles = new HashMap<>();
+        remoteFiles.put("docker-compose.yaml", new DeploymentManifest.RemoteFile(9, 1000));
+        remoteFiles.put(".env", new DeploymentManifest.RemoteFile(11, 1000));
+        remoteFiles.put("nginx.conf", new DeploymentManifest.RemoteFile(9, 1000));
+        DeploymentManifest previous = local.withRemoteFiles(remoteFiles);
+
+        remoteFiles.put(".env", new DeploymentManifest.RemoteFile(11, 1005));
+        remoteFiles.remove("nginx.conf");
+        DeploymentManifest.Diff diff = local.diff(previous, remoteFiles);
+
+        assertEquals(2, diff.getChanged().size());
+        assertEquals(".env", diff.getChanged().get(0).getPath());
+        assertEquals("nginx.conf", diff.getChanged().get(1).getPath());
+    }
+
+    @Test
+    void manifestWithoutModificationTimesIsNotTrusted() throws Exception {
+        write("docker-compose.yaml", "services:");
+        DeploymentManifest local = DeploymentManifest.build(dir);
+        DeploymentManifest.Entry entry = local.getEntries().get(0);
+        String oldFormat = entry.getSha256() + " " + entry.getSize() + " " + entry.getPath() + "\n";
+
+        DeploymentManifest previous = DeploymentManifest.read(new ByteArrayInputStream(oldFormat.getBytes(StandardCharsets.UTF_8)));
+        DeploymentManifest.Diff diff = local.diff(previous,
+                Collections.singletonMap("docker-compose.yaml", new DeploymentManifest.RemoteFile(9, 1000)));
+
+        assertTrue(local.diff(previous).getChanged().isEmpty());
+        assertEquals(1, diff.getChanged().size());
+    }
+
+    private void write(String relativePath, String content) throws Exception {
+        Path file = dir.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
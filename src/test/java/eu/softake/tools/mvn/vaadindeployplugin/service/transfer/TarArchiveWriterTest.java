@@ -0,0 +1,75 @@
+package eu.softake.tools.mvn.vaadindeployplugin.service.transfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TarArchiveWriterTest {
+
+    @Test
+    void entryIsPaddedToBlocks() throws Exception {
+        byte[] content = "events {}".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (TarArchiveWriter tar = new TarArchiveWriter(out)) {
+            tar.putEntry("configs/nginx/nginx.conf", content.length, 0644, 0, new ByteArrayInputStream(content));
+        }
+
+        byte[] archive = out.toByteArray();
+        assertEquals(4 * 512, archive.length);
+        assertEquals("configs/nginx/nginx.conf", readString(archive, 0, 100));
+        assertEquals("0000644", readString(archive, 100, 8));
+        assertEquals("ustar", readString(archive, 257, 6));
+        assertEquals("events {}", readString(archive, 512, 512));
+    }
+
+    @Test
+    void longNameIsSplitIntoPrefix() throws Exception {
+        String dir = repeat("d", 60) + "/" + repeat("e", 60);
+        String name = dir + "/file.txt";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (TarArchiveWriter tar = new TarArchiveWriter(out)) {
+            tar.putEntry(name, 0, 0644, 0, new ByteArrayInputStream(new byte[0]));
+        }
+
+        byte[] archive = out.toByteArray();
+        assertEquals(name, readString(archive, 345, 155) + "/" + readString(archive, 0, 100));
+    }
+
+    @Test
+    void checksumMatchesHeader() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveWriter tar = new TarArchiveWriter(out)) {
+            tar.putEntry("a.txt", 1, 0755, 1700000000L, new ByteArrayInputStream(new byte[]{'a'}));
+        }
+
+        byte[] header = new byte[512];
+        System.arraycopy(out.toByteArray(), 0, header, 0, 512);
+        long expected = Long.parseLong(readString(header, 148, 7), 8);
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long actual = 0;
+        for (byte b : header) {
+            actual += b & 0xFF;
+        }
+        assertEquals(expected, actual);
+    }
+
+    private static String readString(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) end++;
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) sb.append(value);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DagChainExecutorTest {
+
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void independentStepsRunConcurrently() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        ChainStepHandler<String> first = step("first", () -> awaitBoth(bothStarted));
+        ChainStepHandler<String> second = step("second", () -> awaitBoth(bothStarted));
+        ChainStepHandler<String> last = step("last", () -> { });
+
+        DagChainExecutor<String> executor = new DagChainExecutor<>(2);
+        executor.addStep(first);
+        executor.addStep(second, Collections.emptyList());
+        executor.addStep(last, first, second);
+        executor.start("server");
+
+        assertEquals(3, executed.size());
+        assertEquals("last", executed.get(2));
+    }
+
+    @Test
+    void sequentialExecutionKeepsDeclarationOrder() throws Exception {
+        DagChainExecutor<String> executor = new DagChainExecutor<>(1);
+        executor.addStep(step("a", () -> { }));
+        executor.addStep(step("b", () -> { }), Collections.emptyList());
+        executor.addStep(step("c", () -> { }));
+        executor.start("server");
+
+        assertEquals(Arrays.asList("a", "b", "c"), executed);
+    }
+
+    @Test
+    void failureStopsDependentSteps() {
+        IllegalStateException failure = new IllegalStateException("upload failed");
+        ChainStepHandler<String> upload = step("upload", () -> {
+            throw failure;
+        });
+        ChainStepHandler<String> slow = step("slow", () -> Thread.sleep(10_000));
+        ChainStepHandler<String> start = step("start", () -> { });
+
+        DagChainExecutor<String> executor = new DagChainExecutor<>(4);
+        executor.addStep(upload);
+        executor.addStep(slow, Collections.emptyList());
+        executor.addStep(start, upload, slow);
+
+        long startTime = System.nanoTime();
+        Exception thrown = assertThrows(Exception.class, () -> executor.start("server"));
+
+        assertSame(failure, thrown);
+        assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+        assertFalse(executed.contains("start"));
+    }
+
+    @Test
+    void cancellationHandlerStopsStepsIgnoringInterrupts() {
+        CountDownLatch blockedStarted = new CountDownLatch(1);
+        CountDownLatch channelClosed = new CountDownLatch(1);
+        ChainStepHandler<String> blocked = step("blocked", () -> {
+            blockedStarted.countDown();
+            // Like a blocking SSH read, which doesn't react to interrupts
+            while (channelClosed.getCount() > 0) {
+                try {
+                    channelClosed.await();
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+            }
+            throw new IllegalStateException("channel closed");
+        });
+        ChainStepHandler<String> upload = step("upload", () -> {
+            blockedStarted.await();
+            throw new IllegalStateException("upload failed");
+        });
+
+        DagChainExecutor<String> executor = new DagChainExecutor<>(2);
+        executor.setCancellationHandler(channelClosed::countDown);
+        executor.addStep(blocked);
+        executor.addStep(upload, Collections.emptyList());
+
+        long startTime = System.nanoTime();
+        Exception thrown = assertThrows(Exception.class, () -> executor.start("server"));
+
+        assertEquals("upload failed", thrown.getMessage());
+        assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    void dependencyMustBeAddedFirst() {
+        DagChainExecutor<String> executor = new DagChainExecutor<>(2);
+        ChainStepHandler<String> later = step("later", () -> { });
+
+        assertThrows(IllegalArgumentException.class, () -> executor.addStep(step("first", () -> { }), later));
+    }
+
+    private static void awaitBoth(CountDownLatch latch) throws Exception {
+        latch.countDown();
+        if (!latch.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Steps haven't been running at the same time");
+        }
+    }
+
+    private ChainStepHandler<String> step(String name, Action action) {
+        return new ChainStepHandler<String>() {
+            @Override
+            public String getStepDescription(String dataObj) {
+                return name;
+            }
+
+            @Override
+            public void handle(String dataObj) throws Exception {
+                action.run();
+                executed.add(name);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,38 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.deploy;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DockerComposeBlueGreenHandlerTest {
+
+    @Test
+    void sessionsOfTheDrainingSlotStayOnIt() {
+        assertEquals("upstream vaadin-app-green {\n    server vaadin-app-green:8080;\n}\n"
+                        + "upstream vaadin-app-blue {\n    server vaadin-app-blue:8080;\n}\n"
+                        + "map $cookie_vaadin_slot $vaadin_app_slot {\n    default green;\n    blue blue;\n}\n",
+                DockerComposeBlueGreenHandler.slotsConfig(DockerComposeBlueGreenHandler.GREEN, DockerComposeBlueGreenHandler.BLUE));
+    }
+
+    @Test
+    void nginxTemplateRoutesBySlotCookie() throws Exception {
+        final String nginxConf;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("templates/blue-green/nginx.conf")) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+            nginxConf = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        assertTrue(nginxConf.contains("include /etc/nginx/upstream/" + DockerComposeBlueGreenHandler.SLOTS_FILE_NAME + ";"));
+        assertTrue(nginxConf.contains("proxy_pass http://" + DockerComposeBlueGreenHandler.SERVICE_PREFIX + "$vaadin_app_slot;"));
+        assertTrue(nginxConf.contains(DockerComposeBlueGreenHandler.SLOT_COOKIE + "=$vaadin_app_slot;"));
+    }
+}
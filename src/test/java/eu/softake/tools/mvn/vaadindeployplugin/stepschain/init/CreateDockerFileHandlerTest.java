@@ -0,0 +1,30 @@
+package eu.softake.tools.mvn.vaadindeployplugin.stepschain.init;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreateDockerFileHandlerTest {
+
+    @Test
+    void layersAreCopiedFromTheLeastToTheMostFrequentlyChangedOne() {
+        final String dockerfile = CreateDockerFileHandler.layeredDockerfile("eclipse-temurin:21-jre");
+
+        assertTrue(dockerfile.contains("FROM eclipse-temurin:21-jre AS extract\n"));
+        assertTrue(dockerfile.endsWith("ENTRYPOINT [\"java\", \"@/app/app.args\"]\n"));
+        final int dependencies = dockerfile.indexOf("/extract/layers/dependencies/ ./\n");
+        final int loader = dockerfile.indexOf("/extract/layers/spring-boot-loader/ ./\n");
+        final int snapshots = dockerfile.indexOf("/extract/layers/snapshot-dependencies/ ./\n");
+        final int application = dockerfile.indexOf("/extract/layers/application/ ./\n");
+        assertTrue(dependencies > 0 && dependencies < loader && loader < snapshots && snapshots < application);
+        assertEquals(dockerfile.lastIndexOf("FROM eclipse-temurin:21-jre\n"), dockerfile.indexOf("FROM eclipse-temurin:21-jre\n"));
+    }
+
+    @Test
+    void generatedDockerfileHasNoPlaceholders() {
+        // Placeholders in the deployment directory are substituted after the Dockerfile is created
+        assertFalse(CreateDockerFileHandler.layeredDockerfile("eclipse-temurin:21-jre").contains("${"));
+    }
+}